@@ -1,12 +1,25 @@
 package core;
 
+import core.admission.AdmissionController;
+import core.bus.InvalidationBus;
+import core.config.CouponSystemConfig;
+import core.dao.DAOFactory;
+import core.dao.db.IdAllocator;
+import core.dao.db.TransactionManager;
+import core.dao.db.UnitOfWork;
 import core.exception.CouponSystemException;
 import core.facade.AdminFacade;
 import core.facade.CompanyFacade;
 import core.facade.CouponClientFacade;
 import core.facade.CustomerFacade;
 import core.facade.clientType;
+import core.facade.async.FacadeExecutor;
+import core.flashsale.FlashSaleManager;
+import core.pipeline.PurchasePipeline;
+import core.session.Session;
+import core.session.SessionManager;
 import core.thread.DailyCouponSystemExpirationTask;
+import core.thread.Threads;
 import db.connection_pool.ConnectionPool;
 
 /**
@@ -14,28 +27,67 @@ import db.connection_pool.ConnectionPool;
  * application.</br>
  * In here you got all the methods for starting this application & shutting it
  * down and the Login that each user uses to login and get a Facade.</br>
+ * With 'executor.mode=virtual' (see {@link Threads}) the daily task and the
+ * async facade calls run on virtual threads.</br>
+ * getInstance returns once the first connections are open (see
+ * {@link ConnectionPool}), the DAOs (like the coupon filter and catalog that
+ * load all the coupons) are built by a warm-up thread in the background, a
+ * request that needs one before it is ready waits for it. The time of every
+ * startup step is printed.</br>
  * See also : {@link AdminFacade}, {@link CompanyFacade}, {@link CustomerFacade}
  */
 public class CouponSystem {
 	// Attributes
-	private static CouponSystem instance = null;
+	private static volatile CouponSystem instance = null;
 	private static ConnectionPool con = null;
 	private DailyCouponSystemExpirationTask task = null;
 	private Thread dailyTask = null;
+	private SessionManager sessions = null;
 
 	// Private CTOR
 	private CouponSystem() {
+		long start = System.currentTimeMillis();
+		System.out.println("Storage engine : " + DAOFactory.getEngine());
 		con = ConnectionPool.getInstance();
+		long poolReady = System.currentTimeMillis();
+		Thread warmUp = Threads.newThread("CouponSystem-warmup", CouponSystem::warmUp);
+		warmUp.setDaemon(true);
+		warmUp.start();
 		task = new DailyCouponSystemExpirationTask();
-		dailyTask = new Thread(task);
+		dailyTask = Threads.newThread("DailyCouponSystemExpirationTask", task);
 		dailyTask.start();
+		sessions = new SessionManager(CouponSystemConfig.getLong("session.idleTimeoutMinutes", 30),
+				CouponSystemConfig.getInt("session.maxSessions", 10000));
+		InvalidationBus.getInstance().addListener(sessions);
+		long end = System.currentTimeMillis();
+		System.out.println("Startup : connection pool " + (poolReady - start) + " ms, tasks & sessions "
+				+ (end - poolReady) + " ms, ready in " + (end - start) + " ms");
 	}
 
 	public static CouponSystem getInstance() {
-		if (instance == null) {
-			instance = new CouponSystem();
+		CouponSystem system = instance;
+		if (system == null) {
+			synchronized (CouponSystem.class) {
+				if (instance == null) {
+					instance = new CouponSystem();
+				}
+				system = instance;
+			}
 		}
-		return instance;
+		return system;
+	}
+
+	// builds the DAOs before the first requests need them.
+	private static void warmUp() {
+		long start = System.currentTimeMillis();
+		DAOFactory.getCustomerDAO();
+		DAOFactory.getCompanyDAO();
+		DAOFactory.getJoinTablesDAO();
+		long daos = System.currentTimeMillis();
+		DAOFactory.getCouponDAO();
+		long end = System.currentTimeMillis();
+		System.out.println("Startup warm-up : DAOs " + (daos - start) + " ms, coupon DAO " + (end - daos)
+				+ " ms");
 	}
 
 	/**
@@ -56,12 +108,87 @@ public class CouponSystem {
 		}
 	}
 
+	/**
+	 * With this method the user login and gets a session token instead of a
+	 * Facade.</br>
+	 * On the next requests the user gives the token to
+	 * {@link #getFacade(String)} and gets his Facade back without logging in
+	 * again.</br>
+	 * If the user name & password are incorrect it will throw a
+	 * {@link CouponSystemException}.
+	 * 
+	 * @return an opaque session token.
+	 */
+	public String loginSession(String name, String password, clientType type) throws CouponSystemException {
+		CouponClientFacade facade = login(name, password, type);
+		long userId = 0;
+		if (facade instanceof CustomerFacade) {
+			userId = ((CustomerFacade) facade).getCustomerId();
+		} else if (facade instanceof CompanyFacade) {
+			userId = ((CompanyFacade) facade).getCompanyId();
+		}
+		return sessions.createSession(facade, type, userId);
+	}
+
+	/**
+	 * Gets the Facade of a logged in user by his session token (without the
+	 * DB).</br>
+	 * If the token is incorrect or the session expired it will throw a
+	 * {@link CouponSystemException} and the user needs to login again.
+	 * 
+	 * @param token
+	 *            the token the user got from {@link #loginSession}.
+	 * @return the user's Facade.
+	 */
+	public CouponClientFacade getFacade(String token) throws CouponSystemException {
+		Session session = sessions.getSession(token);
+		if (session == null) {
+			throw new CouponSystemException("Session expired, please login again");
+		}
+		return session.getFacade();
+	}
+
+	/**
+	 * Removes the user's session.
+	 */
+	public void logout(String token) {
+		sessions.removeSession(token);
+	}
+
+	/**
+	 * Runs a few DAO / facade calls in one transaction : they are saved all
+	 * together or, if one of them throws a {@link CouponSystemException},
+	 * not at all (see {@link TransactionManager}).
+	 * 
+	 * @param work
+	 *            the calls, usually a lambda.
+	 * @return the result of the work.
+	 */
+	public <T> T inTransaction(UnitOfWork<T> work) throws CouponSystemException {
+		return TransactionManager.inTransaction(work);
+	}
+
+	/**
+	 * @return the running, waiting and rejected calls of every client type
+	 *         (see {@link AdmissionController}).
+	 */
+	public String getAdmissionStatistics() {
+		return AdmissionController.getInstance().getStatistics();
+	}
+
 	/**
 	 * Shuts down all this application connection & Daily Task.
 	 */
 	public void shutDown() throws InterruptedException {
+		sessions.shutDown();
+		FacadeExecutor.shutDown();
+		FlashSaleManager.shutDown();
+		PurchasePipeline.shutDown();
 		dailyTask.interrupt();
 		dailyTask.join();
+		DAOFactory.closeAll();
+		IdAllocator.shutDown();
+		InvalidationBus.shutDown();
 		con.closeAllConnections();
 		System.out.println("Successfully shutdown");
 	}
@@ -0,0 +1,251 @@
+package core.admission;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import core.config.CouponSystemConfig;
+import core.exception.AdmissionRejectedException;
+import core.facade.clientType;
+import db.connection_pool.ConnectionPool;
+
+/**
+ * A <b>singleton</b> class that decides which facade calls may run when the
+ * system is loaded, so the callers don't all wait without a limit for a
+ * connection in the {@link ConnectionPool}.</br>
+ * At most 'admission.maxConcurrent' calls run at the same time, and each
+ * {@link clientType} has its own limit of running calls, waiting calls and
+ * wait time ('admission.customer.*', 'admission.company.*',
+ * 'admission.admin.*').</br>
+ * When a call ends the next call is taken by priority : CUSTOMER, then
+ * COMPANY, then ADMIN, so admin scans can't starve the customer
+ * purchases.</br>
+ * A call that finds its wait queue full, or waits longer than its wait time,
+ * is rejected with an {@link AdmissionRejectedException}.</br>
+ * Close the ticket in a finally block :</br>
+ * <code>Ticket ticket = admission.enter(clientType.CUSTOMER); try {...} finally { ticket.close(); }</code>
+ */
+public class AdmissionController {
+	// the client types by priority.
+	private static final clientType[] PRIORITY = { clientType.CUSTOMER, clientType.COMPANY, clientType.ADMIN };
+	private static final Ticket NO_TICKET = () -> {
+	};
+	// Attributes
+	private static AdmissionController instance = null;
+	private boolean enabled;
+	private int maxConcurrent;
+	private int running = 0;
+	private Map<clientType, Limits> limits = new EnumMap<>(clientType.class);
+	private Lock lock = new ReentrantLock();
+
+	// CTOR
+	/**
+	 * @param enabled
+	 *            false to let all the calls run.
+	 * @param maxConcurrent
+	 *            the maximum number of calls that run at the same time.
+	 */
+	public AdmissionController(boolean enabled, int maxConcurrent) {
+		this.enabled = enabled;
+		this.maxConcurrent = Math.max(1, maxConcurrent);
+		for (clientType type : clientType.values()) {
+			limits.put(type, new Limits(this.maxConcurrent, Integer.MAX_VALUE, 0));
+		}
+	}
+
+	public static synchronized AdmissionController getInstance() {
+		if (instance == null) {
+			instance = new AdmissionController(CouponSystemConfig.getBoolean("admission.enabled", true),
+					CouponSystemConfig.getInt("admission.maxConcurrent", ConnectionPool.POOL_SIZE));
+			instance.setLimits(clientType.CUSTOMER, "customer", 1000, 2000);
+			instance.setLimits(clientType.COMPANY, "company", 200, 2000);
+			instance.setLimits(clientType.ADMIN, "admin", 20, 5000);
+		}
+		return instance;
+	}
+
+	// Methods
+	/**
+	 * Sets the limits of a client type.
+	 * 
+	 * @param type
+	 *            the client type.
+	 * @param maxConcurrent
+	 *            the maximum number of its calls that run at the same time.
+	 * @param maxWaiting
+	 *            the maximum number of its calls that wait.
+	 * @param maxWaitMillis
+	 *            how long a call waits before it is rejected.
+	 */
+	public void setLimits(clientType type, int maxConcurrent, int maxWaiting, long maxWaitMillis) {
+		lock.lock();
+		try {
+			Limits own = limits.get(type);
+			own.maxConcurrent = Math.max(1, maxConcurrent);
+			own.maxWaiting = Math.max(0, maxWaiting);
+			own.maxWaitMillis = maxWaitMillis;
+			signalNext();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void setLimits(clientType type, String key, int maxWaiting, long maxWaitMillis) {
+		setLimits(type, CouponSystemConfig.getInt("admission." + key + ".maxConcurrent", maxConcurrent),
+				CouponSystemConfig.getInt("admission." + key + ".maxWaiting", maxWaiting),
+				CouponSystemConfig.getLong("admission." + key + ".maxWaitMillis", maxWaitMillis));
+	}
+
+	/**
+	 * Enters a call, waits if there are too many calls running.
+	 * 
+	 * @param type
+	 *            the client type of the call.
+	 * @return a {@link Ticket} to close when the call ends.
+	 * @throws AdmissionRejectedException
+	 *             if the wait queue is full or the call waited too long.
+	 */
+	public Ticket enter(clientType type) throws AdmissionRejectedException {
+		if (!enabled) {
+			return NO_TICKET;
+		}
+		lock.lock();
+		try {
+			Limits own = limits.get(type);
+			if (own.waiting == 0 && canRun(type) && !hasPriorityWaiting(type)) {
+				return admit(type, own);
+			}
+			if (own.waiting >= own.maxWaiting) {
+				own.rejected++;
+				throw new AdmissionRejectedException(type, "The system is too busy for " + type + ", please try again");
+			}
+			own.waiting++;
+			try {
+				long nanos = TimeUnit.MILLISECONDS.toNanos(own.maxWaitMillis);
+				while (!canRun(type) || hasPriorityWaiting(type)) {
+					if (nanos <= 0) {
+						own.rejected++;
+						throw new AdmissionRejectedException(type,
+								"Timed out waiting for the system (" + type + "), please try again");
+					}
+					nanos = own.turn.awaitNanos(nanos);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new AdmissionRejectedException(type, "Interrupted while waiting for the system");
+			} finally {
+				own.waiting--;
+				// there may be room for more calls (or for a lower priority).
+				signalNext();
+			}
+			return admit(type, own);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return a String with the running, waiting and rejected calls of every
+	 *         client type.
+	 */
+	public String getStatistics() {
+		lock.lock();
+		try {
+			StringBuilder sb = new StringBuilder("running=" + running);
+			for (clientType type : PRIORITY) {
+				Limits own = limits.get(type);
+				sb.append(", ").append(type).append("[running=").append(own.running).append(", waiting=")
+						.append(own.waiting).append(", rejected=").append(own.rejected).append(']');
+			}
+			return sb.toString();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private Ticket admit(clientType type, Limits own) {
+		own.running++;
+		running++;
+		return new Ticket() {
+			private boolean closed = false;
+
+			@Override
+			public void close() {
+				if (!closed) {
+					closed = true;
+					leave(type);
+				}
+			}
+		};
+	}
+
+	private void leave(clientType type) {
+		lock.lock();
+		try {
+			limits.get(type).running--;
+			running--;
+			signalNext();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// wakes the waiting calls of the first client type (by priority) that can
+	// run.
+	private void signalNext() {
+		for (clientType next : PRIORITY) {
+			Limits waiting = limits.get(next);
+			if (waiting.waiting > 0 && canRun(next)) {
+				waiting.turn.signalAll();
+				return;
+			}
+		}
+	}
+
+	private boolean canRun(clientType type) {
+		Limits own = limits.get(type);
+		return running < maxConcurrent && own.running < own.maxConcurrent;
+	}
+
+	// true if a call with a higher priority waits and can run.
+	private boolean hasPriorityWaiting(clientType type) {
+		for (clientType other : PRIORITY) {
+			if (other == type) {
+				return false;
+			}
+			if (limits.get(other).waiting > 0 && canRun(other)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * A permission to run one call, close it when the call ends.
+	 */
+	public interface Ticket extends AutoCloseable {
+		@Override
+		void close();
+	}
+
+	// the limits & counters of a client type.
+	private class Limits {
+		private int maxConcurrent;
+		private int maxWaiting;
+		private long maxWaitMillis;
+		private int running = 0;
+		private int waiting = 0;
+		private long rejected = 0;
+		private Condition turn = lock.newCondition();
+
+		Limits(int maxConcurrent, int maxWaiting, long maxWaitMillis) {
+			this.maxConcurrent = maxConcurrent;
+			this.maxWaiting = maxWaiting;
+			this.maxWaitMillis = maxWaitMillis;
+		}
+	}
+
+}
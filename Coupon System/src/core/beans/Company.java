@@ -6,7 +6,7 @@ import javax.xml.bind.annotation.XmlRootElement;
 
 /**
  * This class contains all the attributes that represents a Company.<br>
- * Attributes such as : id, name, password, email.
+ * Attributes such as : id, name, password, email, version.
  */
 @XmlRootElement
 public class Company implements Serializable {
@@ -16,6 +16,7 @@ public class Company implements Serializable {
 	private String compName; // the company's name.
 	private String password; // the company's password.
 	private String email; // the company's email.
+	private long version; // the row version, raised by every update.
 
 	// COTRs
 	public Company() {
@@ -62,9 +63,18 @@ public class Company implements Serializable {
 		this.email = email;
 	}
 
+	public long getVersion() {
+		return version;
+	}
+
+	public void setVersion(long version) {
+		this.version = version;
+	}
+
 	@Override
 	public String toString() {
-		return "Company [id=" + id + ", compName=" + compName + ", password=" + password + ", email=" + email + "]";
+		return "Company [id=" + id + ", compName=" + compName + ", password=" + password + ", email=" + email
+				+ ", version=" + version + "]";
 	}
 
 }
@@ -6,7 +6,7 @@ import java.util.Date;
 import javax.xml.bind.annotation.XmlRootElement;
 /**
  * This class contains all the attributes that represents a Coupon.</br>
- * Attributes such as : id, title, Start Date, End Date, amount, CouponType, message, price, image.
+ * Attributes such as : id, title, Start Date, End Date, amount, CouponType, message, price, image, version.
  */
 @XmlRootElement
 public class Coupon implements Serializable {
@@ -21,6 +21,7 @@ public class Coupon implements Serializable {
 	private String message;// the coupon's message.
 	private double price;// the coupon's price.
 	private String image;// the coupons image.
+	private long version;// the row version, raised by every update.
 
 	// COTRs
 	public Coupon() {
@@ -113,11 +114,19 @@ public class Coupon implements Serializable {
 		this.image = image;
 	}
 
+	public long getVersion() {
+		return version;
+	}
+
+	public void setVersion(long version) {
+		this.version = version;
+	}
+
 	@Override
 	public String toString() {
 		return "Coupon [id=" + id + ", title=" + title + ", startDate=" + startDate + ", endDate=" + endDate
 				+ ", amount=" + amount + ", type=" + type + ", message=" + message + ", price=" + price + ", image="
-				+ image + "]";
+				+ image + ", version=" + version + "]";
 	}
 
 }
@@ -6,7 +6,7 @@ import javax.xml.bind.annotation.XmlRootElement;
 
 /**
  * This class contains all the attributes that represents a Customer.</br>
- * Attributes such as : id, name, password.
+ * Attributes such as : id, name, password, version.
  */
 @XmlRootElement
 public class Customer implements Serializable {
@@ -15,6 +15,7 @@ public class Customer implements Serializable {
 	private long id;// represents the Primary Key in the Customer & Customer_Coupon Tables.
 	private String custName;// the customer's name.
 	private String password;// the customers's password.
+	private long version;// the row version, raised by every update.
 
 	// COTRs
 	public Customer() {
@@ -52,9 +53,17 @@ public class Customer implements Serializable {
 		this.password = password;
 	}
 
+	public long getVersion() {
+		return version;
+	}
+
+	public void setVersion(long version) {
+		this.version = version;
+	}
+
 	@Override
 	public String toString() {
-		return "Customer [id=" + id + ", custName=" + custName + ", password=" + password + "]";
+		return "Customer [id=" + id + ", custName=" + custName + ", password=" + password + ", version=" + version + "]";
 	}
 
 }
@@ -0,0 +1,36 @@
+package core.beans;
+
+import java.io.Serializable;
+
+/**
+ * This class contains all the attributes that represents a request of a
+ * customer to buy a coupon (a row to add in the Customer_Coupon table).</br>
+ * Attributes such as : customer, coupon.
+ */
+public class Purchase implements Serializable {
+	private static final long serialVersionUID = 1L;
+	// Attributes
+	private Customer customer;// the customer that buys the coupon.
+	private Coupon coupon;// the coupon the customer buys (id & title).
+
+	// COTRs
+	public Purchase(Customer customer, Coupon coupon) {
+		this.customer = customer;
+		this.coupon = coupon;
+	}
+
+	// Getters
+	public Customer getCustomer() {
+		return customer;
+	}
+
+	public Coupon getCoupon() {
+		return coupon;
+	}
+
+	@Override
+	public String toString() {
+		return "Purchase [customer=" + customer.getId() + ", coupon=" + coupon.getId() + "]";
+	}
+
+}
@@ -0,0 +1,21 @@
+package core.beans;
+
+import java.io.Serializable;
+
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * This is a enum class that represents the outcome of buying one coupon -
+ * PURCHASED, NOT_FOUND, TITLE_MISMATCH, ALREADY_OWNED, OUT_OF_STOCK, EXPIRED,
+ * FAILED (the purchase could not be saved).
+ */
+@XmlRootElement
+public enum PurchaseOutcome implements Serializable {
+
+	PURCHASED, NOT_FOUND, TITLE_MISMATCH, ALREADY_OWNED, OUT_OF_STOCK, EXPIRED, FAILED;
+
+	public boolean isPurchased() {
+		return this == PURCHASED;
+	}
+
+}
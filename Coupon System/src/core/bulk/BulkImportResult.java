@@ -0,0 +1,76 @@
+package core.bulk;
+
+import java.util.List;
+
+import core.bus.EntityType;
+
+/**
+ * The result of a {@link CsvBulkImporter} run : how many rows were imported
+ * and rejected (with the first reasons), where it started (more than 0 when
+ * it resumed from a checkpoint) and how long it took.
+ */
+public class BulkImportResult {
+	// Attributes
+	private EntityType entity;
+	private long imported;
+	private long rejected;
+	private List<String> rejects;
+	private long resumedFrom;
+	private long millis;
+
+	// CTOR
+	BulkImportResult(EntityType entity, long imported, long rejected, List<String> rejects, long resumedFrom,
+			long millis) {
+		this.entity = entity;
+		this.imported = imported;
+		this.rejected = rejected;
+		this.rejects = rejects;
+		this.resumedFrom = resumedFrom;
+		this.millis = millis;
+	}
+
+	// Methods
+	public EntityType getEntity() {
+		return entity;
+	}
+
+	/**
+	 * @return the rows that were saved (with the ones saved before a resume).
+	 */
+	public long getImported() {
+		return imported;
+	}
+
+	/**
+	 * @return the rows that were rejected (bad values, existing ids or names).
+	 */
+	public long getRejected() {
+		return rejected;
+	}
+
+	/**
+	 * @return the reasons of the first rejected rows.
+	 */
+	public List<String> getRejects() {
+		return rejects;
+	}
+
+	/**
+	 * @return the offset in the CSV file that this run resumed from, 0 if it
+	 *         started from the beginning.
+	 */
+	public long getResumedFrom() {
+		return resumedFrom;
+	}
+
+	public long getMillis() {
+		return millis;
+	}
+
+	@Override
+	public String toString() {
+		return "BulkImportResult [entity=" + entity + ", imported=" + imported + ", rejected=" + rejected
+				+ ", resumedFrom=" + resumedFrom + ", millis=" + millis + "]";
+	}
+
+}
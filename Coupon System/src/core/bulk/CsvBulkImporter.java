@@ -0,0 +1,386 @@
+package core.bulk;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import core.beans.Company;
+import core.beans.Coupon;
+import core.beans.CouponType;
+import core.beans.Customer;
+import core.bus.EntityType;
+import core.config.CouponSystemConfig;
+import core.dao.BulkInsertDAO;
+import core.dao.CatalogDAO;
+import core.dao.CatalogVisitor;
+import core.dao.db.TransactionManager;
+import core.exception.CouponSystemException;
+import core.thread.Threads;
+import core.util.EpochDay;
+
+/**
+ * Imports coupons, customers or companies from a CSV file (one entity per
+ * file).</br>
+ * The first line of the file names the columns (the DB column names, in any
+ * order) :</br>
+ * <b>Coupon :</b> title, start_date, end_date (yyyy-MM-dd), amount, type,
+ * price and optional id, message, image, comp_id (the company that owns
+ * it).</br>
+ * <b>Customer :</b> cust_name, password and optional id.</br>
+ * <b>Company :</b> comp_name, password and optional email, id.</br>
+ * The file is memory mapped in chunks of 'bulkImport.chunkBytes' that end at
+ * the end of a record, and 'bulkImport.threads' threads each parse a chunk,
+ * check its rows and save them in one transaction through the
+ * {@link BulkInsertDAO} (JDBC batches, each thread on its own pool
+ * connection). Only a few chunks are read ahead, so the memory doesn't grow
+ * with the file.</br>
+ * The ids & names are checked against the ones that existed when the import
+ * started (read once with the {@link CatalogDAO}) and the ones before them in
+ * the file, a row that repeats one, or has a bad value, is rejected and the
+ * import goes on. Rows without an id get a new one, and after the last chunk
+ * the ids are moved past the largest id that exists (once, so the chunks
+ * don't wait for each other on the id sequence).</br>
+ * If a chunk fails to save the import stops, and running it again resumes
+ * from its {@link ImportCheckpoint}.</br>
+ * <b>Be aware :</b> plain text passwords are hashed on import (PBKDF2 is slow
+ * on purpose, the rows of a chunk are hashed in parallel), passwords that are
+ * already hashed (pbkdf2$...) are saved as they are and import much faster.
+ * Run the import when no one else creates the same entity.
+ */
+public class CsvBulkImporter {
+	// Attributes
+	private static final int MAX_REJECTS = 20;
+	private EntityType entity;
+	private File csv;
+	private CatalogDAO catalogDAO;
+	private BulkInsertDAO insertDAO;
+	private int threads = Math.max(1, CouponSystemConfig.getInt("bulkImport.threads",
+			Math.min(Runtime.getRuntime().availableProcessors(), 4)));
+	private int chunkBytes = Math.max(1 << 10, CouponSystemConfig.getInt("bulkImport.chunkBytes", 1 << 22));
+	// the names & ids that exist (and the company ids, for coupons).
+	private Set<String> names = ConcurrentHashMap.newKeySet();
+	private Set<Long> ids = ConcurrentHashMap.newKeySet();
+	private Set<Long> companyIds = ConcurrentHashMap.newKeySet();
+	// the largest id that exists or was saved.
+	private AtomicLong maxId = new AtomicLong();
+	// the column index of every column name of the header.
+	private Map<String, Integer> columns = new HashMap<>();
+	private ImportCheckpoint checkpoint;
+	private List<String> rejects = Collections.synchronizedList(new ArrayList<>());
+	private AtomicReference<CouponSystemException> failure = new AtomicReference<>();
+
+	// CTOR
+	/**
+	 * @param entity
+	 *            the entity of the rows in the file.
+	 * @param csv
+	 *            the CSV file.
+	 * @param catalogDAO
+	 *            the DAO to read the existing ids & names with.
+	 * @param insertDAO
+	 *            the DAO to save the rows with.
+	 */
+	public CsvBulkImporter(EntityType entity, File csv, CatalogDAO catalogDAO, BulkInsertDAO insertDAO) {
+		this.entity = entity;
+		this.csv = csv;
+		this.catalogDAO = catalogDAO;
+		this.insertDAO = insertDAO;
+	}
+
+	// Methods
+	/**
+	 * Imports the file (from its checkpoint if an earlier import of it
+	 * failed).</br>
+	 * If the file can't be read, has no header with the required columns or
+	 * a chunk fails to save it will throw an {@link CouponSystemException}.
+	 * 
+	 * @return the {@link BulkImportResult}.
+	 */
+	public BulkImportResult run() throws CouponSystemException {
+		long startTime = System.currentTimeMillis();
+		loadExisting();
+		try (FileChannel channel = FileChannel.open(csv.toPath(), StandardOpenOption.READ)) {
+			checkpoint = ImportCheckpoint.load(csv);
+			long size = channel.size();
+			long position = readHeader(channel, size);
+			long resumedFrom = checkpoint.getOffset() > position ? checkpoint.getOffset() : 0;
+			if (resumedFrom > 0) {
+				System.out.println("Resuming the import of " + csv + " from byte " + resumedFrom);
+			}
+			checkpoint.skipTo(position);
+			position = checkpoint.getOffset();
+			ExecutorService workers = Executors.newFixedThreadPool(threads, task -> {
+				Thread thread = Threads.newThread("CsvBulkImporter-worker", task);
+				thread.setDaemon(true);
+				return thread;
+			});
+			// the chunks that are read ahead of the workers.
+			Semaphore inFlight = new Semaphore(threads * 2);
+			try {
+				int window = chunkBytes;
+				while (position < size && failure.get() == null) {
+					long length = Math.min(window, size - position);
+					MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+					int end = position + length == size ? (int) length : CsvReader.lastRecordEnd(buffer);
+					if (end <= 0) {
+						// a record longer than the window.
+						if (window > Integer.MAX_VALUE / 2) {
+							throw new CouponSystemException("CSV record at byte " + position + " is too long");
+						}
+						window *= 2;
+						continue;
+					}
+					window = chunkBytes;
+					buffer.limit(end);
+					long start = position;
+					inFlight.acquireUninterruptibly();
+					workers.execute(() -> {
+						try {
+							importChunk(buffer, start, start + end);
+						} finally {
+							inFlight.release();
+						}
+					});
+					position += end;
+				}
+			} finally {
+				workers.shutdown();
+				while (!workers.isTerminated()) {
+					try {
+						workers.awaitTermination(1, TimeUnit.SECONDS);
+					} catch (InterruptedException e) {
+						// the workers finish their chunks anyway.
+					}
+				}
+			}
+			// also past the ids of the chunks that were saved before a failure.
+			if (maxId.get() > 0) {
+				insertDAO.advanceIdsPast(entity, maxId.get());
+			}
+			if (failure.get() != null) {
+				throw new CouponSystemException("Import of " + csv + " stopped : " + failure.get().getMessage()
+						+ " (run it again to resume from byte " + checkpoint.getOffset() + ")", failure.get());
+			}
+			checkpoint.delete();
+			BulkImportResult result = new BulkImportResult(entity, checkpoint.getImported(), checkpoint.getRejected(),
+					new ArrayList<>(rejects), resumedFrom, System.currentTimeMillis() - startTime);
+			System.out.println("Imported " + csv + " : " + result);
+			return result;
+		} catch (IOException e) {
+			throw new CouponSystemException("Import of " + csv + " Failed ! " + e.getMessage(), e);
+		}
+	}
+
+	// reads the ids & names that exist.
+	private void loadExisting() throws CouponSystemException {
+		TransactionManager.inTransaction(() -> {
+			catalogDAO.scanCatalog(new CatalogVisitor() {
+				@Override
+				public void coupon(Coupon coupon) {
+					if (entity == EntityType.COUPON) {
+						ids.add(coupon.getId());
+						maxId.accumulateAndGet(coupon.getId(), Math::max);
+						names.add(coupon.getTitle());
+					}
+				}
+
+				@Override
+				public void customer(Customer customer) {
+					if (entity == EntityType.CUSTOMER) {
+						ids.add(customer.getId());
+						maxId.accumulateAndGet(customer.getId(), Math::max);
+						names.add(customer.getCustName());
+					}
+				}
+
+				@Override
+				public void company(Company company) {
+					companyIds.add(company.getId());
+					if (entity == EntityType.COMPANY) {
+						ids.add(company.getId());
+						maxId.accumulateAndGet(company.getId(), Math::max);
+						names.add(company.getCompName());
+					}
+				}
+
+				@Override
+				public void customerCoupon(long customerId, long couponId) {
+				}
+
+				@Override
+				public void companyCoupon(long companyId, long couponId) {
+				}
+			});
+			return null;
+		});
+	}
+
+	// reads the column names, returns the offset of the first row.
+	private long readHeader(FileChannel channel, long size) throws IOException, CouponSystemException {
+		int window = (int) Math.min(chunkBytes, size);
+		while (true) {
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, window);
+			if (window == size || CsvReader.lastRecordEnd(buffer) > 0) {
+				CsvReader reader = new CsvReader(buffer);
+				String[] header = reader.next();
+				if (header == null) {
+					throw new CouponSystemException(csv + " has no CSV header");
+				}
+				for (int i = 0; i < header.length; i++) {
+					columns.put(header[i].trim().toLowerCase(), i);
+				}
+				String[] required = entity == EntityType.COUPON
+						? new String[] { "title", "start_date", "end_date", "amount", "type", "price" }
+						: entity == EntityType.CUSTOMER ? new String[] { "cust_name", "password" }
+								: new String[] { "comp_name", "password" };
+				for (String column : required) {
+					if (!columns.containsKey(column)) {
+						throw new CouponSystemException(csv + " has no " + column + " column, the header is "
+								+ Arrays.toString(header));
+					}
+				}
+				return reader.position();
+			}
+			window = (int) Math.min((long) window * 2, size);
+		}
+	}
+
+	// parses, checks and saves the rows of one chunk (on a worker thread).
+	private void importChunk(ByteBuffer buffer, long start, long end) {
+		if (failure.get() != null) {
+			return;
+		}
+		CsvReader reader = new CsvReader(buffer);
+		List<Coupon> coupons = new ArrayList<>();
+		long[] owners = new long[16];
+		List<Customer> customers = new ArrayList<>();
+		List<Company> companies = new ArrayList<>();
+		long rejected = 0;
+		int rowStart = reader.position();
+		String[] row;
+		while ((row = reader.next()) != null) {
+			try {
+				switch (entity) {
+				case COUPON:
+					Coupon coupon = toCoupon(row);
+					long owner = longValue(row, "comp_id", 0);
+					if (owner != 0 && !companyIds.contains(owner)) {
+						throw new IllegalArgumentException("no company with id " + owner);
+					}
+					claim(coupon.getId(), coupon.getTitle());
+					if (coupons.size() == owners.length) {
+						owners = Arrays.copyOf(owners, owners.length * 2);
+					}
+					owners[coupons.size()] = owner;
+					coupons.add(coupon);
+					break;
+				case CUSTOMER:
+					Customer customer = new Customer(longValue(row, "id", 0), value(row, "cust_name", true),
+							value(row, "password", true));
+					claim(customer.getId(), customer.getCustName());
+					customers.add(customer);
+					break;
+				default:
+					Company company = new Company(longValue(row, "id", 0), value(row, "comp_name", true),
+							value(row, "password", true), value(row, "email", false));
+					claim(company.getId(), company.getCompName());
+					companies.add(company);
+				}
+			} catch (IllegalArgumentException | DateTimeException e) {
+				rejected++;
+				if (rejects.size() < MAX_REJECTS) {
+					rejects.add("row at byte " + (start + rowStart) + " : " + e.getMessage());
+				}
+			}
+			rowStart = reader.position();
+		}
+		long[] companyOwners = owners;
+		try {
+			TransactionManager.inTransaction(() -> {
+				switch (entity) {
+				case COUPON:
+					insertDAO.insertCoupons(coupons, companyOwners);
+					break;
+				case CUSTOMER:
+					insertDAO.insertCustomers(customers);
+					break;
+				default:
+					insertDAO.insertCompanies(companies);
+				}
+				return null;
+			});
+			for (Coupon coupon : coupons) {
+				maxId.accumulateAndGet(coupon.getId(), Math::max);
+			}
+			for (Customer customer : customers) {
+				maxId.accumulateAndGet(customer.getId(), Math::max);
+			}
+			for (Company company : companies) {
+				maxId.accumulateAndGet(company.getId(), Math::max);
+			}
+			checkpoint.chunkDone(start, end, coupons.size() + customers.size() + companies.size(), rejected);
+		} catch (CouponSystemException e) {
+			failure.compareAndSet(null, e);
+		} catch (IOException e) {
+			failure.compareAndSet(null, new CouponSystemException("Failed to save the import checkpoint !", e));
+		}
+	}
+
+	// keeps the id (if given) & name unique.
+	private void claim(long id, String name) {
+		if (id != 0 && !ids.add(id)) {
+			throw new IllegalArgumentException("id " + id + " already exists");
+		}
+		if (!names.add(name)) {
+			if (id != 0) {
+				ids.remove(id);
+			}
+			throw new IllegalArgumentException(name + " already exists");
+		}
+	}
+
+	private Coupon toCoupon(String[] row) {
+		String type = value(row, "type", true).trim().toUpperCase();
+		return new Coupon(longValue(row, "id", 0), value(row, "title", true),
+				EpochDay.toDate(LocalDate.parse(value(row, "start_date", true).trim()).toEpochDay()),
+				EpochDay.toDate(LocalDate.parse(value(row, "end_date", true).trim()).toEpochDay()),
+				Integer.parseInt(value(row, "amount", true).trim()), CouponType.valueOf(type),
+				value(row, "message", false), Double.parseDouble(value(row, "price", true).trim()),
+				value(row, "image", false));
+	}
+
+	// the value of a column, an empty value is null (or rejected if required).
+	private String value(String[] row, String column, boolean required) {
+		Integer index = columns.get(column);
+		String value = index == null || index >= row.length || row[index].isEmpty() ? null : row[index];
+		if (value == null && required) {
+			throw new IllegalArgumentException("no " + column);
+		}
+		return value;
+	}
+
+	private long longValue(String[] row, String column, long defaultValue) {
+		String value = value(row, column, false);
+		return value == null ? defaultValue : Long.parseLong(value.trim());
+	}
+
+}
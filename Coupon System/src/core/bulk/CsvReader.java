@@ -0,0 +1,114 @@
+package core.bulk;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads the CSV records (RFC 4180 : comma separated, a field in double quotes
+ * may hold commas, new lines and "" for a quote) of a UTF-8 buffer, usually a
+ * memory mapped part of a file.</br>
+ * The buffer must start at the start of a record, {@link #lastRecordEnd}
+ * finds where a part of a file can be cut so it ends at the end of a
+ * record.</br>
+ * Empty lines are skipped and a \r before a new line is dropped.
+ */
+public final class CsvReader {
+	// Attributes
+	private ByteBuffer buffer;
+	private byte[] field = new byte[256];
+	private List<String> fields = new ArrayList<>();
+
+	// CTOR
+	/**
+	 * @param buffer
+	 *            the records from the position to the limit of the buffer.
+	 */
+	public CsvReader(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	// Methods
+	/**
+	 * @return the index after the last new line of the buffer that isn't in
+	 *         quotes (the end of the last whole record), or -1 if there is
+	 *         none.
+	 */
+	public static int lastRecordEnd(ByteBuffer buffer) {
+		boolean quoted = false;
+		int end = -1;
+		for (int i = buffer.position(); i < buffer.limit(); i++) {
+			byte b = buffer.get(i);
+			if (b == '"') {
+				// "" in a quoted field flips twice.
+				quoted = !quoted;
+			} else if (b == '\n' && !quoted) {
+				end = i + 1;
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * @return the fields of the next record, or null at the end of the
+	 *         buffer.
+	 */
+	public String[] next() {
+		while (buffer.hasRemaining()) {
+			fields.clear();
+			int length = 0;
+			boolean quoted = false;
+			boolean endOfRecord = false;
+			while (buffer.hasRemaining() && !endOfRecord) {
+				byte b = buffer.get();
+				if (quoted) {
+					if (b != '"') {
+						length = append(length, b);
+					} else if (buffer.hasRemaining() && buffer.get(buffer.position()) == '"') {
+						buffer.get();
+						length = append(length, b);
+					} else {
+						quoted = false;
+					}
+				} else if (b == '"') {
+					quoted = true;
+				} else if (b == ',') {
+					fields.add(new String(field, 0, length, StandardCharsets.UTF_8));
+					length = 0;
+				} else if (b == '\n') {
+					endOfRecord = true;
+				} else {
+					length = append(length, b);
+				}
+			}
+			if (length > 0 && field[length - 1] == '\r' && endOfRecord) {
+				length--;
+			}
+			if (length == 0 && fields.isEmpty()) {
+				// an empty line.
+				continue;
+			}
+			fields.add(new String(field, 0, length, StandardCharsets.UTF_8));
+			return fields.toArray(new String[fields.size()]);
+		}
+		return null;
+	}
+
+	/**
+	 * @return the index in the buffer after the record that was read last.
+	 */
+	public int position() {
+		return buffer.position();
+	}
+
+	private int append(int length, byte b) {
+		if (length == field.length) {
+			field = Arrays.copyOf(field, length * 2);
+		}
+		field[length] = b;
+		return length + 1;
+	}
+
+}
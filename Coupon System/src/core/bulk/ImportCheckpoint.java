@@ -0,0 +1,142 @@
+package core.bulk;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * The checkpoint of a CSV import (the file name + '.checkpoint').</br>
+ * The file is imported in chunks that finish in any order, the checkpoint
+ * keeps the offset in the CSV file before which all the chunks are saved
+ * (and their counts), so an import that failed starts again from
+ * there.</br>
+ * Chunks after that offset that were saved too are imported again, their
+ * rows are rejected as existing rows.</br>
+ * The checkpoint belongs to a CSV file of a given size & modification time,
+ * if the file changed the import starts from the beginning.
+ */
+public class ImportCheckpoint {
+	// Attributes
+	private File file;
+	private long csvSize;
+	private long csvModified;
+	private long offset = 0;
+	private long imported = 0;
+	private long rejected = 0;
+	// the saved chunks after the offset : start -> {end, imported, rejected}.
+	private TreeMap<Long, long[]> done = new TreeMap<>();
+
+	// CTOR
+	private ImportCheckpoint(File csv) {
+		file = new File(csv.getPath() + ".checkpoint");
+		csvSize = csv.length();
+		csvModified = csv.lastModified();
+	}
+
+	// Methods
+	/**
+	 * @return the checkpoint of the last import of that CSV file, or a new
+	 *         one (offset 0) if there is none or the file changed.
+	 */
+	public static ImportCheckpoint load(File csv) throws IOException {
+		ImportCheckpoint checkpoint = new ImportCheckpoint(csv);
+		if (checkpoint.file.exists()) {
+			Properties saved = new Properties();
+			try (InputStream in = new FileInputStream(checkpoint.file)) {
+				saved.load(in);
+			}
+			if (Long.parseLong(saved.getProperty("csvSize", "-1")) == checkpoint.csvSize
+					&& Long.parseLong(saved.getProperty("csvModified", "-1")) == checkpoint.csvModified) {
+				checkpoint.offset = Long.parseLong(saved.getProperty("offset", "0"));
+				checkpoint.imported = Long.parseLong(saved.getProperty("imported", "0"));
+				checkpoint.rejected = Long.parseLong(saved.getProperty("rejected", "0"));
+			} else {
+				System.out.println(csv + " changed since its checkpoint, importing it from the start");
+			}
+		}
+		return checkpoint;
+	}
+
+	/**
+	 * Marks a chunk as saved, if all the chunks before it are saved too the
+	 * offset moves forward and the checkpoint is written (replacing the old
+	 * one at once, so a crash leaves the old or the new one).
+	 */
+	public synchronized void chunkDone(long start, long end, long chunkImported, long chunkRejected)
+			throws IOException {
+		done.put(start, new long[] { end, chunkImported, chunkRejected });
+		boolean moved = false;
+		Map.Entry<Long, long[]> next;
+		while ((next = done.firstEntry()) != null && next.getKey() <= offset) {
+			done.pollFirstEntry();
+			offset = Math.max(offset, next.getValue()[0]);
+			imported += next.getValue()[1];
+			rejected += next.getValue()[2];
+			moved = true;
+		}
+		if (moved) {
+			save();
+		}
+	}
+
+	private void save() throws IOException {
+		Properties saved = new Properties();
+		saved.setProperty("csvSize", Long.toString(csvSize));
+		saved.setProperty("csvModified", Long.toString(csvModified));
+		saved.setProperty("offset", Long.toString(offset));
+		saved.setProperty("imported", Long.toString(imported));
+		saved.setProperty("rejected", Long.toString(rejected));
+		File tmp = new File(file.getPath() + ".tmp");
+		try (OutputStream out = new FileOutputStream(tmp)) {
+			saved.store(out, "CSV import checkpoint");
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+				StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Removes the checkpoint (after the whole file was imported).
+	 */
+	public synchronized void delete() {
+		if (file.exists() && !file.delete()) {
+			System.out.println("Failed to delete " + file);
+		}
+	}
+
+	/**
+	 * @return the offset before which all the rows are saved.
+	 */
+	public synchronized long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Moves the offset to the first row (after the CSV header).
+	 */
+	public synchronized void skipTo(long position) {
+		offset = Math.max(offset, position);
+	}
+
+	/**
+	 * @return the rows that were imported before the offset.
+	 */
+	public synchronized long getImported() {
+		return imported;
+	}
+
+	/**
+	 * @return the rows that were rejected before the offset.
+	 */
+	public synchronized long getRejected() {
+		return rejected;
+	}
+
+}
@@ -0,0 +1,10 @@
+package core.bus;
+
+/**
+ * This is a enum class that represents the change that a
+ * {@link EntityChangeEvent} is about : CREATED, UPDATED, REMOVED.
+ */
+public enum ChangeType {
+
+	CREATED, UPDATED, REMOVED;
+}
@@ -0,0 +1,87 @@
+package core.bus;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A compact message that says that an entity was changed : the
+ * {@link EntityType}, the {@link ChangeType}, the entity id and its
+ * version.</br>
+ * The versions of one node only grow, so a receiver can tell an event that
+ * arrived late (after a newer event of the same entity) and drop it.</br>
+ * Encoded as {@value #ENCODED_SIZE} bytes.
+ */
+public class EntityChangeEvent {
+	// Attributes
+	public static final int ENCODED_SIZE = 18;
+	private static final EntityType[] ENTITY_TYPES = EntityType.values();
+	private static final ChangeType[] CHANGE_TYPES = ChangeType.values();
+	private EntityType entityType;
+	private ChangeType changeType;
+	private long id;
+	private long version;
+
+	// CTOR
+	public EntityChangeEvent(EntityType entityType, ChangeType changeType, long id, long version) {
+		this.entityType = entityType;
+		this.changeType = changeType;
+		this.id = id;
+		this.version = version;
+	}
+
+	// Getters
+	public EntityType getEntityType() {
+		return entityType;
+	}
+
+	public ChangeType getChangeType() {
+		return changeType;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	// Methods
+	/**
+	 * Writes this event to the buffer.
+	 */
+	public void writeTo(ByteBuffer buffer) {
+		buffer.put((byte) entityType.ordinal());
+		buffer.put((byte) changeType.ordinal());
+		buffer.putLong(id);
+		buffer.putLong(version);
+	}
+
+	/**
+	 * Reads an event from the buffer.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the buffer has less than {@value #ENCODED_SIZE} bytes
+	 *             left or the types are not known (a corrupt or foreign
+	 *             message).
+	 */
+	public static EntityChangeEvent readFrom(ByteBuffer buffer) {
+		if (buffer.remaining() < ENCODED_SIZE) {
+			throw new IllegalArgumentException("Event is too short : " + buffer.remaining() + " bytes");
+		}
+		int entityType = buffer.get();
+		int changeType = buffer.get();
+		if (entityType < 0 || entityType >= ENTITY_TYPES.length || changeType < 0
+				|| changeType >= CHANGE_TYPES.length) {
+			throw new IllegalArgumentException("Unknown event types : " + entityType + ", " + changeType);
+		}
+		return new EntityChangeEvent(ENTITY_TYPES[entityType], CHANGE_TYPES[changeType], buffer.getLong(),
+				buffer.getLong());
+	}
+
+	@Override
+	public String toString() {
+		return "EntityChangeEvent [entityType=" + entityType + ", changeType=" + changeType + ", id=" + id
+				+ ", version=" + version + "]";
+	}
+
+}
@@ -0,0 +1,10 @@
+package core.bus;
+
+/**
+ * This is a enum class that represents the entities that a
+ * {@link EntityChangeEvent} can be about : COUPON, CUSTOMER, COMPANY.
+ */
+public enum EntityType {
+
+	COUPON, CUSTOMER, COMPANY;
+}
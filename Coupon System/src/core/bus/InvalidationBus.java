@@ -0,0 +1,382 @@
+package core.bus;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import core.config.CouponSystemConfig;
+
+/**
+ * A <b>singleton</b> class that passes {@link EntityChangeEvent}s between the
+ * nodes (JVMs) that run the Coupon System on the same DB, so every node can
+ * invalidate its caches when another node changes the data.</br>
+ * The DAOs {@link #publish} an event after every create, update and
+ * remove.</br>
+ * The events are not sent one by one : they wait a short time in a pending
+ * batch where a newer event of the same entity replaces the older one, and
+ * the whole batch is sent in one message by a sender thread.</br>
+ * Events that arrive from other nodes are passed to the local
+ * {@link InvalidationListener}s, an event that is older than the last event
+ * of the same entity from the same node (UDP may reorder the messages) is
+ * dropped, and so is a message that is corrupt or not from a bus.</br>
+ * If 'bus.enabled' is false (the default) there is no transport and published
+ * events are dropped, only {@link #fire} and {@link #dispatch} reach the local
+ * listeners.
+ */
+public class InvalidationBus {
+	// Attributes
+	private static final short MAGIC = 0x4342;
+	private static final int MESSAGE_HEADER = 12; // magic + node id + count.
+	private static InvalidationBus instance = null;
+	private static AtomicLong versions = new AtomicLong(System.currentTimeMillis());
+	private long nodeId = new SecureRandom().nextLong();
+	private InvalidationTransport transport = null;
+	private List<InvalidationListener> listeners = new CopyOnWriteArrayList<>();
+	private Map<EntityType, LinkedHashMap<Long, EntityChangeEvent>> pending = new EnumMap<>(EntityType.class);
+	private int pendingCount = 0;
+	private Lock lock = new ReentrantLock();
+	private Condition hasPending = lock.newCondition();
+	private int maxBatch;
+	private long flushNanos;
+	private volatile boolean running = false;
+	private Thread sender = null;
+	private Thread receiver = null;
+	private AtomicLong published = new AtomicLong();
+	private AtomicLong coalesced = new AtomicLong();
+	private AtomicLong messagesSent = new AtomicLong();
+	private AtomicLong received = new AtomicLong();
+	private AtomicLong stale = new AtomicLong();
+	private AtomicLong dropped = new AtomicLong();
+	// the last version received of each entity (of each node), only the
+	// receiver thread uses it, the oldest entries are removed.
+	private Map<EventKey, Long> lastVersions;
+
+	// CTOR
+	/**
+	 * @param transport
+	 *            the transport to the other nodes, null for a local only bus.
+	 * @param maxBatch
+	 *            the maximum number of events in one message.
+	 * @param flushMillis
+	 *            how long an event waits for more events before the batch is
+	 *            sent.
+	 */
+	public InvalidationBus(InvalidationTransport transport, int maxBatch, long flushMillis) {
+		this.transport = transport;
+		int maxInMessage = (UdpTransport.MAX_MESSAGE_SIZE - MESSAGE_HEADER) / EntityChangeEvent.ENCODED_SIZE;
+		this.maxBatch = Math.max(1, Math.min(maxBatch, maxInMessage));
+		this.flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+		int maxVersions = Math.max(16, CouponSystemConfig.getInt("bus.trackedVersions", 100000));
+		lastVersions = new LinkedHashMap<EventKey, Long>(1024, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<EventKey, Long> eldest) {
+				return size() > maxVersions;
+			}
+		};
+		for (EntityType type : EntityType.values()) {
+			pending.put(type, new LinkedHashMap<>());
+		}
+		if (transport != null) {
+			running = true;
+			sender = new Thread(this::sendLoop, "InvalidationBus-sender");
+			sender.setDaemon(true);
+			sender.start();
+			receiver = new Thread(this::receiveLoop, "InvalidationBus-receiver");
+			receiver.setDaemon(true);
+			receiver.start();
+		}
+	}
+
+	/**
+	 * @return the bus of this application, created from the 'bus.*' settings
+	 *         on the first call.
+	 */
+	public static synchronized InvalidationBus getInstance() {
+		if (instance == null) {
+			InvalidationTransport transport = null;
+			if (CouponSystemConfig.getBoolean("bus.enabled", false)) {
+				try {
+					int port = CouponSystemConfig.getInt("bus.port", 4446);
+					String group = CouponSystemConfig.getString("bus.multicastGroup", "");
+					if (!group.isEmpty()) {
+						transport = new UdpTransport(group, port,
+								CouponSystemConfig.getString("bus.multicastInterface", "lo"));
+					} else {
+						String peers = CouponSystemConfig.getString("bus.peers", "");
+						transport = new UdpTransport(port,
+								peers.isEmpty() ? new ArrayList<String>() : Arrays.asList(peers.split(",")));
+					}
+					System.out.println("Invalidation bus started : " + transport);
+				} catch (IOException | RuntimeException e) {
+					System.out.println("Invalidation bus is disabled : " + e.getMessage());
+				}
+			}
+			instance = new InvalidationBus(transport, CouponSystemConfig.getInt("bus.maxBatch", 64),
+					CouponSystemConfig.getLong("bus.flushMillis", 5));
+		}
+		return instance;
+	}
+
+	/**
+	 * Closes the bus of this application (if it was created).
+	 */
+	public static synchronized void shutDown() {
+		if (instance != null) {
+			instance.close();
+			instance = null;
+		}
+	}
+
+	// Methods
+	/**
+	 * @return a new version number for an entity change, bigger than all the
+	 *         numbers this node gave before.
+	 */
+	public static long nextVersion() {
+		return versions.incrementAndGet();
+	}
+
+	public void addListener(InvalidationListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(InvalidationListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Sends a change to the other nodes (not to the local listeners).
+	 */
+	public void publish(EntityType entityType, ChangeType changeType, long id) {
+		publish(new EntityChangeEvent(entityType, changeType, id, nextVersion()));
+	}
+
+	/**
+	 * Sends a change to the other nodes (not to the local listeners).
+	 */
+	public void publish(EntityChangeEvent event) {
+		if (transport == null) {
+			return;
+		}
+		published.incrementAndGet();
+		lock.lock();
+		try {
+			EntityChangeEvent older = pending.get(event.getEntityType()).put(event.getId(), event);
+			if (older != null) {
+				coalesced.incrementAndGet();
+			} else {
+				pendingCount++;
+			}
+			if (pendingCount == 1 || pendingCount >= maxBatch) {
+				hasPending.signal();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Passes a change to the local listeners only.
+	 */
+	public void dispatch(EntityChangeEvent event) {
+		for (InvalidationListener listener : listeners) {
+			try {
+				listener.onChange(event);
+			} catch (RuntimeException e) {
+				System.out.println("Failed to apply " + event + " : " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Passes a change to the local listeners and sends it to the other nodes,
+	 * used by code that changes the DB without going through the caching
+	 * DAOs.
+	 */
+	public void fire(EntityType entityType, ChangeType changeType, long id) {
+		EntityChangeEvent event = new EntityChangeEvent(entityType, changeType, id, nextVersion());
+		dispatch(event);
+		publish(event);
+	}
+
+	/**
+	 * Stops the sender and receiver threads (the pending events are sent
+	 * first) and closes the transport.
+	 */
+	public void close() {
+		if (!running) {
+			return;
+		}
+		running = false;
+		lock.lock();
+		try {
+			hasPending.signal();
+		} finally {
+			lock.unlock();
+		}
+		try {
+			sender.join();
+			transport.close();
+			receiver.join();
+		} catch (IOException e) {
+			System.out.println(e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "InvalidationBus [nodeId=" + nodeId + ", transport=" + transport + ", published=" + published.get()
+				+ ", coalesced=" + coalesced.get() + ", messagesSent=" + messagesSent.get() + ", received="
+				+ received.get() + ", stale=" + stale.get() + ", dropped=" + dropped.get() + "]";
+	}
+
+	// waits for pending events, gives more events a short time to join the
+	// batch and sends it.
+	private void sendLoop() {
+		ByteBuffer message = ByteBuffer.allocate(UdpTransport.MAX_MESSAGE_SIZE);
+		while (true) {
+			List<EntityChangeEvent> batch = new ArrayList<>();
+			lock.lock();
+			try {
+				while (running && pendingCount == 0) {
+					hasPending.awaitUninterruptibly();
+				}
+				long wait = flushNanos;
+				while (running && pendingCount < maxBatch && wait > 0) {
+					wait = hasPending.awaitNanos(wait);
+				}
+				if (pendingCount == 0 && !running) {
+					return;
+				}
+				for (LinkedHashMap<Long, EntityChangeEvent> events : pending.values()) {
+					batch.addAll(events.values());
+					events.clear();
+				}
+				pendingCount = 0;
+			} catch (InterruptedException e) {
+				return;
+			} finally {
+				lock.unlock();
+			}
+			for (int from = 0; from < batch.size(); from += maxBatch) {
+				List<EntityChangeEvent> part = batch.subList(from, Math.min(batch.size(), from + maxBatch));
+				message.clear();
+				message.putShort(MAGIC);
+				message.putLong(nodeId);
+				message.putShort((short) part.size());
+				for (EntityChangeEvent event : part) {
+					event.writeTo(message);
+				}
+				message.flip();
+				try {
+					transport.send(message);
+					messagesSent.incrementAndGet();
+				} catch (IOException e) {
+					System.out.println("Failed to send invalidations : " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	// receives messages from the other nodes and passes their events to the
+	// local listeners.
+	private void receiveLoop() {
+		ByteBuffer message = ByteBuffer.allocate(UdpTransport.MAX_MESSAGE_SIZE);
+		while (running) {
+			try {
+				transport.receive(message);
+			} catch (ClosedChannelException e) {
+				return;
+			} catch (IOException e) {
+				if (running) {
+					System.out.println("Invalidation bus receive failed : " + e.getMessage());
+				}
+				continue;
+			}
+			try {
+				receive(message);
+			} catch (RuntimeException e) {
+				// a bad message must not stop the receiver.
+				dropped.incrementAndGet();
+				System.out.println("Invalidation bus dropped a message : " + e);
+			}
+		}
+	}
+
+	// checks & decodes a whole message, then passes its new events on.
+	void receive(ByteBuffer message) {
+		if (message.remaining() < MESSAGE_HEADER || message.getShort() != MAGIC) {
+			throw new IllegalArgumentException("Not a bus message (" + message.limit() + " bytes)");
+		}
+		long sender = message.getLong();
+		// a multicast message also comes back to the node that sent it.
+		if (sender == nodeId) {
+			return;
+		}
+		int count = message.getShort();
+		if (count < 0 || message.remaining() != count * EntityChangeEvent.ENCODED_SIZE) {
+			throw new IllegalArgumentException(
+					"Bad bus message : " + count + " events in " + message.remaining() + " bytes");
+		}
+		List<EntityChangeEvent> events = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			events.add(EntityChangeEvent.readFrom(message));
+		}
+		for (EntityChangeEvent event : events) {
+			received.incrementAndGet();
+			EventKey key = new EventKey(sender, event.getEntityType(), event.getId());
+			Long last = lastVersions.get(key);
+			if (last != null && last >= event.getVersion()) {
+				stale.incrementAndGet();
+				continue;
+			}
+			lastVersions.put(key, event.getVersion());
+			dispatch(event);
+		}
+	}
+
+	// an entity of a node, for the versions that were received.
+	private static final class EventKey {
+		private long node;
+		private EntityType entityType;
+		private long id;
+
+		private EventKey(long node, EntityType entityType, long id) {
+			this.node = node;
+			this.entityType = entityType;
+			this.id = id;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof EventKey)) {
+				return false;
+			}
+			EventKey key = (EventKey) other;
+			return node == key.node && entityType == key.entityType && id == key.id;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (node ^ (node >>> 32)) * 31 * 31 + entityType.ordinal() * 31 + (int) (id ^ (id >>> 32));
+		}
+	}
+
+}
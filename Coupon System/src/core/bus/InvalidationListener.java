@@ -0,0 +1,11 @@
+package core.bus;
+
+/**
+ * Interface of the caches that want to know when an entity was changed (on
+ * this node or on another node), see {@link InvalidationBus}.
+ */
+public interface InvalidationListener {
+
+	public void onChange(EntityChangeEvent event);
+
+}
@@ -0,0 +1,21 @@
+package core.bus;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Interface of the network layer of the {@link InvalidationBus}, it sends a
+ * message (a batch of encoded events) to all the peer nodes and receives the
+ * messages they send.
+ */
+public interface InvalidationTransport extends Closeable {
+
+	public void send(ByteBuffer message) throws IOException;
+
+	/**
+	 * Waits until a message arrives and puts it in the buffer.
+	 */
+	public void receive(ByteBuffer message) throws IOException;
+
+}
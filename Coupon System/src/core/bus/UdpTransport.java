@@ -0,0 +1,106 @@
+package core.bus;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An {@link InvalidationTransport} that sends the messages as UDP
+ * datagrams.</br>
+ * It works in one of two ways :
+ * <ul>
+ * <li>Multicast : every node joins the same multicast group (for example
+ * 239.255.42.99) on the same port and a message is sent once to the
+ * group.</li>
+ * <li>Unicast : every node listens on its own port and sends each message to
+ * a list of peers ('host:port').</li>
+ * </ul>
+ * A message that is lost is not sent again, the caches of the peers will
+ * expire it on their own or be invalidated by the next change.
+ */
+public class UdpTransport implements InvalidationTransport {
+	// Attributes
+	public static final int MAX_MESSAGE_SIZE = 1400;
+	private DatagramChannel channel;
+	private List<InetSocketAddress> targets = new ArrayList<>();
+
+	// CTORs
+	/**
+	 * Creates a multicast transport.
+	 * 
+	 * @param group
+	 *            the multicast group address.
+	 * @param port
+	 *            the port all the nodes use.
+	 * @param interfaceName
+	 *            the network interface to use (for example 'lo' for nodes on
+	 *            the same machine).
+	 */
+	public UdpTransport(String group, int port, String interfaceName) throws IOException {
+		NetworkInterface networkInterface = NetworkInterface.getByName(interfaceName);
+		if (networkInterface == null) {
+			throw new IOException("Network interface " + interfaceName + " not found");
+		}
+		channel = DatagramChannel.open(StandardProtocolFamily.INET);
+		channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+		channel.bind(new InetSocketAddress(port));
+		channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface);
+		channel.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+		channel.join(InetAddress.getByName(group), networkInterface);
+		targets.add(new InetSocketAddress(group, port));
+	}
+
+	/**
+	 * Creates a unicast transport.
+	 * 
+	 * @param port
+	 *            the port this node listens on.
+	 * @param peers
+	 *            the 'host:port' addresses of the other nodes.
+	 */
+	public UdpTransport(int port, List<String> peers) throws IOException {
+		channel = DatagramChannel.open(StandardProtocolFamily.INET);
+		channel.bind(new InetSocketAddress(port));
+		for (String peer : peers) {
+			int colon = peer.lastIndexOf(':');
+			if (colon < 0) {
+				throw new IOException("Peer " + peer + " is not in 'host:port' format");
+			}
+			targets.add(new InetSocketAddress(peer.substring(0, colon).trim(),
+					Integer.parseInt(peer.substring(colon + 1).trim())));
+		}
+	}
+
+	// Methods
+	@Override
+	public void send(ByteBuffer message) throws IOException {
+		for (InetSocketAddress target : targets) {
+			channel.send(message.duplicate(), target);
+		}
+	}
+
+	@Override
+	public void receive(ByteBuffer message) throws IOException {
+		message.clear();
+		channel.receive(message);
+		message.flip();
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	@Override
+	public String toString() {
+		return "UdpTransport [targets=" + targets + "]";
+	}
+
+}
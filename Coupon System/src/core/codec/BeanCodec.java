@@ -0,0 +1,432 @@
+package core.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import core.beans.Company;
+import core.beans.Coupon;
+import core.beans.CouponType;
+import core.beans.Customer;
+import core.util.EpochDay;
+
+/**
+ * A compact binary codec of the beans ({@link Coupon}, {@link Customer},
+ * {@link Company} and {@link CouponType}) for the caches, queues and
+ * messages between nodes, instead of java serialization.</br>
+ * The beans are read & written straight from / to a {@link ByteBuffer} :
+ * <ul>
+ * <li>a schema version byte ({@value #SCHEMA_VERSION}) and a flags byte (the
+ * fields that are not null, the price format).</li>
+ * <li>ids, versions and lengths as varints (7 bits a byte), signed numbers
+ * zig-zag encoded first.</li>
+ * <li>dates as epoch days (like the DB's DATE columns, the time of day is not
+ * kept).</li>
+ * <li>a {@link CouponType} as its ordinal (one byte).</li>
+ * <li>strings as a varint length and their UTF-8 bytes.</li>
+ * <li>a price with whole cents as a varint of the cents, any other price as
+ * a double.</li>
+ * </ul>
+ * Use the sizeOf methods to get the exact size of a bean before writing it.
+ */
+public final class BeanCodec {
+	// Attributes
+	public static final byte SCHEMA_VERSION = 1;
+	private static final CouponType[] TYPES = CouponType.values();
+	// coupon flags.
+	private static final int HAS_TITLE = 1, HAS_START = 2, HAS_END = 4, HAS_TYPE = 8, HAS_MESSAGE = 16,
+			HAS_IMAGE = 32, PRICE_CENTS = 64;
+	// customer & company flags.
+	private static final int HAS_NAME = 1, HAS_PASSWORD = 2, HAS_EMAIL = 4, HAS_ID = 8;
+
+	// Private CTOR
+	private BeanCodec() {
+	}
+
+	// Methods
+	/**
+	 * Writes a coupon at the buffer's position.
+	 */
+	public static void writeCoupon(ByteBuffer buffer, Coupon coupon) {
+		long cents = toCents(coupon.getPrice());
+		buffer.put(SCHEMA_VERSION);
+		buffer.put((byte) couponFlags(coupon, cents));
+		writeVarLong(buffer, coupon.getId());
+		if (coupon.getTitle() != null) {
+			writeString(buffer, coupon.getTitle());
+		}
+		if (coupon.getStartDate() != null) {
+			writeVarLong(buffer, zigZag(EpochDay.toEpochDay(coupon.getStartDate())));
+		}
+		if (coupon.getEndDate() != null) {
+			writeVarLong(buffer, zigZag(EpochDay.toEpochDay(coupon.getEndDate())));
+		}
+		writeVarLong(buffer, zigZag(coupon.getAmount()));
+		if (coupon.getType() != null) {
+			writeType(buffer, coupon.getType());
+		}
+		if (coupon.getMessage() != null) {
+			writeString(buffer, coupon.getMessage());
+		}
+		if (cents != Long.MIN_VALUE) {
+			writeVarLong(buffer, zigZag(cents));
+		} else {
+			buffer.putDouble(coupon.getPrice());
+		}
+		if (coupon.getImage() != null) {
+			writeString(buffer, coupon.getImage());
+		}
+		writeVarLong(buffer, coupon.getVersion());
+	}
+
+	/**
+	 * Reads a coupon from the buffer's position.
+	 */
+	public static Coupon readCoupon(ByteBuffer buffer) {
+		readSchemaVersion(buffer, "coupon");
+		int flags = buffer.get();
+		Coupon coupon = new Coupon();
+		coupon.setId(readVarLong(buffer));
+		if ((flags & HAS_TITLE) != 0) {
+			coupon.setTitle(readString(buffer));
+		}
+		if ((flags & HAS_START) != 0) {
+			coupon.setStartDate(EpochDay.toDate(unZigZag(readVarLong(buffer))));
+		}
+		if ((flags & HAS_END) != 0) {
+			coupon.setEndDate(EpochDay.toDate(unZigZag(readVarLong(buffer))));
+		}
+		coupon.setAmount((int) unZigZag(readVarLong(buffer)));
+		if ((flags & HAS_TYPE) != 0) {
+			coupon.setType(readType(buffer));
+		}
+		if ((flags & HAS_MESSAGE) != 0) {
+			coupon.setMessage(readString(buffer));
+		}
+		if ((flags & PRICE_CENTS) != 0) {
+			coupon.setPrice(unZigZag(readVarLong(buffer)) / 100.0);
+		} else {
+			coupon.setPrice(buffer.getDouble());
+		}
+		if ((flags & HAS_IMAGE) != 0) {
+			coupon.setImage(readString(buffer));
+		}
+		coupon.setVersion(readVarLong(buffer));
+		return coupon;
+	}
+
+	/**
+	 * @return the number of bytes {@link #writeCoupon} writes for that coupon.
+	 */
+	public static int sizeOf(Coupon coupon) {
+		long cents = toCents(coupon.getPrice());
+		int size = 2 + sizeOfVarLong(coupon.getId()) + sizeOfVarLong(zigZag(coupon.getAmount()))
+				+ sizeOfVarLong(coupon.getVersion());
+		size += sizeOfString(coupon.getTitle()) + sizeOfString(coupon.getMessage())
+				+ sizeOfString(coupon.getImage());
+		if (coupon.getStartDate() != null) {
+			size += sizeOfVarLong(zigZag(EpochDay.toEpochDay(coupon.getStartDate())));
+		}
+		if (coupon.getEndDate() != null) {
+			size += sizeOfVarLong(zigZag(EpochDay.toEpochDay(coupon.getEndDate())));
+		}
+		if (coupon.getType() != null) {
+			size++;
+		}
+		return size + (cents != Long.MIN_VALUE ? sizeOfVarLong(zigZag(cents)) : 8);
+	}
+
+	/**
+	 * Writes a customer (with his password as it is, usually its hash) at the
+	 * buffer's position.
+	 */
+	public static void writeCustomer(ByteBuffer buffer, Customer customer) {
+		int flags = (customer.getCustName() != null ? HAS_NAME : 0)
+				| (customer.getPassword() != null ? HAS_PASSWORD : 0);
+		buffer.put(SCHEMA_VERSION);
+		buffer.put((byte) flags);
+		writeVarLong(buffer, customer.getId());
+		if (customer.getCustName() != null) {
+			writeString(buffer, customer.getCustName());
+		}
+		if (customer.getPassword() != null) {
+			writeString(buffer, customer.getPassword());
+		}
+		writeVarLong(buffer, customer.getVersion());
+	}
+
+	/**
+	 * Reads a customer from the buffer's position.
+	 */
+	public static Customer readCustomer(ByteBuffer buffer) {
+		readSchemaVersion(buffer, "customer");
+		int flags = buffer.get();
+		Customer customer = new Customer();
+		customer.setId(readVarLong(buffer));
+		if ((flags & HAS_NAME) != 0) {
+			customer.setCustName(readString(buffer));
+		}
+		if ((flags & HAS_PASSWORD) != 0) {
+			customer.setPassword(readString(buffer));
+		}
+		customer.setVersion(readVarLong(buffer));
+		return customer;
+	}
+
+	/**
+	 * @return the number of bytes {@link #writeCustomer} writes for that
+	 *         customer.
+	 */
+	public static int sizeOf(Customer customer) {
+		return 2 + sizeOfVarLong(customer.getId()) + sizeOfString(customer.getCustName())
+				+ sizeOfString(customer.getPassword()) + sizeOfVarLong(customer.getVersion());
+	}
+
+	/**
+	 * Writes a company (with its password as it is, usually its hash) at the
+	 * buffer's position.
+	 */
+	public static void writeCompany(ByteBuffer buffer, Company company) {
+		int flags = (company.getId() != null ? HAS_ID : 0) | (company.getCompName() != null ? HAS_NAME : 0)
+				| (company.getPassword() != null ? HAS_PASSWORD : 0) | (company.getEmail() != null ? HAS_EMAIL : 0);
+		buffer.put(SCHEMA_VERSION);
+		buffer.put((byte) flags);
+		if (company.getId() != null) {
+			writeVarLong(buffer, company.getId());
+		}
+		if (company.getCompName() != null) {
+			writeString(buffer, company.getCompName());
+		}
+		if (company.getPassword() != null) {
+			writeString(buffer, company.getPassword());
+		}
+		if (company.getEmail() != null) {
+			writeString(buffer, company.getEmail());
+		}
+		writeVarLong(buffer, company.getVersion());
+	}
+
+	/**
+	 * Reads a company from the buffer's position.
+	 */
+	public static Company readCompany(ByteBuffer buffer) {
+		readSchemaVersion(buffer, "company");
+		int flags = buffer.get();
+		Company company = new Company();
+		if ((flags & HAS_ID) != 0) {
+			company.setId(readVarLong(buffer));
+		}
+		if ((flags & HAS_NAME) != 0) {
+			company.setCompName(readString(buffer));
+		}
+		if ((flags & HAS_PASSWORD) != 0) {
+			company.setPassword(readString(buffer));
+		}
+		if ((flags & HAS_EMAIL) != 0) {
+			company.setEmail(readString(buffer));
+		}
+		company.setVersion(readVarLong(buffer));
+		return company;
+	}
+
+	/**
+	 * @return the number of bytes {@link #writeCompany} writes for that
+	 *         company.
+	 */
+	public static int sizeOf(Company company) {
+		return 2 + (company.getId() != null ? sizeOfVarLong(company.getId()) : 0)
+				+ sizeOfString(company.getCompName()) + sizeOfString(company.getPassword())
+				+ sizeOfString(company.getEmail()) + sizeOfVarLong(company.getVersion());
+	}
+
+	/**
+	 * Writes a coupon type as its ordinal (one byte).
+	 */
+	public static void writeType(ByteBuffer buffer, CouponType type) {
+		buffer.put((byte) type.ordinal());
+	}
+
+	/**
+	 * Reads a coupon type that {@link #writeType} wrote.
+	 */
+	public static CouponType readType(ByteBuffer buffer) {
+		int ordinal = buffer.get();
+		if (ordinal < 0 || ordinal >= TYPES.length) {
+			throw new IllegalArgumentException("Unknown coupon type " + ordinal);
+		}
+		return TYPES[ordinal];
+	}
+
+	/**
+	 * Writes a long as an unsigned varint : 7 bits in each byte, the high bit
+	 * says that another byte follows (1 byte up to 127, 10 bytes at most).
+	 */
+	public static void writeVarLong(ByteBuffer buffer, long value) {
+		while ((value & ~0x7FL) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	/**
+	 * Reads a varint that {@link #writeVarLong} wrote.
+	 */
+	public static long readVarLong(ByteBuffer buffer) {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = buffer.get();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Varint is longer than 10 bytes");
+	}
+
+	/**
+	 * @return the number of bytes of that value as a varint.
+	 */
+	public static int sizeOfVarLong(long value) {
+		int size = 1;
+		while ((value & ~0x7FL) != 0) {
+			value >>>= 7;
+			size++;
+		}
+		return size;
+	}
+
+	/**
+	 * @return a signed number mapped to an unsigned one (0, -1, 1, -2 ... to 0,
+	 *         1, 2, 3 ...) so small negative numbers stay short varints.
+	 */
+	public static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	public static long unZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * Writes a string as a varint length and its UTF-8 bytes, the characters
+	 * are encoded straight into the buffer.
+	 */
+	public static void writeString(ByteBuffer buffer, String value) {
+		writeVarLong(buffer, utf8Length(value));
+		int length = value.length();
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				buffer.put((byte) c);
+			} else if (c < 0x800) {
+				buffer.put((byte) (0xC0 | (c >> 6)));
+				buffer.put((byte) (0x80 | (c & 0x3F)));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				buffer.put((byte) (0xF0 | (codePoint >> 18)));
+				buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+				buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+				buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+			} else if (Character.isSurrogate(c)) {
+				// a broken surrogate pair, the same as String.getBytes.
+				buffer.put((byte) '?');
+			} else {
+				buffer.put((byte) (0xE0 | (c >> 12)));
+				buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+				buffer.put((byte) (0x80 | (c & 0x3F)));
+			}
+		}
+	}
+
+	/**
+	 * Reads a string that {@link #writeString} wrote.
+	 */
+	public static String readString(ByteBuffer buffer) {
+		int length = (int) readVarLong(buffer);
+		if (length < 0 || length > buffer.remaining()) {
+			throw new IllegalArgumentException("Bad string length " + length);
+		}
+		if (buffer.hasArray()) {
+			String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+					StandardCharsets.UTF_8);
+			buffer.position(buffer.position() + length);
+			return value;
+		}
+		// a direct buffer, decoded by hand (valid UTF-8 from writeString).
+		char[] chars = new char[length];
+		int count = 0;
+		int end = buffer.position() + length;
+		while (buffer.position() < end) {
+			int b = buffer.get() & 0xFF;
+			if (b < 0x80) {
+				chars[count++] = (char) b;
+			} else if (b < 0xE0) {
+				chars[count++] = (char) (((b & 0x1F) << 6) | (buffer.get() & 0x3F));
+			} else if (b < 0xF0) {
+				chars[count++] = (char) (((b & 0x0F) << 12) | ((buffer.get() & 0x3F) << 6) | (buffer.get() & 0x3F));
+			} else {
+				int codePoint = ((b & 0x07) << 18) | ((buffer.get() & 0x3F) << 12) | ((buffer.get() & 0x3F) << 6)
+						| (buffer.get() & 0x3F);
+				chars[count++] = Character.highSurrogate(codePoint);
+				chars[count++] = Character.lowSurrogate(codePoint);
+			}
+		}
+		return new String(chars, 0, count);
+	}
+
+	// the varint length and the bytes of a string, 0 for null.
+	private static int sizeOfString(String value) {
+		if (value == null) {
+			return 0;
+		}
+		int length = utf8Length(value);
+		return sizeOfVarLong(length) + length;
+	}
+
+	private static int utf8Length(String value) {
+		int length = value.length();
+		int bytes = length;
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c >= 0x800) {
+				if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+					// 4 bytes for the 2 chars.
+					bytes += 2;
+					i++;
+				} else if (!Character.isSurrogate(c)) {
+					bytes += 2;
+				}
+			} else if (c >= 0x80) {
+				bytes++;
+			}
+		}
+		return bytes;
+	}
+
+	private static int couponFlags(Coupon coupon, long cents) {
+		return (coupon.getTitle() != null ? HAS_TITLE : 0) | (coupon.getStartDate() != null ? HAS_START : 0)
+				| (coupon.getEndDate() != null ? HAS_END : 0) | (coupon.getType() != null ? HAS_TYPE : 0)
+				| (coupon.getMessage() != null ? HAS_MESSAGE : 0) | (coupon.getImage() != null ? HAS_IMAGE : 0)
+				| (cents != Long.MIN_VALUE ? PRICE_CENTS : 0);
+	}
+
+	// the price in cents if it is a whole number of cents, Long.MIN_VALUE if not.
+	private static long toCents(double price) {
+		double cents = price * 100;
+		if (Math.abs(cents) < 1e15) {
+			long rounded = Math.round(cents);
+			if (rounded / 100.0 == price) {
+				return rounded;
+			}
+		}
+		return Long.MIN_VALUE;
+	}
+
+	private static void readSchemaVersion(ByteBuffer buffer, String bean) {
+		byte version = buffer.get();
+		if (version != SCHEMA_VERSION) {
+			throw new IllegalArgumentException("Unknown " + bean + " schema version " + version);
+		}
+	}
+
+}
@@ -0,0 +1,97 @@
+package core.config;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * This class holds the optional settings of this application.</br>
+ * The settings are read once from the 'files/couponSystem.properties' file, a
+ * JVM system property (-Dkey=value) with the same key overrides the file.</br>
+ * If a setting is missing the default value that the caller gives is used, so
+ * the application runs the same way without the file.
+ */
+public class CouponSystemConfig {
+	// Attributes
+	public static final String CONFIG_FILE = "files/couponSystem.properties";
+	private static Properties properties = load();
+
+	// Private CTOR
+	private CouponSystemConfig() {
+	}
+
+	// loads the properties file, if there is no file the properties are empty.
+	private static Properties load() {
+		Properties props = new Properties();
+		try (InputStream in = new FileInputStream(CONFIG_FILE)) {
+			props.load(in);
+		} catch (IOException e) {
+			// no settings file, using the defaults.
+		}
+		return props;
+	}
+
+	// Methods
+	/**
+	 * @param key
+	 *            the setting name.
+	 * @param defaultValue
+	 *            the value to use if the setting is missing.
+	 * @return the setting value as a String.
+	 */
+	public static String getString(String key, String defaultValue) {
+		String value = System.getProperty(key);
+		if (value == null) {
+			value = properties.getProperty(key);
+		}
+		return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+	}
+
+	/**
+	 * @return the setting value as an int or the default value if it is
+	 *         missing or not a number.
+	 */
+	public static int getInt(String key, int defaultValue) {
+		try {
+			return Integer.parseInt(getString(key, String.valueOf(defaultValue)));
+		} catch (NumberFormatException e) {
+			System.out.println("Setting " + key + " is not a number, using " + defaultValue);
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * @return the setting value as a long or the default value if it is
+	 *         missing or not a number.
+	 */
+	public static long getLong(String key, long defaultValue) {
+		try {
+			return Long.parseLong(getString(key, String.valueOf(defaultValue)));
+		} catch (NumberFormatException e) {
+			System.out.println("Setting " + key + " is not a number, using " + defaultValue);
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * @return the setting value as a double or the default value if it is
+	 *         missing or not a number.
+	 */
+	public static double getDouble(String key, double defaultValue) {
+		try {
+			return Double.parseDouble(getString(key, String.valueOf(defaultValue)));
+		} catch (NumberFormatException e) {
+			System.out.println("Setting " + key + " is not a number, using " + defaultValue);
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * @return the setting value as a boolean ('true' / 'false') or the
+	 *         default value if it is missing.
+	 */
+	public static boolean getBoolean(String key, boolean defaultValue) {
+		return Boolean.parseBoolean(getString(key, String.valueOf(defaultValue)));
+	}
+}
@@ -0,0 +1,27 @@
+package core.dao;
+
+import java.util.List;
+
+import core.beans.Company;
+import core.beans.Coupon;
+import core.beans.Customer;
+import core.bus.EntityType;
+import core.exception.CouponSystemException;
+
+/**
+ * Interface that allows the application to create many rows at once (for
+ * bulk imports), the rows are expected to be checked already (unique ids &
+ * names), rows without an id (0) get a new one.</br>
+ * The ids that the rows brought are not given to new rows after
+ * advanceIdsPast is called with the largest of them.
+ */
+public interface BulkInsertDAO {
+
+	public void insertCoupons(List<Coupon> coupons, long[] companyIds) throws CouponSystemException;
+
+	public void insertCustomers(List<Customer> customers) throws CouponSystemException;
+
+	public void insertCompanies(List<Company> companies) throws CouponSystemException;
+
+	public void advanceIdsPast(EntityType entity, long id) throws CouponSystemException;
+}
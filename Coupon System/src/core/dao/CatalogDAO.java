@@ -0,0 +1,13 @@
+package core.dao;
+
+import core.exception.CouponSystemException;
+
+/**
+ * Interface that allows the application to read all the tables (Coupon,
+ * Customer, Company, Customer_Coupon & Company_Coupon) row by row, without
+ * holding them all in memory (for exports of the whole catalog).
+ */
+public interface CatalogDAO {
+
+	public void scanCatalog(CatalogVisitor visitor) throws CouponSystemException;
+}
@@ -0,0 +1,24 @@
+package core.dao;
+
+import core.beans.Company;
+import core.beans.Coupon;
+import core.beans.Customer;
+import core.exception.CouponSystemException;
+
+/**
+ * Gets the rows of a {@link CatalogDAO} scan one by one.</br>
+ * The rows come in this order : all the coupons, all the customers, all the
+ * companies, all the customer coupons and then all the company coupons.
+ */
+public interface CatalogVisitor {
+
+	public void coupon(Coupon coupon) throws CouponSystemException;
+
+	public void customer(Customer customer) throws CouponSystemException;
+
+	public void company(Company company) throws CouponSystemException;
+
+	public void customerCoupon(long customerId, long couponId) throws CouponSystemException;
+
+	public void companyCoupon(long companyId, long couponId) throws CouponSystemException;
+}
@@ -0,0 +1,24 @@
+package core.dao;
+
+/**
+ * The columns of the Company Table that can be updated, used for partial
+ * updates (see
+ * {@link CompanyDAO#updateCompany(core.beans.Company, java.util.Set)}) so only
+ * the changed columns are sent to the DB.
+ */
+public enum CompanyColumn {
+	COMP_NAME("comp_name"), PASSWORD("password"), EMAIL("email");
+
+	private final String column;
+
+	private CompanyColumn(String column) {
+		this.column = column;
+	}
+
+	/**
+	 * @return the column name in the table.
+	 */
+	public String getColumn() {
+		return column;
+	}
+}
@@ -1,6 +1,7 @@
 package core.dao;
 
 import java.util.Collection;
+import java.util.Set;
 
 import core.beans.Company;
 import core.beans.Coupon;
@@ -18,12 +19,14 @@ public interface CompanyDAO {
 
 	public void updateCompany(Company company) throws CouponSystemException;
 
+	public void updateCompany(Company company, Set<CompanyColumn> columns) throws CouponSystemException;
+
 	public Company getCompany(long id) throws CouponSystemException;
 
 	public Collection<Company> getAllCompanies() throws CouponSystemException;
 
 	public Collection<Coupon> getCouppons(Company company) throws CouponSystemException;
 
-	public boolean login(String compName, String password) throws CouponSystemException;
+	public Company login(String compName, String password) throws CouponSystemException;
 
 }
@@ -0,0 +1,24 @@
+package core.dao;
+
+/**
+ * The columns of the Coupon Table that can be updated, used for partial
+ * updates (see {@link CouponDAO#updateCoupon(core.beans.Coupon, java.util.Set)})
+ * so only the changed columns are sent to the DB.
+ */
+public enum CouponColumn {
+	TITLE("title"), START_DATE("start_date"), END_DATE("end_date"), AMOUNT("amount"), TYPE("type"),
+	MESSAGE("message"), PRICE("price"), IMAGE("image");
+
+	private final String column;
+
+	private CouponColumn(String column) {
+		this.column = column;
+	}
+
+	/**
+	 * @return the column name in the table.
+	 */
+	public String getColumn() {
+		return column;
+	}
+}
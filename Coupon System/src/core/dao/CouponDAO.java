@@ -1,10 +1,12 @@
 package core.dao;
 
 import java.util.Collection;
+import java.util.Set;
 
 import core.beans.Coupon;
 import core.beans.CouponType;
 import core.exception.CouponSystemException;
+import core.report.CouponColumnStore;
 
 /**
  * Interface that allows the application to perform all essential methods that
@@ -17,11 +19,17 @@ public interface CouponDAO {
 	public void removeCoupon(Coupon coupon) throws CouponSystemException;
 
 	public void updateCoupon(Coupon coupon) throws CouponSystemException;
+
+	public void updateCoupon(Coupon coupon, Set<CouponColumn> columns) throws CouponSystemException;
 	
 	public Coupon getCoupon(long id) throws CouponSystemException;
 
+	public boolean titleExists(String title) throws CouponSystemException;
+
 	public Collection<Coupon> getAllCoupons() throws CouponSystemException;
 	
 	public Collection<Coupon> getCouponByType(CouponType type) throws CouponSystemException;
-	
+
+	public CouponColumnStore getCouponColumns() throws CouponSystemException;
+
 }
@@ -0,0 +1,24 @@
+package core.dao;
+
+/**
+ * The columns of the Customer Table that can be updated, used for partial
+ * updates (see
+ * {@link CustomerDAO#updateCustomer(core.beans.Customer, java.util.Set)}) so
+ * only the changed columns are sent to the DB.
+ */
+public enum CustomerColumn {
+	CUST_NAME("cust_name"), PASSWORD("password");
+
+	private final String column;
+
+	private CustomerColumn(String column) {
+		this.column = column;
+	}
+
+	/**
+	 * @return the column name in the table.
+	 */
+	public String getColumn() {
+		return column;
+	}
+}
@@ -1,6 +1,7 @@
 package core.dao;
 
 import java.util.Collection;
+import java.util.Set;
 
 import core.beans.Coupon;
 import core.beans.Customer;
@@ -18,12 +19,14 @@ public interface CustomerDAO {
 
 	public void updateCustomer(Customer customer) throws CouponSystemException;
 
+	public void updateCustomer(Customer customer, Set<CustomerColumn> columns) throws CouponSystemException;
+
 	public Customer getCustomer(long id) throws CouponSystemException;
 
 	public Collection<Customer> getAllCustomers() throws CouponSystemException;
 
 	public Collection<Coupon> getCoupons(Customer customer) throws CouponSystemException;
 
-	public boolean login(String custName, String password) throws CouponSystemException;
+	public Customer login(String custName, String password) throws CouponSystemException;
 
 }
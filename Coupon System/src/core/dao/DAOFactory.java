@@ -0,0 +1,312 @@
+package core.dao;
+
+import java.io.IOException;
+
+import core.bus.InvalidationBus;
+import core.config.CouponSystemConfig;
+import core.dao.cache.TypeCachedCouponDAO;
+import core.dao.db.BulkInsertDBDAO;
+import core.dao.db.CatalogDBDAO;
+import core.dao.db.CompanyDBDAO;
+import core.dao.db.CouponDBDAO;
+import core.dao.db.CustomerDBDAO;
+import core.dao.db.JoinTablesDBDAO;
+import core.dao.filter.FilteredCouponDAO;
+import core.dao.journal.JournalStore;
+import core.dao.mapped.MappedCouponCatalog;
+import core.dao.mapped.MappedCouponDAO;
+import core.dao.memory.BulkInsertMemoryDAO;
+import core.dao.memory.CatalogMemoryDAO;
+import core.dao.memory.CompanyMemoryDAO;
+import core.dao.memory.CouponMemoryDAO;
+import core.dao.memory.CustomerMemoryDAO;
+import core.dao.memory.JoinTablesMemoryDAO;
+import core.dao.memory.MemoryStore;
+import core.exception.CouponSystemException;
+
+/**
+ * This class creates the DAO objects that the Facades and the Daily Task
+ * use.</br>
+ * All the users of a DAO share the same instance, so DAOs that keep data in
+ * memory (like the {@link MappedCouponDAO} catalog) stay the same for all of
+ * them.</br>
+ * Which DAO is created depends on the settings in
+ * {@link CouponSystemConfig}.</br>
+ * The storage engine is chosen by 'dao.engine' when the application starts :
+ * 'db' (the default) for the JDBC DAOs, 'memory' for the DAOs of the
+ * {@link MemoryStore} (no DB at all, the data is lost when the application
+ * stops) or 'journal' for the {@link JournalStore} (the memory DAOs with a
+ * journal file & snapshots, no DB and the data is kept).</br>
+ * Each DAO is created on its first use (under the DAOFactory lock), after
+ * that getting it takes no lock.</br>
+ * The caching DAOs are registered on the {@link InvalidationBus} so they
+ * follow the changes that other nodes make.
+ */
+public class DAOFactory {
+	// Attributes
+	public static final String DB_ENGINE = "db";
+	public static final String MEMORY_ENGINE = "memory";
+	public static final String JOURNAL_ENGINE = "journal";
+	// read without a lock, written once under the DAOFactory lock.
+	private static volatile CouponDAO couponDAO = null;
+	private static volatile CouponDAO storageCouponDAO = null;
+	private static volatile CustomerDAO customerDAO = null;
+	private static volatile CompanyDAO companyDAO = null;
+	private static volatile JoinTablesDAO joinTablesDAO = null;
+	private static volatile CatalogDAO catalogScanDAO = null;
+	private static volatile BulkInsertDAO bulkInsertDAO = null;
+	private static MappedCouponDAO catalogDAO = null;
+
+	// Private CTOR
+	private DAOFactory() {
+	}
+
+	// Methods
+	/**
+	 * @return the storage engine of this application ('dao.engine') : db,
+	 *         memory or journal.
+	 */
+	public static String getEngine() {
+		String engine = CouponSystemConfig.getString("dao.engine", DB_ENGINE).toLowerCase();
+		if (!engine.equals(DB_ENGINE) && !engine.equals(MEMORY_ENGINE) && !engine.equals(JOURNAL_ENGINE)) {
+			System.out.println("Unknown dao.engine " + engine + ", using " + DB_ENGINE);
+			return DB_ENGINE;
+		}
+		return engine;
+	}
+
+	/**
+	 * @return true if the DAOs use the DB (and the {@link ConnectionPool}).
+	 */
+	public static boolean usesDB() {
+		return getEngine().equals(DB_ENGINE);
+	}
+
+	// the journal store, it can't run without its files.
+	private static JournalStore journal() {
+		try {
+			return JournalStore.getInstance();
+		} catch (CouponSystemException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @return the CouponDAO of the storage engine itself, without the caches
+	 *         and filters on top of it (for code that needs the stored values,
+	 *         like the flash sales).
+	 */
+	public static CouponDAO getStorageCouponDAO() {
+		CouponDAO dao = storageCouponDAO;
+		return dao != null ? dao : createStorageCouponDAO();
+	}
+
+	private static synchronized CouponDAO createStorageCouponDAO() {
+		if (storageCouponDAO == null) {
+			switch (getEngine()) {
+			case MEMORY_ENGINE:
+				storageCouponDAO = new CouponMemoryDAO(MemoryStore.getInstance());
+				break;
+			case JOURNAL_ENGINE:
+				storageCouponDAO = journal().getCouponDAO();
+				break;
+			default:
+				storageCouponDAO = new CouponDBDAO();
+			}
+		}
+		return storageCouponDAO;
+	}
+
+	/**
+	 * @return the CustomerDAO of the storage engine.
+	 */
+	public static CustomerDAO getCustomerDAO() {
+		CustomerDAO dao = customerDAO;
+		return dao != null ? dao : createCustomerDAO();
+	}
+
+	private static synchronized CustomerDAO createCustomerDAO() {
+		if (customerDAO == null) {
+			switch (getEngine()) {
+			case MEMORY_ENGINE:
+				customerDAO = new CustomerMemoryDAO(MemoryStore.getInstance());
+				break;
+			case JOURNAL_ENGINE:
+				customerDAO = journal().getCustomerDAO();
+				break;
+			default:
+				customerDAO = new CustomerDBDAO();
+			}
+		}
+		return customerDAO;
+	}
+
+	/**
+	 * @return the CompanyDAO of the storage engine.
+	 */
+	public static CompanyDAO getCompanyDAO() {
+		CompanyDAO dao = companyDAO;
+		return dao != null ? dao : createCompanyDAO();
+	}
+
+	private static synchronized CompanyDAO createCompanyDAO() {
+		if (companyDAO == null) {
+			switch (getEngine()) {
+			case MEMORY_ENGINE:
+				companyDAO = new CompanyMemoryDAO(MemoryStore.getInstance());
+				break;
+			case JOURNAL_ENGINE:
+				companyDAO = journal().getCompanyDAO();
+				break;
+			default:
+				companyDAO = new CompanyDBDAO();
+			}
+		}
+		return companyDAO;
+	}
+
+	/**
+	 * @return the JoinTablesDAO of the storage engine.
+	 */
+	public static JoinTablesDAO getJoinTablesDAO() {
+		JoinTablesDAO dao = joinTablesDAO;
+		return dao != null ? dao : createJoinTablesDAO();
+	}
+
+	private static synchronized JoinTablesDAO createJoinTablesDAO() {
+		if (joinTablesDAO == null) {
+			switch (getEngine()) {
+			case MEMORY_ENGINE:
+				joinTablesDAO = new JoinTablesMemoryDAO(MemoryStore.getInstance());
+				break;
+			case JOURNAL_ENGINE:
+				joinTablesDAO = journal().getJoinTablesDAO();
+				break;
+			default:
+				joinTablesDAO = new JoinTablesDBDAO();
+			}
+		}
+		return joinTablesDAO;
+	}
+
+	/**
+	 * @return the CatalogDAO of the storage engine, for reading all the
+	 *         tables row by row.
+	 */
+	public static CatalogDAO getCatalogDAO() {
+		CatalogDAO dao = catalogScanDAO;
+		return dao != null ? dao : createCatalogDAO();
+	}
+
+	private static synchronized CatalogDAO createCatalogDAO() {
+		if (catalogScanDAO == null) {
+			switch (getEngine()) {
+			case MEMORY_ENGINE:
+				catalogScanDAO = new CatalogMemoryDAO(MemoryStore.getInstance());
+				break;
+			case JOURNAL_ENGINE:
+				catalogScanDAO = journal().getCatalogDAO();
+				break;
+			default:
+				catalogScanDAO = new CatalogDBDAO();
+			}
+		}
+		return catalogScanDAO;
+	}
+
+	/**
+	 * @return the BulkInsertDAO of the storage engine, for bulk imports.
+	 */
+	public static BulkInsertDAO getBulkInsertDAO() {
+		BulkInsertDAO dao = bulkInsertDAO;
+		return dao != null ? dao : createBulkInsertDAO();
+	}
+
+	private static synchronized BulkInsertDAO createBulkInsertDAO() {
+		if (bulkInsertDAO == null) {
+			if (usesDB()) {
+				bulkInsertDAO = new BulkInsertDBDAO();
+			} else {
+				bulkInsertDAO = new BulkInsertMemoryDAO(getStorageCouponDAO(), getCustomerDAO(), getCompanyDAO(),
+						getJoinTablesDAO());
+			}
+		}
+		return bulkInsertDAO;
+	}
+
+	/**
+	 * @return the CouponDAO of this application : a {@link CouponDBDAO}, with
+	 *         a {@link MappedCouponDAO} on top of it if
+	 *         'couponCatalog.enabled' is true, a {@link TypeCachedCouponDAO}
+	 *         on top of them if 'couponTypeCache.enabled' is true and a
+	 *         {@link FilteredCouponDAO} on top of all if
+	 *         'couponFilter.enabled' is true.</br>
+	 *         With the memory and journal engines it is the CouponDAO of the
+	 *         engine alone (the data is in memory already).
+	 */
+	public static CouponDAO getCouponDAO() {
+		CouponDAO dao = couponDAO;
+		return dao != null ? dao : createCouponDAO();
+	}
+
+	private static synchronized CouponDAO createCouponDAO() {
+		if (couponDAO != null) {
+			return couponDAO;
+		}
+		// built in a local, the readers only see the whole chain.
+		CouponDAO dao = getStorageCouponDAO();
+		if (usesDB()) {
+			if (CouponSystemConfig.getBoolean("couponCatalog.enabled", false)) {
+				String path = CouponSystemConfig.getString("couponCatalog.file", "files/couponCatalog");
+				try {
+					catalogDAO = new MappedCouponDAO((CouponDBDAO) dao, MappedCouponCatalog.open(path));
+					InvalidationBus.getInstance().addListener(catalogDAO);
+					dao = catalogDAO;
+				} catch (IOException | CouponSystemException e) {
+					System.out.println("Coupon catalog is disabled : " + e.getMessage());
+				}
+			}
+			if (CouponSystemConfig.getBoolean("couponTypeCache.enabled", false)) {
+				TypeCachedCouponDAO typeCache = new TypeCachedCouponDAO(dao);
+				InvalidationBus.getInstance().addListener(typeCache);
+				dao = typeCache;
+			}
+			if (CouponSystemConfig.getBoolean("couponFilter.enabled", false)) {
+				try {
+					FilteredCouponDAO filter = new FilteredCouponDAO(dao,
+							CouponSystemConfig.getLong("couponFilter.expectedCoupons", 100000),
+							CouponSystemConfig.getDouble("couponFilter.falsePositiveRate", 0.01));
+					InvalidationBus.getInstance().addListener(filter);
+					dao = filter;
+				} catch (CouponSystemException e) {
+					System.out.println("Coupon filter is disabled : " + e.getMessage());
+				}
+			}
+		}
+		couponDAO = dao;
+		return dao;
+	}
+
+	/**
+	 * Closes the DAOs that hold files or other resources (a journal takes a
+	 * last snapshot).
+	 */
+	public static synchronized void closeAll() {
+		if (catalogDAO != null) {
+			try {
+				catalogDAO.close();
+			} catch (CouponSystemException e) {
+				System.out.println(e.getMessage());
+			}
+		}
+		catalogDAO = null;
+		couponDAO = null;
+		storageCouponDAO = null;
+		customerDAO = null;
+		companyDAO = null;
+		joinTablesDAO = null;
+		catalogScanDAO = null;
+		bulkInsertDAO = null;
+		JournalStore.shutDown();
+	}
+}
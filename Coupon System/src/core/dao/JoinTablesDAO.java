@@ -1,8 +1,13 @@
 package core.dao;
 
+import java.util.Collection;
+import java.util.List;
+
 import core.beans.Company;
 import core.beans.Coupon;
 import core.beans.Customer;
+import core.beans.Purchase;
+import core.beans.PurchaseOutcome;
 import core.exception.CouponSystemException;
 
 /**
@@ -19,4 +24,8 @@ public interface JoinTablesDAO {
 	public void deleteCompanyCoupon(Coupon coupon) throws CouponSystemException;
 
 	public void deleteCustomerCoupon(Coupon coupon) throws CouponSystemException;
+
+	public Collection<Long> getCustomerIds(long couponId) throws CouponSystemException;
+
+	public List<PurchaseOutcome> purchaseCoupons(List<Purchase> purchases) throws CouponSystemException;
 }
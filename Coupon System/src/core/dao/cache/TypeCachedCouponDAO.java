@@ -0,0 +1,307 @@
+package core.dao.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import core.beans.Coupon;
+import core.beans.CouponType;
+import core.bus.ChangeType;
+import core.bus.EntityChangeEvent;
+import core.bus.EntityType;
+import core.bus.InvalidationListener;
+import core.dao.CouponColumn;
+import core.dao.CouponDAO;
+import core.dao.db.TransactionManager;
+import core.exception.CouponSystemException;
+import core.report.CouponColumnStore;
+
+/**
+ * This class implements {@linkplain CouponDAO} on top of another CouponDAO and
+ * caches the result of {@link #getCouponByType(CouponType)}.</br>
+ * The cache is an {@link EnumMap} with one entry per {@link CouponType}, each
+ * entry holds an unmodifiable list of the coupons of that type.</br>
+ * When a coupon is created, updated or removed (including the expired coupons
+ * that the Daily Task removes) only the entries of its type are
+ * invalidated.</br>
+ * If many threads ask for a type that is not in the cache, only one of them
+ * sends the query and the others wait for its result.</br>
+ * The type that each cached coupon id is in is kept, so a coupon whose type
+ * was changed (or a removed coupon of another node, see
+ * {@link InvalidationListener}) invalidates only its old type, and a load
+ * that was still running when its coupon changed is not kept.</br>
+ * <b>Be aware :</b> the cached Coupon objects are shared, don't change them.
+ */
+public class TypeCachedCouponDAO implements CouponDAO, InvalidationListener {
+	// Attributes
+	private CouponDAO dao = null;
+	private Map<CouponType, Load> cache = new EnumMap<>(CouponType.class);
+	// the type of every coupon id in the finished loads.
+	private Map<Long, CouponType> typeOf = new HashMap<>();
+	private Lock lock = new ReentrantLock();
+
+	// CTOR
+	public TypeCachedCouponDAO(CouponDAO dao) {
+		this.dao = dao;
+	}
+
+	// Methods
+	@Override
+	public void createCoupon(Coupon coupon) throws CouponSystemException {
+		try {
+			dao.createCoupon(coupon);
+		} finally {
+			invalidate(coupon);
+		}
+		if (TransactionManager.isInTransaction()) {
+			// may be loaded again in the transaction before the commit.
+			TransactionManager.afterCompletion(() -> invalidate(coupon));
+		}
+	}
+
+	@Override
+	public void removeCoupon(Coupon coupon) throws CouponSystemException {
+		try {
+			dao.removeCoupon(coupon);
+		} finally {
+			invalidate(coupon);
+		}
+		if (TransactionManager.isInTransaction()) {
+			// may be loaded again in the transaction before the commit.
+			TransactionManager.afterCompletion(() -> invalidate(coupon));
+		}
+	}
+
+	@Override
+	public void updateCoupon(Coupon coupon) throws CouponSystemException {
+		updateCoupon(coupon, EnumSet.allOf(CouponColumn.class));
+	}
+
+	@Override
+	public void updateCoupon(Coupon coupon, Set<CouponColumn> columns) throws CouponSystemException {
+		try {
+			dao.updateCoupon(coupon, columns);
+		} finally {
+			invalidate(coupon);
+		}
+		if (TransactionManager.isInTransaction()) {
+			// may be loaded again in the transaction before the commit.
+			TransactionManager.afterCompletion(() -> invalidate(coupon));
+		}
+	}
+
+	@Override
+	public Coupon getCoupon(long id) throws CouponSystemException {
+		return dao.getCoupon(id);
+	}
+
+	@Override
+	public boolean titleExists(String title) throws CouponSystemException {
+		return dao.titleExists(title);
+	}
+
+	@Override
+	public Collection<Coupon> getAllCoupons() throws CouponSystemException {
+		return dao.getAllCoupons();
+	}
+
+	/**
+	 * Gets the coupons of a specific {@link CouponType} from the cache, if the
+	 * type is not in the cache it is loaded from the CouponDAO under this
+	 * cache (once, even if many threads ask for it at the same time).
+	 * 
+	 * @param type
+	 *            the {@link CouponType} that you want to get list of.
+	 * @return an unmodifiable list of the coupons of that type.
+	 */
+	@Override
+	public Collection<Coupon> getCouponByType(final CouponType type) throws CouponSystemException {
+		Load load;
+		boolean loader = false;
+		lock.lock();
+		try {
+			load = cache.get(type);
+			if (load == null) {
+				load = new Load(type);
+				cache.put(type, load);
+				loader = true;
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (loader) {
+			load.task.run();
+			finish(load);
+		}
+		try {
+			return load.task.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof CouponSystemException) {
+				throw (CouponSystemException) e.getCause();
+			}
+			throw new CouponSystemException("Failed to get the Coupons of type " + type + " !", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CouponSystemException("Interrupted while getting the Coupons of type " + type, e);
+		}
+	}
+
+	@Override
+	public CouponColumnStore getCouponColumns() throws CouponSystemException {
+		return dao.getCouponColumns();
+	}
+
+	/**
+	 * Removes the entry of the coupon's type from the cache, and the entry of
+	 * the type that held this coupon id before (the coupon's type was
+	 * changed).
+	 * 
+	 * @param coupon
+	 *            the coupon that was changed.
+	 */
+	public void invalidate(Coupon coupon) {
+		lock.lock();
+		try {
+			if (coupon.getType() != null) {
+				drop(coupon.getType());
+			}
+			invalidate(coupon.getId());
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes the entry of the type that holds a coupon with that id, a load
+	 * that is still running is not kept if it finds that id.
+	 */
+	public void invalidate(long id) {
+		lock.lock();
+		try {
+			CouponType type = typeOf.get(id);
+			if (type != null) {
+				drop(type);
+			}
+			for (Load load : cache.values()) {
+				if (!load.finished) {
+					load.changed.add(id);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Invalidates the cache by a change of another node : a removed coupon
+	 * invalidates the types that hold it, a created or updated coupon may be
+	 * of any type so all the cache is invalidated.
+	 */
+	@Override
+	public void onChange(EntityChangeEvent event) {
+		if (event.getEntityType() != EntityType.COUPON) {
+			return;
+		}
+		if (event.getChangeType() == ChangeType.REMOVED) {
+			invalidate(event.getId());
+		} else {
+			invalidateAll();
+		}
+	}
+
+	/**
+	 * Removes the entry of a specific type from the cache.
+	 */
+	public void invalidate(CouponType type) {
+		lock.lock();
+		try {
+			drop(type);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes all the entries from the cache.
+	 */
+	public void invalidateAll() {
+		lock.lock();
+		try {
+			cache.clear();
+			typeOf.clear();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// keeps the ids of a load that finished, a failed load or a load that
+	// holds a coupon that changed while it ran is removed.
+	private void finish(Load load) {
+		lock.lock();
+		try {
+			if (cache.get(load.type) != load) {
+				return;
+			}
+			List<Coupon> coupons;
+			try {
+				coupons = load.task.get();
+			} catch (InterruptedException | ExecutionException e) {
+				cache.remove(load.type);
+				return;
+			}
+			for (Coupon coupon : coupons) {
+				if (load.changed.contains(coupon.getId())) {
+					cache.remove(load.type);
+					return;
+				}
+			}
+			for (Coupon coupon : coupons) {
+				typeOf.put(coupon.getId(), load.type);
+			}
+			load.finished = true;
+			load.changed = null;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// removes the entry of a type and its ids, the caller holds the lock.
+	private void drop(CouponType type) {
+		Load load = cache.remove(type);
+		if (load == null || !load.finished) {
+			return;
+		}
+		try {
+			for (Coupon coupon : load.task.get()) {
+				typeOf.remove(coupon.getId(), type);
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			// a finished load has its list.
+		}
+	}
+
+	// the load of the coupons of one type, the ids that changed while it ran.
+	private class Load {
+		private CouponType type;
+		private FutureTask<List<Coupon>> task;
+		private boolean finished = false;
+		private Set<Long> changed = new HashSet<>();
+
+		Load(CouponType type) {
+			this.type = type;
+			task = new FutureTask<>(() -> Collections.unmodifiableList(new ArrayList<>(dao.getCouponByType(type))));
+		}
+	}
+
+}
@@ -0,0 +1,242 @@
+package core.dao.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+
+import core.beans.Company;
+import core.beans.Coupon;
+import core.beans.Customer;
+import core.bus.ChangeType;
+import core.bus.EntityType;
+import core.bus.InvalidationBus;
+import core.config.CouponSystemConfig;
+import core.dao.BulkInsertDAO;
+import core.exception.CouponSystemException;
+import core.security.PasswordHasher;
+import db.connection_pool.ConnectionPool;
+
+/**
+ * This class implements {@linkplain BulkInsertDAO}.</br>
+ * The rows are sent in JDBC batches of 'bulkImport.batchSize' INSERT
+ * commands, on the connection of the caller's transaction (see
+ * {@link TransactionManager}), so callers on several threads write on several
+ * connections at the same time and each commits its rows together.</br>
+ * The rows without an id get theirs from one {@link IdAllocator} range per
+ * call, the sequence is moved past the ids that the rows brought once, by
+ * {@link #advanceIdsPast} (outside the transactions of the rows, so the
+ * callers don't wait for each other on the sequence row).</br>
+ * The passwords are hashed here in parallel, before the rows are sent
+ * (passwords that are already hashed are kept, see
+ * {@link PasswordHasher#hashImported}).</br>
+ * The rows don't go through the caching DAOs, so a CREATED change of every
+ * row is fired (to the local caches and the other nodes) after the commit.
+ */
+public class BulkInsertDBDAO implements BulkInsertDAO {
+	// Attributes
+	private ConnectionPool pool = null;
+	private InvalidationBus bus = InvalidationBus.getInstance();
+	private int batchSize = Math.max(1, CouponSystemConfig.getInt("bulkImport.batchSize", 1000));
+
+	// CTOR
+	public BulkInsertDBDAO() {
+		pool = ConnectionPool.getInstance();
+	}
+
+	// Methods
+	/**
+	 * Creates the coupons in the Coupon Table and the ones with a company id
+	 * (not 0) in the Company_Coupon Table too.
+	 * 
+	 * @param coupons
+	 *            the coupons to create.
+	 * @param companyIds
+	 *            the company id of each coupon, 0 for no company.
+	 */
+	@Override
+	public void insertCoupons(List<Coupon> coupons, long[] companyIds) throws CouponSystemException {
+		int missing = 0;
+		for (Coupon coupon : coupons) {
+			missing += coupon.getId() == 0 ? 1 : 0;
+		}
+		long nextId = missing == 0 ? 0 : IdAllocator.getInstance(EntityType.COUPON).reserveRange(missing);
+		for (Coupon coupon : coupons) {
+			if (coupon.getId() == 0) {
+				coupon.setId(nextId++);
+			}
+		}
+		Connection con = pool.getConnection();
+
+		try {
+			String sql = "INSERT INTO Coupon (id, title, start_date, end_date, amount, type, message, price, image, "
+					+ "version) VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, 0)";
+			PreparedStatement stmt = con.prepareStatement(sql);
+			PreparedStatement ownerStmt = con
+					.prepareStatement("INSERT INTO Company_Coupon (comp_id, coupon_id) VALUES(?, ?)");
+			int owners = 0;
+			for (int i = 0; i < coupons.size(); i++) {
+				Coupon coupon = coupons.get(i);
+				stmt.setLong(1, coupon.getId());
+				stmt.setString(2, coupon.getTitle());
+				stmt.setDate(3, new java.sql.Date(coupon.getStartDate().getTime()));
+				stmt.setDate(4, new java.sql.Date(coupon.getEndDate().getTime()));
+				stmt.setInt(5, coupon.getAmount());
+				stmt.setString(6, coupon.getType().toString());
+				stmt.setString(7, coupon.getMessage());
+				stmt.setDouble(8, coupon.getPrice());
+				stmt.setString(9, coupon.getImage());
+				stmt.addBatch();
+				if (companyIds[i] != 0) {
+					ownerStmt.setLong(1, companyIds[i]);
+					ownerStmt.setLong(2, coupon.getId());
+					ownerStmt.addBatch();
+					owners++;
+				}
+				if ((i + 1) % batchSize == 0) {
+					stmt.executeBatch();
+				}
+				if (owners == batchSize) {
+					ownerStmt.executeBatch();
+					owners = 0;
+				}
+			}
+			stmt.executeBatch();
+			ownerStmt.executeBatch();
+			stmt.close();
+			ownerStmt.close();
+			TransactionManager.afterCommit(() -> {
+				for (Coupon coupon : coupons) {
+					bus.fire(EntityType.COUPON, ChangeType.CREATED, coupon.getId());
+				}
+			});
+		} catch (SQLException e) {
+			CouponSystemException couponSysEx = new CouponSystemException(
+					"Bulk insert of " + coupons.size() + " Coupons Failed !", e);
+			throw couponSysEx;
+		} finally {
+			if (con != null) {
+				pool.returnConnection(con);
+			}
+		}
+	}
+
+	/**
+	 * Creates the customers in the Customer Table.
+	 * 
+	 * @param customers
+	 *            the customers to create (with plain text or hashed
+	 *            passwords).
+	 */
+	@Override
+	public void insertCustomers(List<Customer> customers) throws CouponSystemException {
+		int missing = 0;
+		for (Customer customer : customers) {
+			missing += customer.getId() == 0 ? 1 : 0;
+		}
+		long nextId = missing == 0 ? 0 : IdAllocator.getInstance(EntityType.CUSTOMER).reserveRange(missing);
+		for (Customer customer : customers) {
+			if (customer.getId() == 0) {
+				customer.setId(nextId++);
+			}
+		}
+		String[] passwords = new String[customers.size()];
+		Arrays.parallelSetAll(passwords, i -> PasswordHasher.hashImported(customers.get(i).getPassword()));
+		Connection con = pool.getConnection();
+
+		try {
+			String sql = "INSERT INTO Customer (id, cust_name, password, version) VALUES(?, ?, ?, 0)";
+			PreparedStatement stmt = con.prepareStatement(sql);
+			for (int i = 0; i < customers.size(); i++) {
+				Customer customer = customers.get(i);
+				stmt.setLong(1, customer.getId());
+				stmt.setString(2, customer.getCustName());
+				stmt.setString(3, passwords[i]);
+				stmt.addBatch();
+				if ((i + 1) % batchSize == 0) {
+					stmt.executeBatch();
+				}
+			}
+			stmt.executeBatch();
+			stmt.close();
+			TransactionManager.afterCommit(() -> {
+				for (Customer customer : customers) {
+					bus.fire(EntityType.CUSTOMER, ChangeType.CREATED, customer.getId());
+				}
+			});
+		} catch (SQLException e) {
+			CouponSystemException couponSysEx = new CouponSystemException(
+					"Bulk insert of " + customers.size() + " Customers Failed !", e);
+			throw couponSysEx;
+		} finally {
+			if (con != null) {
+				pool.returnConnection(con);
+			}
+		}
+	}
+
+	/**
+	 * Creates the companies in the Company Table.
+	 * 
+	 * @param companies
+	 *            the companies to create (with plain text or hashed
+	 *            passwords).
+	 */
+	@Override
+	public void insertCompanies(List<Company> companies) throws CouponSystemException {
+		int missing = 0;
+		for (Company company : companies) {
+			missing += company.getId() == null || company.getId() == 0 ? 1 : 0;
+		}
+		long nextId = missing == 0 ? 0 : IdAllocator.getInstance(EntityType.COMPANY).reserveRange(missing);
+		for (Company company : companies) {
+			if (company.getId() == null || company.getId() == 0) {
+				company.setId(nextId++);
+			}
+		}
+		String[] passwords = new String[companies.size()];
+		Arrays.parallelSetAll(passwords, i -> PasswordHasher.hashImported(companies.get(i).getPassword()));
+		Connection con = pool.getConnection();
+
+		try {
+			String sql = "INSERT INTO Company (id, comp_name, password, email, version) VALUES(?, ?, ?, ?, 0)";
+			PreparedStatement stmt = con.prepareStatement(sql);
+			for (int i = 0; i < companies.size(); i++) {
+				Company company = companies.get(i);
+				stmt.setLong(1, company.getId());
+				stmt.setString(2, company.getCompName());
+				stmt.setString(3, passwords[i]);
+				stmt.setString(4, company.getEmail());
+				stmt.addBatch();
+				if ((i + 1) % batchSize == 0) {
+					stmt.executeBatch();
+				}
+			}
+			stmt.executeBatch();
+			stmt.close();
+			TransactionManager.afterCommit(() -> {
+				for (Company company : companies) {
+					bus.fire(EntityType.COMPANY, ChangeType.CREATED, company.getId());
+				}
+			});
+		} catch (SQLException e) {
+			CouponSystemException couponSysEx = new CouponSystemException(
+					"Bulk insert of " + companies.size() + " Companies Failed !", e);
+			throw couponSysEx;
+		} finally {
+			if (con != null) {
+				pool.returnConnection(con);
+			}
+		}
+	}
+
+	/**
+	 * Moves the {@link IdAllocator} of that entity past the id.
+	 */
+	@Override
+	public void advanceIdsPast(EntityType entity, long id) throws CouponSystemException {
+		IdAllocator.getInstance(entity).advancePast(id);
+	}
+
+}
@@ -0,0 +1,100 @@
+package core.dao.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import core.beans.Company;
+import core.beans.Coupon;
+import core.beans.CouponType;
+import core.beans.Customer;
+import core.dao.CatalogDAO;
+import core.dao.CatalogVisitor;
+import core.exception.CouponSystemException;
+import db.connection_pool.ConnectionPool;
+
+/**
+ * This class implements {@linkplain CatalogDAO}.</br>
+ * It sends one SELECT command per table on one connection and passes the
+ * rows to the visitor while it reads the cursor (1000 rows are fetched at a
+ * time), so only one row of a table is in memory at a time.</br>
+ * <b>Be aware :</b> this is not a snapshot. The tables are read one after the
+ * other in READ_COMMITTED (Derby has no snapshot reads, and REPEATABLE_READ
+ * or SERIALIZABLE would lock the tables against the purchases for the whole
+ * scan), so a row that is changed during the scan may be seen in one table
+ * and not in another, for example a Customer_Coupon row of a coupon that was
+ * created after the Coupon Table was read.
+ */
+public class CatalogDBDAO implements CatalogDAO {
+	// Attributes
+	private static final int FETCH_SIZE = 1000;
+	private ConnectionPool pool = null;
+
+	// CTOR
+	public CatalogDBDAO() {
+		pool = ConnectionPool.getInstance();
+	}
+
+	// Methods
+	@Override
+	public void scanCatalog(CatalogVisitor visitor) throws CouponSystemException {
+		Connection con = pool.getConnection();
+
+		try {
+			try (ResultSet rs = query(con, "SELECT * FROM Coupon")) {
+				while (rs.next()) {
+					Coupon coupon = new Coupon(rs.getLong(1), rs.getString(2), toDate(rs.getDate(3)),
+							toDate(rs.getDate(4)), rs.getInt(5), CouponType.valueOf(rs.getString(6)), rs.getString(7),
+							rs.getDouble(8), rs.getString(9));
+					coupon.setVersion(rs.getLong(10));
+					visitor.coupon(coupon);
+				}
+			}
+			try (ResultSet rs = query(con, "SELECT id, cust_name, password, version FROM Customer")) {
+				while (rs.next()) {
+					Customer customer = new Customer(rs.getLong(1), rs.getString(2), rs.getString(3));
+					customer.setVersion(rs.getLong(4));
+					visitor.customer(customer);
+				}
+			}
+			try (ResultSet rs = query(con, "SELECT id, comp_name, password, email, version FROM Company")) {
+				while (rs.next()) {
+					Company company = new Company(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4));
+					company.setVersion(rs.getLong(5));
+					visitor.company(company);
+				}
+			}
+			try (ResultSet rs = query(con, "SELECT cust_id, coupon_id FROM Customer_Coupon")) {
+				while (rs.next()) {
+					visitor.customerCoupon(rs.getLong(1), rs.getLong(2));
+				}
+			}
+			try (ResultSet rs = query(con, "SELECT comp_id, coupon_id FROM Company_Coupon")) {
+				while (rs.next()) {
+					visitor.companyCoupon(rs.getLong(1), rs.getLong(2));
+				}
+			}
+		} catch (SQLException e) {
+			CouponSystemException couponSysEx = new CouponSystemException("Failed to scan the catalog !", e);
+			throw couponSysEx;
+		} finally {
+			if (con != null) {
+				pool.returnConnection(con);
+			}
+		}
+	}
+
+	// a forward only, read only cursor (the statement is closed with it).
+	private static ResultSet query(Connection con, String sql) throws SQLException {
+		PreparedStatement stmt = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		stmt.setFetchSize(FETCH_SIZE);
+		stmt.closeOnCompletion();
+		return stmt.executeQuery();
+	}
+
+	private static java.util.Date toDate(java.sql.Date date) {
+		return date == null ? null : new java.util.Date(date.getTime());
+	}
+
+}
@@ -6,10 +6,21 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
 import core.beans.Company;
 import core.beans.Coupon;
+import core.bus.ChangeType;
+import core.bus.EntityType;
+import core.bus.InvalidationBus;
+import core.dao.CompanyColumn;
 import core.dao.CompanyDAO;
+import core.dao.CouponDAO;
+import core.dao.DAOFactory;
+import core.exception.ConcurrentUpdateException;
 import core.exception.CouponSystemException;
+import core.security.CredentialCache;
+import core.security.PasswordHasher;
 import db.connection_pool.ConnectionPool;
 
 /**
@@ -25,6 +36,8 @@ import db.connection_pool.ConnectionPool;
 public class CompanyDBDAO implements CompanyDAO {
 	// Attributes
 	private ConnectionPool pool = null;
+	private InvalidationBus bus = InvalidationBus.getInstance();
+	private static CredentialCache<Company> credentials = CredentialCache.create(EntityType.COMPANY, Company::getId);
 
 	// CTOR
 	public CompanyDBDAO() {
@@ -37,6 +50,9 @@ public class CompanyDBDAO implements CompanyDAO {
 	 * Company object that the method gets.</br>
 	 * Creates a company in the Company table with values such as : ID , Company
 	 * name , Password , Email.</br>
+	 * If the company has no ID (null or 0) it gets a new one from the
+	 * {@link IdAllocator}, otherwise the {@link IdAllocator} moves past the
+	 * ID you gave.</br>
 	 * If the method fails to create he will throw an
 	 * {@link CouponSystemException}.
 	 * 
@@ -45,16 +61,25 @@ public class CompanyDBDAO implements CompanyDAO {
 	 */
 	@Override
 	public void createCompany(Company company) throws CouponSystemException {
+		boolean given = company.getId() != null && company.getId() != 0;
+		if (!given) {
+			company.setId(IdAllocator.getInstance(EntityType.COMPANY).nextId());
+		}
 		Connection con = pool.getConnection();
 
 		try {
-			String sql = "INSERT INTO Company VALUES(?, ?, ?, ?)";
+			String sql = "INSERT INTO Company (id, comp_name, password, email, version) VALUES(?, ?, ?, ?, 0)";
 			PreparedStatement stmt = con.prepareStatement(sql);
 			stmt.setLong(1, company.getId());
 			stmt.setString(2, company.getCompName());
-			stmt.setString(3, company.getPassword());
+			stmt.setString(3, PasswordHasher.hash(company.getPassword()));
 			stmt.setString(4, company.getEmail());
 			stmt.executeUpdate();
+			if (given) {
+				IdAllocator.getInstance(EntityType.COMPANY).advancePast(company.getId());
+			}
+			company.setVersion(0);
+			TransactionManager.afterCommit(() -> bus.fire(EntityType.COMPANY, ChangeType.CREATED, company.getId()));
 
 		} catch (SQLException e) {
 			CouponSystemException couponSysEx = new CouponSystemException(
@@ -86,6 +111,8 @@ public class CompanyDBDAO implements CompanyDAO {
 			PreparedStatement stmt = con.prepareStatement(sql);
 			stmt.setLong(1, company.getId());
 			stmt.executeUpdate();
+			TransactionManager.afterCompletion(() -> credentials.invalidate(company.getId()));
+			TransactionManager.afterCommit(() -> bus.fire(EntityType.COMPANY, ChangeType.REMOVED, company.getId()));
 
 		} catch (SQLException e) {
 			CouponSystemException couponSysEx = new CouponSystemException(
@@ -102,7 +129,7 @@ public class CompanyDBDAO implements CompanyDAO {
 	 * This method sends a UPDATE command to the DB with the values of the
 	 * Company object that the method gets.</br>
 	 * Updates the table of a specific Company values (Password, Name and
-	 * etc).</br>
+	 * etc), see also {@link #updateCompany(Company, Set)}.</br>
 	 * If the method fails to update he will throw an
 	 * {@link CouponSystemException}.
 	 * 
@@ -111,16 +138,60 @@ public class CompanyDBDAO implements CompanyDAO {
 	 */
 	@Override
 	public void updateCompany(Company company) throws CouponSystemException {
+		updateCompany(company, EnumSet.allOf(CompanyColumn.class));
+	}
+
+	/**
+	 * This method sends a UPDATE command to the DB with only the columns that
+	 * the method gets.</br>
+	 * The update is conditional on the company's version (WHERE id = ? AND
+	 * version = ?) and raises the version, if the company was changed or
+	 * removed since it was read nothing is saved and it will throw a
+	 * {@link ConcurrentUpdateException}, if it succeeds the company gets the
+	 * new version.</br>
+	 * If the method fails to update he will throw an
+	 * {@link CouponSystemException}.
+	 * 
+	 * @param company
+	 *            the Company object that you want to update.
+	 * @param columns
+	 *            the columns that changed.
+	 */
+	@Override
+	public void updateCompany(Company company, Set<CompanyColumn> columns) throws CouponSystemException {
 		Connection con = pool.getConnection();
 
 		try {
-			String sql = "UPDATE Company SET comp_name = ?, password = ?, email = ?  WHERE id = ?";
-			PreparedStatement stmt = con.prepareStatement(sql);
-			stmt.setString(1, company.getCompName());
-			stmt.setString(2, company.getPassword());
-			stmt.setString(3, company.getEmail());
-			stmt.setLong(4, company.getId());
-			stmt.executeUpdate();
+			StringBuilder sql = new StringBuilder("UPDATE Company SET ");
+			for (CompanyColumn column : columns) {
+				sql.append(column.getColumn()).append(" = ?, ");
+			}
+			sql.append("version = version + 1 WHERE id = ? AND version = ?");
+			PreparedStatement stmt = con.prepareStatement(sql.toString());
+
+			int index = 1;
+			for (CompanyColumn column : columns) {
+				switch (column) {
+				case COMP_NAME:
+					stmt.setString(index++, company.getCompName());
+					break;
+				case PASSWORD:
+					stmt.setString(index++, PasswordHasher.hash(company.getPassword()));
+					break;
+				case EMAIL:
+					stmt.setString(index++, company.getEmail());
+					break;
+				}
+			}
+			stmt.setLong(index++, company.getId());
+			stmt.setLong(index, company.getVersion());
+			if (stmt.executeUpdate() == 0) {
+				throw new ConcurrentUpdateException("Company " + company.getCompName()
+						+ " was changed or removed by someone else, get it again and retry", company.getVersion());
+			}
+			company.setVersion(company.getVersion() + 1);
+			TransactionManager.afterCompletion(() -> credentials.invalidate(company.getId()));
+			TransactionManager.afterCommit(() -> bus.fire(EntityType.COMPANY, ChangeType.UPDATED, company.getId()));
 
 		} catch (SQLException e) {
 			CouponSystemException couponSysEx = new CouponSystemException(
@@ -162,6 +233,7 @@ public class CompanyDBDAO implements CompanyDAO {
 				password = rs.getString(3);
 				email = rs.getString(4);
 				company = new Company(id, name, password, email);
+				company.setVersion(rs.getLong(5));
 				rs.close();
 			} else {
 				rs.close();
@@ -207,6 +279,7 @@ public class CompanyDBDAO implements CompanyDAO {
 				password = rs.getString(3);
 				email = rs.getString(4);
 				company = new Company(id, name, password, email);
+				company.setVersion(rs.getLong(5));
 				rs.close();
 			} else {
 				rs.close();
@@ -274,7 +347,7 @@ public class CompanyDBDAO implements CompanyDAO {
 	public Collection<Coupon> getCouppons(Company company) throws CouponSystemException {
 		Connection con = pool.getConnection();
 		Collection<Coupon> coupons = new ArrayList<>();
-		CouponDBDAO coup = new CouponDBDAO();
+		CouponDAO coup = DAOFactory.getCouponDAO();
 
 		try {
 			String sql = "SELECT * FROM Company_Coupon WHERE comp_id = ?";
@@ -300,42 +373,66 @@ public class CompanyDBDAO implements CompanyDAO {
 	}
 
 	/**
-	 * This method sends a SELECT command to the DB to check if there are a
-	 * company name and password in the Company Table. </br>
-	 * If there are a company name and password in the DB, The method sends you
-	 * back true.</br>
+	 * First the method checks the {@link CredentialCache}, if the company logged
+	 * in with the same password lately there is no need to go to the DB.</br>
+	 * Otherwise the method sends one SELECT command to the DB to get the company
+	 * by name (the comp_name column is indexed) and checks the password with
+	 * {@link PasswordHasher}, a plain text password is hashed on the
+	 * way.</br>
+	 * If the name and password are correct, The method sends you back that
+	 * company, so there is no need to get it again.</br>
 	 * If the parameters(compName, password) that the method gets are incorrect
-	 * or not in the Company Table, The method will thorw a
+	 * or not in the Company Table, The method returns null.</br>
+	 * If the method fails to check he will throw a
 	 * {@link CouponSystemException}
 	 * 
 	 * @param compName
 	 *            a string of the company name.
 	 * @param password
 	 *            a string of the company password.
-	 * @return true if the company name & password are correct or throws a
-	 *         CouponSystemException.
+	 * @return the Company object if the company name & password are correct or
+	 *         null if they are not.
 	 */
 	@Override
-	public boolean login(String compName, String password) throws CouponSystemException {
+	public Company login(String compName, String password) throws CouponSystemException {
+		Company company = credentials.verify(compName, password);
+		if (company != null) {
+			return company;
+		}
+		long generation = credentials.generation();
 		Connection con = pool.getConnection();
-		boolean exist = false;
 
 		try {
-			String sql = "SELECT * FROM Company WHERE comp_name = ? AND password = ?";
+			String sql = "SELECT * FROM Company WHERE comp_name = ?";
 			PreparedStatement stmt = con.prepareStatement(sql);
 			stmt.setString(1, compName);
-			stmt.setString(2, password);
 			ResultSet rs = stmt.executeQuery();
-			exist = rs.next();
+			boolean found = rs.next();
+			if (PasswordHasher.verify(password, found ? rs.getString(3) : null)) {
+				company = new Company(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4));
+				company.setVersion(rs.getLong(5));
+			}
 			rs.close();
+			if (company != null && !PasswordHasher.isHashed(company.getPassword())) {
+				// a plain text password from before hashing, hash it now
+				company.setPassword(PasswordHasher.hash(password));
+				stmt = con.prepareStatement("UPDATE Company SET password = ?, version = version + 1 WHERE id = ?");
+				stmt.setString(1, company.getPassword());
+				stmt.setLong(2, company.getId());
+				stmt.executeUpdate();
+				company.setVersion(company.getVersion() + 1);
+			}
 		} catch (SQLException e) {
-			CouponSystemException couponSysEx = new CouponSystemException("Server is down");
+			CouponSystemException couponSysEx = new CouponSystemException("Server is down", e);
 			throw couponSysEx;
 		} finally {
 			if (con != null) {
 				pool.returnConnection(con);
 			}
 		}
-		return exist;
+		if (company != null) {
+			credentials.put(compName, password, company, generation);
+		}
+		return company;
 	}
 }
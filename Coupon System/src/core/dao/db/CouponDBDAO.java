@@ -7,10 +7,18 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.EnumSet;
+import java.util.Set;
 import core.beans.Coupon;
 import core.beans.CouponType;
+import core.bus.ChangeType;
+import core.bus.EntityType;
+import core.bus.InvalidationBus;
+import core.dao.CouponColumn;
 import core.dao.CouponDAO;
+import core.exception.ConcurrentUpdateException;
 import core.exception.CouponSystemException;
+import core.report.CouponColumnStore;
 import db.connection_pool.ConnectionPool;
 
 /**
@@ -26,6 +34,7 @@ import db.connection_pool.ConnectionPool;
 public class CouponDBDAO implements CouponDAO {
 	// Attributes
 	private ConnectionPool pool = null;
+	private InvalidationBus bus = InvalidationBus.getInstance();
 
 	// CTOR
 	public CouponDBDAO() {
@@ -38,6 +47,9 @@ public class CouponDBDAO implements CouponDAO {
 	 * Coupon object that the method gets.</br>
 	 * Creates a coupon in the Coupon Table with values such as : ID, Title,
 	 * Start_Date, End_Date, Amount, Type, Message, Price, Image.</br>
+	 * If the coupon has no ID (0) it gets a new one from the
+	 * {@link IdAllocator}, otherwise the {@link IdAllocator} moves past the
+	 * ID you gave.</br>
 	 * If the method fails to create he will throw an
 	 * {@link CouponSystemException}.
 	 * 
@@ -46,10 +58,15 @@ public class CouponDBDAO implements CouponDAO {
 	 */
 	@Override
 	public void createCoupon(Coupon coupon) throws CouponSystemException {
+		boolean given = coupon.getId() != 0;
+		if (!given) {
+			coupon.setId(IdAllocator.getInstance(EntityType.COUPON).nextId());
+		}
 		Connection con = pool.getConnection();
 
 		try {
-			String sql = "INSERT INTO Coupon VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?)";
+			String sql = "INSERT INTO Coupon (id, title, start_date, end_date, amount, type, message, price, image, "
+					+ "version) VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, 0)";
 			PreparedStatement stmt = con.prepareStatement(sql);
 
 			java.sql.Date startDate = new java.sql.Date(coupon.getStartDate().getTime());
@@ -65,6 +82,11 @@ public class CouponDBDAO implements CouponDAO {
 			stmt.setDouble(8, coupon.getPrice());
 			stmt.setString(9, coupon.getImage());
 			stmt.executeUpdate();
+			if (given) {
+				IdAllocator.getInstance(EntityType.COUPON).advancePast(coupon.getId());
+			}
+			coupon.setVersion(0);
+			TransactionManager.afterCommit(() -> bus.fire(EntityType.COUPON, ChangeType.CREATED, coupon.getId()));
 
 		} catch (SQLException e) {
 			CouponSystemException couponSysEx = new CouponSystemException(
@@ -96,6 +118,7 @@ public class CouponDBDAO implements CouponDAO {
 			PreparedStatement stmt = con.prepareStatement(sql);
 			stmt.setLong(1, coupon.getId());
 			stmt.executeUpdate();
+			TransactionManager.afterCommit(() -> bus.fire(EntityType.COUPON, ChangeType.REMOVED, coupon.getId()));
 			
 		} catch (SQLException e) {
 			CouponSystemException couponSysEx = new CouponSystemException(
@@ -111,7 +134,8 @@ public class CouponDBDAO implements CouponDAO {
 	/**
 	 * This method sends a UPDATE command to the DB with the values of the
 	 * Coupon object that the method gets.</br>
-	 * Updates a specific coupon values (amount, message etc)</br>
+	 * Updates all the coupon values (amount, message etc), see also
+	 * {@link #updateCoupon(Coupon, Set)}.</br>
 	 * If the method fails to update he will throw an
 	 * {@link CouponSystemException}.
 	 * 
@@ -120,27 +144,75 @@ public class CouponDBDAO implements CouponDAO {
 	 */
 	@Override
 	public void updateCoupon(Coupon coupon) throws CouponSystemException {
+		updateCoupon(coupon, EnumSet.allOf(CouponColumn.class));
+	}
+
+	/**
+	 * This method sends a UPDATE command to the DB with only the columns that
+	 * the method gets.</br>
+	 * The update is conditional on the coupon's version (WHERE id = ? AND
+	 * version = ?) and raises the version, if the coupon was changed or
+	 * removed since it was read nothing is saved and it will throw a
+	 * {@link ConcurrentUpdateException}, if it succeeds the coupon gets the new
+	 * version.</br>
+	 * If the method fails to update he will throw an
+	 * {@link CouponSystemException}.
+	 * 
+	 * @param coupon
+	 *            the specific Coupon object that you want to update.
+	 * @param columns
+	 *            the columns that changed.
+	 */
+	@Override
+	public void updateCoupon(Coupon coupon, Set<CouponColumn> columns) throws CouponSystemException {
 		Connection con = pool.getConnection();
 
 		try {
-			String sql = "UPDATE Coupon SET title = ?, start_date = ?, end_date = ?, amount = ?, type = ?, message = ?, "
-					+ "price = ?, image = ? WHERE id = ?";
-			PreparedStatement stmt = con.prepareStatement(sql);
+			StringBuilder sql = new StringBuilder("UPDATE Coupon SET ");
+			for (CouponColumn column : columns) {
+				sql.append(column.getColumn()).append(" = ?, ");
+			}
+			sql.append("version = version + 1 WHERE id = ? AND version = ?");
+			PreparedStatement stmt = con.prepareStatement(sql.toString());
 
-			java.sql.Date startDate = new java.sql.Date(coupon.getStartDate().getTime());
-			java.sql.Date endDate = new java.sql.Date(coupon.getEndDate().getTime());
+			int index = 1;
+			for (CouponColumn column : columns) {
+				switch (column) {
+				case TITLE:
+					stmt.setString(index++, coupon.getTitle());
+					break;
+				case START_DATE:
+					stmt.setDate(index++, new java.sql.Date(coupon.getStartDate().getTime()));
+					break;
+				case END_DATE:
+					stmt.setDate(index++, new java.sql.Date(coupon.getEndDate().getTime()));
+					break;
+				case AMOUNT:
+					stmt.setInt(index++, coupon.getAmount());
+					break;
+				case TYPE:
+					stmt.setString(index++, coupon.getType().toString());
+					break;
+				case MESSAGE:
+					stmt.setString(index++, coupon.getMessage());
+					break;
+				case PRICE:
+					stmt.setDouble(index++, coupon.getPrice());
+					break;
+				case IMAGE:
+					stmt.setString(index++, coupon.getImage());
+					break;
+				}
+			}
+			stmt.setLong(index++, coupon.getId());
+			stmt.setLong(index, coupon.getVersion());
+			if (stmt.executeUpdate() == 0) {
+				throw new ConcurrentUpdateException("Coupon " + coupon.getTitle()
+						+ " was changed or removed by someone else, get it again and retry", coupon.getVersion());
+			}
+			coupon.setVersion(coupon.getVersion() + 1);
+			TransactionManager.afterCommit(() -> bus.fire(EntityType.COUPON, ChangeType.UPDATED, coupon.getId()));
 
-			stmt.setString(1, coupon.getTitle());
-			stmt.setDate(2, startDate);
-			stmt.setDate(3, endDate);
-			stmt.setInt(4, coupon.getAmount());
-			stmt.setString(5, coupon.getType().toString());
-			stmt.setString(6, coupon.getMessage());
-			stmt.setDouble(7, coupon.getPrice());
-			stmt.setString(8, coupon.getImage());
-			stmt.setLong(9, coupon.getId());
-			stmt.executeUpdate();
-			
 		} catch (SQLException e) {
 			CouponSystemException couponSysEx = new CouponSystemException(
 					"Update Coupon " + coupon.getTitle() + " was Failed !", e);
@@ -192,6 +264,7 @@ public class CouponDBDAO implements CouponDAO {
 				image = rs.getString(9);
 
 				coupon = new Coupon(id, title, startDate, endDate, amount, type, message, price, image);
+				coupon.setVersion(rs.getLong(10));
 				rs.close();
 			} else {
 				rs.close();
@@ -209,6 +282,39 @@ public class CouponDBDAO implements CouponDAO {
 		return coupon;
 	}
 
+	/**
+	 * This method sends a SELECT command to the DB to check if there is a
+	 * coupon with a specific title in the Coupon Table.</br>
+	 * If the method fails to check he will throw an
+	 * {@link CouponSystemException}.
+	 * 
+	 * @param title
+	 *            the coupon title you want to check.
+	 * @return true if there is a coupon with that title.
+	 */
+	@Override
+	public boolean titleExists(String title) throws CouponSystemException {
+		Connection con = pool.getConnection();
+		boolean exist = false;
+
+		try {
+			String sql = "SELECT id FROM Coupon WHERE title = ?";
+			PreparedStatement stmt = con.prepareStatement(sql);
+			stmt.setString(1, title);
+			ResultSet rs = stmt.executeQuery();
+			exist = rs.next();
+			rs.close();
+		} catch (SQLException e) {
+			CouponSystemException couponSysEx = new CouponSystemException("Check coupon title " + title + " failed", e);
+			throw couponSysEx;
+		} finally {
+			if (con != null) {
+				pool.returnConnection(con);
+			}
+		}
+		return exist;
+	}
+
 	/**
 	 * This method sends a SELECT command to the DB to get all the coupons from
 	 * the Coupon Table.</br>
@@ -246,13 +352,12 @@ public class CouponDBDAO implements CouponDAO {
 	}
 
 	/**
-	 * This method uses the getAllCoupons() method and with that gives you a
-	 * Collection list of coupons of a specific CouponType, see also
-	 * {@link CouponType}, {@link getAllCoupons}.</br>
+	 * This method sends a SELECT command to the DB to get all the coupons of a
+	 * specific CouponType from the Coupon Table, see also
+	 * {@link CouponType}.</br>
+	 * The method then puts them in a Collection list and returns it.</br>
 	 * If the method fails to get the coupons he will throw an
 	 * {@link CouponSystemException}.</br>
-	 * If there are no coupons by that CouponType he will throw an
-	 * {@link CouponSystemException}.</br>
 	 * 
 	 * @param type
 	 *            the {@link CouponType} that you want to get list of.
@@ -261,15 +366,100 @@ public class CouponDBDAO implements CouponDAO {
 	 */
 	@Override
 	public Collection<Coupon> getCouponByType(CouponType type) throws CouponSystemException {
-		Collection<Coupon> allCoupons = getAllCoupons();
+		Connection con = pool.getConnection();
 		Collection<Coupon> couponByType = new ArrayList<>();
 
-		for (Coupon coupon : allCoupons) {
-			if (type.equals(coupon.getType())) {
+		try {
+			String sql = "SELECT * FROM Coupon WHERE type = ?";
+			PreparedStatement stmt = con.prepareStatement(sql);
+			stmt.setString(1, type.toString());
+			ResultSet rs = stmt.executeQuery();
+			while (rs.next()) {
+				Coupon coupon = new Coupon(rs.getLong(1), rs.getString(2), new Date(rs.getDate(3).getTime()),
+						new Date(rs.getDate(4).getTime()), rs.getInt(5), type, rs.getString(7), rs.getDouble(8),
+						rs.getString(9));
+				coupon.setVersion(rs.getLong(10));
 				couponByType.add(coupon);
 			}
+			rs.close();
+		} catch (SQLException e) {
+			CouponSystemException couponSysEx = new CouponSystemException(
+					"Failed to get the Coupons of type " + type + " !", e);
+			throw couponSysEx;
+		} finally {
+			if (con != null) {
+				pool.returnConnection(con);
+			}
 		}
 		return couponByType;
 	}
 
+	/**
+	 * This method sends one SELECT command to the DB to get all the coupons
+	 * from the Coupon Table and puts them straight into a
+	 * {@link CouponColumnStore} (without creating a Coupon object per
+	 * row).</br>
+	 * If the method fails to get the coupons he will throw an
+	 * {@link CouponSystemException}.
+	 * 
+	 * @return a CouponColumnStore with all the coupons.
+	 */
+	@Override
+	public CouponColumnStore getCouponColumns() throws CouponSystemException {
+		Connection con = pool.getConnection();
+		CouponColumnStore store = new CouponColumnStore();
+
+		try {
+			String sql = "SELECT * FROM Coupon";
+			PreparedStatement stmt = con.prepareStatement(sql);
+			stmt.setFetchSize(1000);
+			ResultSet rs = stmt.executeQuery();
+			while (rs.next()) {
+				store.add(rs.getLong(1), rs.getString(2), (int) rs.getDate(3).toLocalDate().toEpochDay(),
+						(int) rs.getDate(4).toLocalDate().toEpochDay(), rs.getInt(5), CouponType.valueOf(rs.getString(6)),
+						rs.getString(7), rs.getDouble(8), rs.getString(9), rs.getLong(10));
+			}
+			rs.close();
+		} catch (SQLException e) {
+			CouponSystemException couponSysEx = new CouponSystemException("Failed to get the Coupon columns !", e);
+			throw couponSysEx;
+		} finally {
+			if (con != null) {
+				pool.returnConnection(con);
+			}
+		}
+		return store;
+	}
+
+	/**
+	 * This method sends one SELECT command to the DB to get the number of
+	 * coupons, the sum of their ids and the sum of their versions (every
+	 * create, remove and update changes at least one of them), so a copy of
+	 * the table can be checked without reading all the rows.</br>
+	 * If the method fails he will throw an {@link CouponSystemException}.
+	 * 
+	 * @return { count, sum of the ids, sum of the versions }.
+	 */
+	public long[] getCouponChecksum() throws CouponSystemException {
+		Connection con = pool.getConnection();
+
+		try {
+			String sql = "SELECT COUNT(*), SUM(id), SUM(version) FROM Coupon";
+			PreparedStatement stmt = con.prepareStatement(sql);
+			ResultSet rs = stmt.executeQuery();
+			rs.next();
+			// SUM is null (0) on an empty table.
+			long[] checksum = { rs.getLong(1), rs.getLong(2), rs.getLong(3) };
+			rs.close();
+			return checksum;
+		} catch (SQLException e) {
+			CouponSystemException couponSysEx = new CouponSystemException("Failed to get the Coupon checksum !", e);
+			throw couponSysEx;
+		} finally {
+			if (con != null) {
+				pool.returnConnection(con);
+			}
+		}
+	}
+
 }
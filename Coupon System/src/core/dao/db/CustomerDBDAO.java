@@ -6,10 +6,21 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
 import core.beans.Coupon;
 import core.beans.Customer;
+import core.bus.ChangeType;
+import core.bus.EntityType;
+import core.bus.InvalidationBus;
+import core.dao.CouponDAO;
+import core.dao.CustomerColumn;
 import core.dao.CustomerDAO;
+import core.dao.DAOFactory;
+import core.exception.ConcurrentUpdateException;
 import core.exception.CouponSystemException;
+import core.security.CredentialCache;
+import core.security.PasswordHasher;
 import db.connection_pool.ConnectionPool;
 
 /**
@@ -25,6 +36,8 @@ import db.connection_pool.ConnectionPool;
 public class CustomerDBDAO implements CustomerDAO {
 	// Attributes
 	private ConnectionPool pool = null;
+	private InvalidationBus bus = InvalidationBus.getInstance();
+	private static CredentialCache<Customer> credentials = CredentialCache.create(EntityType.CUSTOMER, Customer::getId);
 
 	// CTOR
 	public CustomerDBDAO() {
@@ -37,6 +50,9 @@ public class CustomerDBDAO implements CustomerDAO {
 	 * Customer object that the method gets.</br>
 	 * Creates a customer in the Customer Table with values such as : ID, Name,
 	 * Password.</br>
+	 * If the customer has no ID (0) it gets a new one from the
+	 * {@link IdAllocator}, otherwise the {@link IdAllocator} moves past the
+	 * ID you gave.</br>
 	 * If the method fails to create he will throw an
 	 * {@link CouponSystemException}.
 	 * 
@@ -45,15 +61,24 @@ public class CustomerDBDAO implements CustomerDAO {
 	 */
 	@Override
 	public void createCustomer(Customer customer) throws CouponSystemException {
+		boolean given = customer.getId() != 0;
+		if (!given) {
+			customer.setId(IdAllocator.getInstance(EntityType.CUSTOMER).nextId());
+		}
 		Connection con = pool.getConnection();
 
 		try {
-			String sql = "INSERT INTO Customer VALUES(?, ?, ?)";
+			String sql = "INSERT INTO Customer (id, cust_name, password, version) VALUES(?, ?, ?, 0)";
 			PreparedStatement stmt = con.prepareStatement(sql);
 			stmt.setLong(1, customer.getId());
 			stmt.setString(2, customer.getCustName());
-			stmt.setString(3, customer.getPassword());
+			stmt.setString(3, PasswordHasher.hash(customer.getPassword()));
 			stmt.executeUpdate();
+			if (given) {
+				IdAllocator.getInstance(EntityType.CUSTOMER).advancePast(customer.getId());
+			}
+			customer.setVersion(0);
+			TransactionManager.afterCommit(() -> bus.fire(EntityType.CUSTOMER, ChangeType.CREATED, customer.getId()));
 
 		} catch (SQLException e) {
 			CouponSystemException couponSysEx = new CouponSystemException(
@@ -85,6 +110,8 @@ public class CustomerDBDAO implements CustomerDAO {
 			PreparedStatement stmt = con.prepareStatement(sql);
 			stmt.setLong(1, customer.getId());
 			stmt.executeUpdate();
+			TransactionManager.afterCompletion(() -> credentials.invalidate(customer.getId()));
+			TransactionManager.afterCommit(() -> bus.fire(EntityType.CUSTOMER, ChangeType.REMOVED, customer.getId()));
 
 		} catch (SQLException e) {
 			CouponSystemException couponSysEx = new CouponSystemException(
@@ -100,7 +127,8 @@ public class CustomerDBDAO implements CustomerDAO {
 	/**
 	 * This method sends a UPDATE command to the DB with the values of the
 	 * Customer object that the method gets.</br>
-	 * Updates a specific customer from the Customer Table.</br>
+	 * Updates a specific customer from the Customer Table, see also
+	 * {@link #updateCustomer(Customer, Set)}.</br>
 	 * If the method fails to update he will throw an
 	 * {@link CouponSystemException}.
 	 * 
@@ -109,15 +137,57 @@ public class CustomerDBDAO implements CustomerDAO {
 	 */
 	@Override
 	public void updateCustomer(Customer customer) throws CouponSystemException {
+		updateCustomer(customer, EnumSet.allOf(CustomerColumn.class));
+	}
+
+	/**
+	 * This method sends a UPDATE command to the DB with only the columns that
+	 * the method gets.</br>
+	 * The update is conditional on the customer's version (WHERE id = ? AND
+	 * version = ?) and raises the version, if the customer was changed or
+	 * removed since it was read nothing is saved and it will throw a
+	 * {@link ConcurrentUpdateException}, if it succeeds the customer gets the
+	 * new version.</br>
+	 * If the method fails to update he will throw an
+	 * {@link CouponSystemException}.
+	 * 
+	 * @param customer
+	 *            The Customer object that you want to update.
+	 * @param columns
+	 *            the columns that changed.
+	 */
+	@Override
+	public void updateCustomer(Customer customer, Set<CustomerColumn> columns) throws CouponSystemException {
 		Connection con = pool.getConnection();
 
 		try {
-			String sql = "UPDATE Customer SET cust_name = ?, password = ?  WHERE id = ?";
-			PreparedStatement stmt = con.prepareStatement(sql);
-			stmt.setString(1, customer.getCustName());
-			stmt.setString(2, customer.getPassword());
-			stmt.setLong(3, customer.getId());
-			stmt.executeUpdate();
+			StringBuilder sql = new StringBuilder("UPDATE Customer SET ");
+			for (CustomerColumn column : columns) {
+				sql.append(column.getColumn()).append(" = ?, ");
+			}
+			sql.append("version = version + 1 WHERE id = ? AND version = ?");
+			PreparedStatement stmt = con.prepareStatement(sql.toString());
+
+			int index = 1;
+			for (CustomerColumn column : columns) {
+				switch (column) {
+				case CUST_NAME:
+					stmt.setString(index++, customer.getCustName());
+					break;
+				case PASSWORD:
+					stmt.setString(index++, PasswordHasher.hash(customer.getPassword()));
+					break;
+				}
+			}
+			stmt.setLong(index++, customer.getId());
+			stmt.setLong(index, customer.getVersion());
+			if (stmt.executeUpdate() == 0) {
+				throw new ConcurrentUpdateException("Customer " + customer.getCustName()
+						+ " was changed or removed by someone else, get it again and retry", customer.getVersion());
+			}
+			customer.setVersion(customer.getVersion() + 1);
+			TransactionManager.afterCompletion(() -> credentials.invalidate(customer.getId()));
+			TransactionManager.afterCommit(() -> bus.fire(EntityType.CUSTOMER, ChangeType.UPDATED, customer.getId()));
 
 		} catch (SQLException e) {
 			CouponSystemException couponSysEx = new CouponSystemException(
@@ -157,6 +227,7 @@ public class CustomerDBDAO implements CustomerDAO {
 				custName = rs.getString(2);
 				password = rs.getString(3);
 				customer = new Customer(id, custName, password);
+				customer.setVersion(rs.getLong(4));
 				rs.close();
 			} else {
 				rs.close();
@@ -200,6 +271,7 @@ public class CustomerDBDAO implements CustomerDAO {
 				id = rs.getLong(1);
 				password = rs.getString(3);
 				customer = new Customer(id, name, password);
+				customer.setVersion(rs.getLong(4));
 				rs.close();
 			} else {
 				rs.close();
@@ -268,7 +340,7 @@ public class CustomerDBDAO implements CustomerDAO {
 	@Override
 	public Collection<Coupon> getCoupons(Customer customer) throws CouponSystemException {
 		Connection con = pool.getConnection();
-		CouponDBDAO coup = new CouponDBDAO();
+		CouponDAO coup = DAOFactory.getCouponDAO();
 		Collection<Coupon> coupons = new ArrayList<>();
 
 		try {
@@ -295,43 +367,67 @@ public class CustomerDBDAO implements CustomerDAO {
 	}
 
 	/**
-	 * This method sends a SELECT command to the DB to check if there are a
-	 * customer name and password in the Customer Table. </br>
-	 * If there are a company name and password in the DB, The method sends you
-	 * back true.</br>
-	 * If the parameters(compName, password) that the method gets are incorrect
-	 * or not in the Company Table, The method will throw a
+	 * First the method checks the {@link CredentialCache}, if the customer logged
+	 * in with the same password lately there is no need to go to the DB.</br>
+	 * Otherwise the method sends one SELECT command to the DB to get the customer
+	 * by name (the cust_name column is indexed) and checks the password with
+	 * {@link PasswordHasher}, a plain text password is hashed on the
+	 * way.</br>
+	 * If the name and password are correct, The method sends you back that
+	 * customer, so there is no need to get it again.</br>
+	 * If the parameters(custName, password) that the method gets are incorrect
+	 * or not in the Customer Table, The method returns null.</br>
+	 * If the method fails to check he will throw a
 	 * {@link CouponSystemException}
 	 * 
 	 * @param custName
 	 *            a string of the customer name.
 	 * @param password
 	 *            a string of the customer password.
-	 * @return true if the custName & password are correct or throws a
-	 *         CouponSystemException if they are not.
+	 * @return the Customer object if the custName & password are correct or
+	 *         null if they are not.
 	 */
 	@Override
-	public boolean login(String custName, String password) throws CouponSystemException {
+	public Customer login(String custName, String password) throws CouponSystemException {
+		Customer customer = credentials.verify(custName, password);
+		if (customer != null) {
+			return customer;
+		}
+		long generation = credentials.generation();
 		Connection con = pool.getConnection();
-		boolean exist = false;
+
 		try {
-			String sql = "SELECT * FROM Customer WHERE cust_name = ? AND password = ?";
+			String sql = "SELECT * FROM Customer WHERE cust_name = ?";
 			PreparedStatement stmt = con.prepareStatement(sql);
 			stmt.setString(1, custName);
-			stmt.setString(2, password);
 			ResultSet rs = stmt.executeQuery();
-			exist = rs.next();
+			boolean found = rs.next();
+			if (PasswordHasher.verify(password, found ? rs.getString(3) : null)) {
+				customer = new Customer(rs.getLong(1), rs.getString(2), rs.getString(3));
+				customer.setVersion(rs.getLong(4));
+			}
 			rs.close();
+			if (customer != null && !PasswordHasher.isHashed(customer.getPassword())) {
+				// a plain text password from before hashing, hash it now
+				customer.setPassword(PasswordHasher.hash(password));
+				stmt = con.prepareStatement("UPDATE Customer SET password = ?, version = version + 1 WHERE id = ?");
+				stmt.setString(1, customer.getPassword());
+				stmt.setLong(2, customer.getId());
+				stmt.executeUpdate();
+				customer.setVersion(customer.getVersion() + 1);
+			}
 		} catch (SQLException e) {
-			CouponSystemException couponSysEx = new CouponSystemException("server is down");
+			CouponSystemException couponSysEx = new CouponSystemException("Server is down", e);
 			throw couponSysEx;
 		} finally {
 			if (con != null) {
 				pool.returnConnection(con);
 			}
 		}
-
-		return exist;
+		if (customer != null) {
+			credentials.put(custName, password, customer, generation);
+		}
+		return customer;
 	}
 
 }
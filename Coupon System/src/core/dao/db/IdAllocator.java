@@ -0,0 +1,265 @@
+package core.dao.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import core.bus.EntityType;
+import core.config.CouponSystemConfig;
+import core.exception.CouponSystemException;
+import db.connection_pool.ConnectionPool;
+
+/**
+ * Gives new ids to coupons, customers and companies (hi-lo / block
+ * allocation).</br>
+ * The next free id of each entity is kept in the Id_Sequence Table (see
+ * {@link db.build.MigrationRunner}). Each JVM reserves a block of ids in one
+ * round trip (next_id = next_id + block size) and then hands them out from an
+ * {@link AtomicLong} without going to the DB or taking a lock, only the
+ * thread that finds the block used up reserves the next one.</br>
+ * The blocks are reserved on a connection of their own that commits at once,
+ * so a rolled back transaction never gives its ids to someone else and a
+ * thread in a transaction doesn't wait for a second pool connection.</br>
+ * Ids that were reserved and not used (when the application shuts down) are
+ * skipped, so the ids are unique and growing but not gapless.</br>
+ * The block size of each entity is set in the configuration file
+ * (idAllocator.coupon.blockSize etc, default idAllocator.blockSize), bulk
+ * loaders can reserve a whole range at once with {@link #reserveRange(int)}.</br>
+ * A row that is created with an id of the caller's choice moves the next id
+ * past it with {@link #advancePast(long)}, so that id is never given again.
+ */
+public class IdAllocator {
+	// Attributes
+	private static Map<EntityType, IdAllocator> instances = new EnumMap<>(EntityType.class);
+	private static Lock instanceLock = new ReentrantLock();
+	// the connection of the blocks, shared by all the entities.
+	private static Connection con = null;
+	private static Lock conLock = new ReentrantLock();
+	private EntityType entity;
+	private int blockSize;
+	private volatile Block block = new Block(0, 0);
+	private Lock lock = new ReentrantLock();
+
+	// Private CTOR
+	private IdAllocator(EntityType entity) {
+		this.entity = entity;
+		int defaultSize = CouponSystemConfig.getInt("idAllocator.blockSize", 100);
+		blockSize = Math.max(1, CouponSystemConfig
+				.getInt("idAllocator." + entity.name().toLowerCase() + ".blockSize", defaultSize));
+	}
+
+	/**
+	 * @param entity
+	 *            the entity you want ids for.
+	 * @return the IdAllocator of that entity.
+	 */
+	public static IdAllocator getInstance(EntityType entity) {
+		instanceLock.lock();
+		try {
+			return instances.computeIfAbsent(entity, IdAllocator::new);
+		} finally {
+			instanceLock.unlock();
+		}
+	}
+
+	// Methods
+	/**
+	 * Gives the next id, from the current block or (once every block size
+	 * ids) from a new block.</br>
+	 * If the method fails to reserve a block it will throw an
+	 * {@link CouponSystemException}.
+	 *
+	 * @return a new unique id.
+	 */
+	public long nextId() throws CouponSystemException {
+		while (true) {
+			Block current = block;
+			long id = current.next.getAndIncrement();
+			if (id < current.limit) {
+				return id;
+			}
+			lock.lock();
+			try {
+				// only the first thread that found it used up reserves a block.
+				if (block == current) {
+					long first = reserve(blockSize);
+					block = new Block(first, first + blockSize);
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Reserves a range of ids in one round trip (not taken from the current
+	 * block), used by bulk loaders to create many rows without asking for an
+	 * id per row.</br>
+	 * If the method fails to reserve the range it will throw an
+	 * {@link CouponSystemException}.
+	 *
+	 * @param count
+	 *            the number of ids you want.
+	 * @return the first id of the range, the range is first to first + count -
+	 *         1.
+	 */
+	public long reserveRange(int count) throws CouponSystemException {
+		if (count <= 0) {
+			throw new IllegalArgumentException("count must be positive : " + count);
+		}
+		return reserve(count);
+	}
+
+	/**
+	 * Makes sure that an id the caller chose (not one from this allocator) is
+	 * not given again : the next id in the DB is moved to at least id + 1,
+	 * and the current block is dropped if it holds that id.</br>
+	 * The DB is updated on the connection of the blocks and committed at once
+	 * (also in a transaction), so the sequence row is never locked until
+	 * another transaction ends. If the row with that id is rolled back the
+	 * ids up to it are skipped, like the unused ids of a block.</br>
+	 * <b>Be aware :</b> the blocks that other JVMs already reserved are not
+	 * changed.
+	 *
+	 * @param id
+	 *            the id that was used.
+	 */
+	public void advancePast(long id) throws CouponSystemException {
+		Block current = block;
+		if (id >= current.next.get() && id < current.limit) {
+			lock.lock();
+			try {
+				if (block == current) {
+					block = new Block(0, 0);
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+		try {
+			conLock.lock();
+			try {
+				if (con == null) {
+					con = ConnectionPool.getInstance().openConnection();
+					con.setAutoCommit(false);
+				}
+				try {
+					advance(con, id);
+					con.commit();
+				} catch (SQLException e) {
+					close();
+					throw e;
+				}
+			} finally {
+				conLock.unlock();
+			}
+		} catch (SQLException e) {
+			CouponSystemException couponSysEx = new CouponSystemException(
+					"Failed to move the next " + entity + " id past " + id, e);
+			throw couponSysEx;
+		}
+	}
+
+	/**
+	 * @return the block size of this entity.
+	 */
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	// adds count to the entity's next id in the DB and returns the old one.
+	private long reserve(int count) throws CouponSystemException {
+		conLock.lock();
+		try {
+			if (con == null) {
+				con = ConnectionPool.getInstance().openConnection();
+				con.setAutoCommit(false);
+			}
+			try {
+				PreparedStatement stmt = con
+						.prepareStatement("UPDATE Id_Sequence SET next_id = next_id + ? WHERE entity = ?");
+				stmt.setLong(1, count);
+				stmt.setString(2, entity.name());
+				if (stmt.executeUpdate() == 0) {
+					con.rollback();
+					throw new CouponSystemException(
+							"No " + entity + " row in Id_Sequence, run db.build.MigrationRunner");
+				}
+				stmt.close();
+				stmt = con.prepareStatement("SELECT next_id FROM Id_Sequence WHERE entity = ?");
+				stmt.setString(1, entity.name());
+				ResultSet rs = stmt.executeQuery();
+				rs.next();
+				long next = rs.getLong(1);
+				rs.close();
+				stmt.close();
+				con.commit();
+				return next - count;
+			} catch (SQLException e) {
+				close();
+				throw e;
+			}
+		} catch (SQLException e) {
+			CouponSystemException couponSysEx = new CouponSystemException(
+					"Failed to reserve " + count + " " + entity + " ids", e);
+			throw couponSysEx;
+		} finally {
+			conLock.unlock();
+		}
+	}
+
+	// moves the entity's next id in the DB to id + 1 if it is not past it.
+	private void advance(Connection con, long id) throws SQLException {
+		PreparedStatement stmt = con
+				.prepareStatement("UPDATE Id_Sequence SET next_id = ? WHERE entity = ? AND next_id <= ?");
+		stmt.setLong(1, id + 1);
+		stmt.setString(2, entity.name());
+		stmt.setLong(3, id);
+		stmt.executeUpdate();
+		stmt.close();
+	}
+
+	/**
+	 * Closes the connection of the blocks, the ids left in the blocks are
+	 * not used.
+	 */
+	public static void shutDown() {
+		conLock.lock();
+		try {
+			close();
+		} finally {
+			conLock.unlock();
+		}
+	}
+
+	// rolls back and closes the connection, a new one is opened when needed.
+	private static void close() {
+		if (con == null) {
+			return;
+		}
+		try {
+			con.rollback();
+			con.close();
+		} catch (SQLException e) {
+			System.out.println(e.getMessage());
+		}
+		con = null;
+	}
+
+	// a range of reserved ids, next to limit - 1.
+	private static class Block {
+		private final AtomicLong next;
+		private final long limit;
+
+		private Block(long first, long limit) {
+			this.next = new AtomicLong(first);
+			this.limit = limit;
+		}
+	}
+}
@@ -2,10 +2,26 @@ package core.dao.db;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import core.beans.Company;
 import core.beans.Coupon;
 import core.beans.Customer;
+import core.beans.Purchase;
+import core.beans.PurchaseOutcome;
+import core.bus.ChangeType;
+import core.bus.EntityType;
+import core.bus.InvalidationBus;
 import core.dao.JoinTablesDAO;
 import core.exception.CouponSystemException;
 import db.connection_pool.ConnectionPool;
@@ -24,7 +40,9 @@ import db.connection_pool.ConnectionPool;
 
 public class JoinTablesDBDAO implements JoinTablesDAO {
 	// Attributes
+	private static final int MAX_IN_LIST = 500;
 	private ConnectionPool pool = null;
+	private InvalidationBus bus = InvalidationBus.getInstance();
 
 	// CTOR
 	public JoinTablesDBDAO() {
@@ -163,4 +181,240 @@ public class JoinTablesDBDAO implements JoinTablesDAO {
 		}
 	}
 
+	/**
+	 * This method sends a SELECT command to the DB to get the ids of all the
+	 * customers that have a specific coupon in the Customer Coupon
+	 * Table.</br>
+	 * If the method fails to get the ids he will throw an
+	 * {@link CouponSystemException}.
+	 * 
+	 * @param couponId
+	 *            the coupon id.
+	 * @return A Collection list of the customer ids.
+	 */
+	@Override
+	public Collection<Long> getCustomerIds(long couponId) throws CouponSystemException {
+		Connection con = pool.getConnection();
+		Collection<Long> ids = new ArrayList<>();
+
+		try {
+			String sql = "SELECT cust_id FROM Customer_Coupon WHERE coupon_id = ?";
+			PreparedStatement stmt = con.prepareStatement(sql);
+			stmt.setLong(1, couponId);
+			ResultSet rs = stmt.executeQuery();
+			while (rs.next()) {
+				ids.add(rs.getLong(1));
+			}
+			rs.close();
+		} catch (SQLException e) {
+			CouponSystemException couponSysEx = new CouponSystemException(
+					"Failed to get the Customers of Coupon id : " + couponId, e);
+			throw couponSysEx;
+		} finally {
+			if (con != null) {
+				pool.returnConnection(con);
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * This method buys a list of coupons (of one customer or of many
+	 * customers) in one transaction (see {@link TransactionManager}, it joins
+	 * the transaction of the caller if there is one).</br>
+	 * First it sends one SELECT command to the Coupon Table and one to the
+	 * Customer Coupon Table for all the coupons (instead of a SELECT for every
+	 * coupon) and checks every purchase : the coupon exists, the title
+	 * matches, the customer doesn't have it already, it didn't expire and it is
+	 * in stock.</br>
+	 * Then it sends the UPDATE commands of the amounts (amount = amount - 1
+	 * only if amount > 0, the version is raised) and the INSERT commands of the
+	 * customer coupons in two JDBC batches that are committed together, a coupon that was sold out
+	 * in the meantime by another node is OUT_OF_STOCK.</br>
+	 * If the method fails nothing is saved and it will throw an
+	 * {@link CouponSystemException}.
+	 * 
+	 * @param purchases
+	 *            the purchases, a coupon can be in the list once for each
+	 *            customer (the next ones are ALREADY_OWNED).
+	 * @return the {@link PurchaseOutcome} of every purchase (in the same
+	 *         order).
+	 */
+	@Override
+	public List<PurchaseOutcome> purchaseCoupons(List<Purchase> purchases) throws CouponSystemException {
+		if (purchases.isEmpty()) {
+			return new ArrayList<>();
+		}
+		return TransactionManager.inTransaction(() -> purchase(purchases));
+	}
+
+	// the purchase, in the transaction of the calling thread.
+	private List<PurchaseOutcome> purchase(List<Purchase> purchases) throws CouponSystemException {
+		List<PurchaseOutcome> outcomes = new ArrayList<>(purchases.size());
+		Set<Long> couponIds = new LinkedHashSet<>();
+		Set<Long> customerIds = new LinkedHashSet<>();
+		for (Purchase purchase : purchases) {
+			couponIds.add(purchase.getCoupon().getId());
+			customerIds.add(purchase.getCustomer().getId());
+		}
+		Set<Long> changed = new LinkedHashSet<>();
+		Connection con = pool.getConnection();
+
+		try {
+			Map<Long, Coupon> coupons = getCoupons(con, couponIds);
+			Map<Long, Set<Long>> owned = getOwnedCoupons(con, customerIds, couponIds);
+			Date today = Calendar.getInstance().getTime();
+			List<Integer> accepted = new ArrayList<>();
+			for (Purchase purchase : purchases) {
+				PurchaseOutcome outcome = check(purchase, coupons, owned, today);
+				if (outcome == PurchaseOutcome.PURCHASED) {
+					Coupon coupon = coupons.get(purchase.getCoupon().getId());
+					coupon.setAmount(coupon.getAmount() - 1);
+					owned.computeIfAbsent(purchase.getCustomer().getId(), id -> new HashSet<>()).add(coupon.getId());
+					accepted.add(outcomes.size());
+				}
+				outcomes.add(outcome);
+			}
+			if (accepted.isEmpty()) {
+				return outcomes;
+			}
+
+			String sql = "UPDATE Coupon SET amount = amount - 1, version = version + 1 WHERE id = ? AND amount > 0";
+			PreparedStatement stmt = con.prepareStatement(sql);
+			for (int index : accepted) {
+				stmt.setLong(1, purchases.get(index).getCoupon().getId());
+				stmt.addBatch();
+			}
+			int[] counts = stmt.executeBatch();
+			stmt = con.prepareStatement("INSERT INTO Customer_Coupon VALUES(?, ?)");
+			boolean inserts = false;
+			for (int i = 0; i < counts.length; i++) {
+				int index = accepted.get(i);
+				if (counts[i] == 0) {
+					// sold out by someone else since the SELECT.
+					outcomes.set(index, PurchaseOutcome.OUT_OF_STOCK);
+					continue;
+				}
+				Purchase purchase = purchases.get(index);
+				stmt.setLong(1, purchase.getCustomer().getId());
+				stmt.setLong(2, purchase.getCoupon().getId());
+				stmt.addBatch();
+				changed.add(purchase.getCoupon().getId());
+				inserts = true;
+			}
+			if (inserts) {
+				stmt.executeBatch();
+			}
+
+		} catch (SQLException e) {
+			CouponSystemException couponSysEx = new CouponSystemException(
+					"Purchase of " + purchases.size() + " Coupons Failed ! (nothing was purchased)", e);
+			throw couponSysEx;
+		} finally {
+			if (con != null) {
+				pool.returnConnection(con);
+			}
+		}
+		TransactionManager.afterCommit(() -> {
+			for (long id : changed) {
+				bus.fire(EntityType.COUPON, ChangeType.UPDATED, id);
+			}
+		});
+		return outcomes;
+	}
+
+	// checks one purchase with the coupons and customer coupons from the DB.
+	private static PurchaseOutcome check(Purchase purchase, Map<Long, Coupon> coupons, Map<Long, Set<Long>> owned,
+			Date today) {
+		Coupon coupon = coupons.get(purchase.getCoupon().getId());
+		if (coupon == null) {
+			return PurchaseOutcome.NOT_FOUND;
+		}
+		String title = purchase.getCoupon().getTitle();
+		if (title != null && !title.equals(coupon.getTitle())) {
+			return PurchaseOutcome.TITLE_MISMATCH;
+		}
+		Set<Long> customerCoupons = owned.get(purchase.getCustomer().getId());
+		if (customerCoupons != null && customerCoupons.contains(coupon.getId())) {
+			return PurchaseOutcome.ALREADY_OWNED;
+		}
+		if (today.after(coupon.getEndDate())) {
+			return PurchaseOutcome.EXPIRED;
+		}
+		if (coupon.getAmount() <= 0) {
+			return PurchaseOutcome.OUT_OF_STOCK;
+		}
+		return PurchaseOutcome.PURCHASED;
+	}
+
+	// gets the title, end date & amount of the coupons (one SELECT for every
+	// MAX_IN_LIST coupons).
+	private static Map<Long, Coupon> getCoupons(Connection con, Collection<Long> ids) throws SQLException {
+		Map<Long, Coupon> coupons = new HashMap<>();
+		for (List<Long> chunk : chunks(ids)) {
+			String sql = "SELECT id, title, end_date, amount FROM Coupon WHERE id IN (" + placeholders(chunk.size()) + ")";
+			PreparedStatement stmt = con.prepareStatement(sql);
+			setLongs(stmt, 1, chunk);
+			ResultSet rs = stmt.executeQuery();
+			while (rs.next()) {
+				Coupon coupon = new Coupon(rs.getLong(1), rs.getString(2), null, rs.getDate(3), rs.getInt(4), null, null,
+						0, null);
+				coupons.put(coupon.getId(), coupon);
+			}
+			rs.close();
+		}
+		return coupons;
+	}
+
+	// gets which of the coupons every customer already have.
+	private static Map<Long, Set<Long>> getOwnedCoupons(Connection con, Collection<Long> customerIds,
+			Collection<Long> couponIds) throws SQLException {
+		Map<Long, Set<Long>> owned = new HashMap<>();
+		for (List<Long> customers : chunks(customerIds)) {
+			for (List<Long> coupons : chunks(couponIds)) {
+				String sql = "SELECT cust_id, coupon_id FROM Customer_Coupon WHERE cust_id IN ("
+						+ placeholders(customers.size()) + ") AND coupon_id IN (" + placeholders(coupons.size()) + ")";
+				PreparedStatement stmt = con.prepareStatement(sql);
+				setLongs(stmt, 1, customers);
+				setLongs(stmt, customers.size() + 1, coupons);
+				ResultSet rs = stmt.executeQuery();
+				while (rs.next()) {
+					owned.computeIfAbsent(rs.getLong(1), id -> new HashSet<>()).add(rs.getLong(2));
+				}
+				rs.close();
+			}
+		}
+		return owned;
+	}
+
+	private static List<List<Long>> chunks(Collection<Long> ids) {
+		List<List<Long>> chunks = new ArrayList<>();
+		List<Long> chunk = new ArrayList<>();
+		for (Long id : ids) {
+			if (chunk.size() == MAX_IN_LIST) {
+				chunks.add(chunk);
+				chunk = new ArrayList<>();
+			}
+			chunk.add(id);
+		}
+		if (!chunk.isEmpty()) {
+			chunks.add(chunk);
+		}
+		return chunks;
+	}
+
+	private static String placeholders(int count) {
+		StringBuilder sb = new StringBuilder("?");
+		for (int i = 1; i < count; i++) {
+			sb.append(", ?");
+		}
+		return sb.toString();
+	}
+
+	private static void setLongs(PreparedStatement stmt, int first, List<Long> values) throws SQLException {
+		for (int i = 0; i < values.size(); i++) {
+			stmt.setLong(first + i, values.get(i));
+		}
+	}
+
 }
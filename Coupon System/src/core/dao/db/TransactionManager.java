@@ -0,0 +1,131 @@
+package core.dao.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import core.exception.CouponSystemException;
+import db.connection_pool.ConnectionPool;
+
+/**
+ * Runs a {@link UnitOfWork} in one transaction : all the DAO calls of the
+ * work (on the same thread) use one connection with auto commit off, which is
+ * committed once at the end, or rolled back if the work throws a
+ * {@link CouponSystemException} (or a runtime exception), so a multi step
+ * operation is saved all together or not at all.</br>
+ * A transaction inside a transaction joins the outer one.</br>
+ * Things that should happen only if the data was saved (publishing to the
+ * other nodes) are registered with {@link #afterCommit(Runnable)}, and things
+ * that should happen when the transaction ends either way (evicting a cache
+ * entry that the transaction may have read before it was saved) with
+ * {@link #afterCompletion(Runnable)}.
+ */
+public final class TransactionManager {
+	// Attributes
+	private static ConnectionPool pool = ConnectionPool.getInstance();
+	private static ThreadLocal<List<Hook>> hooks = new ThreadLocal<>();
+
+	// Private CTOR
+	private TransactionManager() {
+	}
+
+	// Methods
+	/**
+	 * Runs the work in a transaction.
+	 * 
+	 * @param work
+	 *            the work, usually a lambda with DAO calls.
+	 * @return the result of the work.
+	 */
+	public static <T> T inTransaction(UnitOfWork<T> work) throws CouponSystemException {
+		if (pool.isInTransaction()) {
+			return work.run();
+		}
+		List<Hook> registered = new ArrayList<>();
+		hooks.set(registered);
+		pool.beginTransaction();
+		boolean committed = false;
+		try {
+			T result = work.run();
+			Connection con = pool.getTransactionConnection();
+			if (con != null) {
+				con.commit();
+			}
+			committed = true;
+			return result;
+		} catch (SQLException e) {
+			throw new CouponSystemException("Commit Failed ! (nothing was saved)", e);
+		} finally {
+			if (!committed) {
+				rollback();
+			}
+			pool.endTransaction();
+			hooks.remove();
+			for (Hook hook : registered) {
+				if (committed || !hook.onlyOnCommit) {
+					try {
+						hook.task.run();
+					} catch (RuntimeException e) {
+						System.out.println("After transaction failed : " + e);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs the hook after the transaction of the calling thread is committed
+	 * (it is dropped on rollback), or at once if there is no transaction.
+	 */
+	public static void afterCommit(Runnable hook) {
+		register(hook, true);
+	}
+
+	/**
+	 * Runs the hook after the transaction of the calling thread is committed
+	 * or rolled back, or at once if there is no transaction.
+	 */
+	public static void afterCompletion(Runnable hook) {
+		register(hook, false);
+	}
+
+	private static void register(Runnable task, boolean onlyOnCommit) {
+		List<Hook> registered = hooks.get();
+		if (registered == null) {
+			task.run();
+		} else {
+			registered.add(new Hook(task, onlyOnCommit));
+		}
+	}
+
+	/**
+	 * @return true if the calling thread is in a transaction.
+	 */
+	public static boolean isInTransaction() {
+		return pool.isInTransaction();
+	}
+
+	private static void rollback() {
+		Connection con = pool.getTransactionConnection();
+		if (con != null) {
+			try {
+				con.rollback();
+			} catch (SQLException e) {
+				System.out.println(e.getMessage());
+			}
+		}
+	}
+
+	// a task to run when the transaction ends.
+	private static class Hook {
+		private Runnable task;
+		private boolean onlyOnCommit;
+
+		Hook(Runnable task, boolean onlyOnCommit) {
+			this.task = task;
+			this.onlyOnCommit = onlyOnCommit;
+		}
+	}
+
+}
@@ -0,0 +1,14 @@
+package core.dao.db;
+
+import core.exception.CouponSystemException;
+
+/**
+ * Work that runs in one transaction (see {@link TransactionManager}).
+ * 
+ * @param <T>
+ *            the result of the work (Void for no result).
+ */
+@FunctionalInterface
+public interface UnitOfWork<T> {
+	T run() throws CouponSystemException;
+}
@@ -0,0 +1,195 @@
+package core.dao.filter;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A counting Bloom filter of longs and Strings.</br>
+ * {@link #mightContain} never answers false for a value that was added (and
+ * not removed), but it may answer true for a value that was never added (a
+ * false positive).</br>
+ * Each position holds a small counter instead of a bit, so values can also be
+ * removed. A counter that reaches 255 stays there and is never removed.</br>
+ * The filter size is calculated from the expected number of values and the
+ * false positive rate you want.</br>
+ * The counters are written under the write lock and read under the read
+ * lock, so a lookup always sees the values that were added before it (a
+ * lookup without a lock could miss them and answer a false negative).
+ */
+public class CountingBloomFilter {
+	// Attributes
+	private static final int MAX_COUNT = 0xFF;
+	private byte[] counters;
+	private int hashes;
+	private long expectedValues;
+	private double falsePositiveRate;
+	private long values = 0;
+	private ReadWriteLock lock = new ReentrantReadWriteLock();
+	private Lock readLock = lock.readLock();
+	private Lock writeLock = lock.writeLock();
+
+	// CTOR
+	/**
+	 * @param expectedValues
+	 *            the number of values you expect to put in the filter.
+	 * @param falsePositiveRate
+	 *            the false positive rate you want when the filter holds that
+	 *            number of values (for example 0.01).
+	 */
+	public CountingBloomFilter(long expectedValues, double falsePositiveRate) {
+		this.expectedValues = Math.max(expectedValues, 1);
+		this.falsePositiveRate = falsePositiveRate;
+		double ln2 = Math.log(2);
+		long size = (long) Math.ceil(-this.expectedValues * Math.log(falsePositiveRate) / (ln2 * ln2));
+		size = Math.max(64, Math.min(size, Integer.MAX_VALUE - 8));
+		counters = new byte[(int) size];
+		hashes = (int) Math.max(1, Math.round((double) size / this.expectedValues * ln2));
+	}
+
+	// Methods
+	public void add(long value) {
+		addHash(hash(value));
+	}
+
+	public void add(String value) {
+		addHash(hash(value));
+	}
+
+	public void remove(long value) {
+		removeHash(hash(value));
+	}
+
+	public void remove(String value) {
+		removeHash(hash(value));
+	}
+
+	/**
+	 * @return false if the value is surely not in the filter, true if it might
+	 *         be in it.
+	 */
+	public boolean mightContain(long value) {
+		return mightContainHash(hash(value));
+	}
+
+	/**
+	 * @return false if the value is surely not in the filter, true if it might
+	 *         be in it.
+	 */
+	public boolean mightContain(String value) {
+		return value != null && mightContainHash(hash(value));
+	}
+
+	/**
+	 * @return the number of values in the filter.
+	 */
+	public long size() {
+		readLock.lock();
+		try {
+			return values;
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * @return the bytes the filter counters take.
+	 */
+	public long memoryBytes() {
+		return counters.length;
+	}
+
+	/**
+	 * @return the false positive rate expected with the current number of
+	 *         values in the filter.
+	 */
+	public double currentFalsePositiveRate() {
+		return Math.pow(1 - Math.exp(-(double) hashes * size() / counters.length), hashes);
+	}
+
+	@Override
+	public String toString() {
+		return "CountingBloomFilter [values=" + size() + ", expectedValues=" + expectedValues
+				+ ", configuredFalsePositiveRate=" + falsePositiveRate + ", currentFalsePositiveRate="
+				+ String.format("%.6f", currentFalsePositiveRate()) + ", hashes=" + hashes + ", memoryBytes="
+				+ memoryBytes() + "]";
+	}
+
+	private void addHash(long hash) {
+		writeLock.lock();
+		try {
+			for (int i = 0; i < hashes; i++) {
+				int position = position(hash, i);
+				int count = counters[position] & 0xFF;
+				if (count < MAX_COUNT) {
+					counters[position] = (byte) (count + 1);
+				}
+			}
+			values++;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	private void removeHash(long hash) {
+		writeLock.lock();
+		try {
+			if (!containsHash(hash)) {
+				// was never added, removing it would break other values.
+				return;
+			}
+			for (int i = 0; i < hashes; i++) {
+				int position = position(hash, i);
+				int count = counters[position] & 0xFF;
+				if (count < MAX_COUNT) {
+					counters[position] = (byte) (count - 1);
+				}
+			}
+			values--;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	private boolean mightContainHash(long hash) {
+		readLock.lock();
+		try {
+			return containsHash(hash);
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	// checks the counters, the caller holds a lock.
+	private boolean containsHash(long hash) {
+		for (int i = 0; i < hashes; i++) {
+			if (counters[position(hash, i)] == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// the i-th position out of two 32 bit halves of the hash (double hashing).
+	private int position(long hash, int i) {
+		int combined = (int) hash + i * (int) (hash >>> 32);
+		return (combined & Integer.MAX_VALUE) % counters.length;
+	}
+
+	private static long hash(long value) {
+		value ^= value >>> 33;
+		value *= 0xff51afd7ed558ccdL;
+		value ^= value >>> 33;
+		value *= 0xc4ceb9fe1a85ec53L;
+		value ^= value >>> 33;
+		return value;
+	}
+
+	private static long hash(String value) {
+		long h = 0x9E3779B97F4A7C15L;
+		for (int i = 0; i < value.length(); i++) {
+			h = (h ^ value.charAt(i)) * 0x100000001B3L;
+		}
+		return hash(h);
+	}
+}
@@ -0,0 +1,196 @@
+package core.dao.filter;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import core.beans.Coupon;
+import core.beans.CouponType;
+import core.bus.ChangeType;
+import core.bus.EntityChangeEvent;
+import core.bus.EntityType;
+import core.bus.InvalidationListener;
+import core.dao.CouponColumn;
+import core.dao.CouponDAO;
+import core.dao.db.TransactionManager;
+import core.exception.CouponSystemException;
+import core.report.CouponColumnStore;
+
+/**
+ * This class implements {@linkplain CouponDAO} on top of another CouponDAO and
+ * two {@link CountingBloomFilter}s : one of the coupon ids and one of the
+ * coupon titles.</br>
+ * When the filter says an id or a title is surely not in the Coupon Table the
+ * answer is given right away, without taking a connection or sending a query
+ * to the DB.</br>
+ * The filters are built from the DB on creation and are kept up to date on
+ * every create, update and remove (including the expired coupons that the
+ * Daily Task removes) and on the changes of other nodes (see
+ * {@link InvalidationListener}).
+ */
+public class FilteredCouponDAO implements CouponDAO, InvalidationListener {
+	// Attributes
+	private CouponDAO dao = null;
+	private CountingBloomFilter ids = null;
+	private CountingBloomFilter titles = null;
+	private AtomicLong filteredLookups = new AtomicLong();
+	private AtomicLong passedLookups = new AtomicLong();
+
+	// CTOR
+	/**
+	 * @param dao
+	 *            the CouponDAO that the lookups that pass the filter are sent
+	 *            to.
+	 * @param expectedCoupons
+	 *            the number of coupons the filters are sized for.
+	 * @param falsePositiveRate
+	 *            the false positive rate of each filter at that size.
+	 */
+	public FilteredCouponDAO(CouponDAO dao, long expectedCoupons, double falsePositiveRate)
+			throws CouponSystemException {
+		this.dao = dao;
+		CouponColumnStore coupons = dao.getCouponColumns();
+		long size = Math.max(expectedCoupons, coupons.size());
+		ids = new CountingBloomFilter(size, falsePositiveRate);
+		titles = new CountingBloomFilter(size, falsePositiveRate);
+		for (int row = 0; row < coupons.size(); row++) {
+			ids.add(coupons.getId(row));
+			titles.add(coupons.getTitle(row));
+		}
+		System.out.println("Coupon filter built : " + getStatistics());
+	}
+
+	// Methods
+	@Override
+	public void createCoupon(Coupon coupon) throws CouponSystemException {
+		// added before the insert so a concurrent lookup never misses it.
+		ids.add(coupon.getId());
+		titles.add(coupon.getTitle());
+		try {
+			dao.createCoupon(coupon);
+		} catch (CouponSystemException e) {
+			ids.remove(coupon.getId());
+			titles.remove(coupon.getTitle());
+			throw e;
+		}
+	}
+
+	@Override
+	public void removeCoupon(Coupon coupon) throws CouponSystemException {
+		// removes the values that are stored in the DB (the coupon object may
+		// have a different title), a coupon that is not there is not removed
+		// from the filters.
+		Coupon stored = findStored(coupon.getId());
+		dao.removeCoupon(coupon);
+		if (stored != null) {
+			// only if the remove is committed.
+			TransactionManager.afterCommit(() -> {
+				ids.remove(stored.getId());
+				titles.remove(stored.getTitle());
+			});
+		}
+	}
+
+	@Override
+	public void updateCoupon(Coupon coupon) throws CouponSystemException {
+		updateCoupon(coupon, EnumSet.allOf(CouponColumn.class));
+	}
+
+	@Override
+	public void updateCoupon(Coupon coupon, Set<CouponColumn> columns) throws CouponSystemException {
+		if (!columns.contains(CouponColumn.TITLE)) {
+			// the title filter doesn't change.
+			dao.updateCoupon(coupon, columns);
+			return;
+		}
+		Coupon stored = findStored(coupon.getId());
+		titles.add(coupon.getTitle());
+		dao.updateCoupon(coupon, columns);
+		if (stored != null) {
+			TransactionManager.afterCommit(() -> titles.remove(stored.getTitle()));
+		}
+	}
+
+	@Override
+	public Coupon getCoupon(long id) throws CouponSystemException {
+		if (!ids.mightContain(id)) {
+			filteredLookups.incrementAndGet();
+			throw new CouponSystemException("Coupon " + id + " not found");
+		}
+		passedLookups.incrementAndGet();
+		return dao.getCoupon(id);
+	}
+
+	@Override
+	public boolean titleExists(String title) throws CouponSystemException {
+		if (!titles.mightContain(title)) {
+			filteredLookups.incrementAndGet();
+			return false;
+		}
+		passedLookups.incrementAndGet();
+		return dao.titleExists(title);
+	}
+
+	@Override
+	public Collection<Coupon> getAllCoupons() throws CouponSystemException {
+		return dao.getAllCoupons();
+	}
+
+	@Override
+	public Collection<Coupon> getCouponByType(CouponType type) throws CouponSystemException {
+		return dao.getCouponByType(type);
+	}
+
+	@Override
+	public CouponColumnStore getCouponColumns() throws CouponSystemException {
+		return dao.getCouponColumns();
+	}
+
+	/**
+	 * Adds a coupon that was created or updated on another node to the
+	 * filters. The id of a removed coupon is removed (its old title stays,
+	 * which can only add a false positive).
+	 */
+	@Override
+	public void onChange(EntityChangeEvent event) {
+		if (event.getEntityType() != EntityType.COUPON) {
+			return;
+		}
+		if (event.getChangeType() == ChangeType.REMOVED) {
+			ids.remove(event.getId());
+			return;
+		}
+		try {
+			Coupon coupon = dao.getCoupon(event.getId());
+			if (event.getChangeType() == ChangeType.CREATED || !ids.mightContain(coupon.getId())) {
+				ids.add(coupon.getId());
+			}
+			titles.add(coupon.getTitle());
+		} catch (CouponSystemException e) {
+			System.out.println("Coupon filter didn't get coupon " + event.getId() + " : " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @return a String with the size, memory and false positive rate of the
+	 *         filters and how many lookups were answered by them.
+	 */
+	public String getStatistics() {
+		return "ids=" + ids + ", titles=" + titles + ", filteredLookups=" + filteredLookups.get()
+				+ ", passedLookups=" + passedLookups.get();
+	}
+
+	// the coupon as it is stored in the DB or null if it is not there.
+	private Coupon findStored(long id) {
+		if (!ids.mightContain(id)) {
+			return null;
+		}
+		try {
+			return dao.getCoupon(id);
+		} catch (CouponSystemException e) {
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,310 @@
+package core.dao.journal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import core.thread.Threads;
+
+/**
+ * An append-only journal file of the journal storage engine
+ * (dao.engine=journal).</br>
+ * The records are appended to a memory buffer and a single writer thread
+ * writes the buffer to the current segment file through a
+ * {@link FileChannel} and forces it to the disk, so many records share one
+ * write and one fsync (group commit) :</br>
+ * <b>group</b> : the writer writes as soon as there are records and
+ * {@link #sync(long)} waits until the record is on the disk.</br>
+ * <b>interval</b> : the writer writes every intervalMillis and
+ * {@link #sync(long)} doesn't wait, a crash may lose the records of the last
+ * interval.</br>
+ * The journal is split into numbered segment files (journal-N.log),
+ * {@link #rotate()} starts a new segment so the old ones can be removed after
+ * a snapshot.
+ */
+public class Journal implements Closeable {
+	// Attributes
+	private static final String SEGMENT_PREFIX = "journal-";
+	private static final String SEGMENT_SUFFIX = ".log";
+	private static final int BUFFER_SIZE = 1 << 16;
+	private File dir;
+	private boolean group;
+	private long intervalNanos;
+	private FileChannel channel;
+	private ByteBuffer pending = ByteBuffer.allocate(BUFFER_SIZE);
+	private ByteBuffer spare = ByteBuffer.allocate(BUFFER_SIZE);
+	// bytes appended & bytes on the disk since the journal was opened.
+	private long appended = 0;
+	private long synced = 0;
+	private long segment;
+	// rotations asked for & rotations done, a rotate() that comes while the
+	// writer is writing waits for the next rotation.
+	private long rotationsRequested = 0;
+	private long rotationsDone = 0;
+	private boolean closed = false;
+	private IOException failure = null;
+	private Lock lock = new ReentrantLock();
+	private Condition hasPending = lock.newCondition();
+	private Condition hasSynced = lock.newCondition();
+	private Thread writer;
+
+	// CTOR
+	/**
+	 * Opens a new segment to append to.
+	 *
+	 * @param dir
+	 *            the directory of the segment files.
+	 * @param segment
+	 *            the number of the new segment.
+	 * @param group
+	 *            true for group fsync, false for fsync every intervalMillis.
+	 * @param intervalMillis
+	 *            the time between writes when group is false.
+	 */
+	public Journal(File dir, long segment, boolean group, long intervalMillis) throws IOException {
+		this.dir = dir;
+		this.segment = segment;
+		this.group = group;
+		this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, intervalMillis));
+		channel = open(segment);
+		writer = Threads.newThread("Journal-writer", this::writeLoop);
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	// Methods
+	/**
+	 * @return the segment file of that number.
+	 */
+	public static File segmentFile(File dir, long segment) {
+		return new File(dir, String.format("%s%010d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+	}
+
+	/**
+	 * @return the numbers of the segment files in that directory, in order.
+	 */
+	public static long[] listSegments(File dir) {
+		String[] names = dir.list();
+		if (names == null) {
+			return new long[0];
+		}
+		long[] segments = new long[names.length];
+		int count = 0;
+		for (String name : names) {
+			if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+				try {
+					segments[count] = Long.parseLong(
+							name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+					count++;
+				} catch (NumberFormatException e) {
+					// not a segment.
+				}
+			}
+		}
+		segments = Arrays.copyOf(segments, count);
+		Arrays.sort(segments);
+		return segments;
+	}
+
+	private FileChannel open(long segment) throws IOException {
+		return FileChannel.open(segmentFile(dir, segment).toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * Appends a record (see {@link JournalCodec}), it is written to the disk
+	 * by the writer thread.
+	 *
+	 * @return the position after the record, for {@link #sync(long)}.
+	 */
+	public long append(byte[] record) throws IOException {
+		lock.lock();
+		try {
+			if (failure != null) {
+				throw failure;
+			}
+			if (closed) {
+				throw new IOException("The journal is closed");
+			}
+			if (pending.remaining() < record.length) {
+				ByteBuffer bigger = ByteBuffer
+						.allocate(Math.max(pending.capacity() * 2, pending.position() + record.length));
+				pending.flip();
+				bigger.put(pending);
+				pending = bigger;
+			}
+			pending.put(record);
+			appended += record.length;
+			if (group) {
+				hasPending.signal();
+			}
+			return appended;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * In group mode waits until the records up to that position are on the
+	 * disk, in interval mode returns at once.
+	 */
+	public void sync(long position) throws IOException {
+		if (!group) {
+			return;
+		}
+		lock.lock();
+		try {
+			while (synced < position && failure == null) {
+				hasSynced.awaitUninterruptibly();
+			}
+			if (failure != null) {
+				throw failure;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Writes the records that were appended so far to the current segment and
+	 * starts a new segment for the next records.
+	 *
+	 * @return the number of the new segment.
+	 */
+	public long rotate() throws IOException {
+		lock.lock();
+		try {
+			long rotation = ++rotationsRequested;
+			hasPending.signal();
+			while (rotationsDone < rotation && failure == null) {
+				hasSynced.awaitUninterruptibly();
+			}
+			if (failure != null) {
+				throw failure;
+			}
+			return segment;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the bytes appended since the journal was opened.
+	 */
+	public long getAppendedBytes() {
+		lock.lock();
+		try {
+			return appended;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Writes the records that are left and closes the segment.
+	 */
+	@Override
+	public void close() throws IOException {
+		lock.lock();
+		try {
+			closed = true;
+			hasPending.signal();
+		} finally {
+			lock.unlock();
+		}
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	// the writer thread : takes the pending records, writes & forces them.
+	private void writeLoop() {
+		boolean stop = false;
+		while (!stop) {
+			ByteBuffer batch;
+			long end;
+			long rotation;
+			boolean rotate;
+			lock.lock();
+			try {
+				long deadline = System.nanoTime() + intervalNanos;
+				while (!closed && rotationsDone == rotationsRequested) {
+					long left = deadline - System.nanoTime();
+					if (pending.position() > 0 && (group || left <= 0)) {
+						break;
+					}
+					if (group) {
+						hasPending.awaitUninterruptibly();
+					} else if (left <= 0) {
+						deadline = System.nanoTime() + intervalNanos;
+					} else {
+						try {
+							hasPending.awaitNanos(left);
+						} catch (InterruptedException e) {
+							// only close() stops the writer.
+						}
+					}
+				}
+				batch = pending;
+				pending = spare;
+				end = appended;
+				rotation = rotationsRequested;
+				rotate = rotation > rotationsDone;
+				stop = closed;
+			} finally {
+				lock.unlock();
+			}
+			IOException error = null;
+			long next = segment;
+			try {
+				batch.flip();
+				if (batch.hasRemaining()) {
+					while (batch.hasRemaining()) {
+						channel.write(batch);
+					}
+					channel.force(false);
+				}
+				if (rotate || stop) {
+					channel.close();
+				}
+				if (rotate && !stop) {
+					next = segment + 1;
+					channel = open(next);
+				}
+			} catch (IOException e) {
+				System.out.println("Journal write failed : " + e.getMessage());
+				error = e;
+				stop = true;
+			}
+			lock.lock();
+			try {
+				batch.clear();
+				spare = batch;
+				if (error != null) {
+					failure = error;
+				} else {
+					synced = end;
+					segment = next;
+					rotationsDone = rotation;
+				}
+				hasSynced.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+}
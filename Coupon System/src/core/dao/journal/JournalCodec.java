@@ -0,0 +1,287 @@
+package core.dao.journal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Date;
+import java.util.zip.CRC32;
+
+import core.beans.Company;
+import core.beans.Coupon;
+import core.beans.CouponType;
+import core.beans.Customer;
+import core.dao.memory.MemoryStore;
+
+/**
+ * The records of the journal and snapshot files.</br>
+ * A record holds the state of one row after a change (not the change
+ * itself), so replaying the records in order always ends with the last
+ * state, and a record that is replayed twice does no harm.</br>
+ * <b>Record layout :</b> payload length (int), CRC32 of the payload (int) and
+ * the payload : the record type (byte) and its fields. A record that is cut
+ * in the middle (a crash while writing) or has a wrong CRC ends the file.
+ */
+public final class JournalCodec {
+	// Attributes
+	public static final byte COUPON = 1, COUPON_REMOVED = 2, CUSTOMER = 3, CUSTOMER_REMOVED = 4, COMPANY = 5,
+			COMPANY_REMOVED = 6, CUSTOMER_COUPON = 7, COMPANY_COUPON = 8, COUPON_CUSTOMERS = 9,
+			COUPON_COMPANIES = 10, SNAPSHOT_END = 11;
+	private static final int HEADER_SIZE = 8;
+	private static final int MAX_PAYLOAD = 1 << 26;
+
+	// CTOR
+	private JournalCodec() {
+	}
+
+	// Methods
+	/**
+	 * @return a record of the state of a coupon.
+	 */
+	public static byte[] coupon(Coupon coupon) throws IOException {
+		Writer out = new Writer(COUPON);
+		out.writeLong(coupon.getId());
+		writeString(out, coupon.getTitle());
+		writeDate(out, coupon.getStartDate());
+		writeDate(out, coupon.getEndDate());
+		out.writeInt(coupon.getAmount());
+		writeString(out, coupon.getType() == null ? null : coupon.getType().name());
+		writeString(out, coupon.getMessage());
+		out.writeDouble(coupon.getPrice());
+		writeString(out, coupon.getImage());
+		out.writeLong(coupon.getVersion());
+		return out.toRecord();
+	}
+
+	/**
+	 * @return a record of the state of a customer (with the password hash).
+	 */
+	public static byte[] customer(Customer customer) throws IOException {
+		Writer out = new Writer(CUSTOMER);
+		out.writeLong(customer.getId());
+		writeString(out, customer.getCustName());
+		writeString(out, customer.getPassword());
+		out.writeLong(customer.getVersion());
+		return out.toRecord();
+	}
+
+	/**
+	 * @return a record of the state of a company (with the password hash).
+	 */
+	public static byte[] company(Company company) throws IOException {
+		Writer out = new Writer(COMPANY);
+		out.writeLong(company.getId());
+		writeString(out, company.getCompName());
+		writeString(out, company.getPassword());
+		writeString(out, company.getEmail());
+		out.writeLong(company.getVersion());
+		return out.toRecord();
+	}
+
+	/**
+	 * @param type
+	 *            COUPON_REMOVED, CUSTOMER_REMOVED or COMPANY_REMOVED.
+	 * @return a record of a row that doesn't exist.
+	 */
+	public static byte[] removed(byte type, long id) throws IOException {
+		Writer out = new Writer(type);
+		out.writeLong(id);
+		return out.toRecord();
+	}
+
+	/**
+	 * @param type
+	 *            CUSTOMER_COUPON or COMPANY_COUPON.
+	 * @return a record of whether the owner has that coupon.
+	 */
+	public static byte[] owner(byte type, long ownerId, long couponId, boolean owned) throws IOException {
+		Writer out = new Writer(type);
+		out.writeLong(ownerId);
+		out.writeLong(couponId);
+		out.writeBoolean(owned);
+		return out.toRecord();
+	}
+
+	/**
+	 * @param type
+	 *            COUPON_CUSTOMERS or COUPON_COMPANIES.
+	 * @return a record of all the owners of a coupon.
+	 */
+	public static byte[] owners(byte type, long couponId, long[] ownerIds) throws IOException {
+		Writer out = new Writer(type);
+		out.writeLong(couponId);
+		out.writeInt(ownerIds.length);
+		for (long ownerId : ownerIds) {
+			out.writeLong(ownerId);
+		}
+		return out.toRecord();
+	}
+
+	/**
+	 * @return the last record of a snapshot, with the number of records before
+	 *         it.
+	 */
+	public static byte[] snapshotEnd(long records) throws IOException {
+		Writer out = new Writer(SNAPSHOT_END);
+		out.writeLong(records);
+		return out.toRecord();
+	}
+
+	/**
+	 * Reads one record and applies it to the store.
+	 *
+	 * @return the record type, or 0 at the end of the input.
+	 * @throws EOFException
+	 *             if the record is cut in the middle.
+	 * @throws IOException
+	 *             if the record is corrupt.
+	 */
+	public static byte apply(DataInputStream in, MemoryStore store) throws IOException {
+		int first = in.read();
+		if (first < 0) {
+			return 0;
+		}
+		int length = (first << 24) | (in.readUnsignedByte() << 16) | (in.readUnsignedByte() << 8)
+				| in.readUnsignedByte();
+		int crc = in.readInt();
+		if (length <= 0 || length > MAX_PAYLOAD) {
+			throw new IOException("Bad journal record length " + length);
+		}
+		byte[] payload = new byte[length];
+		in.readFully(payload);
+		CRC32 check = new CRC32();
+		check.update(payload, 0, length);
+		if ((int) check.getValue() != crc) {
+			throw new IOException("Bad journal record CRC");
+		}
+		DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+		byte type = record.readByte();
+		switch (type) {
+		case COUPON:
+			store.restoreCoupon(readCoupon(record));
+			break;
+		case CUSTOMER:
+			Customer customer = new Customer(record.readLong(), readString(record), readString(record));
+			customer.setVersion(record.readLong());
+			store.restoreCustomer(customer);
+			break;
+		case COMPANY:
+			Company company = new Company(record.readLong(), readString(record), readString(record),
+					readString(record));
+			company.setVersion(record.readLong());
+			store.restoreCompany(company);
+			break;
+		case COUPON_REMOVED:
+			store.forgetCoupon(record.readLong());
+			break;
+		case CUSTOMER_REMOVED:
+			store.forgetCustomer(record.readLong());
+			break;
+		case COMPANY_REMOVED:
+			store.forgetCompany(record.readLong());
+			break;
+		case CUSTOMER_COUPON:
+			store.restoreCustomerCoupon(record.readLong(), record.readLong(), record.readBoolean());
+			break;
+		case COMPANY_COUPON:
+			store.restoreCompanyCoupon(record.readLong(), record.readLong(), record.readBoolean());
+			break;
+		case COUPON_CUSTOMERS:
+			long couponId = record.readLong();
+			store.restoreCouponCustomers(couponId, readIds(record));
+			break;
+		case COUPON_COMPANIES:
+			couponId = record.readLong();
+			store.restoreCouponCompanies(couponId, readIds(record));
+			break;
+		case SNAPSHOT_END:
+			break;
+		default:
+			throw new IOException("Unknown journal record type " + type);
+		}
+		return type;
+	}
+
+	private static Coupon readCoupon(DataInputStream in) throws IOException {
+		long id = in.readLong();
+		String title = readString(in);
+		Date startDate = readDate(in);
+		Date endDate = readDate(in);
+		int amount = in.readInt();
+		String type = readString(in);
+		String message = readString(in);
+		double price = in.readDouble();
+		String image = readString(in);
+		Coupon coupon = new Coupon(id, title, startDate, endDate, amount,
+				type == null ? null : CouponType.valueOf(type), message, price, image);
+		coupon.setVersion(in.readLong());
+		return coupon;
+	}
+
+	private static long[] readIds(DataInputStream in) throws IOException {
+		long[] ids = new long[in.readInt()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = in.readLong();
+		}
+		return ids;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private static void writeDate(DataOutputStream out, Date date) throws IOException {
+		out.writeBoolean(date != null);
+		if (date != null) {
+			out.writeLong(date.getTime());
+		}
+	}
+
+	private static Date readDate(DataInputStream in) throws IOException {
+		return in.readBoolean() ? new Date(in.readLong()) : null;
+	}
+
+	// writes a payload and frames it with its length & CRC.
+	private static class Writer extends DataOutputStream {
+		private ByteArrayOutputStream bytes;
+
+		private Writer(byte type) throws IOException {
+			this(new ByteArrayOutputStream(64));
+			writeInt(0);
+			writeInt(0);
+			writeByte(type);
+		}
+
+		private Writer(ByteArrayOutputStream bytes) {
+			super(bytes);
+			this.bytes = bytes;
+		}
+
+		private byte[] toRecord() {
+			byte[] record = bytes.toByteArray();
+			int length = record.length - HEADER_SIZE;
+			CRC32 crc = new CRC32();
+			crc.update(record, HEADER_SIZE, length);
+			putInt(record, 0, length);
+			putInt(record, 4, (int) crc.getValue());
+			return record;
+		}
+
+		private static void putInt(byte[] bytes, int offset, int value) {
+			bytes[offset] = (byte) (value >>> 24);
+			bytes[offset + 1] = (byte) (value >>> 16);
+			bytes[offset + 2] = (byte) (value >>> 8);
+			bytes[offset + 3] = (byte) value;
+		}
+	}
+
+}
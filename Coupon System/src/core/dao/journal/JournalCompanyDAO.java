@@ -0,0 +1,72 @@
+package core.dao.journal;
+
+import java.util.Collection;
+import java.util.Set;
+
+import core.beans.Company;
+import core.beans.Coupon;
+import core.dao.CompanyColumn;
+import core.dao.CompanyDAO;
+import core.exception.CouponSystemException;
+
+/**
+ * This class implements {@linkplain CompanyDAO} on top of a memory CompanyDAO
+ * and a {@link JournalStore}, see {@link JournalCouponDAO}.
+ */
+public class JournalCompanyDAO implements CompanyDAO {
+	// Attributes
+	private CompanyDAO dao;
+	private JournalStore journal;
+
+	// CTOR
+	public JournalCompanyDAO(CompanyDAO dao, JournalStore journal) {
+		this.dao = dao;
+		this.journal = journal;
+	}
+
+	// Methods
+	@Override
+	public void createCompany(Company company) throws CouponSystemException {
+		dao.createCompany(company);
+		journal.sync(journal.logCompany(company.getId()));
+	}
+
+	@Override
+	public void removeCompany(Company company) throws CouponSystemException {
+		dao.removeCompany(company);
+		journal.sync(journal.logCompany(company.getId()));
+	}
+
+	@Override
+	public void updateCompany(Company company) throws CouponSystemException {
+		dao.updateCompany(company);
+		journal.sync(journal.logCompany(company.getId()));
+	}
+
+	@Override
+	public void updateCompany(Company company, Set<CompanyColumn> columns) throws CouponSystemException {
+		dao.updateCompany(company, columns);
+		journal.sync(journal.logCompany(company.getId()));
+	}
+
+	@Override
+	public Company getCompany(long id) throws CouponSystemException {
+		return dao.getCompany(id);
+	}
+
+	@Override
+	public Collection<Company> getAllCompanies() throws CouponSystemException {
+		return dao.getAllCompanies();
+	}
+
+	@Override
+	public Collection<Coupon> getCouppons(Company company) throws CouponSystemException {
+		return dao.getCouppons(company);
+	}
+
+	@Override
+	public Company login(String compName, String password) throws CouponSystemException {
+		return dao.login(compName, password);
+	}
+
+}
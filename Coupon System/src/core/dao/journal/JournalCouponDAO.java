@@ -0,0 +1,79 @@
+package core.dao.journal;
+
+import java.util.Collection;
+import java.util.Set;
+
+import core.beans.Coupon;
+import core.beans.CouponType;
+import core.dao.CouponColumn;
+import core.dao.CouponDAO;
+import core.exception.CouponSystemException;
+import core.report.CouponColumnStore;
+
+/**
+ * This class implements {@linkplain CouponDAO} on top of a memory CouponDAO
+ * and a {@link JournalStore} : after every change the new state of the
+ * coupon is written to the journal, the reads go to the memory DAO.
+ */
+public class JournalCouponDAO implements CouponDAO {
+	// Attributes
+	private CouponDAO dao;
+	private JournalStore journal;
+
+	// CTOR
+	public JournalCouponDAO(CouponDAO dao, JournalStore journal) {
+		this.dao = dao;
+		this.journal = journal;
+	}
+
+	// Methods
+	@Override
+	public void createCoupon(Coupon coupon) throws CouponSystemException {
+		dao.createCoupon(coupon);
+		journal.sync(journal.logCoupon(coupon.getId()));
+	}
+
+	@Override
+	public void removeCoupon(Coupon coupon) throws CouponSystemException {
+		dao.removeCoupon(coupon);
+		journal.sync(journal.logCoupon(coupon.getId()));
+	}
+
+	@Override
+	public void updateCoupon(Coupon coupon) throws CouponSystemException {
+		dao.updateCoupon(coupon);
+		journal.sync(journal.logCoupon(coupon.getId()));
+	}
+
+	@Override
+	public void updateCoupon(Coupon coupon, Set<CouponColumn> columns) throws CouponSystemException {
+		dao.updateCoupon(coupon, columns);
+		journal.sync(journal.logCoupon(coupon.getId()));
+	}
+
+	@Override
+	public Coupon getCoupon(long id) throws CouponSystemException {
+		return dao.getCoupon(id);
+	}
+
+	@Override
+	public boolean titleExists(String title) throws CouponSystemException {
+		return dao.titleExists(title);
+	}
+
+	@Override
+	public Collection<Coupon> getAllCoupons() throws CouponSystemException {
+		return dao.getAllCoupons();
+	}
+
+	@Override
+	public Collection<Coupon> getCouponByType(CouponType type) throws CouponSystemException {
+		return dao.getCouponByType(type);
+	}
+
+	@Override
+	public CouponColumnStore getCouponColumns() throws CouponSystemException {
+		return dao.getCouponColumns();
+	}
+
+}
@@ -0,0 +1,72 @@
+package core.dao.journal;
+
+import java.util.Collection;
+import java.util.Set;
+
+import core.beans.Coupon;
+import core.beans.Customer;
+import core.dao.CustomerColumn;
+import core.dao.CustomerDAO;
+import core.exception.CouponSystemException;
+
+/**
+ * This class implements {@linkplain CustomerDAO} on top of a memory
+ * CustomerDAO and a {@link JournalStore}, see {@link JournalCouponDAO}.
+ */
+public class JournalCustomerDAO implements CustomerDAO {
+	// Attributes
+	private CustomerDAO dao;
+	private JournalStore journal;
+
+	// CTOR
+	public JournalCustomerDAO(CustomerDAO dao, JournalStore journal) {
+		this.dao = dao;
+		this.journal = journal;
+	}
+
+	// Methods
+	@Override
+	public void createCustomer(Customer customer) throws CouponSystemException {
+		dao.createCustomer(customer);
+		journal.sync(journal.logCustomer(customer.getId()));
+	}
+
+	@Override
+	public void removeCustomer(Customer customer) throws CouponSystemException {
+		dao.removeCustomer(customer);
+		journal.sync(journal.logCustomer(customer.getId()));
+	}
+
+	@Override
+	public void updateCustomer(Customer customer) throws CouponSystemException {
+		dao.updateCustomer(customer);
+		journal.sync(journal.logCustomer(customer.getId()));
+	}
+
+	@Override
+	public void updateCustomer(Customer customer, Set<CustomerColumn> columns) throws CouponSystemException {
+		dao.updateCustomer(customer, columns);
+		journal.sync(journal.logCustomer(customer.getId()));
+	}
+
+	@Override
+	public Customer getCustomer(long id) throws CouponSystemException {
+		return dao.getCustomer(id);
+	}
+
+	@Override
+	public Collection<Customer> getAllCustomers() throws CouponSystemException {
+		return dao.getAllCustomers();
+	}
+
+	@Override
+	public Collection<Coupon> getCoupons(Customer customer) throws CouponSystemException {
+		return dao.getCoupons(customer);
+	}
+
+	@Override
+	public Customer login(String custName, String password) throws CouponSystemException {
+		return dao.login(custName, password);
+	}
+
+}
@@ -0,0 +1,78 @@
+package core.dao.journal;
+
+import java.util.Collection;
+import java.util.List;
+
+import core.beans.Company;
+import core.beans.Coupon;
+import core.beans.Customer;
+import core.beans.Purchase;
+import core.beans.PurchaseOutcome;
+import core.dao.JoinTablesDAO;
+import core.exception.CouponSystemException;
+
+/**
+ * This class implements {@linkplain JoinTablesDAO} on top of a memory
+ * JoinTablesDAO and a {@link JournalStore}, see {@link JournalCouponDAO}.</br>
+ * A batch of purchases waits for a single sync, after the records of all its
+ * purchases (the customer coupon and the new amount) were written.
+ */
+public class JournalJoinTablesDAO implements JoinTablesDAO {
+	// Attributes
+	private JoinTablesDAO dao;
+	private JournalStore journal;
+
+	// CTOR
+	public JournalJoinTablesDAO(JoinTablesDAO dao, JournalStore journal) {
+		this.dao = dao;
+		this.journal = journal;
+	}
+
+	// Methods
+	@Override
+	public void createCustomerCoupon(Customer customer, Coupon coupon) throws CouponSystemException {
+		dao.createCustomerCoupon(customer, coupon);
+		journal.sync(journal.logCustomerCoupon(customer.getId(), coupon.getId()));
+	}
+
+	@Override
+	public void createCompanyCoupon(Company company, Coupon coupon) throws CouponSystemException {
+		dao.createCompanyCoupon(company, coupon);
+		journal.sync(journal.logCompanyCoupon(company.getId(), coupon.getId()));
+	}
+
+	@Override
+	public void deleteCompanyCoupon(Coupon coupon) throws CouponSystemException {
+		dao.deleteCompanyCoupon(coupon);
+		journal.sync(journal.logCouponCompanies(coupon.getId()));
+	}
+
+	@Override
+	public void deleteCustomerCoupon(Coupon coupon) throws CouponSystemException {
+		dao.deleteCustomerCoupon(coupon);
+		journal.sync(journal.logCouponCustomers(coupon.getId()));
+	}
+
+	@Override
+	public Collection<Long> getCustomerIds(long couponId) throws CouponSystemException {
+		return dao.getCustomerIds(couponId);
+	}
+
+	@Override
+	public List<PurchaseOutcome> purchaseCoupons(List<Purchase> purchases) throws CouponSystemException {
+		List<PurchaseOutcome> outcomes = dao.purchaseCoupons(purchases);
+		long position = 0;
+		for (int i = 0; i < outcomes.size(); i++) {
+			if (outcomes.get(i) == PurchaseOutcome.PURCHASED) {
+				long couponId = purchases.get(i).getCoupon().getId();
+				journal.logCustomerCoupon(purchases.get(i).getCustomer().getId(), couponId);
+				position = journal.logCoupon(couponId);
+			}
+		}
+		if (position > 0) {
+			journal.sync(position);
+		}
+		return outcomes;
+	}
+
+}
@@ -0,0 +1,515 @@
+package core.dao.journal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import core.beans.Company;
+import core.beans.Coupon;
+import core.beans.Customer;
+import core.config.CouponSystemConfig;
+import core.dao.CatalogDAO;
+import core.dao.CompanyDAO;
+import core.dao.CouponDAO;
+import core.dao.CustomerDAO;
+import core.dao.JoinTablesDAO;
+import core.dao.memory.CatalogMemoryDAO;
+import core.dao.memory.CompanyMemoryDAO;
+import core.dao.memory.CouponMemoryDAO;
+import core.dao.memory.CustomerMemoryDAO;
+import core.dao.memory.JoinTablesMemoryDAO;
+import core.dao.memory.MemoryStore;
+import core.exception.CouponSystemException;
+import core.thread.Threads;
+
+/**
+ * The journal storage engine (dao.engine=journal) : the data is kept in a
+ * {@link MemoryStore} and every change is appended to a {@link Journal} file,
+ * so there is no DB and the data survives a restart.</br>
+ * After a DAO changes a row it writes the new state of that row (see
+ * {@link JournalCodec}) while holding the lock of the row's stripe, so the
+ * records of each row are in the journal in the order of the changes. The
+ * caller then waits for the group fsync outside the lock.</br>
+ * Every 'journal.snapshotIntervalSeconds' (if at least
+ * 'journal.snapshotMinBytes' were appended) the journal is rotated and all
+ * the data is written to a snapshot file, after that the older segments are
+ * deleted, so a restart loads one snapshot and replays only the segments
+ * after it.</br>
+ * A snapshot is taken while the DAOs keep working, a row that changes during
+ * the snapshot is also in the new segment and its record there wins.
+ */
+public class JournalStore {
+	// Attributes
+	private static final String SNAPSHOT_PREFIX = "snapshot-";
+	private static final String SNAPSHOT_SUFFIX = ".snap";
+	private static JournalStore instance = null;
+	private MemoryStore store = new MemoryStore();
+	private File dir;
+	private Journal journal;
+	private Lock[] stripes;
+	private Lock snapshotLock = new ReentrantLock();
+	private long snapshotMinBytes;
+	private long snapshotBytes = 0;
+	private Thread snapshots;
+	private CouponDAO couponDAO;
+	private CustomerDAO customerDAO;
+	private CompanyDAO companyDAO;
+	private JoinTablesDAO joinTablesDAO;
+
+	// CTOR
+	private JournalStore(File dir, boolean group, long intervalMillis, int stripes, long snapshotSeconds,
+			long snapshotMinBytes) throws IOException {
+		this.dir = dir;
+		this.snapshotMinBytes = snapshotMinBytes;
+		this.stripes = new Lock[Math.max(1, stripes)];
+		for (int i = 0; i < this.stripes.length; i++) {
+			this.stripes[i] = new ReentrantLock();
+		}
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Can't create the journal directory " + dir);
+		}
+		long segment = recover();
+		journal = new Journal(dir, segment, group, intervalMillis);
+		couponDAO = new JournalCouponDAO(new CouponMemoryDAO(store), this);
+		customerDAO = new JournalCustomerDAO(new CustomerMemoryDAO(store), this);
+		companyDAO = new JournalCompanyDAO(new CompanyMemoryDAO(store), this);
+		joinTablesDAO = new JournalJoinTablesDAO(new JoinTablesMemoryDAO(store), this);
+		if (snapshotSeconds > 0) {
+			snapshots = Threads.newThread("Journal-snapshot", () -> snapshotLoop(snapshotSeconds));
+			snapshots.setDaemon(true);
+			snapshots.start();
+		}
+	}
+
+	/**
+	 * @return the journal store of the application, loaded from
+	 *         'journal.dir' on the first call.
+	 */
+	public static synchronized JournalStore getInstance() throws CouponSystemException {
+		if (instance == null) {
+			try {
+				instance = new JournalStore(new File(CouponSystemConfig.getString("journal.dir", "files/journal")),
+						!CouponSystemConfig.getString("journal.sync", "group").equalsIgnoreCase("interval"),
+						CouponSystemConfig.getLong("journal.syncIntervalMillis", 50),
+						CouponSystemConfig.getInt("journal.stripes", 64),
+						CouponSystemConfig.getLong("journal.snapshotIntervalSeconds", 300),
+						CouponSystemConfig.getLong("journal.snapshotMinBytes", 1 << 20));
+			} catch (IOException e) {
+				throw new CouponSystemException("Journal Failed ! " + e.getMessage(), e);
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Takes a last snapshot and closes the journal of the application (if it
+	 * was opened).
+	 */
+	public static synchronized void shutDown() {
+		if (instance != null) {
+			instance.close();
+			instance = null;
+		}
+	}
+
+	// Methods
+	public CouponDAO getCouponDAO() {
+		return couponDAO;
+	}
+
+	public CustomerDAO getCustomerDAO() {
+		return customerDAO;
+	}
+
+	public CompanyDAO getCompanyDAO() {
+		return companyDAO;
+	}
+
+	public JoinTablesDAO getJoinTablesDAO() {
+		return joinTablesDAO;
+	}
+
+	/**
+	 * @return a CatalogDAO that reads the store (a scan doesn't change
+	 *         anything, so it needs no journal).
+	 */
+	public CatalogDAO getCatalogDAO() {
+		return new CatalogMemoryDAO(store);
+	}
+
+	/**
+	 * @return the number of coupons, customers and companies in the store.
+	 */
+	public String getStatistics() {
+		return store.getStatistics() + ", journalBytes=" + journal.getAppendedBytes();
+	}
+
+	/**
+	 * Writes the state of a coupon.
+	 *
+	 * @return the journal position to {@link #sync(long)} on.
+	 */
+	long logCoupon(long id) throws CouponSystemException {
+		Lock lock = lockOf(id);
+		lock.lock();
+		try {
+			Coupon coupon = store.findCoupon(id);
+			return append(coupon == null ? JournalCodec.removed(JournalCodec.COUPON_REMOVED, id)
+					: JournalCodec.coupon(coupon));
+		} catch (IOException e) {
+			throw new CouponSystemException("Journal write Failed ! " + e.getMessage(), e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Writes the state of a customer, see {@link #logCoupon(long)}.
+	 */
+	long logCustomer(long id) throws CouponSystemException {
+		Lock lock = lockOf(id);
+		lock.lock();
+		try {
+			Customer customer = store.findCustomer(id);
+			return append(customer == null ? JournalCodec.removed(JournalCodec.CUSTOMER_REMOVED, id)
+					: JournalCodec.customer(customer));
+		} catch (IOException e) {
+			throw new CouponSystemException("Journal write Failed ! " + e.getMessage(), e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Writes the state of a company, see {@link #logCoupon(long)}.
+	 */
+	long logCompany(long id) throws CouponSystemException {
+		Lock lock = lockOf(id);
+		lock.lock();
+		try {
+			Company company = store.findCompany(id);
+			return append(company == null ? JournalCodec.removed(JournalCodec.COMPANY_REMOVED, id)
+					: JournalCodec.company(company));
+		} catch (IOException e) {
+			throw new CouponSystemException("Journal write Failed ! " + e.getMessage(), e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Writes whether a customer owns a coupon (under the coupon's stripe).
+	 */
+	long logCustomerCoupon(long customerId, long couponId) throws CouponSystemException {
+		Lock lock = lockOf(couponId);
+		lock.lock();
+		try {
+			return append(JournalCodec.owner(JournalCodec.CUSTOMER_COUPON, customerId, couponId,
+					store.hasCustomerCoupon(customerId, couponId)));
+		} catch (IOException e) {
+			throw new CouponSystemException("Journal write Failed ! " + e.getMessage(), e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Writes whether a company has a coupon (under the coupon's stripe).
+	 */
+	long logCompanyCoupon(long companyId, long couponId) throws CouponSystemException {
+		Lock lock = lockOf(couponId);
+		lock.lock();
+		try {
+			return append(JournalCodec.owner(JournalCodec.COMPANY_COUPON, companyId, couponId,
+					store.hasCompanyCoupon(companyId, couponId)));
+		} catch (IOException e) {
+			throw new CouponSystemException("Journal write Failed ! " + e.getMessage(), e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Writes all the customers that own a coupon.
+	 */
+	long logCouponCustomers(long couponId) throws CouponSystemException {
+		Lock lock = lockOf(couponId);
+		lock.lock();
+		try {
+			return append(JournalCodec.owners(JournalCodec.COUPON_CUSTOMERS, couponId,
+					store.getCouponCustomerIds(couponId)));
+		} catch (IOException e) {
+			throw new CouponSystemException("Journal write Failed ! " + e.getMessage(), e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Writes all the companies of a coupon.
+	 */
+	long logCouponCompanies(long couponId) throws CouponSystemException {
+		Lock lock = lockOf(couponId);
+		lock.lock();
+		try {
+			return append(JournalCodec.owners(JournalCodec.COUPON_COMPANIES, couponId,
+					store.getCouponCompanyIds(couponId)));
+		} catch (IOException e) {
+			throw new CouponSystemException("Journal write Failed ! " + e.getMessage(), e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits until the records up to that position are on the disk (in
+	 * 'journal.sync=group').
+	 */
+	void sync(long position) throws CouponSystemException {
+		try {
+			journal.sync(position);
+		} catch (IOException e) {
+			throw new CouponSystemException("Journal sync Failed ! " + e.getMessage(), e);
+		}
+	}
+
+	private long append(byte[] record) throws IOException {
+		return journal.append(record);
+	}
+
+	private Lock lockOf(long id) {
+		return stripes[(int) ((id ^ (id >>> 32)) & 0x7fffffff) % stripes.length];
+	}
+
+	/**
+	 * Writes all the data to a new snapshot file and deletes the journal
+	 * segments and snapshots that it replaces.
+	 */
+	public void snapshot() throws CouponSystemException {
+		snapshotLock.lock();
+		try {
+			long start = System.currentTimeMillis();
+			snapshotBytes = journal.getAppendedBytes();
+			// the segments from here on are replayed after this snapshot.
+			long segment = journal.rotate();
+			File file = snapshotFile(segment);
+			File temp = new File(dir, file.getName() + ".tmp");
+			long records = 0;
+			try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+					OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16)) {
+				for (long id : store.getCouponIds()) {
+					Coupon coupon = store.findCoupon(id);
+					if (coupon != null) {
+						out.write(JournalCodec.coupon(coupon));
+						records++;
+					}
+					long[] owners = store.getCouponCustomerIds(id);
+					if (owners.length > 0) {
+						out.write(JournalCodec.owners(JournalCodec.COUPON_CUSTOMERS, id, owners));
+						records++;
+					}
+					owners = store.getCouponCompanyIds(id);
+					if (owners.length > 0) {
+						out.write(JournalCodec.owners(JournalCodec.COUPON_COMPANIES, id, owners));
+						records++;
+					}
+				}
+				for (long id : store.getCustomerIds()) {
+					Customer customer = store.findCustomer(id);
+					if (customer != null) {
+						out.write(JournalCodec.customer(customer));
+						records++;
+					}
+				}
+				for (long id : store.getCompanyIds()) {
+					Company company = store.findCompany(id);
+					if (company != null) {
+						out.write(JournalCodec.company(company));
+						records++;
+					}
+				}
+				out.write(JournalCodec.snapshotEnd(records));
+				out.flush();
+				channel.force(true);
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			deleteBefore(segment);
+			System.out.println("Journal snapshot of " + records + " records written in "
+					+ (System.currentTimeMillis() - start) + " ms");
+		} catch (IOException e) {
+			throw new CouponSystemException("Journal snapshot Failed ! " + e.getMessage(), e);
+		} finally {
+			snapshotLock.unlock();
+		}
+	}
+
+	private File snapshotFile(long segment) {
+		return new File(dir, String.format("%s%010d%s", SNAPSHOT_PREFIX, segment, SNAPSHOT_SUFFIX));
+	}
+
+	// the latest snapshot, or 0 if there is none.
+	private long latestSnapshot() {
+		long latest = 0;
+		String[] names = dir.list();
+		for (String name : names == null ? new String[0] : names) {
+			if (name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX)) {
+				try {
+					latest = Math.max(latest, Long.parseLong(
+							name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length())));
+				} catch (NumberFormatException e) {
+					// not a snapshot.
+				}
+			}
+		}
+		return latest;
+	}
+
+	// deletes the segments & snapshots that the snapshot of that segment replaces.
+	private void deleteBefore(long segment) {
+		for (long old : Journal.listSegments(dir)) {
+			if (old < segment && !Journal.segmentFile(dir, old).delete()) {
+				System.out.println("Can't delete " + Journal.segmentFile(dir, old));
+			}
+		}
+		String[] names = dir.list();
+		for (String name : names == null ? new String[0] : names) {
+			if (name.startsWith(SNAPSHOT_PREFIX) && !name.equals(snapshotFile(segment).getName())) {
+				new File(dir, name).delete();
+			}
+		}
+	}
+
+	/**
+	 * Loads the latest snapshot and replays the segments after it.
+	 *
+	 * @return the number of the segment to append to (after the last one).
+	 */
+	private long recover() throws IOException {
+		long start = System.currentTimeMillis();
+		long records = 0;
+		long first = latestSnapshot();
+		if (first > 0) {
+			File file = snapshotFile(first);
+			try (DataInputStream in = new DataInputStream(
+					new BufferedInputStream(Files.newInputStream(file.toPath()), 1 << 16))) {
+				byte type;
+				do {
+					type = JournalCodec.apply(in, store);
+					records++;
+				} while (type != JournalCodec.SNAPSHOT_END && type != 0);
+				if (type != JournalCodec.SNAPSHOT_END) {
+					throw new IOException("The snapshot " + file + " is not complete");
+				}
+			}
+		}
+		long next = Math.max(first, 1);
+		for (long segment : Journal.listSegments(dir)) {
+			if (segment < first) {
+				// left by a crash after the snapshot.
+				Journal.segmentFile(dir, segment).delete();
+				continue;
+			}
+			records += replay(Journal.segmentFile(dir, segment));
+			next = segment + 1;
+		}
+		System.out.println("Journal loaded " + records + " records from " + dir + " in "
+				+ (System.currentTimeMillis() - start) + " ms (" + store.getStatistics() + ")");
+		return next;
+	}
+
+	// replays a segment, a record that was cut by a crash is cut from the file.
+	private long replay(File file) throws IOException {
+		long records = 0;
+		CountingInputStream counter = new CountingInputStream(
+				new BufferedInputStream(Files.newInputStream(file.toPath()), 1 << 16));
+		long valid = 0;
+		try (DataInputStream in = new DataInputStream(counter)) {
+			while (JournalCodec.apply(in, store) != 0) {
+				valid = counter.count;
+				records++;
+			}
+		} catch (IOException e) {
+			System.out.println("Journal " + file + " ends with a broken record at " + valid + " : " + e);
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+				channel.truncate(valid);
+				channel.force(true);
+			}
+		}
+		return records;
+	}
+
+	private void snapshotLoop(long seconds) {
+		while (true) {
+			try {
+				Thread.sleep(seconds * 1000);
+			} catch (InterruptedException e) {
+				return;
+			}
+			if (journal.getAppendedBytes() - snapshotBytes >= snapshotMinBytes) {
+				try {
+					snapshot();
+				} catch (CouponSystemException e) {
+					System.out.println(e.getMessage());
+				}
+			}
+		}
+	}
+
+	private void close() {
+		if (snapshots != null) {
+			snapshots.interrupt();
+		}
+		try {
+			snapshot();
+		} catch (CouponSystemException e) {
+			System.out.println(e.getMessage());
+		}
+		try {
+			journal.close();
+		} catch (IOException e) {
+			System.out.println("Journal close Failed ! " + e.getMessage());
+		}
+	}
+
+	// counts the bytes that were read, to find the end of the last whole record.
+	private static class CountingInputStream extends FilterInputStream {
+		private long count = 0;
+
+		private CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0) {
+				count += n;
+			}
+			return n;
+		}
+	}
+
+}
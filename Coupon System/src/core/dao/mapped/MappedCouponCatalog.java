@@ -0,0 +1,448 @@
+package core.dao.mapped;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import core.beans.Coupon;
+import core.beans.CouponType;
+import core.report.CouponColumnStore;
+import core.util.EpochDay;
+
+/**
+ * An off-heap catalog of coupons that is kept in a memory-mapped file.</br>
+ * Each coupon is a fixed size record in the file and an
+ * {@link OffHeapIdIndex} maps the coupon id to its record, so the heap doesn't
+ * grow with the number of coupons in the catalog.</br>
+ * The file stays on the disk after the application shuts down and is used as
+ * a warm cache on the next start.</br>
+ * <b>File layout :</b> a 64 bytes header and then the records, each record is
+ * {@value #RECORD_SIZE} bytes :
+ * 
+ * <pre>
+ * 0 status (byte)  1 type ordinal (byte)  8 id (long)  16 start day (int)
+ * 20 end day (int) 24 amount (int)  28 next free record (int)  32 price (double)
+ * 40 title  192 message  344 image (each : length (short) + 150 bytes UTF-8)
+ * 496 version (long)
+ * </pre>
+ * 
+ * Removed records are chained in a free list and reused.
+ */
+public class MappedCouponCatalog implements Closeable {
+	// Attributes
+	public static final int RECORD_SIZE = 512;
+	private static final int MAGIC = 0x43504E43;
+	private static final int FORMAT_VERSION = 2;
+	private static final int HEADER_SIZE = 64;
+	// header fields.
+	private static final int H_MAGIC = 0, H_VERSION = 4, H_RECORD_SIZE = 8, H_HIGH_WATER = 12, H_LIVE = 16,
+			H_FREE_HEAD = 20, H_CLEAN = 24;
+	// record fields.
+	private static final int R_STATUS = 0, R_TYPE = 1, R_ID = 8, R_START = 16, R_END = 20, R_AMOUNT = 24,
+			R_NEXT_FREE = 28, R_PRICE = 32, R_TITLE = 40, R_MESSAGE = 192, R_IMAGE = 344, R_VERSION = 496;
+	private static final int STRING_BYTES = 150;
+	private static final byte FREE = 0, LIVE = 1, REMOVED = 2;
+	// 64MB mapped segments (a single mapping can't pass 2GB).
+	private static final int SEGMENT_RECORDS = 1 << 17;
+	private static final long SEGMENT_BYTES = (long) SEGMENT_RECORDS * RECORD_SIZE;
+	private static final CouponType[] TYPES = CouponType.values();
+
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private MappedByteBuffer header;
+	private List<MappedByteBuffer> segments = new ArrayList<>();
+	private OffHeapIdIndex index;
+	private ReadWriteLock lock = new ReentrantReadWriteLock();
+	private boolean wasClean;
+
+	// CTOR
+	private MappedCouponCatalog(String path) throws IOException {
+		file = new RandomAccessFile(path, "rw");
+		channel = file.getChannel();
+		boolean isNew = channel.size() < HEADER_SIZE;
+		header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+		if (!isNew && (header.getInt(H_MAGIC) != MAGIC || header.getInt(H_VERSION) != FORMAT_VERSION
+				|| header.getInt(H_RECORD_SIZE) != RECORD_SIZE)) {
+			System.out.println("Coupon catalog " + path + " has an old format, rebuilding it");
+			isNew = true;
+		}
+		if (isNew) {
+			writeEmptyHeader();
+			wasClean = false;
+		} else {
+			wasClean = header.get(H_CLEAN) == 1;
+		}
+		// marks the file as in use until close() is called.
+		header.put(H_CLEAN, (byte) 0);
+		header.force();
+		int highWater = header.getInt(H_HIGH_WATER);
+		index = new OffHeapIdIndex(header.getInt(H_LIVE));
+		for (int record = 0; record < highWater; record++) {
+			ByteBuffer segment = segmentOf(record);
+			int offset = offsetOf(record);
+			if (segment.get(offset + R_STATUS) == LIVE) {
+				index.put(segment.getLong(offset + R_ID), record);
+			}
+		}
+	}
+
+	/**
+	 * Opens a catalog file, if the file doesn't exist a new empty catalog is
+	 * created.
+	 * 
+	 * @param path
+	 *            the catalog file path.
+	 * @return a MappedCouponCatalog of that file.
+	 */
+	public static MappedCouponCatalog open(String path) throws IOException {
+		return new MappedCouponCatalog(path);
+	}
+
+	// Methods
+	private void writeEmptyHeader() {
+		header.putInt(H_MAGIC, MAGIC);
+		header.putInt(H_VERSION, FORMAT_VERSION);
+		header.putInt(H_RECORD_SIZE, RECORD_SIZE);
+		header.putInt(H_HIGH_WATER, 0);
+		header.putInt(H_LIVE, 0);
+		header.putInt(H_FREE_HEAD, -1);
+	}
+
+	// maps the segment of that record (and the segments before it) if needed.
+	private MappedByteBuffer segmentOf(int record) throws IOException {
+		int segment = record / SEGMENT_RECORDS;
+		while (segments.size() <= segment) {
+			long position = HEADER_SIZE + segments.size() * SEGMENT_BYTES;
+			segments.add(channel.map(FileChannel.MapMode.READ_WRITE, position, SEGMENT_BYTES));
+		}
+		return segments.get(segment);
+	}
+
+	private static int offsetOf(int record) {
+		return (record % SEGMENT_RECORDS) * RECORD_SIZE;
+	}
+
+	/**
+	 * @return true if the catalog file was closed properly last time, if not
+	 *         it may be out of sync with the DB and should be reloaded.
+	 */
+	public boolean wasCleanlyClosed() {
+		return wasClean;
+	}
+
+	/**
+	 * @return the number of coupons in the catalog.
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return index.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @param id
+	 *            the coupon id.
+	 * @return true if that coupon is in the catalog.
+	 */
+	public boolean contains(long id) {
+		lock.readLock().lock();
+		try {
+			return index.get(id) >= 0;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @param id
+	 *            the coupon id you want to get.
+	 * @return a Coupon object or null if that coupon is not in the catalog.
+	 */
+	public Coupon get(long id) throws IOException {
+		lock.readLock().lock();
+		try {
+			int record = index.get(id);
+			return record < 0 ? null : read(segmentOf(record), offsetOf(record));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return all the coupons in the catalog.
+	 */
+	public Collection<Coupon> getAll() throws IOException {
+		return getByType(null);
+	}
+
+	/**
+	 * @param type
+	 *            the {@link CouponType} you want, null for all the types.
+	 * @return all the coupons of that type in the catalog.
+	 */
+	public Collection<Coupon> getByType(CouponType type) throws IOException {
+		lock.readLock().lock();
+		try {
+			Collection<Coupon> coupons = new ArrayList<>();
+			int highWater = header.getInt(H_HIGH_WATER);
+			for (int record = 0; record < highWater; record++) {
+				ByteBuffer segment = segmentOf(record);
+				int offset = offsetOf(record);
+				if (segment.get(offset + R_STATUS) == LIVE
+						&& (type == null || segment.get(offset + R_TYPE) == type.ordinal())) {
+					coupons.add(read(segment, offset));
+				}
+			}
+			return coupons;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return { count, sum of the ids, sum of the versions } of the coupons
+	 *         in the catalog, to compare with the DB.
+	 */
+	public long[] checksum() throws IOException {
+		lock.readLock().lock();
+		try {
+			long[] checksum = new long[3];
+			int highWater = header.getInt(H_HIGH_WATER);
+			for (int record = 0; record < highWater; record++) {
+				ByteBuffer segment = segmentOf(record);
+				int offset = offsetOf(record);
+				if (segment.get(offset + R_STATUS) == LIVE) {
+					checksum[0]++;
+					checksum[1] += segment.getLong(offset + R_ID);
+					checksum[2] += segment.getLong(offset + R_VERSION);
+				}
+			}
+			return checksum;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Copies the catalog into a {@link CouponColumnStore} straight from the
+	 * records (without creating Coupon objects).
+	 */
+	public CouponColumnStore toColumns() throws IOException {
+		lock.readLock().lock();
+		try {
+			CouponColumnStore store = new CouponColumnStore(index.size());
+			int highWater = header.getInt(H_HIGH_WATER);
+			for (int record = 0; record < highWater; record++) {
+				ByteBuffer segment = segmentOf(record);
+				int o = offsetOf(record);
+				if (segment.get(o + R_STATUS) == LIVE) {
+					store.add(segment.getLong(o + R_ID), readString(segment, o + R_TITLE),
+							segment.getInt(o + R_START), segment.getInt(o + R_END), segment.getInt(o + R_AMOUNT),
+							TYPES[segment.get(o + R_TYPE)], readString(segment, o + R_MESSAGE),
+							segment.getDouble(o + R_PRICE), readString(segment, o + R_IMAGE),
+							segment.getLong(o + R_VERSION));
+				}
+			}
+			return store;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Puts a coupon in the catalog, if the coupon id is already in the
+	 * catalog its record is overwritten.
+	 * 
+	 * @param coupon
+	 *            the Coupon object you want to put.
+	 */
+	public void put(Coupon coupon) throws IOException {
+		lock.writeLock().lock();
+		try {
+			int record = index.get(coupon.getId());
+			if (record < 0) {
+				record = allocateRecord();
+				index.put(coupon.getId(), record);
+				header.putInt(H_LIVE, header.getInt(H_LIVE) + 1);
+			}
+			write(segmentOf(record), offsetOf(record), coupon);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Puts a coupon in the catalog unless the catalog already has the same
+	 * or a newer version of it (a reader that got the coupon from the DB
+	 * doesn't put back an old row over a newer write).
+	 * 
+	 * @param coupon
+	 *            the Coupon object you want to put.
+	 * @return true if the coupon was put.
+	 */
+	public boolean putIfNewer(Coupon coupon) throws IOException {
+		lock.writeLock().lock();
+		try {
+			int record = index.get(coupon.getId());
+			if (record >= 0 && segmentOf(record).getLong(offsetOf(record) + R_VERSION) >= coupon.getVersion()) {
+				return false;
+			}
+			put(coupon);
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes a coupon from the catalog.
+	 * 
+	 * @param id
+	 *            the coupon id you want to remove.
+	 * @return true if the coupon was in the catalog.
+	 */
+	public boolean remove(long id) throws IOException {
+		lock.writeLock().lock();
+		try {
+			int record = index.get(id);
+			if (record < 0) {
+				return false;
+			}
+			index.remove(id);
+			ByteBuffer segment = segmentOf(record);
+			int offset = offsetOf(record);
+			segment.put(offset + R_STATUS, REMOVED);
+			segment.putInt(offset + R_NEXT_FREE, header.getInt(H_FREE_HEAD));
+			header.putInt(H_FREE_HEAD, record);
+			header.putInt(H_LIVE, header.getInt(H_LIVE) - 1);
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes all the coupons from the catalog.
+	 */
+	public void clear() {
+		lock.writeLock().lock();
+		try {
+			writeEmptyHeader();
+			index.clear();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Writes all the changes to the disk and marks the file as closed
+	 * properly.
+	 */
+	@Override
+	public void close() throws IOException {
+		lock.writeLock().lock();
+		try {
+			for (MappedByteBuffer segment : segments) {
+				segment.force();
+			}
+			header.put(H_CLEAN, (byte) 1);
+			header.force();
+			channel.close();
+			file.close();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the bytes the catalog takes off the heap (file + index).
+	 */
+	public long offHeapBytes() {
+		return HEADER_SIZE + segments.size() * SEGMENT_BYTES + index.offHeapBytes();
+	}
+
+	@Override
+	public String toString() {
+		return "MappedCouponCatalog [size=" + size() + ", offHeapBytes=" + offHeapBytes() + "]";
+	}
+
+	// takes a record from the free list or a new one at the end of the file.
+	private int allocateRecord() throws IOException {
+		int free = header.getInt(H_FREE_HEAD);
+		if (free >= 0) {
+			header.putInt(H_FREE_HEAD, segmentOf(free).getInt(offsetOf(free) + R_NEXT_FREE));
+			return free;
+		}
+		int record = header.getInt(H_HIGH_WATER);
+		header.putInt(H_HIGH_WATER, record + 1);
+		return record;
+	}
+
+	private static void write(ByteBuffer segment, int offset, Coupon coupon) {
+		segment.put(offset + R_TYPE, (byte) coupon.getType().ordinal());
+		segment.putLong(offset + R_ID, coupon.getId());
+		segment.putInt(offset + R_START, EpochDay.toEpochDay(coupon.getStartDate()));
+		segment.putInt(offset + R_END, EpochDay.toEpochDay(coupon.getEndDate()));
+		segment.putInt(offset + R_AMOUNT, coupon.getAmount());
+		segment.putInt(offset + R_NEXT_FREE, -1);
+		segment.putDouble(offset + R_PRICE, coupon.getPrice());
+		writeString(segment, offset + R_TITLE, coupon.getTitle());
+		writeString(segment, offset + R_MESSAGE, coupon.getMessage());
+		writeString(segment, offset + R_IMAGE, coupon.getImage());
+		segment.putLong(offset + R_VERSION, coupon.getVersion());
+		// the status is written last so a half written record is never live.
+		segment.put(offset + R_STATUS, LIVE);
+	}
+
+	private static Coupon read(ByteBuffer segment, int offset) {
+		Coupon coupon = new Coupon(segment.getLong(offset + R_ID), readString(segment, offset + R_TITLE),
+				EpochDay.toDate(segment.getInt(offset + R_START)), EpochDay.toDate(segment.getInt(offset + R_END)),
+				segment.getInt(offset + R_AMOUNT), TYPES[segment.get(offset + R_TYPE)],
+				readString(segment, offset + R_MESSAGE), segment.getDouble(offset + R_PRICE),
+				readString(segment, offset + R_IMAGE));
+		coupon.setVersion(segment.getLong(offset + R_VERSION));
+		return coupon;
+	}
+
+	// a String is written as its UTF-8 length (-1 for null) and bytes.
+	private static void writeString(ByteBuffer segment, int offset, String value) {
+		if (value == null) {
+			segment.putShort(offset, (short) -1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > STRING_BYTES) {
+			// the DB columns are VARCHAR(50) so this can't happen for a
+			// coupon that was saved in the DB.
+			throw new IllegalArgumentException("'" + value + "' is too long for the coupon catalog");
+		}
+		segment.putShort(offset, (short) bytes.length);
+		for (int i = 0; i < bytes.length; i++) {
+			segment.put(offset + 2 + i, bytes[i]);
+		}
+	}
+
+	private static String readString(ByteBuffer segment, int offset) {
+		int length = segment.getShort(offset);
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = segment.get(offset + 2 + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
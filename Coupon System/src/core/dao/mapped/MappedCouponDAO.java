@@ -0,0 +1,290 @@
+package core.dao.mapped;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import core.beans.Coupon;
+import core.beans.CouponType;
+import core.bus.ChangeType;
+import core.bus.EntityChangeEvent;
+import core.bus.EntityType;
+import core.bus.InvalidationListener;
+import core.dao.CouponColumn;
+import core.dao.CouponDAO;
+import core.dao.db.CouponDBDAO;
+import core.dao.db.TransactionManager;
+import core.exception.CouponSystemException;
+import core.report.CouponColumnStore;
+
+/**
+ * This class implements {@linkplain CouponDAO} on top of a
+ * {@link CouponDBDAO} and a {@link MappedCouponCatalog}.</br>
+ * The read methods are answered from the off-heap catalog, a coupon that is
+ * missing from the catalog is read from the DB and added to it.</br>
+ * The write methods are sent to the DB first and only after they succeed the
+ * catalog is updated (a coupon whose update failed is removed from the
+ * catalog, it may be older than the DB), so the catalog stays in sync with the DB (in a
+ * transaction the coupon is only removed from the catalog when the
+ * transaction ends, and read again from the DB on the next read).</br>
+ * Every change of a coupon in the catalog is done under the lock of the
+ * coupon's stripe and raises the stripe's stamp, a coupon that was read from
+ * the DB is only put in the catalog if the stamp didn't change since the read
+ * and the catalog doesn't have a newer version, so a slow reader can't put
+ * back an old row over a write or a removal.</br>
+ * On creation, if the catalog is empty, it wasn't closed properly (the
+ * application crashed) or its checksum (count, ids and versions) isn't the
+ * DB's (the DB was changed while the application was down), it is loaded
+ * again from the DB.</br>
+ * Coupons that other nodes change (see {@link InvalidationListener}) are read
+ * again from the DB.
+ */
+public class MappedCouponDAO implements CouponDAO, InvalidationListener {
+	// Attributes
+	private static final int COLUMNS = CouponColumn.values().length;
+	private static final int STRIPES = 64;
+	private CouponDBDAO dao = null;
+	private MappedCouponCatalog catalog = null;
+	private Lock[] stripes = new Lock[STRIPES];
+	private AtomicLongArray stamps = new AtomicLongArray(STRIPES);
+
+	// CTOR
+	public MappedCouponDAO(CouponDBDAO dao, MappedCouponCatalog catalog) throws CouponSystemException {
+		this.dao = dao;
+		this.catalog = catalog;
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new ReentrantLock();
+		}
+		if (catalog.size() == 0 || !catalog.wasCleanlyClosed()) {
+			reload();
+			return;
+		}
+		try {
+			if (!Arrays.equals(catalog.checksum(), dao.getCouponChecksum())) {
+				System.out.println("The coupon catalog is not the same as the DB, reloading it");
+				reload();
+			}
+		} catch (IOException e) {
+			throw new CouponSystemException("Failed to check the coupon catalog !", e);
+		}
+	}
+
+	// Methods
+	/**
+	 * Clears the catalog and loads all the coupons from the DB into it.
+	 */
+	public void reload() throws CouponSystemException {
+		CouponColumnStore coupons = dao.getCouponColumns();
+		try {
+			catalog.clear();
+			for (int row = 0; row < coupons.size(); row++) {
+				catalog.put(coupons.getCoupon(row));
+			}
+		} catch (IOException e) {
+			throw new CouponSystemException("Failed to load the coupon catalog !", e);
+		}
+		System.out.println("Loaded " + coupons.size() + " coupons to the coupon catalog");
+	}
+
+	@Override
+	public void createCoupon(Coupon coupon) throws CouponSystemException {
+		dao.createCoupon(coupon);
+		if (TransactionManager.isInTransaction()) {
+			TransactionManager.afterCompletion(() -> evict(coupon.getId()));
+			return;
+		}
+		Lock lock = lockOf(coupon.getId());
+		lock.lock();
+		try {
+			stamps.incrementAndGet(stripeOf(coupon.getId()));
+			catalog.put(coupon);
+		} catch (IOException e) {
+			throw new CouponSystemException("Coupon " + coupon.getTitle() + " was not added to the catalog", e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void removeCoupon(Coupon coupon) throws CouponSystemException {
+		dao.removeCoupon(coupon);
+		if (TransactionManager.isInTransaction()) {
+			TransactionManager.afterCompletion(() -> evict(coupon.getId()));
+			return;
+		}
+		Lock lock = lockOf(coupon.getId());
+		lock.lock();
+		try {
+			stamps.incrementAndGet(stripeOf(coupon.getId()));
+			catalog.remove(coupon.getId());
+		} catch (IOException e) {
+			throw new CouponSystemException("Coupon " + coupon.getTitle() + " was not removed from the catalog", e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void updateCoupon(Coupon coupon) throws CouponSystemException {
+		updateCoupon(coupon, EnumSet.allOf(CouponColumn.class));
+	}
+
+	@Override
+	public void updateCoupon(Coupon coupon, Set<CouponColumn> columns) throws CouponSystemException {
+		try {
+			dao.updateCoupon(coupon, columns);
+		} catch (CouponSystemException e) {
+			// the catalog may hold an old version (ConcurrentUpdateException),
+			// it is read again from the DB on the next read.
+			evict(coupon.getId());
+			throw e;
+		}
+		// after a partial update the other values of the object may be old.
+		if (TransactionManager.isInTransaction() || columns.size() < COLUMNS) {
+			TransactionManager.afterCompletion(() -> evict(coupon.getId()));
+			return;
+		}
+		Lock lock = lockOf(coupon.getId());
+		lock.lock();
+		try {
+			stamps.incrementAndGet(stripeOf(coupon.getId()));
+			// a concurrent update of the same coupon may have put a newer
+			// version already.
+			catalog.putIfNewer(coupon);
+		} catch (IOException e) {
+			throw new CouponSystemException("Coupon " + coupon.getTitle() + " was not updated in the catalog", e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Coupon getCoupon(long id) throws CouponSystemException {
+		try {
+			Coupon coupon = catalog.get(id);
+			if (coupon == null) {
+				// not in the catalog yet, the DB throws if it doesn't exist.
+				long stamp = stamps.get(stripeOf(id));
+				coupon = dao.getCoupon(id);
+				putRead(coupon, stamp);
+			}
+			return coupon;
+		} catch (IOException e) {
+			throw new CouponSystemException("Get coupon failed", e);
+		}
+	}
+
+	@Override
+	public boolean titleExists(String title) throws CouponSystemException {
+		return dao.titleExists(title);
+	}
+
+	@Override
+	public Collection<Coupon> getAllCoupons() throws CouponSystemException {
+		try {
+			return catalog.getAll();
+		} catch (IOException e) {
+			throw new CouponSystemException("Failed to get all the Coupons !", e);
+		}
+	}
+
+	@Override
+	public Collection<Coupon> getCouponByType(CouponType type) throws CouponSystemException {
+		try {
+			return catalog.getByType(type);
+		} catch (IOException e) {
+			throw new CouponSystemException("Failed to get the Coupons of type " + type + " !", e);
+		}
+	}
+
+	@Override
+	public CouponColumnStore getCouponColumns() throws CouponSystemException {
+		try {
+			return catalog.toColumns();
+		} catch (IOException e) {
+			throw new CouponSystemException("Failed to get the Coupon columns !", e);
+		}
+	}
+
+	/**
+	 * Updates the catalog with a coupon that was changed on another node.
+	 */
+	@Override
+	public void onChange(EntityChangeEvent event) {
+		if (event.getEntityType() != EntityType.COUPON) {
+			return;
+		}
+		if (event.getChangeType() == ChangeType.REMOVED) {
+			evict(event.getId());
+			return;
+		}
+		try {
+			long stamp = stamps.get(stripeOf(event.getId()));
+			putRead(dao.getCoupon(event.getId()), stamp);
+		} catch (CouponSystemException e) {
+			// not in the DB anymore.
+			evict(event.getId());
+		} catch (IOException e) {
+			System.out.println("Failed to update coupon " + event.getId() + " in the catalog : " + e.getMessage());
+		}
+	}
+
+	// puts a coupon that was read from the DB, if the coupon was changed in
+	// the catalog since the read (the stamp is not the same) it is removed
+	// instead and read again from the DB on the next read.
+	private void putRead(Coupon coupon, long stamp) throws IOException {
+		Lock lock = lockOf(coupon.getId());
+		lock.lock();
+		try {
+			int stripe = stripeOf(coupon.getId());
+			if (stamps.get(stripe) == stamp) {
+				catalog.putIfNewer(coupon);
+			} else {
+				stamps.incrementAndGet(stripe);
+				catalog.remove(coupon.getId());
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// removes a coupon from the catalog, it will be read again from the DB.
+	private void evict(long id) {
+		Lock lock = lockOf(id);
+		lock.lock();
+		try {
+			stamps.incrementAndGet(stripeOf(id));
+			catalog.remove(id);
+		} catch (IOException e) {
+			System.out.println("Failed to remove coupon " + id + " from the catalog : " + e.getMessage());
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private static int stripeOf(long id) {
+		return (int) ((id ^ (id >>> 32)) & 0x7fffffff) % STRIPES;
+	}
+
+	private Lock lockOf(long id) {
+		return stripes[stripeOf(id)];
+	}
+
+	/**
+	 * Closes the catalog file (it will be used as a warm cache on the next
+	 * start).
+	 */
+	public void close() throws CouponSystemException {
+		try {
+			catalog.close();
+		} catch (IOException e) {
+			throw new CouponSystemException("Failed to close the coupon catalog", e);
+		}
+	}
+
+}
@@ -0,0 +1,158 @@
+package core.dao.mapped;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An open addressing hash index from a coupon id to its record number in the
+ * {@link MappedCouponCatalog}.</br>
+ * The slots are kept in a direct (off-heap) {@link ByteBuffer}, so the index
+ * size doesn't add to the heap or to the GC work.</br>
+ * Each slot is 12 bytes : the id (long) and the record number + 1 (int, 0 is
+ * an empty slot and -1 is a removed one).</br>
+ * <b>Be aware :</b> this class is not thread safe, the catalog guards it with
+ * its lock.
+ */
+class OffHeapIdIndex {
+	// Attributes
+	private static final int SLOT_SIZE = 12;
+	private static final int EMPTY = 0;
+	private static final int REMOVED = -1;
+	private ByteBuffer slots;
+	private int capacity;
+	private int size = 0; // live slots.
+	private int used = 0; // live + removed slots.
+
+	// CTOR
+	OffHeapIdIndex(int expectedSize) {
+		allocate(tableSizeFor(expectedSize));
+	}
+
+	// Methods
+	// the smallest power of two that keeps the table at most 2/3 full.
+	private static int tableSizeFor(int expectedSize) {
+		int capacity = 16;
+		while (capacity < (long) expectedSize * 3 / 2) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	private void allocate(int newCapacity) {
+		capacity = newCapacity;
+		slots = ByteBuffer.allocateDirect(capacity * SLOT_SIZE);
+		size = 0;
+		used = 0;
+	}
+
+	// spreads the id bits so sequential ids don't cluster.
+	private static int hash(long id) {
+		id ^= id >>> 33;
+		id *= 0xff51afd7ed558ccdL;
+		id ^= id >>> 33;
+		return (int) id;
+	}
+
+	/**
+	 * @return the record number of that id or -1 if the id is not in the
+	 *         index.
+	 */
+	int get(long id) {
+		int mask = capacity - 1;
+		for (int i = hash(id) & mask;; i = (i + 1) & mask) {
+			int offset = i * SLOT_SIZE;
+			int value = slots.getInt(offset + 8);
+			if (value == EMPTY) {
+				return -1;
+			}
+			if (value != REMOVED && slots.getLong(offset) == id) {
+				return value - 1;
+			}
+		}
+	}
+
+	/**
+	 * Puts an id and its record number in the index (replaces the record
+	 * number if the id is already in it).
+	 */
+	void put(long id, int record) {
+		if ((used + 1) * 3L > capacity * 2L) {
+			rehash(size + 1 > capacity / 2 ? capacity * 2 : capacity);
+		}
+		int mask = capacity - 1;
+		int firstRemoved = -1;
+		for (int i = hash(id) & mask;; i = (i + 1) & mask) {
+			int offset = i * SLOT_SIZE;
+			int value = slots.getInt(offset + 8);
+			if (value == EMPTY) {
+				if (firstRemoved >= 0) {
+					offset = firstRemoved;
+				} else {
+					used++;
+				}
+				slots.putLong(offset, id);
+				slots.putInt(offset + 8, record + 1);
+				size++;
+				return;
+			}
+			if (value == REMOVED) {
+				if (firstRemoved < 0) {
+					firstRemoved = offset;
+				}
+			} else if (slots.getLong(offset) == id) {
+				slots.putInt(offset + 8, record + 1);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Removes an id from the index.
+	 */
+	void remove(long id) {
+		int mask = capacity - 1;
+		for (int i = hash(id) & mask;; i = (i + 1) & mask) {
+			int offset = i * SLOT_SIZE;
+			int value = slots.getInt(offset + 8);
+			if (value == EMPTY) {
+				return;
+			}
+			if (value != REMOVED && slots.getLong(offset) == id) {
+				slots.putInt(offset + 8, REMOVED);
+				size--;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Removes all the ids from the index.
+	 */
+	void clear() {
+		allocate(16);
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return the bytes that the index takes off the heap.
+	 */
+	long offHeapBytes() {
+		return (long) capacity * SLOT_SIZE;
+	}
+
+	// copies the live slots to a new table (drops the removed ones).
+	private void rehash(int newCapacity) {
+		ByteBuffer old = slots;
+		int oldCapacity = capacity;
+		allocate(newCapacity);
+		for (int i = 0; i < oldCapacity; i++) {
+			int offset = i * SLOT_SIZE;
+			int value = old.getInt(offset + 8);
+			if (value != EMPTY && value != REMOVED) {
+				put(old.getLong(offset), value - 1);
+			}
+		}
+	}
+}
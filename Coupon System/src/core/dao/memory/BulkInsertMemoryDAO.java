@@ -0,0 +1,94 @@
+package core.dao.memory;
+
+import java.util.Arrays;
+import java.util.List;
+
+import core.beans.Company;
+import core.beans.Coupon;
+import core.beans.Customer;
+import core.bus.EntityType;
+import core.dao.BulkInsertDAO;
+import core.dao.CompanyDAO;
+import core.dao.CouponDAO;
+import core.dao.CustomerDAO;
+import core.dao.JoinTablesDAO;
+import core.exception.CouponSystemException;
+import core.security.PasswordHasher;
+
+/**
+ * This class implements {@linkplain BulkInsertDAO} with the DAOs of the
+ * memory or journal engine (dao.engine=memory or journal) : there are no
+ * round trips to save, so every row is created through its DAO (which keeps
+ * the ids & names unique, hashes the passwords and writes the journal).</br>
+ * The passwords are hashed in parallel before the rows are created, and the
+ * DAOs keep them as they are (see {@link PasswordHasher#setImporting}).
+ */
+public class BulkInsertMemoryDAO implements BulkInsertDAO {
+	// Attributes
+	private CouponDAO couponDAO;
+	private CustomerDAO customerDAO;
+	private CompanyDAO companyDAO;
+	private JoinTablesDAO joinTablesDAO;
+
+	// CTOR
+	public BulkInsertMemoryDAO(CouponDAO couponDAO, CustomerDAO customerDAO, CompanyDAO companyDAO,
+			JoinTablesDAO joinTablesDAO) {
+		this.couponDAO = couponDAO;
+		this.customerDAO = customerDAO;
+		this.companyDAO = companyDAO;
+		this.joinTablesDAO = joinTablesDAO;
+	}
+
+	// Methods
+	@Override
+	public void insertCoupons(List<Coupon> coupons, long[] companyIds) throws CouponSystemException {
+		for (int i = 0; i < coupons.size(); i++) {
+			Coupon coupon = coupons.get(i);
+			couponDAO.createCoupon(coupon);
+			if (companyIds[i] != 0) {
+				joinTablesDAO.createCompanyCoupon(new Company(companyIds[i], null, null, null), coupon);
+			}
+		}
+	}
+
+	@Override
+	public void insertCustomers(List<Customer> customers) throws CouponSystemException {
+		String[] passwords = new String[customers.size()];
+		Arrays.parallelSetAll(passwords, i -> PasswordHasher.hashImported(customers.get(i).getPassword()));
+		PasswordHasher.setImporting(true);
+		try {
+			for (int i = 0; i < customers.size(); i++) {
+				Customer customer = customers.get(i);
+				customer.setPassword(passwords[i]);
+				customerDAO.createCustomer(customer);
+			}
+		} finally {
+			PasswordHasher.setImporting(false);
+		}
+	}
+
+	@Override
+	public void insertCompanies(List<Company> companies) throws CouponSystemException {
+		String[] passwords = new String[companies.size()];
+		Arrays.parallelSetAll(passwords, i -> PasswordHasher.hashImported(companies.get(i).getPassword()));
+		PasswordHasher.setImporting(true);
+		try {
+			for (int i = 0; i < companies.size(); i++) {
+				Company company = companies.get(i);
+				company.setPassword(passwords[i]);
+				companyDAO.createCompany(company);
+			}
+		} finally {
+			PasswordHasher.setImporting(false);
+		}
+	}
+
+	/**
+	 * Does nothing, the DAOs already keep the ids they create from being
+	 * given again.
+	 */
+	@Override
+	public void advanceIdsPast(EntityType entity, long id) {
+	}
+
+}
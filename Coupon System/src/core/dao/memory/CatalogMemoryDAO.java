@@ -0,0 +1,51 @@
+package core.dao.memory;
+
+import java.util.Map;
+
+import core.beans.Company;
+import core.beans.Coupon;
+import core.beans.Customer;
+import core.dao.CatalogDAO;
+import core.dao.CatalogVisitor;
+import core.exception.CouponSystemException;
+
+/**
+ * This class implements {@linkplain CatalogDAO} on the {@link MemoryStore}
+ * (dao.engine=memory or journal).</br>
+ * It walks the maps of the store without copying them, a row that changes
+ * during the scan may be seen before or after the change.
+ */
+public class CatalogMemoryDAO implements CatalogDAO {
+	// Attributes
+	private MemoryStore store;
+
+	// CTOR
+	public CatalogMemoryDAO(MemoryStore store) {
+		this.store = store;
+	}
+
+	// Methods
+	@Override
+	public void scanCatalog(CatalogVisitor visitor) throws CouponSystemException {
+		for (Coupon coupon : store.coupons.values()) {
+			visitor.coupon(MemoryStore.copy(coupon));
+		}
+		for (Customer customer : store.customers.values()) {
+			visitor.customer(MemoryStore.copy(customer));
+		}
+		for (Company company : store.companies.values()) {
+			visitor.company(MemoryStore.copy(company));
+		}
+		for (Map.Entry<Long, LongSet> entry : store.customerCoupons.entrySet()) {
+			for (long couponId : MemoryStore.idsOf(store.customerCoupons, entry.getKey())) {
+				visitor.customerCoupon(entry.getKey(), couponId);
+			}
+		}
+		for (Map.Entry<Long, LongSet> entry : store.companyCoupons.entrySet()) {
+			for (long couponId : MemoryStore.idsOf(store.companyCoupons, entry.getKey())) {
+				visitor.companyCoupon(entry.getKey(), couponId);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,160 @@
+package core.dao.memory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+
+import core.beans.Company;
+import core.beans.Coupon;
+import core.bus.ChangeType;
+import core.bus.EntityType;
+import core.dao.CompanyColumn;
+import core.dao.CompanyDAO;
+import core.exception.ConcurrentUpdateException;
+import core.exception.CouponSystemException;
+import core.security.CredentialCache;
+import core.security.PasswordHasher;
+
+/**
+ * This class implements {@linkplain CompanyDAO} on the {@link MemoryStore}
+ * (dao.engine=memory).</br>
+ * It keeps the same rules as the DB : a unique id and name, hashed passwords
+ * and updates that are conditional on the version (see
+ * {@link ConcurrentUpdateException}).
+ */
+public class CompanyMemoryDAO implements CompanyDAO {
+	// Attributes
+	private MemoryStore store;
+	private CredentialCache<Company> credentials = CredentialCache.create(EntityType.COMPANY, Company::getId);
+
+	// CTOR
+	public CompanyMemoryDAO(MemoryStore store) {
+		this.store = store;
+	}
+
+	// Methods
+	@Override
+	public void createCompany(Company company) throws CouponSystemException {
+		if (company.getId() == null || company.getId() == 0) {
+			company.setId(store.nextId(EntityType.COMPANY));
+		}
+		if (store.companyNames.putIfAbsent(company.getCompName(), company.getId()) != null) {
+			throw new CouponSystemException(
+					"Create Copmany " + company.getCompName() + " Failed ! (name already exists)");
+		}
+		company.setVersion(0);
+		Company stored = MemoryStore.copy(company);
+		stored.setPassword(PasswordHasher.hash(company.getPassword()));
+		if (store.companies.putIfAbsent(company.getId(), stored) != null) {
+			store.companyNames.remove(company.getCompName(), company.getId());
+			throw new CouponSystemException(
+					"Create Copmany " + company.getCompName() + " Failed ! (Already got this ID)");
+		}
+		store.usedId(EntityType.COMPANY, company.getId());
+		store.changed(EntityType.COMPANY, ChangeType.CREATED, company.getId());
+	}
+
+	@Override
+	public void removeCompany(Company company) throws CouponSystemException {
+		Company removed = store.companies.remove(company.getId());
+		if (removed != null) {
+			store.companyNames.remove(removed.getCompName(), removed.getId());
+			credentials.invalidate(removed.getId());
+			store.changed(EntityType.COMPANY, ChangeType.REMOVED, removed.getId());
+		}
+	}
+
+	@Override
+	public void updateCompany(Company company) throws CouponSystemException {
+		updateCompany(company, EnumSet.allOf(CompanyColumn.class));
+	}
+
+	@Override
+	public void updateCompany(Company company, Set<CompanyColumn> columns) throws CouponSystemException {
+		boolean newName = false;
+		if (columns.contains(CompanyColumn.COMP_NAME)) {
+			Long owner = store.companyNames.putIfAbsent(company.getCompName(), company.getId());
+			if (owner != null && !owner.equals(company.getId())) {
+				throw new CouponSystemException(
+						"Update Company " + company.getCompName() + " was Failed ! (name exists)");
+			}
+			newName = owner == null;
+		}
+		// hashed before the map's lock.
+		String password = columns.contains(CompanyColumn.PASSWORD) ? PasswordHasher.hash(company.getPassword())
+				: null;
+		Company[] old = new Company[1];
+		store.companies.computeIfPresent(company.getId(), (id, stored) -> {
+			if (stored.getVersion() != company.getVersion()) {
+				return stored;
+			}
+			old[0] = stored;
+			Company updated = MemoryStore.copy(stored);
+			if (columns.contains(CompanyColumn.COMP_NAME)) {
+				updated.setCompName(company.getCompName());
+			}
+			if (password != null) {
+				updated.setPassword(password);
+			}
+			if (columns.contains(CompanyColumn.EMAIL)) {
+				updated.setEmail(company.getEmail());
+			}
+			updated.setVersion(stored.getVersion() + 1);
+			return updated;
+		});
+		if (old[0] == null) {
+			if (newName) {
+				store.companyNames.remove(company.getCompName(), company.getId());
+			}
+			throw new ConcurrentUpdateException("Company " + company.getCompName()
+					+ " was changed or removed by someone else, get it again and retry", company.getVersion());
+		}
+		if (newName) {
+			store.companyNames.remove(old[0].getCompName(), company.getId());
+		}
+		company.setVersion(company.getVersion() + 1);
+		credentials.invalidate(company.getId());
+		store.changed(EntityType.COMPANY, ChangeType.UPDATED, company.getId());
+	}
+
+	@Override
+	public Company getCompany(long id) throws CouponSystemException {
+		Company company = store.companies.get(id);
+		if (company == null) {
+			throw new CouponSystemException("Company id " + id + " does not exist");
+		}
+		return MemoryStore.copy(company);
+	}
+
+	@Override
+	public Collection<Company> getAllCompanies() throws CouponSystemException {
+		Collection<Company> all = new ArrayList<>(store.companies.size());
+		for (Company company : store.companies.values()) {
+			all.add(MemoryStore.copy(company));
+		}
+		return all;
+	}
+
+	@Override
+	public Collection<Coupon> getCouppons(Company company) throws CouponSystemException {
+		return store.getCoupons(MemoryStore.idsOf(store.companyCoupons, company.getId()));
+	}
+
+	@Override
+	public Company login(String compName, String password) throws CouponSystemException {
+		Company company = credentials.verify(compName, password);
+		if (company != null) {
+			return company;
+		}
+		long generation = credentials.generation();
+		Long id = store.companyNames.get(compName);
+		Company stored = id == null ? null : store.companies.get(id);
+		if (PasswordHasher.verify(password, stored == null ? null : stored.getPassword())) {
+			company = MemoryStore.copy(stored);
+			credentials.put(compName, password, company, generation);
+		}
+		return company;
+	}
+
+}
@@ -0,0 +1,171 @@
+package core.dao.memory;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+
+import core.beans.Coupon;
+import core.beans.CouponType;
+import core.bus.ChangeType;
+import core.bus.EntityType;
+import core.dao.CouponColumn;
+import core.dao.CouponDAO;
+import core.exception.ConcurrentUpdateException;
+import core.exception.CouponSystemException;
+import core.report.CouponColumnStore;
+
+/**
+ * This class implements {@linkplain CouponDAO} on the {@link MemoryStore}
+ * (dao.engine=memory).</br>
+ * It keeps the same rules as the DB : a unique id and title, updates that are
+ * conditional on the version (see {@link ConcurrentUpdateException}) and only
+ * change the given columns.
+ */
+public class CouponMemoryDAO implements CouponDAO {
+	// Attributes
+	private MemoryStore store;
+
+	// CTOR
+	public CouponMemoryDAO(MemoryStore store) {
+		this.store = store;
+	}
+
+	// Methods
+	@Override
+	public void createCoupon(Coupon coupon) throws CouponSystemException {
+		if (coupon.getId() == 0) {
+			coupon.setId(store.nextId(EntityType.COUPON));
+		}
+		if (store.couponTitles.putIfAbsent(coupon.getTitle(), coupon.getId()) != null) {
+			throw new CouponSystemException("Create Coupon " + coupon.getTitle() + " Failed ! (title already exists)");
+		}
+		coupon.setVersion(0);
+		if (store.coupons.putIfAbsent(coupon.getId(), MemoryStore.copy(coupon)) != null) {
+			store.couponTitles.remove(coupon.getTitle(), coupon.getId());
+			throw new CouponSystemException("Create Coupon " + coupon.getTitle() + " Failed ! (Already got this ID)");
+		}
+		store.usedId(EntityType.COUPON, coupon.getId());
+		MemoryStore.addTo(store.couponTypes, coupon.getType(), coupon.getId());
+		store.changed(EntityType.COUPON, ChangeType.CREATED, coupon.getId());
+	}
+
+	@Override
+	public void removeCoupon(Coupon coupon) throws CouponSystemException {
+		Coupon removed = store.coupons.remove(coupon.getId());
+		if (removed != null) {
+			store.couponTitles.remove(removed.getTitle(), removed.getId());
+			MemoryStore.removeFrom(store.couponTypes, removed.getType(), removed.getId());
+			store.changed(EntityType.COUPON, ChangeType.REMOVED, removed.getId());
+		}
+	}
+
+	@Override
+	public void updateCoupon(Coupon coupon) throws CouponSystemException {
+		updateCoupon(coupon, EnumSet.allOf(CouponColumn.class));
+	}
+
+	@Override
+	public void updateCoupon(Coupon coupon, Set<CouponColumn> columns) throws CouponSystemException {
+		boolean newTitle = false;
+		if (columns.contains(CouponColumn.TITLE)) {
+			Long owner = store.couponTitles.putIfAbsent(coupon.getTitle(), coupon.getId());
+			if (owner != null && owner != coupon.getId()) {
+				throw new CouponSystemException("Update Coupon " + coupon.getTitle() + " was Failed ! (title exists)");
+			}
+			newTitle = owner == null;
+		}
+		Coupon[] old = new Coupon[1];
+		store.coupons.computeIfPresent(coupon.getId(), (id, stored) -> {
+			if (stored.getVersion() != coupon.getVersion()) {
+				return stored;
+			}
+			old[0] = stored;
+			Coupon updated = MemoryStore.copy(stored);
+			for (CouponColumn column : columns) {
+				apply(updated, coupon, column);
+			}
+			updated.setVersion(stored.getVersion() + 1);
+			return updated;
+		});
+		if (old[0] == null) {
+			if (newTitle) {
+				store.couponTitles.remove(coupon.getTitle(), coupon.getId());
+			}
+			throw new ConcurrentUpdateException("Coupon " + coupon.getTitle()
+					+ " was changed or removed by someone else, get it again and retry", coupon.getVersion());
+		}
+		if (newTitle) {
+			store.couponTitles.remove(old[0].getTitle(), coupon.getId());
+		}
+		if (columns.contains(CouponColumn.TYPE) && old[0].getType() != coupon.getType()) {
+			MemoryStore.removeFrom(store.couponTypes, old[0].getType(), coupon.getId());
+			MemoryStore.addTo(store.couponTypes, coupon.getType(), coupon.getId());
+		}
+		coupon.setVersion(coupon.getVersion() + 1);
+		store.changed(EntityType.COUPON, ChangeType.UPDATED, coupon.getId());
+	}
+
+	// copies one column from the caller's coupon.
+	private static void apply(Coupon updated, Coupon coupon, CouponColumn column) {
+		switch (column) {
+		case TITLE:
+			updated.setTitle(coupon.getTitle());
+			break;
+		case START_DATE:
+			updated.setStartDate(new java.util.Date(coupon.getStartDate().getTime()));
+			break;
+		case END_DATE:
+			updated.setEndDate(new java.util.Date(coupon.getEndDate().getTime()));
+			break;
+		case AMOUNT:
+			updated.setAmount(coupon.getAmount());
+			break;
+		case TYPE:
+			updated.setType(coupon.getType());
+			break;
+		case MESSAGE:
+			updated.setMessage(coupon.getMessage());
+			break;
+		case PRICE:
+			updated.setPrice(coupon.getPrice());
+			break;
+		case IMAGE:
+			updated.setImage(coupon.getImage());
+			break;
+		}
+	}
+
+	@Override
+	public Coupon getCoupon(long id) throws CouponSystemException {
+		Coupon coupon = store.coupons.get(id);
+		if (coupon == null) {
+			throw new CouponSystemException("Coupon " + id + " not found");
+		}
+		return MemoryStore.copy(coupon);
+	}
+
+	@Override
+	public boolean titleExists(String title) throws CouponSystemException {
+		return store.couponTitles.containsKey(title);
+	}
+
+	@Override
+	public Collection<Coupon> getAllCoupons() throws CouponSystemException {
+		return store.getCoupons(store.coupons.keySet().stream().mapToLong(Long::longValue).toArray());
+	}
+
+	@Override
+	public Collection<Coupon> getCouponByType(CouponType type) throws CouponSystemException {
+		return store.getCoupons(MemoryStore.idsOf(store.couponTypes, type));
+	}
+
+	@Override
+	public CouponColumnStore getCouponColumns() throws CouponSystemException {
+		CouponColumnStore columns = new CouponColumnStore(store.coupons.size());
+		for (Coupon coupon : store.coupons.values()) {
+			columns.add(coupon);
+		}
+		return columns;
+	}
+
+}
@@ -0,0 +1,157 @@
+package core.dao.memory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+
+import core.beans.Coupon;
+import core.beans.Customer;
+import core.bus.ChangeType;
+import core.bus.EntityType;
+import core.dao.CustomerColumn;
+import core.dao.CustomerDAO;
+import core.exception.ConcurrentUpdateException;
+import core.exception.CouponSystemException;
+import core.security.CredentialCache;
+import core.security.PasswordHasher;
+
+/**
+ * This class implements {@linkplain CustomerDAO} on the {@link MemoryStore}
+ * (dao.engine=memory).</br>
+ * It keeps the same rules as the DB : a unique id and name, hashed passwords
+ * and updates that are conditional on the version (see
+ * {@link ConcurrentUpdateException}).
+ */
+public class CustomerMemoryDAO implements CustomerDAO {
+	// Attributes
+	private MemoryStore store;
+	private CredentialCache<Customer> credentials = CredentialCache.create(EntityType.CUSTOMER, Customer::getId);
+
+	// CTOR
+	public CustomerMemoryDAO(MemoryStore store) {
+		this.store = store;
+	}
+
+	// Methods
+	@Override
+	public void createCustomer(Customer customer) throws CouponSystemException {
+		if (customer.getId() == 0) {
+			customer.setId(store.nextId(EntityType.CUSTOMER));
+		}
+		if (store.customerNames.putIfAbsent(customer.getCustName(), customer.getId()) != null) {
+			throw new CouponSystemException(
+					"Create Customer " + customer.getCustName() + " Failed ! (name already exists)");
+		}
+		customer.setVersion(0);
+		Customer stored = MemoryStore.copy(customer);
+		stored.setPassword(PasswordHasher.hash(customer.getPassword()));
+		if (store.customers.putIfAbsent(customer.getId(), stored) != null) {
+			store.customerNames.remove(customer.getCustName(), customer.getId());
+			throw new CouponSystemException(
+					"Create Customer " + customer.getCustName() + " Failed ! (Already got this ID)");
+		}
+		store.usedId(EntityType.CUSTOMER, customer.getId());
+		store.changed(EntityType.CUSTOMER, ChangeType.CREATED, customer.getId());
+	}
+
+	@Override
+	public void removeCustomer(Customer customer) throws CouponSystemException {
+		Customer removed = store.customers.remove(customer.getId());
+		if (removed != null) {
+			store.customerNames.remove(removed.getCustName(), removed.getId());
+			credentials.invalidate(removed.getId());
+			store.changed(EntityType.CUSTOMER, ChangeType.REMOVED, removed.getId());
+		}
+	}
+
+	@Override
+	public void updateCustomer(Customer customer) throws CouponSystemException {
+		updateCustomer(customer, EnumSet.allOf(CustomerColumn.class));
+	}
+
+	@Override
+	public void updateCustomer(Customer customer, Set<CustomerColumn> columns) throws CouponSystemException {
+		boolean newName = false;
+		if (columns.contains(CustomerColumn.CUST_NAME)) {
+			Long owner = store.customerNames.putIfAbsent(customer.getCustName(), customer.getId());
+			if (owner != null && owner != customer.getId()) {
+				throw new CouponSystemException(
+						"Update Customer " + customer.getCustName() + " was Failed ! (name exists)");
+			}
+			newName = owner == null;
+		}
+		// hashed before the map's lock.
+		String password = columns.contains(CustomerColumn.PASSWORD) ? PasswordHasher.hash(customer.getPassword())
+				: null;
+		Customer[] old = new Customer[1];
+		store.customers.computeIfPresent(customer.getId(), (id, stored) -> {
+			if (stored.getVersion() != customer.getVersion()) {
+				return stored;
+			}
+			old[0] = stored;
+			Customer updated = MemoryStore.copy(stored);
+			if (columns.contains(CustomerColumn.CUST_NAME)) {
+				updated.setCustName(customer.getCustName());
+			}
+			if (password != null) {
+				updated.setPassword(password);
+			}
+			updated.setVersion(stored.getVersion() + 1);
+			return updated;
+		});
+		if (old[0] == null) {
+			if (newName) {
+				store.customerNames.remove(customer.getCustName(), customer.getId());
+			}
+			throw new ConcurrentUpdateException("Customer " + customer.getCustName()
+					+ " was changed or removed by someone else, get it again and retry", customer.getVersion());
+		}
+		if (newName) {
+			store.customerNames.remove(old[0].getCustName(), customer.getId());
+		}
+		customer.setVersion(customer.getVersion() + 1);
+		credentials.invalidate(customer.getId());
+		store.changed(EntityType.CUSTOMER, ChangeType.UPDATED, customer.getId());
+	}
+
+	@Override
+	public Customer getCustomer(long id) throws CouponSystemException {
+		Customer customer = store.customers.get(id);
+		if (customer == null) {
+			throw new CouponSystemException("Customer id " + id + " not found");
+		}
+		return MemoryStore.copy(customer);
+	}
+
+	@Override
+	public Collection<Customer> getAllCustomers() throws CouponSystemException {
+		Collection<Customer> all = new ArrayList<>(store.customers.size());
+		for (Customer customer : store.customers.values()) {
+			all.add(MemoryStore.copy(customer));
+		}
+		return all;
+	}
+
+	@Override
+	public Collection<Coupon> getCoupons(Customer customer) throws CouponSystemException {
+		return store.getCoupons(MemoryStore.idsOf(store.customerCoupons, customer.getId()));
+	}
+
+	@Override
+	public Customer login(String custName, String password) throws CouponSystemException {
+		Customer customer = credentials.verify(custName, password);
+		if (customer != null) {
+			return customer;
+		}
+		long generation = credentials.generation();
+		Long id = store.customerNames.get(custName);
+		Customer stored = id == null ? null : store.customers.get(id);
+		if (PasswordHasher.verify(password, stored == null ? null : stored.getPassword())) {
+			customer = MemoryStore.copy(stored);
+			credentials.put(custName, password, customer, generation);
+		}
+		return customer;
+	}
+
+}
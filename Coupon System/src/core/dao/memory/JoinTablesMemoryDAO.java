@@ -0,0 +1,134 @@
+package core.dao.memory;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import core.beans.Company;
+import core.beans.Coupon;
+import core.beans.Customer;
+import core.beans.Purchase;
+import core.beans.PurchaseOutcome;
+import core.bus.ChangeType;
+import core.bus.EntityType;
+import core.dao.JoinTablesDAO;
+import core.exception.CouponSystemException;
+
+/**
+ * This class implements {@linkplain JoinTablesDAO} on the {@link MemoryStore}
+ * (dao.engine=memory).</br>
+ * Each join table is kept in both directions (customer -> coupons and coupon
+ * -> customers, company -> coupons and coupon -> companies) so every method
+ * is a lookup by id.</br>
+ * A purchase takes the customer coupon first and then takes one coupon from
+ * the stock, both atomic, so a coupon is never sold twice to the same
+ * customer or sold below zero.
+ */
+public class JoinTablesMemoryDAO implements JoinTablesDAO {
+	// Attributes
+	private MemoryStore store;
+
+	// CTOR
+	public JoinTablesMemoryDAO(MemoryStore store) {
+		this.store = store;
+	}
+
+	// Methods
+	@Override
+	public void createCustomerCoupon(Customer customer, Coupon coupon) throws CouponSystemException {
+		if (!MemoryStore.addTo(store.customerCoupons, customer.getId(), coupon.getId())) {
+			throw new CouponSystemException("Create Customer Coupon Failed !(Already got this ID)");
+		}
+		MemoryStore.addTo(store.couponCustomers, coupon.getId(), customer.getId());
+	}
+
+	@Override
+	public void createCompanyCoupon(Company company, Coupon coupon) throws CouponSystemException {
+		if (!MemoryStore.addTo(store.companyCoupons, company.getId(), coupon.getId())) {
+			throw new CouponSystemException("Create Company Coupon Failed !(Already got this ID)");
+		}
+		MemoryStore.addTo(store.couponCompanies, coupon.getId(), company.getId());
+	}
+
+	@Override
+	public void deleteCompanyCoupon(Coupon coupon) throws CouponSystemException {
+		LongSet companies = store.couponCompanies.remove(coupon.getId());
+		if (companies != null) {
+			for (long companyId : companies.toArray()) {
+				MemoryStore.removeFrom(store.companyCoupons, companyId, coupon.getId());
+			}
+		}
+	}
+
+	@Override
+	public void deleteCustomerCoupon(Coupon coupon) throws CouponSystemException {
+		LongSet customers = store.couponCustomers.remove(coupon.getId());
+		if (customers != null) {
+			for (long customerId : customers.toArray()) {
+				MemoryStore.removeFrom(store.customerCoupons, customerId, coupon.getId());
+			}
+		}
+	}
+
+	@Override
+	public Collection<Long> getCustomerIds(long couponId) throws CouponSystemException {
+		long[] ids = MemoryStore.idsOf(store.couponCustomers, couponId);
+		Collection<Long> customerIds = new ArrayList<>(ids.length);
+		for (long id : ids) {
+			customerIds.add(id);
+		}
+		return customerIds;
+	}
+
+	@Override
+	public List<PurchaseOutcome> purchaseCoupons(List<Purchase> purchases) throws CouponSystemException {
+		List<PurchaseOutcome> outcomes = new ArrayList<>(purchases.size());
+		Date today = Calendar.getInstance().getTime();
+		for (Purchase purchase : purchases) {
+			outcomes.add(purchase(purchase, today));
+		}
+		return outcomes;
+	}
+
+	// one purchase, the same checks as the DB.
+	private PurchaseOutcome purchase(Purchase purchase, Date today) {
+		long couponId = purchase.getCoupon().getId();
+		long customerId = purchase.getCustomer().getId();
+		Coupon coupon = store.coupons.get(couponId);
+		if (coupon == null) {
+			return PurchaseOutcome.NOT_FOUND;
+		}
+		String title = purchase.getCoupon().getTitle();
+		if (title != null && !title.equals(coupon.getTitle())) {
+			return PurchaseOutcome.TITLE_MISMATCH;
+		}
+		if (!MemoryStore.addTo(store.customerCoupons, customerId, couponId)) {
+			return PurchaseOutcome.ALREADY_OWNED;
+		}
+		if (today.after(coupon.getEndDate())) {
+			MemoryStore.removeFrom(store.customerCoupons, customerId, couponId);
+			return PurchaseOutcome.EXPIRED;
+		}
+		boolean[] taken = new boolean[1];
+		store.coupons.computeIfPresent(couponId, (id, stored) -> {
+			if (stored.getAmount() <= 0) {
+				return stored;
+			}
+			taken[0] = true;
+			Coupon updated = MemoryStore.copy(stored);
+			updated.setAmount(stored.getAmount() - 1);
+			updated.setVersion(stored.getVersion() + 1);
+			return updated;
+		});
+		if (!taken[0]) {
+			MemoryStore.removeFrom(store.customerCoupons, customerId, couponId);
+			return store.coupons.containsKey(couponId) ? PurchaseOutcome.OUT_OF_STOCK : PurchaseOutcome.NOT_FOUND;
+		}
+		MemoryStore.addTo(store.couponCustomers, couponId, customerId);
+		store.changed(EntityType.COUPON, ChangeType.UPDATED, couponId);
+		return PurchaseOutcome.PURCHASED;
+	}
+
+}
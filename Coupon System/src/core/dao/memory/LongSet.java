@@ -0,0 +1,130 @@
+package core.dao.memory;
+
+import java.util.Arrays;
+
+/**
+ * A set of long ids kept in a primitive open addressing hash table (no Long
+ * objects and no entry objects), used by the {@link MemoryStore} indexes.</br>
+ * <b>Be aware :</b> this class is not thread safe, the store only uses it
+ * inside ConcurrentHashMap.compute calls of the key that holds it.
+ */
+public class LongSet {
+	// Attributes
+	private static final long EMPTY = Long.MIN_VALUE;
+	private long[] slots;
+	private int size = 0;
+	// EMPTY itself can't be kept in the table.
+	private boolean hasEmptyValue = false;
+
+	// CTOR
+	public LongSet() {
+		slots = new long[8];
+		Arrays.fill(slots, EMPTY);
+	}
+
+	// Methods
+	/**
+	 * @return true if the id was added, false if it was in the set already.
+	 */
+	public boolean add(long id) {
+		if (id == EMPTY) {
+			boolean added = !hasEmptyValue;
+			hasEmptyValue = true;
+			return added;
+		}
+		int slot = find(slots, id);
+		if (slots[slot] == id) {
+			return false;
+		}
+		slots[slot] = id;
+		size++;
+		// keeps the table at most half full.
+		if (size * 2 > slots.length) {
+			grow();
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if the id was removed, false if it was not in the set.
+	 */
+	public boolean remove(long id) {
+		if (id == EMPTY) {
+			boolean removed = hasEmptyValue;
+			hasEmptyValue = false;
+			return removed;
+		}
+		int slot = find(slots, id);
+		if (slots[slot] != id) {
+			return false;
+		}
+		slots[slot] = EMPTY;
+		size--;
+		// moves back the ids after it that may have probed over that slot.
+		int mask = slots.length - 1;
+		for (int next = (slot + 1) & mask; slots[next] != EMPTY; next = (next + 1) & mask) {
+			long moved = slots[next];
+			slots[next] = EMPTY;
+			slots[find(slots, moved)] = moved;
+		}
+		return true;
+	}
+
+	public boolean contains(long id) {
+		if (id == EMPTY) {
+			return hasEmptyValue;
+		}
+		return slots[find(slots, id)] == id;
+	}
+
+	public int size() {
+		return hasEmptyValue ? size + 1 : size;
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * @return a copy of the ids in the set (in no specific order).
+	 */
+	public long[] toArray() {
+		long[] ids = new long[size()];
+		int index = 0;
+		for (long slot : slots) {
+			if (slot != EMPTY) {
+				ids[index++] = slot;
+			}
+		}
+		if (hasEmptyValue) {
+			ids[index] = EMPTY;
+		}
+		return ids;
+	}
+
+	// the slot of that id, or the empty slot where it should be added.
+	private static int find(long[] table, long id) {
+		int mask = table.length - 1;
+		int slot = mix(id) & mask;
+		while (table[slot] != EMPTY && table[slot] != id) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private static int mix(long id) {
+		long hash = id * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	private void grow() {
+		long[] old = slots;
+		slots = new long[old.length * 2];
+		Arrays.fill(slots, EMPTY);
+		for (long id : old) {
+			if (id != EMPTY) {
+				slots[find(slots, id)] = id;
+			}
+		}
+	}
+}
@@ -0,0 +1,394 @@
+package core.dao.memory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import core.beans.Company;
+import core.beans.Coupon;
+import core.beans.CouponType;
+import core.beans.Customer;
+import core.bus.ChangeType;
+import core.bus.EntityChangeEvent;
+import core.bus.EntityType;
+import core.bus.InvalidationBus;
+import core.dao.db.TransactionManager;
+
+/**
+ * The data of the in-memory storage engine (dao.engine=memory), shared by the
+ * memory DAOs : {@link CouponMemoryDAO}, {@link CustomerMemoryDAO},
+ * {@link CompanyMemoryDAO} and {@link JoinTablesMemoryDAO}.</br>
+ * The rows are kept in ConcurrentHashMaps by id, with secondary indexes
+ * instead of the DB indexes : coupon title, coupon type, customer name and
+ * company name, and the join tables in both directions (customer -> coupons,
+ * coupon -> customers, company -> coupons, coupon -> companies) as primitive
+ * {@link LongSet}s.</br>
+ * The maps keep their own copies of the beans, a bean that a DAO returns can
+ * be changed by the caller without changing the store.</br>
+ * Each DAO call is atomic on its own, but unlike the DB a facade transaction
+ * is not rolled back if it fails in the middle.</br>
+ * New ids (for beans without an id) are given from an {@link AtomicLong} of
+ * each entity that always stays above the ids in the store.
+ */
+public class MemoryStore {
+	// Attributes
+	private static MemoryStore instance = null;
+	final ConcurrentHashMap<Long, Coupon> coupons = new ConcurrentHashMap<>();
+	final ConcurrentHashMap<String, Long> couponTitles = new ConcurrentHashMap<>();
+	final ConcurrentHashMap<CouponType, LongSet> couponTypes = new ConcurrentHashMap<>();
+	final ConcurrentHashMap<Long, Customer> customers = new ConcurrentHashMap<>();
+	final ConcurrentHashMap<String, Long> customerNames = new ConcurrentHashMap<>();
+	final ConcurrentHashMap<Long, Company> companies = new ConcurrentHashMap<>();
+	final ConcurrentHashMap<String, Long> companyNames = new ConcurrentHashMap<>();
+	final ConcurrentHashMap<Long, LongSet> customerCoupons = new ConcurrentHashMap<>();
+	final ConcurrentHashMap<Long, LongSet> couponCustomers = new ConcurrentHashMap<>();
+	final ConcurrentHashMap<Long, LongSet> companyCoupons = new ConcurrentHashMap<>();
+	final ConcurrentHashMap<Long, LongSet> couponCompanies = new ConcurrentHashMap<>();
+	private Map<EntityType, AtomicLong> nextIds = new EnumMap<>(EntityType.class);
+	private InvalidationBus bus = InvalidationBus.getInstance();
+
+	// CTOR
+	public MemoryStore() {
+		for (EntityType entity : EntityType.values()) {
+			nextIds.put(entity, new AtomicLong(1));
+		}
+	}
+
+	public static synchronized MemoryStore getInstance() {
+		if (instance == null) {
+			instance = new MemoryStore();
+		}
+		return instance;
+	}
+
+	// Methods
+	/**
+	 * @return a new id of that entity.
+	 */
+	long nextId(EntityType entity) {
+		return nextIds.get(entity).getAndIncrement();
+	}
+
+	/**
+	 * Keeps the next ids of that entity above an id that the caller gave.
+	 */
+	void usedId(EntityType entity, long id) {
+		nextIds.get(entity).accumulateAndGet(id + 1, Math::max);
+	}
+
+	/**
+	 * Passes a change to the local listeners (the credential caches, the
+	 * sessions etc) when the transaction commits, there are no other nodes
+	 * with the same data to tell.
+	 */
+	void changed(EntityType entity, ChangeType change, long id) {
+		TransactionManager.afterCommit(
+				() -> bus.dispatch(new EntityChangeEvent(entity, change, id, InvalidationBus.nextVersion())));
+	}
+
+	// adds an id to the set of that key (creates the set if needed).
+	static <K> boolean addTo(ConcurrentHashMap<K, LongSet> index, K key, long id) {
+		boolean[] added = new boolean[1];
+		index.compute(key, (k, set) -> {
+			if (set == null) {
+				set = new LongSet();
+			}
+			added[0] = set.add(id);
+			return set;
+		});
+		return added[0];
+	}
+
+	// removes an id from the set of that key (removes an empty set).
+	static <K> boolean removeFrom(ConcurrentHashMap<K, LongSet> index, K key, long id) {
+		boolean[] removed = new boolean[1];
+		index.computeIfPresent(key, (k, set) -> {
+			removed[0] = set.remove(id);
+			return set.isEmpty() ? null : set;
+		});
+		return removed[0];
+	}
+
+	// a copy of the ids of that key.
+	static <K> long[] idsOf(ConcurrentHashMap<K, LongSet> index, K key) {
+		long[][] ids = { new long[0] };
+		index.computeIfPresent(key, (k, set) -> {
+			ids[0] = set.toArray();
+			return set;
+		});
+		return ids[0];
+	}
+
+	// copies of the coupons of those ids (ids that were removed are skipped).
+	Collection<Coupon> getCoupons(long[] ids) {
+		Collection<Coupon> result = new ArrayList<>(ids.length);
+		for (long id : ids) {
+			Coupon coupon = coupons.get(id);
+			if (coupon != null) {
+				result.add(copy(coupon));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return a copy of the stored coupon, or null if there is none with that
+	 *         id.
+	 */
+	public Coupon findCoupon(long id) {
+		Coupon coupon = coupons.get(id);
+		return coupon == null ? null : copy(coupon);
+	}
+
+	/**
+	 * @return a copy of the stored customer (with the password hash), or null
+	 *         if there is none with that id.
+	 */
+	public Customer findCustomer(long id) {
+		Customer customer = customers.get(id);
+		return customer == null ? null : copy(customer);
+	}
+
+	/**
+	 * @return a copy of the stored company (with the password hash), or null
+	 *         if there is none with that id.
+	 */
+	public Company findCompany(long id) {
+		Company company = companies.get(id);
+		return company == null ? null : copy(company);
+	}
+
+	/**
+	 * @return the ids of all the coupons.
+	 */
+	public long[] getCouponIds() {
+		return coupons.keySet().stream().mapToLong(Long::longValue).toArray();
+	}
+
+	/**
+	 * @return the ids of all the customers.
+	 */
+	public long[] getCustomerIds() {
+		return customers.keySet().stream().mapToLong(Long::longValue).toArray();
+	}
+
+	/**
+	 * @return the ids of all the companies.
+	 */
+	public long[] getCompanyIds() {
+		return companies.keySet().stream().mapToLong(Long::longValue).toArray();
+	}
+
+	/**
+	 * @return the ids of the customers that own that coupon.
+	 */
+	public long[] getCouponCustomerIds(long couponId) {
+		return idsOf(couponCustomers, couponId);
+	}
+
+	/**
+	 * @return the ids of the companies of that coupon.
+	 */
+	public long[] getCouponCompanyIds(long couponId) {
+		return idsOf(couponCompanies, couponId);
+	}
+
+	/**
+	 * Puts a coupon as it is (id, version etc) without any checks or events,
+	 * used to load the store from a file. A coupon with the same id is
+	 * replaced.
+	 */
+	public void restoreCoupon(Coupon coupon) {
+		Coupon old = coupons.put(coupon.getId(), copy(coupon));
+		if (old != null) {
+			couponTitles.remove(old.getTitle(), old.getId());
+			removeFrom(couponTypes, old.getType(), old.getId());
+		}
+		couponTitles.put(coupon.getTitle(), coupon.getId());
+		addTo(couponTypes, coupon.getType(), coupon.getId());
+		usedId(EntityType.COUPON, coupon.getId());
+	}
+
+	/**
+	 * Puts a customer as it is (the password must be hashed already), see
+	 * {@link #restoreCoupon(Coupon)}.
+	 */
+	public void restoreCustomer(Customer customer) {
+		Customer old = customers.put(customer.getId(), copy(customer));
+		if (old != null) {
+			customerNames.remove(old.getCustName(), old.getId());
+		}
+		customerNames.put(customer.getCustName(), customer.getId());
+		usedId(EntityType.CUSTOMER, customer.getId());
+	}
+
+	/**
+	 * Puts a company as it is (the password must be hashed already), see
+	 * {@link #restoreCoupon(Coupon)}.
+	 */
+	public void restoreCompany(Company company) {
+		Company old = companies.put(company.getId(), copy(company));
+		if (old != null) {
+			companyNames.remove(old.getCompName(), old.getId());
+		}
+		companyNames.put(company.getCompName(), company.getId());
+		usedId(EntityType.COMPANY, company.getId());
+	}
+
+	/**
+	 * Removes a coupon without events (a coupon that isn't there is ignored).
+	 */
+	public void forgetCoupon(long id) {
+		Coupon old = coupons.remove(id);
+		if (old != null) {
+			couponTitles.remove(old.getTitle(), id);
+			removeFrom(couponTypes, old.getType(), id);
+		}
+	}
+
+	/**
+	 * Removes a customer without events.
+	 */
+	public void forgetCustomer(long id) {
+		Customer old = customers.remove(id);
+		if (old != null) {
+			customerNames.remove(old.getCustName(), id);
+		}
+	}
+
+	/**
+	 * Removes a company without events.
+	 */
+	public void forgetCompany(long id) {
+		Company old = companies.remove(id);
+		if (old != null) {
+			companyNames.remove(old.getCompName(), id);
+		}
+	}
+
+	/**
+	 * Sets the customers that own a coupon, the ones that are not in the given
+	 * ids don't own it anymore.
+	 */
+	public void restoreCouponCustomers(long couponId, long[] customerIds) {
+		restoreOwners(couponCustomers, customerCoupons, couponId, customerIds);
+	}
+
+	/**
+	 * Sets the companies of a coupon, see
+	 * {@link #restoreCouponCustomers(long, long[])}.
+	 */
+	public void restoreCouponCompanies(long couponId, long[] companyIds) {
+		restoreOwners(couponCompanies, companyCoupons, couponId, companyIds);
+	}
+
+	/**
+	 * Adds or removes one customer coupon.
+	 */
+	public void restoreCustomerCoupon(long customerId, long couponId, boolean owned) {
+		restoreOwner(couponCustomers, customerCoupons, couponId, customerId, owned);
+	}
+
+	/**
+	 * Adds or removes one company coupon.
+	 */
+	public void restoreCompanyCoupon(long companyId, long couponId, boolean owned) {
+		restoreOwner(couponCompanies, companyCoupons, couponId, companyId, owned);
+	}
+
+	/**
+	 * @return true if that customer owns that coupon.
+	 */
+	public boolean hasCustomerCoupon(long customerId, long couponId) {
+		return contains(couponCustomers, couponId, customerId);
+	}
+
+	/**
+	 * @return true if that company has that coupon.
+	 */
+	public boolean hasCompanyCoupon(long companyId, long couponId) {
+		return contains(couponCompanies, couponId, companyId);
+	}
+
+	private static void restoreOwners(ConcurrentHashMap<Long, LongSet> owners,
+			ConcurrentHashMap<Long, LongSet> owned, long couponId, long[] ownerIds) {
+		for (long ownerId : idsOf(owners, couponId)) {
+			restoreOwner(owners, owned, couponId, ownerId, false);
+		}
+		for (long ownerId : ownerIds) {
+			restoreOwner(owners, owned, couponId, ownerId, true);
+		}
+	}
+
+	private static void restoreOwner(ConcurrentHashMap<Long, LongSet> owners, ConcurrentHashMap<Long, LongSet> owned,
+			long couponId, long ownerId, boolean add) {
+		if (add) {
+			addTo(owners, couponId, ownerId);
+			addTo(owned, ownerId, couponId);
+		} else {
+			removeFrom(owners, couponId, ownerId);
+			removeFrom(owned, ownerId, couponId);
+		}
+	}
+
+	private static boolean contains(ConcurrentHashMap<Long, LongSet> index, long key, long id) {
+		boolean[] found = new boolean[1];
+		index.computeIfPresent(key, (k, set) -> {
+			found[0] = set.contains(id);
+			return set;
+		});
+		return found[0];
+	}
+
+	/**
+	 * Removes all the data, used by tests and benchmarks.
+	 */
+	public void clear() {
+		coupons.clear();
+		couponTitles.clear();
+		couponTypes.clear();
+		customers.clear();
+		customerNames.clear();
+		companies.clear();
+		companyNames.clear();
+		customerCoupons.clear();
+		couponCustomers.clear();
+		companyCoupons.clear();
+		couponCompanies.clear();
+	}
+
+	/**
+	 * @return the number of coupons, customers and companies in the store.
+	 */
+	public String getStatistics() {
+		return "coupons=" + coupons.size() + ", customers=" + customers.size() + ", companies=" + companies.size()
+				+ ", customerCoupons=" + couponCustomers.values().stream().mapToLong(set -> set.size()).sum();
+	}
+
+	static Coupon copy(Coupon coupon) {
+		Coupon copy = new Coupon(coupon.getId(), coupon.getTitle(), copy(coupon.getStartDate()),
+				copy(coupon.getEndDate()), coupon.getAmount(), coupon.getType(), coupon.getMessage(), coupon.getPrice(),
+				coupon.getImage());
+		copy.setVersion(coupon.getVersion());
+		return copy;
+	}
+
+	static Customer copy(Customer customer) {
+		Customer copy = new Customer(customer.getId(), customer.getCustName(), customer.getPassword());
+		copy.setVersion(customer.getVersion());
+		return copy;
+	}
+
+	static Company copy(Company company) {
+		Company copy = new Company(company.getId(), company.getCompName(), company.getPassword(), company.getEmail());
+		copy.setVersion(company.getVersion());
+		return copy;
+	}
+
+	private static java.util.Date copy(java.util.Date date) {
+		return date == null ? null : new java.util.Date(date.getTime());
+	}
+}
@@ -0,0 +1,28 @@
+package core.exception;
+
+import core.facade.clientType;
+
+/**
+ * This class extends {@link CouponSystemException}.</br>
+ * Thrown when the system is overloaded and a request is rejected at once
+ * instead of waiting (see {@link core.admission.AdmissionController}), the
+ * client can try again later.</br>
+ * The exception doesn't fill a stack trace so a rejection stays cheap.
+ */
+public class AdmissionRejectedException extends CouponSystemException {
+
+	private static final long serialVersionUID = 1L;
+	private clientType type;
+
+	public AdmissionRejectedException(clientType type, String message) {
+		super(message, null, false, false);
+		this.type = type;
+	}
+
+	/**
+	 * @return the client type of the rejected request.
+	 */
+	public clientType getType() {
+		return type;
+	}
+}
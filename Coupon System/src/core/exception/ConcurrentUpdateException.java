@@ -0,0 +1,27 @@
+package core.exception;
+
+/**
+ * This class extends {@link CouponSystemException}.</br>
+ * Thrown when an update is conditional on the row version (optimistic
+ * concurrency) and the row was changed or removed by someone else since it
+ * was read, nothing was saved.</br>
+ * The client should get the row again and repeat the update on the new
+ * version.
+ */
+public class ConcurrentUpdateException extends CouponSystemException {
+
+	private static final long serialVersionUID = 1L;
+	private long version;
+
+	public ConcurrentUpdateException(String message, long version) {
+		super(message);
+		this.version = version;
+	}
+
+	/**
+	 * @return the version that the update expected to find.
+	 */
+	public long getVersion() {
+		return version;
+	}
+}
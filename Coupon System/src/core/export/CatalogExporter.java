@@ -0,0 +1,404 @@
+package core.export;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.zip.GZIPOutputStream;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import core.beans.Company;
+import core.beans.Coupon;
+import core.beans.Customer;
+import core.dao.CatalogDAO;
+import core.dao.CatalogVisitor;
+import core.exception.CouponSystemException;
+import core.util.EpochDay;
+
+/**
+ * Writes the whole catalog (coupons, customers, companies and who owns which
+ * coupon) to a stream while it is read from a {@link CatalogDAO}, each row is
+ * written and forgotten, so the memory it takes doesn't grow with the number
+ * of rows.</br>
+ * <b>JSON_LINES :</b> one JSON object per line, the "entity" field tells
+ * what it is : coupon, customer, company, customerCoupon or
+ * companyCoupon.</br>
+ * <b>XML :</b> a catalog element with the coupons, customers, companies,
+ * customerCoupons and companyCoupons elements in it (always all five, in this
+ * order), fields without a value are left out (and control characters that
+ * XML can't hold are dropped).</br>
+ * The dates are written as yyyy-MM-dd (the DB keeps only the day) and the
+ * password hashes are never exported.</br>
+ * With gzip the output is compressed, the stream (or channel) you give isn't
+ * closed, only flushed.
+ */
+public class CatalogExporter {
+	// Attributes
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final String[] SECTIONS = { "coupons", "customers", "companies", "customerCoupons",
+			"companyCoupons" };
+	private static final XMLOutputFactory XML_FACTORY = XMLOutputFactory.newInstance();
+	private ExportFormat format;
+	private boolean gzip;
+
+	// CTOR
+	public CatalogExporter(ExportFormat format, boolean gzip) {
+		this.format = format;
+		this.gzip = gzip;
+	}
+
+	// Methods
+	/**
+	 * Exports the catalog to a stream.
+	 * 
+	 * @param dao
+	 *            the CatalogDAO to read the catalog from.
+	 * @param out
+	 *            the stream to write to, it stays open.
+	 * @return the number of rows that were exported.
+	 */
+	public long export(CatalogDAO dao, OutputStream out) throws CouponSystemException {
+		try {
+			GZIPOutputStream zip = gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : null;
+			Writer writer = new BufferedWriter(new OutputStreamWriter(zip != null ? zip : out, StandardCharsets.UTF_8),
+					BUFFER_SIZE);
+			RowWriter rows = format == ExportFormat.XML ? new XmlRowWriter(writer) : new JsonRowWriter(writer);
+			dao.scanCatalog(rows);
+			rows.finish();
+			writer.flush();
+			if (zip != null) {
+				zip.finish();
+			}
+			out.flush();
+			System.out.println("Exported " + rows.count + " catalog rows as " + format + (gzip ? " (gzip)" : ""));
+			return rows.count;
+		} catch (IOException | XMLStreamException e) {
+			throw new CouponSystemException("Catalog export Failed ! " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Exports the catalog to a channel (a file or a socket channel).
+	 * 
+	 * @param dao
+	 *            the CatalogDAO to read the catalog from.
+	 * @param channel
+	 *            the channel to write to, it stays open.
+	 * @return the number of rows that were exported.
+	 */
+	public long export(CatalogDAO dao, WritableByteChannel channel) throws CouponSystemException {
+		// the stream isn't closed, closing it would close the channel.
+		return export(dao, Channels.newOutputStream(channel));
+	}
+
+	// the date as yyyy-MM-dd.
+	private static String toDay(Date date) {
+		return LocalDate.ofEpochDay(EpochDay.toEpochDay(date)).toString();
+	}
+
+	// writes the rows of one export, a CouponSystemException of a row wraps its IOException.
+	private static abstract class RowWriter implements CatalogVisitor {
+		protected long count = 0;
+
+		abstract void finish() throws IOException, XMLStreamException;
+
+		protected CouponSystemException failed(Exception e) {
+			return new CouponSystemException("Catalog export Failed ! " + e.getMessage(), e);
+		}
+	}
+
+	// one JSON object per line.
+	private static class JsonRowWriter extends RowWriter {
+		private Writer out;
+
+		private JsonRowWriter(Writer out) {
+			this.out = out;
+		}
+
+		@Override
+		public void coupon(Coupon coupon) throws CouponSystemException {
+			try {
+				start("coupon");
+				field("id", coupon.getId());
+				field("title", coupon.getTitle());
+				field("startDate", coupon.getStartDate() == null ? null : toDay(coupon.getStartDate()));
+				field("endDate", coupon.getEndDate() == null ? null : toDay(coupon.getEndDate()));
+				field("amount", coupon.getAmount());
+				field("type", coupon.getType() == null ? null : coupon.getType().name());
+				field("message", coupon.getMessage());
+				double price = coupon.getPrice();
+				// JSON has no NaN or Infinity.
+				out.write(",\"price\":" + (Double.isNaN(price) || Double.isInfinite(price) ? "null" : price));
+				field("image", coupon.getImage());
+				field("version", coupon.getVersion());
+				end();
+			} catch (IOException e) {
+				throw failed(e);
+			}
+		}
+
+		@Override
+		public void customer(Customer customer) throws CouponSystemException {
+			try {
+				start("customer");
+				field("id", customer.getId());
+				field("custName", customer.getCustName());
+				field("version", customer.getVersion());
+				end();
+			} catch (IOException e) {
+				throw failed(e);
+			}
+		}
+
+		@Override
+		public void company(Company company) throws CouponSystemException {
+			try {
+				start("company");
+				field("id", company.getId());
+				field("compName", company.getCompName());
+				field("email", company.getEmail());
+				field("version", company.getVersion());
+				end();
+			} catch (IOException e) {
+				throw failed(e);
+			}
+		}
+
+		@Override
+		public void customerCoupon(long customerId, long couponId) throws CouponSystemException {
+			try {
+				start("customerCoupon");
+				field("customerId", customerId);
+				field("couponId", couponId);
+				end();
+			} catch (IOException e) {
+				throw failed(e);
+			}
+		}
+
+		@Override
+		public void companyCoupon(long companyId, long couponId) throws CouponSystemException {
+			try {
+				start("companyCoupon");
+				field("companyId", companyId);
+				field("couponId", couponId);
+				end();
+			} catch (IOException e) {
+				throw failed(e);
+			}
+		}
+
+		@Override
+		void finish() {
+		}
+
+		private void start(String entity) throws IOException {
+			out.write("{\"entity\":\"");
+			out.write(entity);
+			out.write('"');
+		}
+
+		private void end() throws IOException {
+			out.write("}\n");
+			count++;
+		}
+
+		private void field(String name, Number value) throws IOException {
+			out.write(",\"");
+			out.write(name);
+			out.write("\":");
+			out.write(value == null ? "null" : value.toString());
+		}
+
+		private void field(String name, String value) throws IOException {
+			out.write(",\"");
+			out.write(name);
+			out.write("\":");
+			if (value == null) {
+				out.write("null");
+				return;
+			}
+			out.write('"');
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				switch (c) {
+				case '"':
+					out.write("\\\"");
+					break;
+				case '\\':
+					out.write("\\\\");
+					break;
+				case '\n':
+					out.write("\\n");
+					break;
+				case '\r':
+					out.write("\\r");
+					break;
+				case '\t':
+					out.write("\\t");
+					break;
+				default:
+					if (c < 0x20) {
+						out.write(String.format("\\u%04x", (int) c));
+					} else {
+						out.write(c);
+					}
+				}
+			}
+			out.write('"');
+		}
+	}
+
+	// streaming XML (StAX), a row per line.
+	private static class XmlRowWriter extends RowWriter {
+		private XMLStreamWriter out;
+		// the index of the open section in SECTIONS, -1 before the first.
+		private int section = -1;
+
+		private XmlRowWriter(Writer writer) throws XMLStreamException {
+			out = XML_FACTORY.createXMLStreamWriter(writer);
+			out.writeStartDocument("UTF-8", "1.0");
+			out.writeCharacters("\n");
+			out.writeStartElement("catalog");
+			out.writeCharacters("\n");
+		}
+
+		@Override
+		public void coupon(Coupon coupon) throws CouponSystemException {
+			try {
+				startRow(0, "coupon");
+				element("id", coupon.getId());
+				element("title", coupon.getTitle());
+				element("startDate", coupon.getStartDate() == null ? null : toDay(coupon.getStartDate()));
+				element("endDate", coupon.getEndDate() == null ? null : toDay(coupon.getEndDate()));
+				element("amount", coupon.getAmount());
+				element("type", coupon.getType() == null ? null : coupon.getType().name());
+				element("message", coupon.getMessage());
+				element("price", coupon.getPrice());
+				element("image", coupon.getImage());
+				element("version", coupon.getVersion());
+				endRow();
+			} catch (XMLStreamException e) {
+				throw failed(e);
+			}
+		}
+
+		@Override
+		public void customer(Customer customer) throws CouponSystemException {
+			try {
+				startRow(1, "customer");
+				element("id", customer.getId());
+				element("custName", customer.getCustName());
+				element("version", customer.getVersion());
+				endRow();
+			} catch (XMLStreamException e) {
+				throw failed(e);
+			}
+		}
+
+		@Override
+		public void company(Company company) throws CouponSystemException {
+			try {
+				startRow(2, "company");
+				element("id", company.getId());
+				element("compName", company.getCompName());
+				element("email", company.getEmail());
+				element("version", company.getVersion());
+				endRow();
+			} catch (XMLStreamException e) {
+				throw failed(e);
+			}
+		}
+
+		@Override
+		public void customerCoupon(long customerId, long couponId) throws CouponSystemException {
+			try {
+				startRow(3, "customerCoupon");
+				out.writeAttribute("customerId", Long.toString(customerId));
+				out.writeAttribute("couponId", Long.toString(couponId));
+				endRow();
+			} catch (XMLStreamException e) {
+				throw failed(e);
+			}
+		}
+
+		@Override
+		public void companyCoupon(long companyId, long couponId) throws CouponSystemException {
+			try {
+				startRow(4, "companyCoupon");
+				out.writeAttribute("companyId", Long.toString(companyId));
+				out.writeAttribute("couponId", Long.toString(couponId));
+				endRow();
+			} catch (XMLStreamException e) {
+				throw failed(e);
+			}
+		}
+
+		@Override
+		void finish() throws XMLStreamException {
+			moveTo(SECTIONS.length);
+			out.writeEndElement();
+			out.writeEndDocument();
+			out.flush();
+		}
+
+		// closes the open section and opens the ones up to that index (the empty ones too).
+		private void moveTo(int index) throws XMLStreamException {
+			while (section < index) {
+				if (section >= 0) {
+					out.writeEndElement();
+					out.writeCharacters("\n");
+				}
+				section++;
+				if (section < SECTIONS.length) {
+					out.writeStartElement(SECTIONS[section]);
+					out.writeCharacters("\n");
+				}
+			}
+		}
+
+		private void startRow(int index, String name) throws XMLStreamException {
+			moveTo(index);
+			out.writeStartElement(name);
+		}
+
+		private void endRow() throws XMLStreamException {
+			out.writeEndElement();
+			out.writeCharacters("\n");
+			count++;
+		}
+
+		private void element(String name, Object value) throws XMLStreamException {
+			if (value != null) {
+				out.writeStartElement(name);
+				out.writeCharacters(xmlText(value.toString()));
+				out.writeEndElement();
+			}
+		}
+
+		// the text without the control characters that XML 1.0 can't hold.
+		private static String xmlText(String text) {
+			StringBuilder result = null;
+			for (int i = 0; i < text.length(); i++) {
+				char c = text.charAt(i);
+				boolean valid = c >= 0x20 ? c != 0xFFFE && c != 0xFFFF : c == '\t' || c == '\n' || c == '\r';
+				if (!valid && result == null) {
+					result = new StringBuilder(text.length()).append(text, 0, i);
+				} else if (valid && result != null) {
+					result.append(c);
+				}
+			}
+			return result == null ? text : result.toString();
+		}
+	}
+
+}
@@ -0,0 +1,10 @@
+package core.export;
+
+/**
+ * This is a enum class that represents the formats of a catalog export (see
+ * {@link CatalogExporter}) : JSON_LINES (one JSON object per line) and XML.
+ */
+public enum ExportFormat {
+
+	JSON_LINES, XML;
+}
@@ -1,14 +1,37 @@
 package core.facade;
 
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
 import java.util.Collection;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Set;
+import core.admission.AdmissionController;
+import core.admission.AdmissionController.Ticket;
 import core.beans.Company;
 import core.beans.Coupon;
 import core.beans.Customer;
-import core.dao.db.CompanyDBDAO;
-import core.dao.db.CouponDBDAO;
-import core.dao.db.CustomerDBDAO;
-import core.dao.db.JoinTablesDBDAO;
+import core.bulk.BulkImportResult;
+import core.bulk.CsvBulkImporter;
+import core.bus.EntityType;
+import core.dao.CatalogDAO;
+import core.dao.CompanyColumn;
+import core.dao.CompanyDAO;
+import core.dao.CouponDAO;
+import core.dao.CustomerColumn;
+import core.dao.CustomerDAO;
+import core.dao.DAOFactory;
+import core.dao.JoinTablesDAO;
+import core.dao.db.TransactionManager;
 import core.exception.CouponSystemException;
+import core.export.CatalogExporter;
+import core.export.ExportFormat;
+import core.flashsale.FlashSaleManager;
+import core.report.CouponColumnStore;
+import core.report.CouponReport;
+import core.security.PasswordHasher;
 
 /**
  * This class implements {@link CouponClientFacade} together with
@@ -23,10 +46,7 @@ import core.exception.CouponSystemException;
 public class AdminFacade implements CouponClientFacade {
 
 	// Attributes
-	private static CustomerDBDAO custdao = new CustomerDBDAO();
-	private static CouponDBDAO coupdao = new CouponDBDAO();
-	private static CompanyDBDAO compdao = new CompanyDBDAO();
-	private static JoinTablesDBDAO joinTtablesdao = new JoinTablesDBDAO();
+	private static AdmissionController admission = AdmissionController.getInstance();
 
 	// Private CTOR
 	private AdminFacade() {
@@ -66,17 +86,25 @@ public class AdminFacade implements CouponClientFacade {
 	 *            A Company object that you want to create
 	 */
 	public void createCompany(Company company) throws CouponSystemException {
-		// check if that company name doesn't already exists.
-		Collection<Company> companies = compdao.getAllCompanies();
-		for (Company companyCheck : companies) {
-			boolean checkExistence = companyCheck.getCompName().equals(company.getCompName());
-			if (checkExistence) {
-				throw new CouponSystemException("Company name : " + company.getCompName() + " already exist");
-			}
+		Ticket ticket = admission.enter(clientType.ADMIN);
+		try {
+			TransactionManager.inTransaction(() -> {
+				// check if that company name doesn't already exists.
+				Collection<Company> companies = compdao().getAllCompanies();
+				for (Company companyCheck : companies) {
+					boolean checkExistence = companyCheck.getCompName().equals(company.getCompName());
+					if (checkExistence) {
+						throw new CouponSystemException("Company name : " + company.getCompName() + " already exist");
+					}
+				}
+				// if we are here that company name doesn't exists.
+				compdao().createCompany(company);
+				System.out.println("Created Company " + company.getCompName() + " successfully");
+				return null;
+			});
+		} finally {
+			ticket.close();
 		}
-		// if we are here that company name doesn't exists.
-		compdao.createCompany(company);
-		System.out.println("Created Company " + company.getCompName() + " successfully");
 	}
 
 	/**
@@ -89,51 +117,83 @@ public class AdminFacade implements CouponClientFacade {
 	 *            A company object that you want to delete.
 	 */
 	public void removeCompany(Company company) throws CouponSystemException {
-		// check if this company exists or it will throw exception.
-		Company companyFromDB = compdao.getCompany(company.getId());
-		/*
-		 * checks if the company's name from the parameter we got is match to
-		 * the name of the same companies id from the DB and from the parameter.
-		 **/
-		boolean checkIdName = companyFromDB.getCompName().equals(company.getCompName());
-		if (checkIdName) {
-			Collection<Coupon> couponsToDele = compdao.getCouppons(company);
-			for (Coupon coupon : couponsToDele) {
-				// deleting coupons from the Join tables and Coupon table.
-				joinTtablesdao.deleteCompanyCoupon(coupon);
-				joinTtablesdao.deleteCustomerCoupon(coupon);
-				coupdao.removeCoupon(coupon);
-			}
-			compdao.removeCompany(companyFromDB);
-			System.out.println("Deleted Company " + company.getCompName() + " successfully");
-		} else {
-			throw new CouponSystemException("Company's ID not match to his name !");
+		Ticket ticket = admission.enter(clientType.ADMIN);
+		try {
+			TransactionManager.inTransaction(() -> {
+				// check if this company exists or it will throw exception.
+				Company companyFromDB = compdao().getCompany(company.getId());
+				/*
+				 * checks if the company's name from the parameter we got is match to
+				 * the name of the same companies id from the DB and from the parameter.
+				 **/
+				boolean checkIdName = companyFromDB.getCompName().equals(company.getCompName());
+				if (checkIdName) {
+					Collection<Coupon> couponsToDele = compdao().getCouppons(company);
+					for (Coupon coupon : couponsToDele) {
+						// deleting coupons from the Join tables and Coupon table.
+						joinTtablesdao().deleteCompanyCoupon(coupon);
+						joinTtablesdao().deleteCustomerCoupon(coupon);
+						coupdao().removeCoupon(coupon);
+					}
+					compdao().removeCompany(companyFromDB);
+					System.out.println("Deleted Company " + company.getCompName() + " successfully");
+				} else {
+					throw new CouponSystemException("Company's ID not match to his name !");
+				}
+				return null;
+			});
+		} finally {
+			ticket.close();
 		}
 	}
 
 	/**
 	 * With this method the Admin user can update a specific Company
 	 * details.</br>
-	 * This method will only update the company's password & email.
+	 * This method will only update the company's password & email (only the
+	 * ones that changed are sent to the DB).</br>
+	 * The update is conditional on the company's version, if someone else
+	 * updated the company since you got it it will throw a
+	 * {@link core.exception.ConcurrentUpdateException}.
 	 * 
 	 * @param company
 	 *            A company object that you want to update.
 	 */
 	public void updateCompany(Company company) throws CouponSystemException {
-		// checks if this company exists or will throw exception
-		Company companyDB = compdao.getCompany(company.getId());
-		/*
-		 * checks if the company's name from the parameter we got is match to
-		 * the name of the same companies id from the DB and from the parameter.
-		 **/
-		boolean checkIdName = companyDB.getCompName().equals(company.getCompName());
-		if (checkIdName) {
-			companyDB.setPassword(company.getPassword());
-			companyDB.setEmail(company.getEmail());
-			compdao.updateCompany(companyDB);
-			System.out.println("Updated Company " + company.getCompName() + " successfully");
-		} else {
-			throw new CouponSystemException("ID not match to the Company's name !");
+		Ticket ticket = admission.enter(clientType.ADMIN);
+		try {
+			TransactionManager.inTransaction(() -> {
+				// checks if this company exists or will throw exception
+				Company companyDB = compdao().getCompany(company.getId());
+				/*
+				 * checks if the company's name from the parameter we got is match to
+				 * the name of the same companies id from the DB and from the parameter.
+				 **/
+				boolean checkIdName = companyDB.getCompName().equals(company.getCompName());
+				if (checkIdName) {
+					Set<CompanyColumn> changed = EnumSet.noneOf(CompanyColumn.class);
+					// a password that is the same as the saved hash was not changed.
+					if (!Objects.equals(company.getPassword(), companyDB.getPassword())
+							&& !PasswordHasher.verify(company.getPassword(), companyDB.getPassword())) {
+						changed.add(CompanyColumn.PASSWORD);
+					}
+					if (!Objects.equals(companyDB.getEmail(), company.getEmail())) {
+						changed.add(CompanyColumn.EMAIL);
+					}
+					companyDB.setPassword(company.getPassword());
+					companyDB.setEmail(company.getEmail());
+					// the version that the caller got the company with.
+					companyDB.setVersion(company.getVersion());
+					compdao().updateCompany(companyDB, changed);
+					company.setVersion(companyDB.getVersion());
+					System.out.println("Updated Company " + company.getCompName() + " successfully");
+				} else {
+					throw new CouponSystemException("ID not match to the Company's name !");
+				}
+				return null;
+			});
+		} finally {
+			ticket.close();
 		}
 	}
 
@@ -146,8 +206,15 @@ public class AdminFacade implements CouponClientFacade {
 	 * @return A Company object.
 	 */
 	public Company getCompany(long id) throws CouponSystemException {
-		Company company = compdao.getCompany(id);
-		return company;
+		Ticket ticket = admission.enter(clientType.ADMIN);
+		try {
+			return TransactionManager.inTransaction(() -> {
+				Company company = compdao().getCompany(id);
+				return company;
+			});
+		} finally {
+			ticket.close();
+		}
 	}
 
 	/**
@@ -157,8 +224,15 @@ public class AdminFacade implements CouponClientFacade {
 	 * @return A Collection list of Company with all the companies in it.
 	 */
 	public Collection<Company> getAllCompanies() throws CouponSystemException {
-		Collection<Company> companies = compdao.getAllCompanies();
-		return companies;
+		Ticket ticket = admission.enter(clientType.ADMIN);
+		try {
+			return TransactionManager.inTransaction(() -> {
+				Collection<Company> companies = compdao().getAllCompanies();
+				return companies;
+			});
+		} finally {
+			ticket.close();
+		}
 	}
 
 	/**
@@ -168,17 +242,25 @@ public class AdminFacade implements CouponClientFacade {
 	 *            A Customer object that you want to create
 	 */
 	public void createCustomer(Customer customer) throws CouponSystemException {
-		// check if that customer name doesn't already exist.
-		Collection<Customer> customers = custdao.getAllCustomers();
-		for (Customer customerCheck : customers) {
-			boolean checkExistence = customerCheck.getCustName().equals(customer.getCustName());
-			if (checkExistence) {
-				throw new CouponSystemException("Customer name : " + customer.getCustName() + " already exist");
-			}
+		Ticket ticket = admission.enter(clientType.ADMIN);
+		try {
+			TransactionManager.inTransaction(() -> {
+				// check if that customer name doesn't already exist.
+				Collection<Customer> customers = custdao().getAllCustomers();
+				for (Customer customerCheck : customers) {
+					boolean checkExistence = customerCheck.getCustName().equals(customer.getCustName());
+					if (checkExistence) {
+						throw new CouponSystemException("Customer name : " + customer.getCustName() + " already exist");
+					}
+				}
+				// if we are here that customer name doesn't exist.
+				custdao().createCustomer(customer);
+				System.out.println("Created Customer " + customer.getCustName() + " successfully");
+				return null;
+			});
+		} finally {
+			ticket.close();
 		}
-		// if we are here that customer name doesn't exist.
-		custdao.createCustomer(customer);
-		System.out.println("Created Customer " + customer.getCustName() + " successfully");
 	}
 
 	/**
@@ -190,49 +272,78 @@ public class AdminFacade implements CouponClientFacade {
 	 *            A customer object that you want to delete.
 	 */
 	public void removeCustomer(Customer customer) throws CouponSystemException {
-		// checks if that customer exists if not it will throw exception.
-		Customer customerFromDB = custdao.getCustomer(customer.getId());
-		/*
-		 * checks if the customer's name from the parameter we got is match to
-		 * the name of the same customers id from the DB and from the parameter.
-		 **/
-		boolean checkIdName = customerFromDB.getCustName().equals(customer.getCustName());
-		if (checkIdName) {
-			// gets all the coupons of that customer.
-			Collection<Coupon> couponsToDele = custdao.getCoupons(customer);
-			for (Coupon coupon : couponsToDele) {
-				// deleting coupons from the Join table of that customer.
-				joinTtablesdao.deleteCustomerCoupon(coupon);
-			}
-			custdao.removeCustomer(customerFromDB);
-			System.out.println("Deleted Customer " + customer.getCustName() + " successfully");
-		} else {
-			throw new CouponSystemException("ID not match to this customer's name !");
+		Ticket ticket = admission.enter(clientType.ADMIN);
+		try {
+			TransactionManager.inTransaction(() -> {
+				// checks if that customer exists if not it will throw exception.
+				Customer customerFromDB = custdao().getCustomer(customer.getId());
+				/*
+				 * checks if the customer's name from the parameter we got is match to
+				 * the name of the same customers id from the DB and from the parameter.
+				 **/
+				boolean checkIdName = customerFromDB.getCustName().equals(customer.getCustName());
+				if (checkIdName) {
+					// gets all the coupons of that customer.
+					Collection<Coupon> couponsToDele = custdao().getCoupons(customer);
+					for (Coupon coupon : couponsToDele) {
+						// deleting coupons from the Join table of that customer.
+						joinTtablesdao().deleteCustomerCoupon(coupon);
+					}
+					custdao().removeCustomer(customerFromDB);
+					System.out.println("Deleted Customer " + customer.getCustName() + " successfully");
+				} else {
+					throw new CouponSystemException("ID not match to this customer's name !");
+				}
+				return null;
+			});
+		} finally {
+			ticket.close();
 		}
 	}
 
 	/**
 	 * With this method the Admin user can update a specific Customer
 	 * details.</br>
-	 * This method will only update the customer's password.
+	 * This method will only update the customer's password (if it
+	 * changed).</br>
+	 * The update is conditional on the customer's version, if someone else
+	 * updated the customer since you got it it will throw a
+	 * {@link core.exception.ConcurrentUpdateException}.
 	 * 
 	 * @param customer
 	 *            A customer object that you want to update.
 	 */
 	public void updateCustomer(Customer customer) throws CouponSystemException {
-		// checks if this customer exists or will throw exception.
-		Customer customerDB = custdao.getCustomer(customer.getId());
-		/*
-		 * checks if the customer's name from the parameter we got is match to
-		 * the name of the same customers id from the DB and from the parameter.
-		 **/
-		boolean checkIdName = customerDB.getCustName().equals(customer.getCustName());
-		if (checkIdName) {
-			customerDB.setPassword(customer.getPassword());
-			custdao.updateCustomer(customerDB);
-			System.out.println("Updated Customer " + customer.getCustName() + " successfully");
-		} else {
-			throw new CouponSystemException("ID not match to this customer's name !");
+		Ticket ticket = admission.enter(clientType.ADMIN);
+		try {
+			TransactionManager.inTransaction(() -> {
+				// checks if this customer exists or will throw exception.
+				Customer customerDB = custdao().getCustomer(customer.getId());
+				/*
+				 * checks if the customer's name from the parameter we got is match to
+				 * the name of the same customers id from the DB and from the parameter.
+				 **/
+				boolean checkIdName = customerDB.getCustName().equals(customer.getCustName());
+				if (checkIdName) {
+					Set<CustomerColumn> changed = EnumSet.noneOf(CustomerColumn.class);
+					// a password that is the same as the saved hash was not changed.
+					if (!Objects.equals(customer.getPassword(), customerDB.getPassword())
+							&& !PasswordHasher.verify(customer.getPassword(), customerDB.getPassword())) {
+						changed.add(CustomerColumn.PASSWORD);
+					}
+					customerDB.setPassword(customer.getPassword());
+					// the version that the caller got the customer with.
+					customerDB.setVersion(customer.getVersion());
+					custdao().updateCustomer(customerDB, changed);
+					customer.setVersion(customerDB.getVersion());
+					System.out.println("Updated Customer " + customer.getCustName() + " successfully");
+				} else {
+					throw new CouponSystemException("ID not match to this customer's name !");
+				}
+				return null;
+			});
+		} finally {
+			ticket.close();
 		}
 	}
 
@@ -245,8 +356,15 @@ public class AdminFacade implements CouponClientFacade {
 	 * @return A Customer object.
 	 */
 	public Customer getCustomer(long id) throws CouponSystemException {
-		Customer customer = custdao.getCustomer(id);
-		return customer;
+		Ticket ticket = admission.enter(clientType.ADMIN);
+		try {
+			return TransactionManager.inTransaction(() -> {
+				Customer customer = custdao().getCustomer(id);
+				return customer;
+			});
+		} finally {
+			ticket.close();
+		}
 	}
 
 	/**
@@ -256,13 +374,204 @@ public class AdminFacade implements CouponClientFacade {
 	 * @return A Collection list of Customer with all the customers in it.
 	 */
 	public Collection<Customer> getAllCustomers() throws CouponSystemException {
-		Collection<Customer> customers = custdao.getAllCustomers();
-		return customers;
+		Ticket ticket = admission.enter(clientType.ADMIN);
+		try {
+			return TransactionManager.inTransaction(() -> {
+				Collection<Customer> customers = custdao().getAllCustomers();
+				return customers;
+			});
+		} finally {
+			ticket.close();
+		}
 	}
 
 	public Collection<Coupon> getAllCoupons() throws CouponSystemException {
-		Collection<Coupon> coupons = coupdao.getAllCoupons();
-		return coupons;
+		Ticket ticket = admission.enter(clientType.ADMIN);
+		try {
+			return TransactionManager.inTransaction(() -> {
+				Collection<Coupon> coupons = coupdao().getAllCoupons();
+				return coupons;
+			});
+		} finally {
+			ticket.close();
+		}
+	}
+
+	/**
+	 * With this method the Admin user gets all the coupons as a
+	 * {@link CouponColumnStore}, a compact columnar copy of the Coupon Table
+	 * that can be scanned for reports.
+	 * 
+	 * @return A CouponColumnStore with all the coupons in it.
+	 */
+	public CouponColumnStore getCouponColumns() throws CouponSystemException {
+		Ticket ticket = admission.enter(clientType.ADMIN);
+		try {
+			return TransactionManager.inTransaction(() -> {
+				CouponColumnStore store = coupdao().getCouponColumns();
+				return store;
+			});
+		} finally {
+			ticket.close();
+		}
+	}
+
+	/**
+	 * With this method the Admin user gets a report of all the coupons : the
+	 * counts, the stock left and the price statistics per type, and how many
+	 * coupons expire between the two dates.
+	 * 
+	 * @param expiringFrom
+	 *            the first day of the expiration range.
+	 * @param expiringTo
+	 *            the last day of the expiration range.
+	 * @return A {@link CouponReport} of all the coupons.
+	 */
+	public CouponReport getCouponReport(Date expiringFrom, Date expiringTo) throws CouponSystemException {
+		Ticket ticket = admission.enter(clientType.ADMIN);
+		try {
+			return TransactionManager.inTransaction(() -> {
+				CouponReport report = coupdao().getCouponColumns().summarize(expiringFrom, expiringTo);
+				return report;
+			});
+		} finally {
+			ticket.close();
+		}
+	}
+
+	/**
+	 * With this method the Admin user exports the whole catalog (coupons,
+	 * customers, companies and who owns which coupon) to a stream, the rows
+	 * are written while they are read from the DB so the export of millions
+	 * of rows doesn't take more memory (see {@link CatalogExporter}).</br>
+	 * The export doesn't stop the purchases, so it is not a snapshot : rows
+	 * that change while it runs may be seen in one table and not in another
+	 * (see {@link core.dao.db.CatalogDBDAO}).
+	 * 
+	 * @param out
+	 *            the stream to write to (a file, a response etc), it isn't
+	 *            closed.
+	 * @param format
+	 *            JSON_LINES or XML.
+	 * @param gzip
+	 *            true to compress the output with gzip.
+	 * @return the number of rows that were exported.
+	 */
+	public long exportCatalog(OutputStream out, ExportFormat format, boolean gzip) throws CouponSystemException {
+		Ticket ticket = admission.enter(clientType.ADMIN);
+		try {
+			return TransactionManager.inTransaction(() -> {
+				long rows = new CatalogExporter(format, gzip).export(catalogdao(), out);
+				return rows;
+			});
+		} finally {
+			ticket.close();
+		}
+	}
+
+	/**
+	 * Same as {@link #exportCatalog(OutputStream, ExportFormat, boolean)} to a
+	 * channel (a FileChannel, a SocketChannel etc), it isn't closed.
+	 */
+	public long exportCatalog(WritableByteChannel channel, ExportFormat format, boolean gzip)
+			throws CouponSystemException {
+		Ticket ticket = admission.enter(clientType.ADMIN);
+		try {
+			return TransactionManager.inTransaction(() -> {
+				long rows = new CatalogExporter(format, gzip).export(catalogdao(), channel);
+				return rows;
+			});
+		} finally {
+			ticket.close();
+		}
+	}
+
+	/**
+	 * With this method the Admin user imports many coupons, customers or
+	 * companies at once from a CSV file (instead of a create call per row),
+	 * see {@link CsvBulkImporter} for the columns.</br>
+	 * Rows with a bad value or an existing id / name are rejected and the
+	 * import goes on, if saving fails it will throw an
+	 * {@link CouponSystemException} and importing the same file again resumes
+	 * where it stopped.
+	 * 
+	 * @param entity
+	 *            COUPON, CUSTOMER or COMPANY.
+	 * @param csv
+	 *            the CSV file.
+	 * @return A {@link BulkImportResult} with the imported & rejected rows.
+	 */
+	public BulkImportResult importCsv(EntityType entity, File csv) throws CouponSystemException {
+		Ticket ticket = admission.enter(clientType.ADMIN);
+		try {
+			// every chunk is saved in a transaction of its own.
+			return new CsvBulkImporter(entity, csv, catalogdao(), DAOFactory.getBulkInsertDAO()).run();
+		} finally {
+			ticket.close();
+		}
+	}
+
+	/**
+	 * With this method the Admin user can start a flash sale of a coupon : its
+	 * stock is held in memory and the purchases are saved in batches (see
+	 * {@link FlashSaleManager}).
+	 * 
+	 * @param coupon
+	 *            A Coupon object of the coupon on sale.
+	 */
+	public void startFlashSale(Coupon coupon) throws CouponSystemException {
+		Ticket ticket = admission.enter(clientType.ADMIN);
+		try {
+			TransactionManager.inTransaction(() -> {
+				FlashSaleManager.getInstance().startSale(coupon.getId());
+				return null;
+			});
+		} finally {
+			ticket.close();
+		}
+	}
+
+	/**
+	 * With this method the Admin user can stop the flash sale of a coupon,
+	 * the method returns after all its purchases are saved in the DB.
+	 * 
+	 * @param coupon
+	 *            A Coupon object of the coupon on sale.
+	 */
+	public void stopFlashSale(Coupon coupon) {
+		FlashSaleManager flashSales = FlashSaleManager.getStarted();
+		if (flashSales != null) {
+			flashSales.stopSale(coupon.getId());
+		}
+	}
+
+	/**
+	 * @return the statistics of the flash sales.
+	 */
+	public String getFlashSaleStatistics() {
+		FlashSaleManager flashSales = FlashSaleManager.getStarted();
+		return flashSales == null ? "no flash sales" : flashSales.getStatistics();
+	}
+
+	// the DAOs are taken from DAOFactory on use, they are created on the first use.
+	private static CustomerDAO custdao() {
+		return DAOFactory.getCustomerDAO();
+	}
+
+	private static CouponDAO coupdao() {
+		return DAOFactory.getCouponDAO();
+	}
+
+	private static CompanyDAO compdao() {
+		return DAOFactory.getCompanyDAO();
+	}
+
+	private static JoinTablesDAO joinTtablesdao() {
+		return DAOFactory.getJoinTablesDAO();
+	}
+
+	private static CatalogDAO catalogdao() {
+		return DAOFactory.getCatalogDAO();
 	}
 
 }
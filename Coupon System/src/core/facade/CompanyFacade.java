@@ -2,12 +2,20 @@ package core.facade;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Set;
+import core.admission.AdmissionController;
+import core.admission.AdmissionController.Ticket;
 import core.beans.Company;
 import core.beans.Coupon;
 import core.beans.CouponType;
-import core.dao.db.CompanyDBDAO;
-import core.dao.db.CouponDBDAO;
-import core.dao.db.JoinTablesDBDAO;
+import core.dao.CompanyDAO;
+import core.dao.CouponColumn;
+import core.dao.CouponDAO;
+import core.dao.DAOFactory;
+import core.dao.JoinTablesDAO;
+import core.dao.db.TransactionManager;
 import core.exception.CouponSystemException;
 
 /**
@@ -22,15 +30,13 @@ import core.exception.CouponSystemException;
  */
 public class CompanyFacade implements CouponClientFacade {
 	// Attributes
+	private static AdmissionController admission = AdmissionController.getInstance();
 	private Company companyDetails = null;
-	private static CompanyDBDAO compdao = new CompanyDBDAO();
-	private static CouponDBDAO coupdao = new CouponDBDAO();
-	private static JoinTablesDBDAO tablesdao = new JoinTablesDBDAO();
 
 	// Private CTOR
-	private CompanyFacade(String name) throws CouponSystemException {
-		System.out.println("Loged in as Company : " + name);
-		companyDetails = compdao.getCompany(name);
+	private CompanyFacade(Company company) {
+		System.out.println("Loged in as Company : " + company.getCompName());
+		companyDetails = company;
 	}
 
 	// methods
@@ -49,14 +55,28 @@ public class CompanyFacade implements CouponClientFacade {
 	 * @return On a successful login returns CompanyFacade.
 	 */
 	public static CompanyFacade login(String username, String password) throws CouponSystemException {
-		boolean check = compdao.login(username, password);
-		if (check) {
-			return new CompanyFacade(username);
-		} else {
-			throw new CouponSystemException("Failed to login as Company");
+		Ticket ticket = admission.enter(clientType.COMPANY);
+		try {
+			return TransactionManager.inTransaction(() -> {
+				Company company = compdao().login(username, password);
+				if (company != null) {
+					return new CompanyFacade(company);
+				} else {
+					throw new CouponSystemException("Failed to login as Company");
+				}
+			});
+		} finally {
+			ticket.close();
 		}
 	}
 
+	/**
+	 * @return the id of the logged in company.
+	 */
+	public long getCompanyId() {
+		return companyDetails.getId();
+	}
+
 	/**
 	 * With this method the Company user can create a new Coupon.</br>
 	 * <b>Be aware :</b> if the title of this coupon already exists it will
@@ -66,19 +86,23 @@ public class CompanyFacade implements CouponClientFacade {
 	 *            A Coupon object that you want to create
 	 */
 	public void createCoupon(Coupon coupon) throws CouponSystemException {
-		// checks if the title exists
-		Collection<Coupon> coupons = coupdao.getAllCoupons();
-		for (Coupon couponCheck : coupons) {
-			boolean check = couponCheck.getTitle().equals(coupon.getTitle());
-			if (check) {
-				throw new CouponSystemException("Coupon " + coupon.getTitle() + " already exist");
-			}
-		}
+		Ticket ticket = admission.enter(clientType.COMPANY);
+		try {
+			TransactionManager.inTransaction(() -> {
+				// checks if the title exists
+				if (coupdao().titleExists(coupon.getTitle())) {
+					throw new CouponSystemException("Coupon " + coupon.getTitle() + " already exist");
+				}
 
-		// if we are here that coupon title doesn't exists.
-		coupdao.createCoupon(coupon);
-		tablesdao.createCompanyCoupon(companyDetails, coupon);
-		System.out.println("Created Coupon " + coupon.getTitle() + " successfully");
+				// if we are here that coupon title doesn't exists.
+				coupdao().createCoupon(coupon);
+				tablesdao().createCompanyCoupon(companyDetails, coupon);
+				System.out.println("Created Coupon " + coupon.getTitle() + " successfully");
+				return null;
+			});
+		} finally {
+			ticket.close();
+		}
 	}
 
 	/**
@@ -90,44 +114,74 @@ public class CompanyFacade implements CouponClientFacade {
 	 *            A coupon object that you want to delete.
 	 */
 	public void removeCoupon(Coupon coupon) throws CouponSystemException {
-		// checks if that coupon exists or will throw exception.
-		Coupon couponFromDB = coupdao.getCoupon(coupon.getId());
-		/*
-		 * checks if the coupon's title from the parameter we got is match to
-		 * the title of the same coupons id from the DB and from the parameter.
-		 **/
-		if (couponFromDB.getTitle().equals(coupon.getTitle())) {
-			tablesdao.deleteCompanyCoupon(couponFromDB);
-			tablesdao.deleteCustomerCoupon(couponFromDB);
-			coupdao.removeCoupon(couponFromDB);
-			System.out.println("Deleted Coupon " + coupon.getTitle() + " successfully");
-		} else {
-			throw new CouponSystemException("ID not match to coupon's Title !");
+		Ticket ticket = admission.enter(clientType.COMPANY);
+		try {
+			TransactionManager.inTransaction(() -> {
+				// checks if that coupon exists or will throw exception.
+				Coupon couponFromDB = coupdao().getCoupon(coupon.getId());
+				/*
+				 * checks if the coupon's title from the parameter we got is match to
+				 * the title of the same coupons id from the DB and from the parameter.
+				 **/
+				if (couponFromDB.getTitle().equals(coupon.getTitle())) {
+					tablesdao().deleteCompanyCoupon(couponFromDB);
+					tablesdao().deleteCustomerCoupon(couponFromDB);
+					coupdao().removeCoupon(couponFromDB);
+					System.out.println("Deleted Coupon " + coupon.getTitle() + " successfully");
+				} else {
+					throw new CouponSystemException("ID not match to coupon's Title !");
+				}
+				return null;
+			});
+		} finally {
+			ticket.close();
 		}
 	}
 
 	/**
 	 * With this method the Company user can update a specific Coupon
 	 * details.</br>
-	 * This method will only update the coupon's endDate & price.
+	 * This method will only update the coupon's endDate & price (only the ones
+	 * that changed are sent to the DB).</br>
+	 * The update is conditional on the coupon's version, if someone else
+	 * updated the coupon since you got it it will throw a
+	 * {@link core.exception.ConcurrentUpdateException}.
 	 * 
 	 * @param coupon
 	 *            A Coupon object that you want to update.
 	 */
 	public void updateCoupon(Coupon coupon) throws CouponSystemException {
-		// checks if that coupon exists or will throw exception.
-		Coupon couponDB = coupdao.getCoupon(coupon.getId());
-		/*
-		 * checks if the customer's name from the parameter we got is match to
-		 * the name of the same customers id from the DB and from the parameter.
-		 **/
-		if (couponDB.getTitle().equals(coupon.getTitle())) {
-			couponDB.setEndDate(coupon.getEndDate());
-			couponDB.setPrice(coupon.getPrice());
-			coupdao.updateCoupon(couponDB);
-			System.out.println("Updated Coupon " + coupon.getTitle() + " successfully");
-		} else {
-			throw new CouponSystemException("ID not match to coupon's Title !");
+		Ticket ticket = admission.enter(clientType.COMPANY);
+		try {
+			TransactionManager.inTransaction(() -> {
+				// checks if that coupon exists or will throw exception.
+				Coupon couponDB = coupdao().getCoupon(coupon.getId());
+				/*
+				 * checks if the customer's name from the parameter we got is match to
+				 * the name of the same customers id from the DB and from the parameter.
+				 **/
+				if (couponDB.getTitle().equals(coupon.getTitle())) {
+					Set<CouponColumn> changed = EnumSet.noneOf(CouponColumn.class);
+					if (!Objects.equals(couponDB.getEndDate(), coupon.getEndDate())) {
+						changed.add(CouponColumn.END_DATE);
+					}
+					if (couponDB.getPrice() != coupon.getPrice()) {
+						changed.add(CouponColumn.PRICE);
+					}
+					couponDB.setEndDate(coupon.getEndDate());
+					couponDB.setPrice(coupon.getPrice());
+					// the version that the caller got the coupon with.
+					couponDB.setVersion(coupon.getVersion());
+					coupdao().updateCoupon(couponDB, changed);
+					coupon.setVersion(couponDB.getVersion());
+					System.out.println("Updated Coupon " + coupon.getTitle() + " successfully");
+				} else {
+					throw new CouponSystemException("ID not match to coupon's Title !");
+				}
+				return null;
+			});
+		} finally {
+			ticket.close();
 		}
 	}
 
@@ -142,17 +196,24 @@ public class CompanyFacade implements CouponClientFacade {
 	 * @return A Coupon object that you want to get.
 	 */
 	public Coupon getCoupon(Long id) throws CouponSystemException {
-		Collection<Coupon> companyCoupons = compdao.getCouppons(companyDetails);
-		Coupon coupon = null;
-		for (Coupon couponCheck : companyCoupons) {
-			if (couponCheck.getId() == id) {
-				coupon = couponCheck;
-			}
-		}
-		if (coupon == null) {
-			throw new CouponSystemException("Coupon id " + id + " not found in the companies coupon");
+		Ticket ticket = admission.enter(clientType.COMPANY);
+		try {
+			return TransactionManager.inTransaction(() -> {
+				Collection<Coupon> companyCoupons = compdao().getCouppons(companyDetails);
+				Coupon coupon = null;
+				for (Coupon couponCheck : companyCoupons) {
+					if (couponCheck.getId() == id) {
+						coupon = couponCheck;
+					}
+				}
+				if (coupon == null) {
+					throw new CouponSystemException("Coupon id " + id + " not found in the companies coupon");
+				}
+				return coupon;
+			});
+		} finally {
+			ticket.close();
 		}
-		return coupon;
 	}
 
 	/**
@@ -163,8 +224,15 @@ public class CompanyFacade implements CouponClientFacade {
 	 * @return A Collection list of Coupon with all the coupons in it.
 	 */
 	public Collection<Coupon> getAllCompanyCoupons() throws CouponSystemException {
-		Collection<Coupon> companyCoupons = compdao.getCouppons(companyDetails);
-		return companyCoupons;
+		Ticket ticket = admission.enter(clientType.COMPANY);
+		try {
+			return TransactionManager.inTransaction(() -> {
+				Collection<Coupon> companyCoupons = compdao().getCouppons(companyDetails);
+				return companyCoupons;
+			});
+		} finally {
+			ticket.close();
+		}
 	}
 
 	/**
@@ -179,15 +247,22 @@ public class CompanyFacade implements CouponClientFacade {
 	 *         it.
 	 */
 	public Collection<Coupon> getAllCompanyCouponsByType(CouponType type) throws CouponSystemException {
-		Collection<Coupon> companyCoupons = compdao.getCouppons(companyDetails);
-		Collection<Coupon> companyCouponsByType = new ArrayList<>();
+		Ticket ticket = admission.enter(clientType.COMPANY);
+		try {
+			return TransactionManager.inTransaction(() -> {
+				Collection<Coupon> companyCoupons = compdao().getCouppons(companyDetails);
+				Collection<Coupon> companyCouponsByType = new ArrayList<>();
 
-		for (Coupon coupon : companyCoupons) {
-			if (coupon.getType().equals(type)) {
-				companyCouponsByType.add(coupon);
-			}
+				for (Coupon coupon : companyCoupons) {
+					if (coupon.getType().equals(type)) {
+						companyCouponsByType.add(coupon);
+					}
+				}
+				return companyCouponsByType;
+			});
+		} finally {
+			ticket.close();
 		}
-		return companyCouponsByType;
 	}
 
 	/**
@@ -203,15 +278,35 @@ public class CompanyFacade implements CouponClientFacade {
 	 *         it.
 	 */
 	public Collection<Coupon> getAllCompanyCouponsByPrice(double price) throws CouponSystemException {
-		Collection<Coupon> companyCoupons = compdao.getCouppons(companyDetails);
-		Collection<Coupon> companyCouponsByPrice = new ArrayList<>();
+		Ticket ticket = admission.enter(clientType.COMPANY);
+		try {
+			return TransactionManager.inTransaction(() -> {
+				Collection<Coupon> companyCoupons = compdao().getCouppons(companyDetails);
+				Collection<Coupon> companyCouponsByPrice = new ArrayList<>();
 
-		for (Coupon coupon : companyCoupons) {
-			if (coupon.getPrice() == price) {
-				companyCouponsByPrice.add(coupon);
-			}
+				for (Coupon coupon : companyCoupons) {
+					if (coupon.getPrice() == price) {
+						companyCouponsByPrice.add(coupon);
+					}
+				}
+				return companyCouponsByPrice;
+			});
+		} finally {
+			ticket.close();
 		}
-		return companyCouponsByPrice;
+	}
+
+	// the DAOs are taken from DAOFactory on use, they are created on the first use.
+	private static CompanyDAO compdao() {
+		return DAOFactory.getCompanyDAO();
+	}
+
+	private static CouponDAO coupdao() {
+		return DAOFactory.getCouponDAO();
+	}
+
+	private static JoinTablesDAO tablesdao() {
+		return DAOFactory.getJoinTablesDAO();
 	}
 
 }
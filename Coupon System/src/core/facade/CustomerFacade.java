@@ -4,13 +4,28 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import core.admission.AdmissionController;
+import core.admission.AdmissionController.Ticket;
 import core.beans.Coupon;
 import core.beans.CouponType;
 import core.beans.Customer;
-import core.dao.db.CouponDBDAO;
-import core.dao.db.CustomerDBDAO;
-import core.dao.db.JoinTablesDBDAO;
+import core.beans.Purchase;
+import core.beans.PurchaseOutcome;
+import core.dao.CouponColumn;
+import core.dao.CouponDAO;
+import core.dao.CustomerDAO;
+import core.dao.DAOFactory;
+import core.dao.JoinTablesDAO;
+import core.dao.db.TransactionManager;
 import core.exception.CouponSystemException;
+import core.flashsale.FlashSaleManager;
+import core.pipeline.PurchasePipeline;
 
 /**
  * This class implements {@link CouponClientFacade} together with
@@ -24,15 +39,13 @@ import core.exception.CouponSystemException;
  */
 public class CustomerFacade implements CouponClientFacade {
 	// Attributes
+	private static AdmissionController admission = AdmissionController.getInstance();
 	private Customer customerDetails = null;
-	private static CustomerDBDAO custdao = new CustomerDBDAO();
-	private static CouponDBDAO coupdao = new CouponDBDAO();
-	private static JoinTablesDBDAO joinTablesdao = new JoinTablesDBDAO();
 
 	// Private CTOR
-	private CustomerFacade(String name) throws CouponSystemException {
-		System.out.println("Loged in as Customer : " + name);
-		customerDetails = custdao.getCustomer(name);
+	private CustomerFacade(Customer customer) {
+		System.out.println("Loged in as Customer : " + customer.getCustName());
+		customerDetails = customer;
 	}
 
 	// Methods
@@ -51,14 +64,28 @@ public class CustomerFacade implements CouponClientFacade {
 	 * @return On a successful login returns CustomerFacade.
 	 */
 	public static CustomerFacade login(String username, String password) throws CouponSystemException {
-		boolean check = custdao.login(username, password);
-		if (check) {
-			return new CustomerFacade(username);
-		} else {
-			throw new CouponSystemException("Failed to login as Customer");
+		Ticket ticket = admission.enter(clientType.CUSTOMER);
+		try {
+			return TransactionManager.inTransaction(() -> {
+				Customer customer = custdao().login(username, password);
+				if (customer != null) {
+					return new CustomerFacade(customer);
+				} else {
+					throw new CouponSystemException("Failed to login as Customer");
+				}
+			});
+		} finally {
+			ticket.close();
 		}
 	}
 
+	/**
+	 * @return the id of the logged in customer.
+	 */
+	public long getCustomerId() {
+		return customerDetails.getId();
+	}
+
 	/**
 	 * With this method the Customer user can buy a new Coupon.</br>
 	 * <b>Be aware :</b> if the customer already got this coupon or the coupon
@@ -69,41 +96,126 @@ public class CustomerFacade implements CouponClientFacade {
 	 *            A Coupon object that you want to create
 	 */
 	public void purchaseCoupon(Coupon coupon) throws CouponSystemException {
-		// check if the coupon exists if not it will throw exception.
-		Coupon couponFromDB = coupdao.getCoupon(coupon.getId());
-		/*
-		 * checks if the coupons's name from the parameter we got is match to
-		 * the name of the same coupons id from the DB and from the parameter.
-		 **/
-		boolean checkIdName = couponFromDB.getTitle().equals(coupon.getTitle());
-		if (checkIdName) {
-			// check if the customer doesn't have that coupon already.
-			Collection<Coupon> coupons = custdao.getCoupons(customerDetails);
-			for (Coupon couponCheck : coupons) {
-				if (couponCheck.getId() == coupon.getId()) {
-					throw new CouponSystemException("Customer - " + customerDetails.getCustName()
-							+ " already have this Coupon - " + coupon.getTitle());
+		// a coupon in a flash sale is bought in memory (no need for admission).
+		FlashSaleManager flashSales = FlashSaleManager.getStarted();
+		PurchaseOutcome flashSale = flashSales == null ? null : flashSales.purchase(customerDetails, coupon);
+		if (flashSale != null) {
+			checkOutcome(flashSale, coupon);
+			return;
+		}
+		// with the purchase pipeline the purchase is saved in a group commit,
+		// its bounded queue limits the waiting purchases (no need for admission).
+		PurchasePipeline pipeline = PurchasePipeline.getInstance();
+		if (pipeline != null) {
+			checkOutcome(await(pipeline.submit(customerDetails, coupon)), coupon);
+			return;
+		}
+		Ticket ticket = admission.enter(clientType.CUSTOMER);
+		try {
+			TransactionManager.inTransaction(() -> {
+				// check if the coupon exists if not it will throw exception.
+				Coupon couponFromDB = coupdao().getCoupon(coupon.getId());
+				/*
+				 * checks if the coupons's name from the parameter we got is match to
+				 * the name of the same coupons id from the DB and from the parameter.
+				 **/
+				boolean checkIdName = couponFromDB.getTitle().equals(coupon.getTitle());
+				if (checkIdName) {
+					// check if the customer doesn't have that coupon already.
+					Collection<Coupon> coupons = custdao().getCoupons(customerDetails);
+					for (Coupon couponCheck : coupons) {
+						if (couponCheck.getId() == coupon.getId()) {
+							throw new CouponSystemException("Customer - " + customerDetails.getCustName()
+									+ " already have this Coupon - " + coupon.getTitle());
+						}
+					}
+				} else {
+					throw new CouponSystemException("ID is not match to coupon's title");
+				}
+				// check if this coupon is not out of stock.
+				if (couponFromDB.getAmount() == 0) {
+					throw new CouponSystemException("this Coupon is out of stock");
+				}
+				// check coupon expiration day
+				Date today = Calendar.getInstance().getTime();
+				if (today.after(couponFromDB.getEndDate())) {
+					throw new CouponSystemException("this coupon " + coupon.getTitle() + " expired");
 				}
+
+				// after all that its clear to purchase & update the amount of that
+				// coupon (only if no one else changed it since it was read).
+				couponFromDB.setAmount(couponFromDB.getAmount() - 1);
+				coupdao().updateCoupon(couponFromDB, EnumSet.of(CouponColumn.AMOUNT));
+				joinTablesdao().createCustomerCoupon(customerDetails, couponFromDB);
+				System.out.println("Purchased Coupon " + coupon.getTitle() + " successfully");
+				return null;
+			});
+		} finally {
+			ticket.close();
+		}
+	}
+
+	/**
+	 * With this method the Customer user can buy a basket of coupons at
+	 * once.</br>
+	 * All the coupons are checked together (exists, title, already have it,
+	 * stock, expiration) and the purchased ones are saved in one transaction,
+	 * so it takes about the same time for one coupon or for many.</br>
+	 * Unlike {@link #purchaseCoupon(Coupon)} a coupon that can't be bought
+	 * doesn't throw an exception, it gets its {@link PurchaseOutcome} and the
+	 * rest of the basket is bought.</br>
+	 * If the purchase fails nothing is bought and it will throw an
+	 * {@link CouponSystemException}.</br>
+	 * The coupons in a flash sale are bought in memory only after the rest of
+	 * the basket was saved, a coupon whose flash sale stopped in between gets
+	 * FAILED.
+	 * 
+	 * @param coupons
+	 *            the Coupon objects that you want to buy (id & title).
+	 * @return the {@link PurchaseOutcome} of every coupon id (in the basket
+	 *         order).
+	 */
+	public Map<Long, PurchaseOutcome> purchaseCoupons(Collection<Coupon> coupons) throws CouponSystemException {
+		Map<Long, PurchaseOutcome> results = new LinkedHashMap<>();
+		FlashSaleManager flashSales = FlashSaleManager.getStarted();
+		List<Coupon> onSale = new ArrayList<>();
+		List<Purchase> purchases = new ArrayList<>();
+		for (Coupon coupon : coupons) {
+			if (results.containsKey(coupon.getId())) {
+				continue;
+			}
+			// keeps the basket order.
+			results.put(coupon.getId(), null);
+			if (flashSales != null && flashSales.isOnSale(coupon.getId())) {
+				onSale.add(coupon);
+			} else {
+				purchases.add(new Purchase(customerDetails, coupon));
 			}
-		} else {
-			throw new CouponSystemException("ID is not match to coupon's title");
 		}
-		// check if this coupon is not out of stock.
-		if (couponFromDB.getAmount() == 0) {
-			throw new CouponSystemException("this Coupon is out of stock");
+		Ticket ticket = admission.enter(clientType.CUSTOMER);
+		try {
+			List<PurchaseOutcome> outcomes = TransactionManager
+					.inTransaction(() -> joinTablesdao().purchaseCoupons(purchases));
+			for (int i = 0; i < purchases.size(); i++) {
+				results.put(purchases.get(i).getCoupon().getId(), outcomes.get(i));
+			}
+		} finally {
+			ticket.close();
 		}
-		// check coupon expiration day
-		Date today = Calendar.getInstance().getTime();
-		if (today.after(couponFromDB.getEndDate())) {
-			throw new CouponSystemException("this coupon " + coupon.getTitle() + " expired");
+		// the flash sale coupons are bought in memory after the DB part was
+		// committed, so a failed DB part doesn't leave reservations behind.
+		for (Coupon coupon : onSale) {
+			PurchaseOutcome flashSale = flashSales.purchase(customerDetails, coupon);
+			results.put(coupon.getId(), flashSale == null ? PurchaseOutcome.FAILED : flashSale);
 		}
-
-		// after all that its clear to purchase & update the amount of that
-		// coupon.
-		couponFromDB.setAmount(couponFromDB.getAmount() - 1);
-		coupdao.updateCoupon(couponFromDB);
-		joinTablesdao.createCustomerCoupon(customerDetails, couponFromDB);
-		System.out.println("Purchased Coupon " + coupon.getTitle() + " successfully");
+		int purchased = 0;
+		for (PurchaseOutcome outcome : results.values()) {
+			if (outcome.isPurchased()) {
+				purchased++;
+			}
+		}
+		System.out.println("Purchased " + purchased + " of " + results.size() + " Coupons");
+		return results;
 	}
 
 	/**
@@ -115,8 +227,15 @@ public class CustomerFacade implements CouponClientFacade {
 	 *         it.
 	 */
 	public Collection<Coupon> getCustomerCoupons() throws CouponSystemException {
-		Collection<Coupon> customerCoupons = custdao.getCoupons(customerDetails);
-		return customerCoupons;
+		Ticket ticket = admission.enter(clientType.CUSTOMER);
+		try {
+			return TransactionManager.inTransaction(() -> {
+				Collection<Coupon> customerCoupons = custdao().getCoupons(customerDetails);
+				return customerCoupons;
+			});
+		} finally {
+			ticket.close();
+		}
 	}
 
 	/**
@@ -131,15 +250,22 @@ public class CustomerFacade implements CouponClientFacade {
 	 *         it.
 	 */
 	public Collection<Coupon> getCustomerCouponsByType(CouponType type) throws CouponSystemException {
-		Collection<Coupon> customerCoupons = custdao.getCoupons(customerDetails);
-		Collection<Coupon> customerCouponsByType = new ArrayList<>();
+		Ticket ticket = admission.enter(clientType.CUSTOMER);
+		try {
+			return TransactionManager.inTransaction(() -> {
+				Collection<Coupon> customerCoupons = custdao().getCoupons(customerDetails);
+				Collection<Coupon> customerCouponsByType = new ArrayList<>();
 
-		for (Coupon coupon : customerCoupons) {
-			if (coupon.getType().equals(type)) {
-				customerCouponsByType.add(coupon);
-			}
+				for (Coupon coupon : customerCoupons) {
+					if (coupon.getType().equals(type)) {
+						customerCouponsByType.add(coupon);
+					}
+				}
+				return customerCouponsByType;
+			});
+		} finally {
+			ticket.close();
 		}
-		return customerCouponsByType;
 	}
 
 	/**
@@ -154,14 +280,59 @@ public class CustomerFacade implements CouponClientFacade {
 	 *         it.
 	 */
 	public Collection<Coupon> getCustomerCouponsByPrice(double price) throws CouponSystemException {
-		Collection<Coupon> customerCoupons = custdao.getCoupons(customerDetails);
-		Collection<Coupon> customerCouponsByPrice = new ArrayList<>();
+		Ticket ticket = admission.enter(clientType.CUSTOMER);
+		try {
+			return TransactionManager.inTransaction(() -> {
+				Collection<Coupon> customerCoupons = custdao().getCoupons(customerDetails);
+				Collection<Coupon> customerCouponsByPrice = new ArrayList<>();
+
+				for (Coupon coupon : customerCoupons) {
+					if (coupon.getPrice() == price) {
+						customerCouponsByPrice.add(coupon);
+					}
+				}
+				return customerCouponsByPrice;
+			});
+		} finally {
+			ticket.close();
+		}
+	}
+
+	// throws an exception if the coupon was not purchased.
+	private void checkOutcome(PurchaseOutcome outcome, Coupon coupon) throws CouponSystemException {
+		if (!outcome.isPurchased()) {
+			throw new CouponSystemException("Failed to purchase Coupon " + coupon.getTitle() + " : " + outcome);
+		}
+		System.out.println("Purchased Coupon " + coupon.getTitle() + " successfully");
+	}
 
-		for (Coupon coupon : customerCoupons) {
-			if (coupon.getPrice() == price) {
-				customerCouponsByPrice.add(coupon);
+	// waits for the outcome of a purchase in the pipeline.
+	private static PurchaseOutcome await(Future<PurchaseOutcome> future)
+			throws CouponSystemException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof CouponSystemException) {
+				throw (CouponSystemException) e.getCause();
 			}
+			throw new CouponSystemException("Purchase failed", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CouponSystemException("Purchase was interrupted", e);
 		}
-		return customerCouponsByPrice;
 	}
-}
\ No newline at end of file
+
+	// the DAOs are taken from DAOFactory on use, they are created on the first use.
+	private static CustomerDAO custdao() {
+		return DAOFactory.getCustomerDAO();
+	}
+
+	private static CouponDAO coupdao() {
+		return DAOFactory.getCouponDAO();
+	}
+
+	private static JoinTablesDAO joinTablesdao() {
+		return DAOFactory.getJoinTablesDAO();
+	}
+
+}
@@ -0,0 +1,188 @@
+package core.facade.async;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+
+import core.beans.Company;
+import core.beans.Coupon;
+import core.beans.Customer;
+import core.exception.CouponSystemException;
+import core.facade.AdminFacade;
+import core.report.CouponColumnStore;
+import core.report.CouponReport;
+
+/**
+ * The async version of {@link AdminFacade}.</br>
+ * Every method runs the same {@link AdminFacade} method on the
+ * {@link FacadeExecutor} and returns at once with a {@link CompletableFuture},
+ * so independent calls can run at the same time and be composed, for example
+ * :</br>
+ * <code>adminFacade.getAllCompanies().thenCombine(adminFacade.getAllCustomers(), ...)</code></br>
+ * The future completes with the {@link CouponSystemException} that the facade
+ * threw, or with a {@link java.util.concurrent.TimeoutException} (not run) or
+ * an {@link OutcomeUnknownException} (may have been done) if the call didn't
+ * finish in the timeout of this facade (see {@link #withTimeout}).
+ */
+public class AsyncAdminFacade {
+	// Attributes
+	private AdminFacade facade;
+	private FacadeExecutor executor;
+	private long timeoutMillis;
+
+	// CTOR
+	/**
+	 * Wraps a logged in {@link AdminFacade} with the default
+	 * {@link FacadeExecutor} and its default timeout.
+	 */
+	public AsyncAdminFacade(AdminFacade facade) {
+		this(facade, FacadeExecutor.getInstance(), FacadeExecutor.getInstance().getDefaultTimeoutMillis());
+	}
+
+	/**
+	 * @param facade
+	 *            a logged in {@link AdminFacade}.
+	 * @param executor
+	 *            the executor that runs the calls.
+	 * @param timeoutMillis
+	 *            the timeout of every call (0 for no timeout).
+	 */
+	public AsyncAdminFacade(AdminFacade facade, FacadeExecutor executor, long timeoutMillis) {
+		this.facade = facade;
+		this.executor = executor;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	// Methods
+	/**
+	 * Login on the {@link FacadeExecutor}, see {@link AdminFacade#login}.
+	 */
+	public static CompletableFuture<AsyncAdminFacade> login(String username, String password) {
+		return FacadeExecutor.getInstance()
+				.submit(() -> new AsyncAdminFacade(AdminFacade.login(username, password)));
+	}
+
+	/**
+	 * @return the same facade with a different timeout for every call.
+	 */
+	public AsyncAdminFacade withTimeout(long timeoutMillis) {
+		return new AsyncAdminFacade(facade, executor, timeoutMillis);
+	}
+
+	/**
+	 * @return the blocking facade.
+	 */
+	public AdminFacade getFacade() {
+		return facade;
+	}
+
+	/**
+	 * See {@link AdminFacade#createCompany(Company)}.
+	 */
+	public CompletableFuture<Void> createCompany(Company company) {
+		return executor.submit(() -> {
+			facade.createCompany(company);
+			return null;
+		}, timeoutMillis);
+	}
+
+	/**
+	 * See {@link AdminFacade#removeCompany(Company)}.
+	 */
+	public CompletableFuture<Void> removeCompany(Company company) {
+		return executor.submit(() -> {
+			facade.removeCompany(company);
+			return null;
+		}, timeoutMillis);
+	}
+
+	/**
+	 * See {@link AdminFacade#updateCompany(Company)}.
+	 */
+	public CompletableFuture<Void> updateCompany(Company company) {
+		return executor.submit(() -> {
+			facade.updateCompany(company);
+			return null;
+		}, timeoutMillis);
+	}
+
+	/**
+	 * See {@link AdminFacade#getCompany(long)}.
+	 */
+	public CompletableFuture<Company> getCompany(long id) {
+		return executor.submit(() -> facade.getCompany(id), timeoutMillis);
+	}
+
+	/**
+	 * See {@link AdminFacade#getAllCompanies()}.
+	 */
+	public CompletableFuture<Collection<Company>> getAllCompanies() {
+		return executor.submit(() -> facade.getAllCompanies(), timeoutMillis);
+	}
+
+	/**
+	 * See {@link AdminFacade#createCustomer(Customer)}.
+	 */
+	public CompletableFuture<Void> createCustomer(Customer customer) {
+		return executor.submit(() -> {
+			facade.createCustomer(customer);
+			return null;
+		}, timeoutMillis);
+	}
+
+	/**
+	 * See {@link AdminFacade#removeCustomer(Customer)}.
+	 */
+	public CompletableFuture<Void> removeCustomer(Customer customer) {
+		return executor.submit(() -> {
+			facade.removeCustomer(customer);
+			return null;
+		}, timeoutMillis);
+	}
+
+	/**
+	 * See {@link AdminFacade#updateCustomer(Customer)}.
+	 */
+	public CompletableFuture<Void> updateCustomer(Customer customer) {
+		return executor.submit(() -> {
+			facade.updateCustomer(customer);
+			return null;
+		}, timeoutMillis);
+	}
+
+	/**
+	 * See {@link AdminFacade#getCustomer(long)}.
+	 */
+	public CompletableFuture<Customer> getCustomer(long id) {
+		return executor.submit(() -> facade.getCustomer(id), timeoutMillis);
+	}
+
+	/**
+	 * See {@link AdminFacade#getAllCustomers()}.
+	 */
+	public CompletableFuture<Collection<Customer>> getAllCustomers() {
+		return executor.submit(() -> facade.getAllCustomers(), timeoutMillis);
+	}
+
+	/**
+	 * See {@link AdminFacade#getAllCoupons()}.
+	 */
+	public CompletableFuture<Collection<Coupon>> getAllCoupons() {
+		return executor.submit(() -> facade.getAllCoupons(), timeoutMillis);
+	}
+
+	/**
+	 * See {@link AdminFacade#getCouponColumns()}.
+	 */
+	public CompletableFuture<CouponColumnStore> getCouponColumns() {
+		return executor.submit(() -> facade.getCouponColumns(), timeoutMillis);
+	}
+
+	/**
+	 * See {@link AdminFacade#getCouponReport(Date,Date)}.
+	 */
+	public CompletableFuture<CouponReport> getCouponReport(Date expiringFrom, Date expiringTo) {
+		return executor.submit(() -> facade.getCouponReport(expiringFrom, expiringTo), timeoutMillis);
+	}
+
+}
@@ -0,0 +1,134 @@
+package core.facade.async;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
+import core.beans.Coupon;
+import core.beans.CouponType;
+import core.exception.CouponSystemException;
+import core.facade.CompanyFacade;
+
+/**
+ * The async version of {@link CompanyFacade}.</br>
+ * Every method runs the same {@link CompanyFacade} method on the
+ * {@link FacadeExecutor} and returns at once with a {@link CompletableFuture},
+ * so independent calls can run at the same time and be composed, for example
+ * :</br>
+ * <code>companyFacade.getAllCompanyCouponsByType(CouponType.FOOD).thenCombine(
+ *         companyFacade.getAllCompanyCouponsByType(CouponType.SPORTS), ...)</code></br>
+ * The future completes with the {@link CouponSystemException} that the facade
+ * threw, or with a {@link java.util.concurrent.TimeoutException} (not run) or
+ * an {@link OutcomeUnknownException} (may have been done) if the call didn't
+ * finish in the timeout of this facade (see {@link #withTimeout}).
+ */
+public class AsyncCompanyFacade {
+	// Attributes
+	private CompanyFacade facade;
+	private FacadeExecutor executor;
+	private long timeoutMillis;
+
+	// CTOR
+	/**
+	 * Wraps a logged in {@link CompanyFacade} with the default
+	 * {@link FacadeExecutor} and its default timeout.
+	 */
+	public AsyncCompanyFacade(CompanyFacade facade) {
+		this(facade, FacadeExecutor.getInstance(), FacadeExecutor.getInstance().getDefaultTimeoutMillis());
+	}
+
+	/**
+	 * @param facade
+	 *            a logged in {@link CompanyFacade}.
+	 * @param executor
+	 *            the executor that runs the calls.
+	 * @param timeoutMillis
+	 *            the timeout of every call (0 for no timeout).
+	 */
+	public AsyncCompanyFacade(CompanyFacade facade, FacadeExecutor executor, long timeoutMillis) {
+		this.facade = facade;
+		this.executor = executor;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	// Methods
+	/**
+	 * Login on the {@link FacadeExecutor}, see {@link CompanyFacade#login}.
+	 */
+	public static CompletableFuture<AsyncCompanyFacade> login(String username, String password) {
+		return FacadeExecutor.getInstance()
+				.submit(() -> new AsyncCompanyFacade(CompanyFacade.login(username, password)));
+	}
+
+	/**
+	 * @return the same facade with a different timeout for every call.
+	 */
+	public AsyncCompanyFacade withTimeout(long timeoutMillis) {
+		return new AsyncCompanyFacade(facade, executor, timeoutMillis);
+	}
+
+	/**
+	 * @return the blocking facade.
+	 */
+	public CompanyFacade getFacade() {
+		return facade;
+	}
+
+	/**
+	 * See {@link CompanyFacade#createCoupon(Coupon)}.
+	 */
+	public CompletableFuture<Void> createCoupon(Coupon coupon) {
+		return executor.submit(() -> {
+			facade.createCoupon(coupon);
+			return null;
+		}, timeoutMillis);
+	}
+
+	/**
+	 * See {@link CompanyFacade#removeCoupon(Coupon)}.
+	 */
+	public CompletableFuture<Void> removeCoupon(Coupon coupon) {
+		return executor.submit(() -> {
+			facade.removeCoupon(coupon);
+			return null;
+		}, timeoutMillis);
+	}
+
+	/**
+	 * See {@link CompanyFacade#updateCoupon(Coupon)}.
+	 */
+	public CompletableFuture<Void> updateCoupon(Coupon coupon) {
+		return executor.submit(() -> {
+			facade.updateCoupon(coupon);
+			return null;
+		}, timeoutMillis);
+	}
+
+	/**
+	 * See {@link CompanyFacade#getCoupon(Long)}.
+	 */
+	public CompletableFuture<Coupon> getCoupon(Long id) {
+		return executor.submit(() -> facade.getCoupon(id), timeoutMillis);
+	}
+
+	/**
+	 * See {@link CompanyFacade#getAllCompanyCoupons()}.
+	 */
+	public CompletableFuture<Collection<Coupon>> getAllCompanyCoupons() {
+		return executor.submit(() -> facade.getAllCompanyCoupons(), timeoutMillis);
+	}
+
+	/**
+	 * See {@link CompanyFacade#getAllCompanyCouponsByType(CouponType)}.
+	 */
+	public CompletableFuture<Collection<Coupon>> getAllCompanyCouponsByType(CouponType type) {
+		return executor.submit(() -> facade.getAllCompanyCouponsByType(type), timeoutMillis);
+	}
+
+	/**
+	 * See {@link CompanyFacade#getAllCompanyCouponsByPrice(double)}.
+	 */
+	public CompletableFuture<Collection<Coupon>> getAllCompanyCouponsByPrice(double price) {
+		return executor.submit(() -> facade.getAllCompanyCouponsByPrice(price), timeoutMillis);
+	}
+
+}
@@ -0,0 +1,116 @@
+package core.facade.async;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import core.beans.Coupon;
+import core.beans.CouponType;
+import core.beans.PurchaseOutcome;
+import core.exception.CouponSystemException;
+import core.facade.CustomerFacade;
+
+/**
+ * The async version of {@link CustomerFacade}.</br>
+ * Every method runs the same {@link CustomerFacade} method on the
+ * {@link FacadeExecutor} and returns at once with a {@link CompletableFuture},
+ * so independent calls can run at the same time and be composed, for example
+ * :</br>
+ * <code>customerFacade.getCustomerCoupons().thenCombine(
+ *         customerFacade.getCustomerCouponsByType(CouponType.FOOD), ...)</code></br>
+ * The future completes with the {@link CouponSystemException} that the facade
+ * threw, or with a {@link java.util.concurrent.TimeoutException} (not run) or
+ * an {@link OutcomeUnknownException} (may have been done) if the call didn't
+ * finish in the timeout of this facade (see {@link #withTimeout}).
+ */
+public class AsyncCustomerFacade {
+	// Attributes
+	private CustomerFacade facade;
+	private FacadeExecutor executor;
+	private long timeoutMillis;
+
+	// CTOR
+	/**
+	 * Wraps a logged in {@link CustomerFacade} with the default
+	 * {@link FacadeExecutor} and its default timeout.
+	 */
+	public AsyncCustomerFacade(CustomerFacade facade) {
+		this(facade, FacadeExecutor.getInstance(), FacadeExecutor.getInstance().getDefaultTimeoutMillis());
+	}
+
+	/**
+	 * @param facade
+	 *            a logged in {@link CustomerFacade}.
+	 * @param executor
+	 *            the executor that runs the calls.
+	 * @param timeoutMillis
+	 *            the timeout of every call (0 for no timeout).
+	 */
+	public AsyncCustomerFacade(CustomerFacade facade, FacadeExecutor executor, long timeoutMillis) {
+		this.facade = facade;
+		this.executor = executor;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	// Methods
+	/**
+	 * Login on the {@link FacadeExecutor}, see {@link CustomerFacade#login}.
+	 */
+	public static CompletableFuture<AsyncCustomerFacade> login(String username, String password) {
+		return FacadeExecutor.getInstance()
+				.submit(() -> new AsyncCustomerFacade(CustomerFacade.login(username, password)));
+	}
+
+	/**
+	 * @return the same facade with a different timeout for every call.
+	 */
+	public AsyncCustomerFacade withTimeout(long timeoutMillis) {
+		return new AsyncCustomerFacade(facade, executor, timeoutMillis);
+	}
+
+	/**
+	 * @return the blocking facade.
+	 */
+	public CustomerFacade getFacade() {
+		return facade;
+	}
+
+	/**
+	 * See {@link CustomerFacade#purchaseCoupon(Coupon)}.
+	 */
+	public CompletableFuture<Void> purchaseCoupon(Coupon coupon) {
+		return executor.submit(() -> {
+			facade.purchaseCoupon(coupon);
+			return null;
+		}, timeoutMillis);
+	}
+
+	/**
+	 * See {@link CustomerFacade#purchaseCoupons(Collection)}.
+	 */
+	public CompletableFuture<Map<Long, PurchaseOutcome>> purchaseCoupons(Collection<Coupon> coupons) {
+		return executor.submit(() -> facade.purchaseCoupons(coupons), timeoutMillis);
+	}
+
+	/**
+	 * See {@link CustomerFacade#getCustomerCoupons()}.
+	 */
+	public CompletableFuture<Collection<Coupon>> getCustomerCoupons() {
+		return executor.submit(() -> facade.getCustomerCoupons(), timeoutMillis);
+	}
+
+	/**
+	 * See {@link CustomerFacade#getCustomerCouponsByType(CouponType)}.
+	 */
+	public CompletableFuture<Collection<Coupon>> getCustomerCouponsByType(CouponType type) {
+		return executor.submit(() -> facade.getCustomerCouponsByType(type), timeoutMillis);
+	}
+
+	/**
+	 * See {@link CustomerFacade#getCustomerCouponsByPrice(double)}.
+	 */
+	public CompletableFuture<Collection<Coupon>> getCustomerCouponsByPrice(double price) {
+		return executor.submit(() -> facade.getCustomerCouponsByPrice(price), timeoutMillis);
+	}
+
+}
@@ -0,0 +1,15 @@
+package core.facade.async;
+
+import core.exception.CouponSystemException;
+
+/**
+ * A blocking facade method call that {@link FacadeExecutor} runs on its
+ * threads.
+ * 
+ * @param <T>
+ *            the result of the call (Void for the void methods).
+ */
+@FunctionalInterface
+public interface FacadeCall<T> {
+	T call() throws CouponSystemException;
+}
@@ -0,0 +1,255 @@
+package core.facade.async;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import core.config.CouponSystemConfig;
+import core.exception.CouponSystemException;
+import core.thread.Threads;
+import db.connection_pool.ConnectionPool;
+
+/**
+ * A <b>singleton</b> class that runs the blocking facade calls of the async
+ * facades ({@link AsyncCustomerFacade}, {@link AsyncCompanyFacade},
+ * {@link AsyncAdminFacade}) and completes their {@link CompletableFuture}s.
+ * </br>
+ * Every facade call holds a DB connection while it runs, so the number of
+ * threads is bounded by the size of the {@link ConnectionPool} (more threads
+ * would only wait for a connection), and the calls that wait for a thread are
+ * bounded by a queue.</br>
+ * A call that times out before it started completes with a
+ * {@link TimeoutException} and will not run at all. A call that times out while
+ * it runs is interrupted and completes with an {@link OutcomeUnknownException},
+ * it may still have been done (an embedded Derby connection is closed by the
+ * interrupt, the {@link ConnectionPool} opens a new one in its place).</br>
+ * When the queue is full the call completes at once with a
+ * {@link CouponSystemException}.</br>
+ * In the virtual threads mode (see {@link Threads}) every call gets its own
+ * virtual thread, there is no queue and the calls that run at the same time
+ * are bounded by 'async.virtualMaxCalls' (the DB calls are still bounded by
+ * the connection pool).
+ */
+public class FacadeExecutor {
+	// Attributes
+	private static FacadeExecutor instance = null;
+	private ExecutorService executor;
+	private Semaphore calls = null;
+	private ScheduledExecutorService timer;
+	private long defaultTimeoutMillis;
+
+	// CTOR
+	/**
+	 * @param threads
+	 *            the number of threads that run the facade calls.
+	 * @param queueCapacity
+	 *            the maximum number of calls that wait for a thread.
+	 * @param defaultTimeoutMillis
+	 *            the timeout of a call that doesn't have its own timeout (0
+	 *            for no timeout).
+	 */
+	public FacadeExecutor(int threads, int queueCapacity, long defaultTimeoutMillis) {
+		AtomicInteger count = new AtomicInteger();
+		executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), r -> {
+					Thread thread = new Thread(r, "FacadeExecutor-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "FacadeExecutor-timer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.defaultTimeoutMillis = defaultTimeoutMillis;
+	}
+
+	/**
+	 * @param executor
+	 *            an executor that starts a thread for every call (virtual
+	 *            threads).
+	 * @param maxCalls
+	 *            the maximum number of calls that run at the same time.
+	 * @param defaultTimeoutMillis
+	 *            the timeout of a call that doesn't have its own timeout (0
+	 *            for no timeout).
+	 */
+	public FacadeExecutor(ExecutorService executor, int maxCalls, long defaultTimeoutMillis) {
+		this.executor = executor;
+		this.calls = new Semaphore(Math.max(1, maxCalls));
+		timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "FacadeExecutor-timer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.defaultTimeoutMillis = defaultTimeoutMillis;
+	}
+
+	public static synchronized FacadeExecutor getInstance() {
+		if (instance == null) {
+			ExecutorService virtual = Threads.newVirtualThreadPerTaskExecutor();
+			if (virtual != null) {
+				instance = new FacadeExecutor(virtual, CouponSystemConfig.getInt("async.virtualMaxCalls", 10000),
+						CouponSystemConfig.getLong("async.timeoutMillis", 30000));
+				return instance;
+			}
+			instance = new FacadeExecutor(
+					CouponSystemConfig.getInt("async.threads", ConnectionPool.POOL_SIZE),
+					CouponSystemConfig.getInt("async.queueCapacity", 1000),
+					CouponSystemConfig.getLong("async.timeoutMillis", 30000));
+		}
+		return instance;
+	}
+
+	/**
+	 * Stops the executor of the singleton (if it was started), calls that are
+	 * still waiting complete with a {@link CouponSystemException}.
+	 */
+	public static synchronized void shutDown() throws InterruptedException {
+		if (instance != null) {
+			instance.close();
+			instance = null;
+		}
+	}
+
+	// Methods
+	/**
+	 * @return the timeout of a call that doesn't have its own timeout.
+	 */
+	public long getDefaultTimeoutMillis() {
+		return defaultTimeoutMillis;
+	}
+
+	/**
+	 * Runs a facade call with the default timeout.
+	 */
+	public <T> CompletableFuture<T> submit(FacadeCall<T> call) {
+		return submit(call, defaultTimeoutMillis);
+	}
+
+	/**
+	 * Runs a facade call on the executor.
+	 * 
+	 * @param call
+	 *            the blocking facade call.
+	 * @param timeoutMillis
+	 *            the timeout of the call (0 for no timeout).
+	 * @return a future that completes with the result of the call, with the
+	 *         {@link CouponSystemException} it threw or with a timeout (see
+	 *         {@link FacadeExecutor}).
+	 */
+	public <T> CompletableFuture<T> submit(FacadeCall<T> call, long timeoutMillis) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		if (calls != null && !calls.tryAcquire()) {
+			future.completeExceptionally(new CouponSystemException("The system is too busy, please try again"));
+			return future;
+		}
+		Task<T> task = new Task<>(call, future, calls);
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			if (calls != null) {
+				calls.release();
+			}
+			future.completeExceptionally(new CouponSystemException("The system is too busy, please try again", e));
+			return future;
+		}
+		if (timeoutMillis > 0) {
+			ScheduledFuture<?> timeout = timer.schedule(() -> task.timeout(timeoutMillis), timeoutMillis,
+					TimeUnit.MILLISECONDS);
+			future.whenComplete((result, e) -> timeout.cancel(false));
+		}
+		return future;
+	}
+
+	/**
+	 * Stops the threads, calls that are still waiting complete with a
+	 * {@link CouponSystemException}.
+	 */
+	public void close() throws InterruptedException {
+		executor.shutdown();
+		List<Runnable> waiting = new ArrayList<>();
+		if (executor instanceof ThreadPoolExecutor) {
+			((ThreadPoolExecutor) executor).getQueue().drainTo(waiting);
+		}
+		for (Runnable task : waiting) {
+			((Task<?>) task).future.completeExceptionally(new CouponSystemException("The system is shutting down"));
+		}
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+		timer.shutdownNow();
+	}
+
+	// a facade call with the future of its result.
+	private static class Task<T> implements Runnable {
+		private static final int WAITING = 0, RUNNING = 1, DONE = 2;
+		private FacadeCall<T> call;
+		private CompletableFuture<T> future;
+		private Semaphore calls;
+		private AtomicInteger state = new AtomicInteger(WAITING);
+		private volatile Thread runner;
+
+		Task(FacadeCall<T> call, CompletableFuture<T> future, Semaphore calls) {
+			this.call = call;
+			this.future = future;
+			this.calls = calls;
+		}
+
+		@Override
+		public void run() {
+			// timed out (or shut down) while it waited in the queue.
+			if (future.isDone() || !state.compareAndSet(WAITING, RUNNING)) {
+				release();
+				return;
+			}
+			runner = Thread.currentThread();
+			try {
+				future.complete(call.call());
+			} catch (CouponSystemException | RuntimeException e) {
+				future.completeExceptionally(e);
+			} finally {
+				synchronized (this) {
+					state.set(DONE);
+					runner = null;
+				}
+				// the interrupt of a timeout must not reach the next task of the thread.
+				Thread.interrupted();
+				release();
+			}
+		}
+
+		// called by the timer when the timeout of the call passed.
+		void timeout(long timeoutMillis) {
+			if (state.compareAndSet(WAITING, DONE)) {
+				future.completeExceptionally(
+						new TimeoutException("Timed out after " + timeoutMillis + " ms, the call was not run"));
+				return;
+			}
+			synchronized (this) {
+				if (state.get() != RUNNING) {
+					return;
+				}
+				future.completeExceptionally(new OutcomeUnknownException(
+						"Timed out after " + timeoutMillis + " ms while running, the call may have been done"));
+				runner.interrupt();
+			}
+		}
+
+		private void release() {
+			if (calls != null) {
+				calls.release();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,21 @@
+package core.facade.async;
+
+/**
+ * Completes the future of a {@link FacadeExecutor} call that started but didn't
+ * finish in its timeout.</br>
+ * This is not a failure : the thread of the call is interrupted, but a DB
+ * statement that was already sent may still be committed, so the call may or
+ * may not have been done. The client should read the state again (for example
+ * the coupons of the customer) before it repeats the call.</br>
+ * A call that timed out before it started completes with a
+ * {@link java.util.concurrent.TimeoutException} instead, it was not run and it
+ * is safe to repeat.
+ */
+public class OutcomeUnknownException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	public OutcomeUnknownException(String message) {
+		super(message);
+	}
+}
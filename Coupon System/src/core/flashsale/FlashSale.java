@@ -0,0 +1,89 @@
+package core.flashsale;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import core.beans.Coupon;
+import core.beans.PurchaseOutcome;
+
+/**
+ * The in memory state of one coupon in a flash sale : the coupon, its
+ * remaining stock and the customers that already have it.
+ */
+public class FlashSale {
+	// Attributes
+	private Coupon coupon;
+	private StripedStock stock;
+	private Set<Long> owners = ConcurrentHashMap.newKeySet();
+
+	// CTOR
+	/**
+	 * @param coupon
+	 *            the coupon as it is in the DB.
+	 * @param owners
+	 *            the ids of the customers that already have the coupon.
+	 * @param stripes
+	 *            the number of stock counters.
+	 */
+	public FlashSale(Coupon coupon, Collection<Long> owners, int stripes) {
+		this.coupon = coupon;
+		this.owners.addAll(owners);
+		this.stock = new StripedStock(coupon.getAmount(), stripes);
+	}
+
+	// Methods
+	/**
+	 * Checks & reserves the coupon for a customer, without the DB.
+	 * 
+	 * @param customerId
+	 *            the customer that buys the coupon.
+	 * @param title
+	 *            the title the customer gave (null to skip the check).
+	 * @return the {@link PurchaseOutcome}, if PURCHASED the stock was taken.
+	 */
+	public PurchaseOutcome reserve(long customerId, String title) {
+		if (stock.isSoldOut()) {
+			return PurchaseOutcome.OUT_OF_STOCK;
+		}
+		if (title != null && !title.equals(coupon.getTitle())) {
+			return PurchaseOutcome.TITLE_MISMATCH;
+		}
+		if (new Date().after(coupon.getEndDate())) {
+			return PurchaseOutcome.EXPIRED;
+		}
+		if (!owners.add(customerId)) {
+			return PurchaseOutcome.ALREADY_OWNED;
+		}
+		if (!stock.tryTake(customerId)) {
+			owners.remove(customerId);
+			return PurchaseOutcome.OUT_OF_STOCK;
+		}
+		return PurchaseOutcome.PURCHASED;
+	}
+
+	/**
+	 * Cancels a reservation (it could not be saved).
+	 * 
+	 * @param restock
+	 *            false if the coupon is out of stock in the DB.
+	 */
+	public void cancel(long customerId, boolean restock) {
+		if (owners.remove(customerId) && restock) {
+			stock.putBack(customerId);
+		}
+	}
+
+	public Coupon getCoupon() {
+		return coupon;
+	}
+
+	/**
+	 * @return the remaining stock.
+	 */
+	public int getRemaining() {
+		return stock.remaining();
+	}
+
+}
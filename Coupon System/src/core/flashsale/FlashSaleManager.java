@@ -0,0 +1,296 @@
+package core.flashsale;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import core.beans.Coupon;
+import core.beans.Customer;
+import core.beans.Purchase;
+import core.beans.PurchaseOutcome;
+import core.bus.ChangeType;
+import core.bus.EntityChangeEvent;
+import core.bus.EntityType;
+import core.bus.InvalidationBus;
+import core.bus.InvalidationListener;
+import core.config.CouponSystemConfig;
+import core.dao.CouponDAO;
+import core.dao.DAOFactory;
+import core.dao.JoinTablesDAO;
+import core.exception.CouponSystemException;
+import core.thread.Threads;
+
+/**
+ * A <b>singleton</b> class that runs flash sales : for the coupons the admin
+ * puts in a flash sale the stock is held in memory (see {@link FlashSale}),
+ * and a purchase is checked and admitted or rejected without the DB.</br>
+ * The admitted purchases wait in a write-behind queue, and a writer thread
+ * saves them in batches (one transaction for every batch, see
+ * {@link JoinTablesDAO#purchaseCoupons}).</br>
+ * When a flash sale starts its stock and buyers are read again from the DB,
+ * so after a crash the memory is reconciled with what was saved (the
+ * purchases that were still in the queue are lost).</br>
+ * <b>Be aware :</b> the stock in memory is right only if this is the only node
+ * that sells the coupon.
+ */
+public class FlashSaleManager implements InvalidationListener {
+	// Attributes
+	private static volatile FlashSaleManager instance = null;
+	private Map<Long, FlashSale> sales = new ConcurrentHashMap<>();
+	private BlockingQueue<Purchase> queue;
+	private JoinTablesDAO joinTablesdao;
+	private CouponDAO coupdao;
+	private int stripes;
+	private int batchSize;
+	private volatile boolean running = true;
+	private Thread writer;
+	private AtomicInteger pending = new AtomicInteger();
+	private Lock lock = new ReentrantLock();
+	private Condition written = lock.newCondition();
+	private AtomicLong admitted = new AtomicLong();
+	private AtomicLong rejected = new AtomicLong();
+	private AtomicLong saved = new AtomicLong();
+	private AtomicLong lost = new AtomicLong();
+
+	// CTOR
+	/**
+	 * @param joinTablesdao
+	 *            saves the purchases.
+	 * @param coupdao
+	 *            reads the coupons from the DB (not from a cache).
+	 * @param stripes
+	 *            the number of stock counters of every coupon.
+	 * @param queueCapacity
+	 *            the maximum number of purchases that wait to be saved.
+	 * @param batchSize
+	 *            the maximum number of purchases that are saved in one
+	 *            transaction.
+	 */
+	public FlashSaleManager(JoinTablesDAO joinTablesdao, CouponDAO coupdao, int stripes, int queueCapacity,
+			int batchSize) {
+		this.joinTablesdao = joinTablesdao;
+		this.coupdao = coupdao;
+		this.stripes = stripes;
+		this.batchSize = Math.max(1, batchSize);
+		queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+		writer = Threads.newThread("FlashSale-writer", this::writeLoop);
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	public static synchronized FlashSaleManager getInstance() {
+		if (instance == null) {
+			instance = new FlashSaleManager(DAOFactory.getJoinTablesDAO(), DAOFactory.getStorageCouponDAO(),
+					CouponSystemConfig.getInt("flashSale.stripes", 16),
+					CouponSystemConfig.getInt("flashSale.queueCapacity", 100000),
+					CouponSystemConfig.getInt("flashSale.batchSize", 500));
+			InvalidationBus.getInstance().addListener(instance);
+		}
+		return instance;
+	}
+
+	/**
+	 * The purchases use this method so a system without flash sales doesn't
+	 * start the writer thread.
+	 * 
+	 * @return the singleton, or null if it was not started yet (no flash sale
+	 *         was started).
+	 */
+	public static FlashSaleManager getStarted() {
+		return instance;
+	}
+
+	/**
+	 * Saves the purchases that are still in the queue and stops the writer
+	 * (if the singleton was started).
+	 */
+	public static synchronized void shutDown() throws InterruptedException {
+		if (instance != null) {
+			InvalidationBus.getInstance().removeListener(instance);
+			instance.close();
+			instance = null;
+		}
+	}
+
+	// Methods
+	/**
+	 * Starts a flash sale of a coupon, the stock and the customers that
+	 * already bought it are read from the DB.
+	 * 
+	 * @param couponId
+	 *            the coupon id.
+	 */
+	public void startSale(long couponId) throws CouponSystemException {
+		flush();
+		Coupon coupon = coupdao.getCoupon(couponId);
+		FlashSale sale = new FlashSale(coupon, joinTablesdao.getCustomerIds(couponId), stripes);
+		sales.put(couponId, sale);
+		System.out.println("Flash sale of coupon " + coupon.getTitle() + " started with " + sale.getRemaining()
+				+ " in stock");
+	}
+
+	/**
+	 * Stops the flash sale of a coupon and waits until all its purchases are
+	 * saved, the next purchases go to the DB.
+	 */
+	public void stopSale(long couponId) {
+		FlashSale sale = sales.remove(couponId);
+		flush();
+		if (sale != null) {
+			System.out.println("Flash sale of coupon " + sale.getCoupon().getTitle() + " stopped with "
+					+ sale.getRemaining() + " in stock");
+		}
+	}
+
+	/**
+	 * @return true if the coupon is in a flash sale.
+	 */
+	public boolean isOnSale(long couponId) {
+		return sales.containsKey(couponId);
+	}
+
+	/**
+	 * Buys a coupon in a flash sale without the DB, the purchase is saved
+	 * later by the writer.
+	 * 
+	 * @param customer
+	 *            the customer that buys the coupon.
+	 * @param coupon
+	 *            the coupon (id & title).
+	 * @return the {@link PurchaseOutcome} (FAILED if the write-behind queue is
+	 *         full), or null if the coupon is not in a flash sale.
+	 */
+	public PurchaseOutcome purchase(Customer customer, Coupon coupon) {
+		FlashSale sale = sales.get(coupon.getId());
+		if (sale == null) {
+			return null;
+		}
+		PurchaseOutcome outcome = sale.reserve(customer.getId(), coupon.getTitle());
+		if (outcome != PurchaseOutcome.PURCHASED) {
+			rejected.incrementAndGet();
+			return outcome;
+		}
+		pending.incrementAndGet();
+		if (!queue.offer(new Purchase(customer, sale.getCoupon()))) {
+			pending.decrementAndGet();
+			sale.cancel(customer.getId(), true);
+			rejected.incrementAndGet();
+			return PurchaseOutcome.FAILED;
+		}
+		admitted.incrementAndGet();
+		return outcome;
+	}
+
+	/**
+	 * Waits until all the purchases in the queue are saved.
+	 */
+	public void flush() {
+		lock.lock();
+		try {
+			while (pending.get() > 0 && writer.isAlive()) {
+				written.await(100, TimeUnit.MILLISECONDS);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Stops a flash sale of a coupon that was removed.
+	 */
+	@Override
+	public void onChange(EntityChangeEvent event) {
+		if (event.getEntityType() == EntityType.COUPON && event.getChangeType() == ChangeType.REMOVED) {
+			sales.remove(event.getId());
+		}
+	}
+
+	/**
+	 * @return a String with the number of purchases that were admitted,
+	 *         rejected, saved and lost, and the stock of every sale.
+	 */
+	public String getStatistics() {
+		StringBuilder sb = new StringBuilder("admitted=" + admitted.get() + ", rejected=" + rejected.get()
+				+ ", saved=" + saved.get() + ", lost=" + lost.get() + ", queued=" + pending.get());
+		for (FlashSale sale : sales.values()) {
+			sb.append(", coupon ").append(sale.getCoupon().getId()).append('=').append(sale.getRemaining());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Saves the purchases that are still in the queue and stops the writer.
+	 */
+	public void close() throws InterruptedException {
+		running = false;
+		writer.join();
+		sales.clear();
+	}
+
+	// takes the purchases from the queue and saves them in batches.
+	private void writeLoop() {
+		List<Purchase> batch = new ArrayList<>(batchSize);
+		while (running || !queue.isEmpty()) {
+			try {
+				Purchase first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				queue.drainTo(batch, batchSize - 1);
+				write(batch);
+			} catch (InterruptedException e) {
+				running = false;
+			} finally {
+				pending.addAndGet(-batch.size());
+				batch.clear();
+				lock.lock();
+				try {
+					written.signalAll();
+				} finally {
+					lock.unlock();
+				}
+			}
+		}
+	}
+
+	// saves one batch, a purchase that the DB refused is canceled in memory.
+	private void write(List<Purchase> batch) {
+		List<PurchaseOutcome> outcomes = null;
+		for (int attempt = 1; outcomes == null && attempt <= 3; attempt++) {
+			try {
+				outcomes = joinTablesdao.purchaseCoupons(batch);
+			} catch (CouponSystemException e) {
+				System.out.println("Flash sale failed to save " + batch.size() + " purchases (attempt " + attempt
+						+ ") : " + e.getMessage());
+			}
+		}
+		for (int i = 0; i < batch.size(); i++) {
+			Purchase purchase = batch.get(i);
+			if (outcomes != null && outcomes.get(i) == PurchaseOutcome.PURCHASED) {
+				saved.incrementAndGet();
+				continue;
+			}
+			lost.incrementAndGet();
+			System.out.println("Flash sale purchase was not saved : " + purchase
+					+ (outcomes == null ? "" : " (" + outcomes.get(i) + ")"));
+			FlashSale sale = sales.get(purchase.getCoupon().getId());
+			if (sale != null) {
+				sale.cancel(purchase.getCustomer().getId(),
+						outcomes == null || outcomes.get(i) != PurchaseOutcome.OUT_OF_STOCK);
+			}
+		}
+	}
+
+}
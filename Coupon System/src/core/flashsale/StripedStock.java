@@ -0,0 +1,93 @@
+package core.flashsale;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The remaining stock of a coupon in a flash sale, split between a few
+ * atomic counters (stripes) so buyers on different threads don't all fight
+ * on the same counter.</br>
+ * A buyer takes from the stripe of his hint and moves to the next stripes
+ * only when it is empty. When all the stripes are empty the stock is marked
+ * sold out, and from then on {@link #tryTake} is one volatile read.
+ */
+public class StripedStock {
+	// Attributes
+	private AtomicInteger[] stripes;
+	private volatile boolean soldOut;
+
+	// CTOR
+	/**
+	 * @param total
+	 *            the stock.
+	 * @param stripes
+	 *            the number of counters to split the stock between.
+	 */
+	public StripedStock(int total, int stripes) {
+		this.stripes = new AtomicInteger[Math.max(1, stripes)];
+		int n = this.stripes.length;
+		total = Math.max(0, total);
+		for (int i = 0; i < n; i++) {
+			this.stripes[i] = new AtomicInteger(total / n + (i < total % n ? 1 : 0));
+		}
+		soldOut = total == 0;
+	}
+
+	// Methods
+	/**
+	 * Takes one from the stock.
+	 * 
+	 * @param hint
+	 *            any number that is spread between the buyers (the customer
+	 *            id).
+	 * @return true if there was stock, false if it is sold out.
+	 */
+	public boolean tryTake(long hint) {
+		if (soldOut) {
+			return false;
+		}
+		int n = stripes.length;
+		int first = (int) ((hint & Long.MAX_VALUE) % n);
+		for (int i = 0; i < n; i++) {
+			AtomicInteger stripe = stripes[(first + i) % n];
+			int value;
+			while ((value = stripe.get()) > 0) {
+				if (stripe.compareAndSet(value, value - 1)) {
+					return true;
+				}
+			}
+		}
+		soldOut = true;
+		// something was put back while we looked.
+		if (remaining() > 0) {
+			soldOut = false;
+		}
+		return false;
+	}
+
+	/**
+	 * Puts one back in the stock (a purchase that was canceled).
+	 */
+	public void putBack(long hint) {
+		stripes[(int) ((hint & Long.MAX_VALUE) % stripes.length)].incrementAndGet();
+		soldOut = false;
+	}
+
+	/**
+	 * @return true if the stock is sold out.
+	 */
+	public boolean isSoldOut() {
+		return soldOut;
+	}
+
+	/**
+	 * @return the remaining stock.
+	 */
+	public int remaining() {
+		int sum = 0;
+		for (AtomicInteger stripe : stripes) {
+			sum += stripe.get();
+		}
+		return sum;
+	}
+
+}
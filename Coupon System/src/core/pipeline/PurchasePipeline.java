@@ -0,0 +1,217 @@
+package core.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import core.beans.Coupon;
+import core.beans.Customer;
+import core.beans.Purchase;
+import core.beans.PurchaseOutcome;
+import core.config.CouponSystemConfig;
+import core.dao.DAOFactory;
+import core.dao.JoinTablesDAO;
+import core.exception.CouponSystemException;
+import core.thread.Threads;
+
+/**
+ * A <b>singleton</b> class that saves the purchases of many customers
+ * together (group commit).</br>
+ * A purchase waits in a bounded queue, and a committer thread takes the
+ * waiting purchases in micro batches : up to 'purchasePipeline.maxBatch'
+ * purchases or 'purchasePipeline.maxWaitMicros' from the first one. Every
+ * batch is checked and saved in one transaction (see
+ * {@link JoinTablesDAO#purchaseCoupons}), so many purchases pay for one
+ * commit (one log flush) instead of one each.</br>
+ * Every purchase gets its own {@link PurchaseOutcome} in its future. If a
+ * batch fails it is split in two and each half is tried again, so only the
+ * purchase that failed completes with the {@link CouponSystemException}.
+ */
+public class PurchasePipeline {
+	// Attributes
+	private static volatile PurchasePipeline instance = null;
+	private BlockingQueue<Request> queue;
+	private JoinTablesDAO joinTablesdao;
+	private int maxBatch;
+	private long maxWaitNanos;
+	private volatile boolean running = true;
+	private Thread committer;
+	private AtomicLong purchases = new AtomicLong();
+	private AtomicLong batches = new AtomicLong();
+
+	// CTOR
+	/**
+	 * @param joinTablesdao
+	 *            saves the purchases.
+	 * @param queueCapacity
+	 *            the maximum number of purchases that wait in the queue.
+	 * @param maxBatch
+	 *            the maximum number of purchases in one transaction.
+	 * @param maxWaitMicros
+	 *            how long the first purchase of a batch waits for more
+	 *            purchases.
+	 */
+	public PurchasePipeline(JoinTablesDAO joinTablesdao, int queueCapacity, int maxBatch, long maxWaitMicros) {
+		this.joinTablesdao = joinTablesdao;
+		this.maxBatch = Math.max(1, maxBatch);
+		this.maxWaitNanos = TimeUnit.MICROSECONDS.toNanos(maxWaitMicros);
+		queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+		committer = Threads.newThread("PurchasePipeline-committer", this::commitLoop);
+		committer.setDaemon(true);
+		committer.start();
+	}
+
+	/**
+	 * Every purchase calls this method, so it doesn't lock once the pipeline
+	 * was started (or when it is disabled).
+	 * 
+	 * @return the pipeline, or null if 'purchasePipeline.enabled' is false
+	 *         (the default).
+	 */
+	public static PurchasePipeline getInstance() {
+		PurchasePipeline pipeline = instance;
+		if (pipeline == null && CouponSystemConfig.getBoolean("purchasePipeline.enabled", false)) {
+			synchronized (PurchasePipeline.class) {
+				if (instance == null) {
+					instance = new PurchasePipeline(DAOFactory.getJoinTablesDAO(),
+							CouponSystemConfig.getInt("purchasePipeline.queueCapacity", 10000),
+							CouponSystemConfig.getInt("purchasePipeline.maxBatch", 64),
+							CouponSystemConfig.getLong("purchasePipeline.maxWaitMicros", 2000));
+				}
+				pipeline = instance;
+			}
+		}
+		return pipeline;
+	}
+
+	/**
+	 * Saves the purchases that are still in the queue and stops the committer
+	 * (if the singleton was started).
+	 */
+	public static synchronized void shutDown() throws InterruptedException {
+		if (instance != null) {
+			instance.close();
+			instance = null;
+		}
+	}
+
+	// Methods
+	/**
+	 * Adds a purchase to the queue.
+	 * 
+	 * @param customer
+	 *            the customer that buys the coupon.
+	 * @param coupon
+	 *            the coupon (id & title).
+	 * @return a future that completes with the {@link PurchaseOutcome} when
+	 *         the batch of the purchase is saved, or with a
+	 *         {@link CouponSystemException} if the queue is full or the
+	 *         purchase failed.
+	 */
+	public CompletableFuture<PurchaseOutcome> submit(Customer customer, Coupon coupon) {
+		CompletableFuture<PurchaseOutcome> future = new CompletableFuture<>();
+		if (!running || !queue.offer(new Request(new Purchase(customer, coupon), future))) {
+			future.completeExceptionally(new CouponSystemException("The system is too busy, please try again"));
+		}
+		return future;
+	}
+
+	/**
+	 * @return a String with the number of purchases and batches that were
+	 *         saved.
+	 */
+	public String getStatistics() {
+		long count = batches.get();
+		return "purchases=" + purchases.get() + ", batches=" + count + ", averageBatch="
+				+ (count == 0 ? 0 : purchases.get() / count) + ", queued=" + queue.size();
+	}
+
+	/**
+	 * Saves the purchases that are still in the queue and stops the
+	 * committer.
+	 */
+	public void close() throws InterruptedException {
+		running = false;
+		committer.join();
+		// added while the committer was stopping.
+		Request request;
+		while ((request = queue.poll()) != null) {
+			request.future.completeExceptionally(new CouponSystemException("The system is shutting down"));
+		}
+	}
+
+	// takes the purchases from the queue in micro batches and saves them.
+	private void commitLoop() {
+		List<Request> batch = new ArrayList<>(maxBatch);
+		while (running || !queue.isEmpty()) {
+			try {
+				Request first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				long deadline = System.nanoTime() + maxWaitNanos;
+				while (batch.size() < maxBatch) {
+					queue.drainTo(batch, maxBatch - batch.size());
+					long wait = deadline - System.nanoTime();
+					if (batch.size() == maxBatch || wait <= 0) {
+						break;
+					}
+					Request next = queue.poll(wait, TimeUnit.NANOSECONDS);
+					if (next == null) {
+						break;
+					}
+					batch.add(next);
+				}
+				commit(batch);
+			} catch (InterruptedException e) {
+				running = false;
+			} finally {
+				for (Request request : batch) {
+					request.future.completeExceptionally(new CouponSystemException("The purchase was not saved"));
+				}
+				batch.clear();
+			}
+		}
+	}
+
+	// saves one batch in one transaction, a failed batch is split in two.
+	private void commit(List<Request> batch) {
+		List<Purchase> purchaseList = new ArrayList<>(batch.size());
+		for (Request request : batch) {
+			purchaseList.add(request.purchase);
+		}
+		try {
+			List<PurchaseOutcome> outcomes = joinTablesdao.purchaseCoupons(purchaseList);
+			batches.incrementAndGet();
+			purchases.addAndGet(batch.size());
+			for (int i = 0; i < batch.size(); i++) {
+				batch.get(i).future.complete(outcomes.get(i));
+			}
+		} catch (CouponSystemException e) {
+			if (batch.size() == 1) {
+				batch.get(0).future.completeExceptionally(e);
+				return;
+			}
+			int half = batch.size() / 2;
+			commit(batch.subList(0, half));
+			commit(batch.subList(half, batch.size()));
+		}
+	}
+
+	// a purchase with the future of its outcome.
+	private static class Request {
+		private Purchase purchase;
+		private CompletableFuture<PurchaseOutcome> future;
+
+		Request(Purchase purchase, CompletableFuture<PurchaseOutcome> future) {
+			this.purchase = purchase;
+			this.future = future;
+		}
+	}
+
+}
@@ -0,0 +1,311 @@
+package core.report;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import core.beans.Coupon;
+import core.beans.CouponType;
+import core.util.EpochDay;
+
+/**
+ * An in-memory columnar (struct of arrays) copy of the Coupon Table, used for
+ * the Admin's reports.</br>
+ * Instead of holding a {@link Coupon} object per row, each column is kept in
+ * its own primitive array : id, price, amount, start & end dates (as epoch
+ * days, see {@link EpochDay}) and the {@link CouponType} ordinal.</br>
+ * The String columns (title, message, image) are kept as int codes of a
+ * {@link StringDictionary}.</br>
+ * The scan methods run in tight loops over the arrays, big stores are scanned
+ * in parallel with fork/join.</br>
+ * <b>Be aware :</b> adding rows is not thread safe, fill the store first and
+ * only then scan it.
+ */
+public class CouponColumnStore {
+	// Attributes
+	// stores smaller than that are scanned in one thread.
+	public static final int PARALLEL_THRESHOLD = 1 << 16;
+	private static final CouponType[] TYPES = CouponType.values();
+	private int size = 0;
+	private long[] ids;
+	private double[] prices;
+	private int[] amounts;
+	private int[] startDays;
+	private int[] endDays;
+	private byte[] types;
+	private int[] titles;
+	private int[] messages;
+	private int[] images;
+	private long[] versions;
+	private StringDictionary titleDictionary = new StringDictionary();
+	private StringDictionary messageDictionary = new StringDictionary();
+	private StringDictionary imageDictionary = new StringDictionary();
+
+	// CTORs
+	public CouponColumnStore() {
+		this(1024);
+	}
+
+	public CouponColumnStore(int initialCapacity) {
+		int capacity = Math.max(initialCapacity, 16);
+		ids = new long[capacity];
+		prices = new double[capacity];
+		amounts = new int[capacity];
+		startDays = new int[capacity];
+		endDays = new int[capacity];
+		types = new byte[capacity];
+		titles = new int[capacity];
+		messages = new int[capacity];
+		images = new int[capacity];
+		versions = new long[capacity];
+	}
+
+	/**
+	 * Builds a store out of a Collection of coupons.
+	 * 
+	 * @param coupons
+	 *            the coupons you want to put in the store.
+	 * @return a CouponColumnStore with all those coupons.
+	 */
+	public static CouponColumnStore of(Collection<Coupon> coupons) {
+		CouponColumnStore store = new CouponColumnStore(coupons.size());
+		for (Coupon coupon : coupons) {
+			store.add(coupon);
+		}
+		return store;
+	}
+
+	// Methods
+	/**
+	 * Adds a coupon as a new row in the store.
+	 * 
+	 * @param coupon
+	 *            the Coupon object you want to add.
+	 */
+	public void add(Coupon coupon) {
+		add(coupon.getId(), coupon.getTitle(), EpochDay.toEpochDay(coupon.getStartDate()),
+				EpochDay.toEpochDay(coupon.getEndDate()), coupon.getAmount(), coupon.getType(), coupon.getMessage(),
+				coupon.getPrice(), coupon.getImage(), coupon.getVersion());
+	}
+
+	/**
+	 * Adds a row to the store straight from its column values, used when
+	 * loading the store from the DB without creating Coupon objects.
+	 */
+	public void add(long id, String title, int startDay, int endDay, int amount, CouponType type, String message,
+			double price, String image, long version) {
+		if (size == ids.length) {
+			grow();
+		}
+		ids[size] = id;
+		titles[size] = titleDictionary.encode(title);
+		startDays[size] = startDay;
+		endDays[size] = endDay;
+		amounts[size] = amount;
+		types[size] = (byte) type.ordinal();
+		messages[size] = messageDictionary.encode(message);
+		prices[size] = price;
+		images[size] = imageDictionary.encode(image);
+		versions[size] = version;
+		size++;
+	}
+
+	// grows all the columns by half of their size.
+	private void grow() {
+		int capacity = ids.length + (ids.length >> 1);
+		ids = Arrays.copyOf(ids, capacity);
+		prices = Arrays.copyOf(prices, capacity);
+		amounts = Arrays.copyOf(amounts, capacity);
+		startDays = Arrays.copyOf(startDays, capacity);
+		endDays = Arrays.copyOf(endDays, capacity);
+		types = Arrays.copyOf(types, capacity);
+		titles = Arrays.copyOf(titles, capacity);
+		messages = Arrays.copyOf(messages, capacity);
+		images = Arrays.copyOf(images, capacity);
+		versions = Arrays.copyOf(versions, capacity);
+	}
+
+	/**
+	 * @return the number of coupons in the store.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Builds a Coupon object out of a specific row.
+	 * 
+	 * @param row
+	 *            the row number (0 to size - 1).
+	 * @return a Coupon object of that row.
+	 */
+	public Coupon getCoupon(int row) {
+		if (row < 0 || row >= size) {
+			throw new IndexOutOfBoundsException("Row " + row + " is not in the store");
+		}
+		Coupon coupon = new Coupon(ids[row], titleDictionary.decode(titles[row]), EpochDay.toDate(startDays[row]),
+				EpochDay.toDate(endDays[row]), amounts[row], TYPES[types[row]], messageDictionary.decode(messages[row]),
+				prices[row], imageDictionary.decode(images[row]));
+		coupon.setVersion(versions[row]);
+		return coupon;
+	}
+
+	/**
+	 * @param row
+	 *            the row number (0 to size - 1).
+	 * @return the coupon id of that row.
+	 */
+	public long getId(int row) {
+		return ids[row];
+	}
+
+	/**
+	 * @param row
+	 *            the row number (0 to size - 1).
+	 * @return the coupon title of that row.
+	 */
+	public String getTitle(int row) {
+		return titleDictionary.decode(titles[row]);
+	}
+
+	/**
+	 * @param id
+	 *            the coupon id you want to look for.
+	 * @return the row of that coupon or -1 if it is not in the store.
+	 */
+	public int findRow(long id) {
+		for (int row = 0; row < size; row++) {
+			if (ids[row] == id) {
+				return row;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param type
+	 *            the {@link CouponType} you want to count.
+	 * @return the number of coupons of that type.
+	 */
+	public int countByType(CouponType type) {
+		byte ordinal = (byte) type.ordinal();
+		int count = 0;
+		for (int row = 0; row < size; row++) {
+			if (types[row] == ordinal) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Gets the ids of all the coupons that their end date is between the two
+	 * dates (including both of them).
+	 * 
+	 * @param from
+	 *            the first day of the range.
+	 * @param to
+	 *            the last day of the range.
+	 * @return an array of the coupon ids.
+	 */
+	public long[] getExpiringIds(Date from, Date to) {
+		int fromDay = EpochDay.toEpochDay(from);
+		int toDay = EpochDay.toEpochDay(to);
+		long[] result = new long[16];
+		int found = 0;
+		for (int row = 0; row < size; row++) {
+			int endDay = endDays[row];
+			if (endDay >= fromDay && endDay <= toDay) {
+				if (found == result.length) {
+					result = Arrays.copyOf(result, found * 2);
+				}
+				result[found++] = ids[row];
+			}
+		}
+		return Arrays.copyOf(result, found);
+	}
+
+	/**
+	 * Scans all the store and builds a {@link CouponReport} of counts, stock
+	 * and price statistics per {@link CouponType}.</br>
+	 * Stores with {@link #PARALLEL_THRESHOLD} rows or more are scanned in
+	 * parallel.
+	 * 
+	 * @param expiringFrom
+	 *            the first day of the expiration range you want to count.
+	 * @param expiringTo
+	 *            the last day of the expiration range you want to count.
+	 * @return a CouponReport of all the store.
+	 */
+	public CouponReport summarize(Date expiringFrom, Date expiringTo) {
+		return summarize(expiringFrom, expiringTo, size >= PARALLEL_THRESHOLD);
+	}
+
+	/**
+	 * Same as {@link #summarize(Date, Date)} but lets you choose if the scan
+	 * runs in parallel.
+	 */
+	public CouponReport summarize(Date expiringFrom, Date expiringTo, boolean parallel) {
+		int fromDay = EpochDay.toEpochDay(expiringFrom);
+		int toDay = EpochDay.toEpochDay(expiringTo);
+		if (!parallel) {
+			return scan(0, size, fromDay, toDay);
+		}
+		return ForkJoinPool.commonPool().invoke(new ScanTask(0, size, fromDay, toDay));
+	}
+
+	// the scan loop over rows [from, to).
+	private CouponReport scan(int from, int to, int fromDay, int toDay) {
+		CouponReport report = new CouponReport();
+		for (int row = from; row < to; row++) {
+			int endDay = endDays[row];
+			report.add(types[row], amounts[row], prices[row], endDay >= fromDay && endDay <= toDay);
+		}
+		return report;
+	}
+
+	/**
+	 * @return an estimation of the bytes this store takes in memory.
+	 */
+	public long estimateBytes() {
+		// id + price (8 each), amount + start + end + 3 string codes (4 each)
+		// and the type (1).
+		long perRow = 8 + 8 + 4 * 6 + 1;
+		return perRow * ids.length + titleDictionary.estimateBytes() + messageDictionary.estimateBytes()
+				+ imageDictionary.estimateBytes();
+	}
+
+	@Override
+	public String toString() {
+		return "CouponColumnStore [size=" + size + ", distinctMessages=" + messageDictionary.size()
+				+ ", distinctImages=" + imageDictionary.size() + ", estimatedBytes=" + estimateBytes() + "]";
+	}
+
+	// a fork/join task that splits the rows until they are small enough to be
+	// scanned in one thread.
+	private class ScanTask extends RecursiveTask<CouponReport> {
+		private static final long serialVersionUID = 1L;
+		private int from, to, fromDay, toDay;
+
+		ScanTask(int from, int to, int fromDay, int toDay) {
+			this.from = from;
+			this.to = to;
+			this.fromDay = fromDay;
+			this.toDay = toDay;
+		}
+
+		@Override
+		protected CouponReport compute() {
+			if (to - from <= PARALLEL_THRESHOLD) {
+				return scan(from, to, fromDay, toDay);
+			}
+			int middle = (from + to) >>> 1;
+			ScanTask left = new ScanTask(from, middle, fromDay, toDay);
+			left.fork();
+			CouponReport right = new ScanTask(middle, to, fromDay, toDay).compute();
+			return left.join().merge(right);
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package core.report;
+
+import core.beans.CouponType;
+
+/**
+ * The result of a scan over the {@link CouponColumnStore}.</br>
+ * Holds per {@link CouponType} : the number of coupons, the stock left
+ * (amount) and the price statistics, plus the number of coupons that expire in
+ * the scanned date range.
+ */
+public class CouponReport {
+	// Attributes
+	private static final int TYPES = CouponType.values().length;
+	private long[] count = new long[TYPES];
+	private long[] stock = new long[TYPES];
+	private double[] priceSum = new double[TYPES];
+	private double[] minPrice = new double[TYPES];
+	private double[] maxPrice = new double[TYPES];
+	private long expiring;
+
+	// CTOR
+	CouponReport() {
+		for (int i = 0; i < TYPES; i++) {
+			minPrice[i] = Double.POSITIVE_INFINITY;
+			maxPrice[i] = Double.NEGATIVE_INFINITY;
+		}
+	}
+
+	// Methods
+	// adds one coupon row to the report.
+	void add(int type, int amount, double price, boolean isExpiring) {
+		count[type]++;
+		stock[type] += amount;
+		priceSum[type] += price;
+		if (price < minPrice[type]) {
+			minPrice[type] = price;
+		}
+		if (price > maxPrice[type]) {
+			maxPrice[type] = price;
+		}
+		if (isExpiring) {
+			expiring++;
+		}
+	}
+
+	// merges a report of another part of the rows into this report.
+	CouponReport merge(CouponReport other) {
+		for (int i = 0; i < TYPES; i++) {
+			count[i] += other.count[i];
+			stock[i] += other.stock[i];
+			priceSum[i] += other.priceSum[i];
+			minPrice[i] = Math.min(minPrice[i], other.minPrice[i]);
+			maxPrice[i] = Math.max(maxPrice[i], other.maxPrice[i]);
+		}
+		expiring += other.expiring;
+		return this;
+	}
+
+	/**
+	 * @return the number of all the coupons.
+	 */
+	public long getCount() {
+		long total = 0;
+		for (long c : count) {
+			total += c;
+		}
+		return total;
+	}
+
+	/**
+	 * @param type
+	 *            the {@link CouponType} you want to count.
+	 * @return the number of coupons of that type.
+	 */
+	public long getCount(CouponType type) {
+		return count[type.ordinal()];
+	}
+
+	/**
+	 * @param type
+	 *            the {@link CouponType} you want the stock of.
+	 * @return the sum of the amount left of all the coupons of that type.
+	 */
+	public long getStock(CouponType type) {
+		return stock[type.ordinal()];
+	}
+
+	/**
+	 * @return the sum of the amount left of all the coupons.
+	 */
+	public long getStock() {
+		long total = 0;
+		for (long s : stock) {
+			total += s;
+		}
+		return total;
+	}
+
+	/**
+	 * @param type
+	 *            the {@link CouponType} you want the price of.
+	 * @return the average price of that type or 0 if there are no coupons of
+	 *         that type.
+	 */
+	public double getAveragePrice(CouponType type) {
+		int i = type.ordinal();
+		return count[i] == 0 ? 0 : priceSum[i] / count[i];
+	}
+
+	/**
+	 * @return the average price of all the coupons or 0 if there are no
+	 *         coupons.
+	 */
+	public double getAveragePrice() {
+		long total = getCount();
+		double sum = 0;
+		for (double s : priceSum) {
+			sum += s;
+		}
+		return total == 0 ? 0 : sum / total;
+	}
+
+	/**
+	 * @param type
+	 *            the {@link CouponType} you want the price of.
+	 * @return the lowest price of that type or 0 if there are no coupons of
+	 *         that type.
+	 */
+	public double getMinPrice(CouponType type) {
+		int i = type.ordinal();
+		return count[i] == 0 ? 0 : minPrice[i];
+	}
+
+	/**
+	 * @param type
+	 *            the {@link CouponType} you want the price of.
+	 * @return the highest price of that type or 0 if there are no coupons of
+	 *         that type.
+	 */
+	public double getMaxPrice(CouponType type) {
+		int i = type.ordinal();
+		return count[i] == 0 ? 0 : maxPrice[i];
+	}
+
+	/**
+	 * @return the number of coupons that their end date is in the scanned
+	 *         range.
+	 */
+	public long getExpiring() {
+		return expiring;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("CouponReport [count=" + getCount() + ", stock=" + getStock()
+				+ ", averagePrice=" + getAveragePrice() + ", expiring=" + expiring);
+		for (CouponType type : CouponType.values()) {
+			int i = type.ordinal();
+			if (count[i] > 0) {
+				sb.append(", " + type + "=[count=" + count[i] + ", stock=" + stock[i] + ", min=" + minPrice[i]
+						+ ", max=" + maxPrice[i] + ", avg=" + getAveragePrice(type) + "]");
+			}
+		}
+		return sb.append("]").toString();
+	}
+}
@@ -0,0 +1,82 @@
+package core.report;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A dictionary that encodes repeating Strings (messages, images etc) as int
+ * codes.</br>
+ * Each distinct String is kept only once and the columns of the
+ * {@link CouponColumnStore} hold the codes instead of the Strings
+ * themselves.</br>
+ * A null String is encoded as -1.
+ */
+public class StringDictionary {
+	// Attributes
+	private Map<String, Integer> codes = new HashMap<>();
+	private List<String> values = new ArrayList<>();
+
+	// Methods
+	/**
+	 * Gets the code of a String, if the String is not in the dictionary yet it
+	 * will be added.
+	 * 
+	 * @param value
+	 *            the String you want to encode.
+	 * @return the int code of that String.
+	 */
+	public int encode(String value) {
+		if (value == null) {
+			return -1;
+		}
+		Integer code = codes.get(value);
+		if (code == null) {
+			code = values.size();
+			codes.put(value, code);
+			values.add(value);
+		}
+		return code;
+	}
+
+	/**
+	 * Gets the code of a String without adding it.
+	 * 
+	 * @param value
+	 *            the String you want to look for.
+	 * @return the int code of that String or -1 if it is not in the dictionary.
+	 */
+	public int lookup(String value) {
+		Integer code = codes.get(value);
+		return code == null ? -1 : code;
+	}
+
+	/**
+	 * @param code
+	 *            the code you want to decode.
+	 * @return the String of that code (null for -1).
+	 */
+	public String decode(int code) {
+		return code < 0 ? null : values.get(code);
+	}
+
+	/**
+	 * @return the number of distinct Strings in the dictionary.
+	 */
+	public int size() {
+		return values.size();
+	}
+
+	/**
+	 * @return an estimation of the bytes the dictionary Strings take.
+	 */
+	public long estimateBytes() {
+		long bytes = 0;
+		for (String value : values) {
+			// String + char[] headers and the chars themselves.
+			bytes += 56 + 2L * value.length();
+		}
+		return bytes;
+	}
+}
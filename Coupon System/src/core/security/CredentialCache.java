@@ -0,0 +1,203 @@
+package core.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongFunction;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import core.bus.ChangeType;
+import core.bus.EntityChangeEvent;
+import core.bus.EntityType;
+import core.bus.InvalidationBus;
+import core.bus.InvalidationListener;
+import core.config.CouponSystemConfig;
+
+/**
+ * A bounded cache of successful logins, so a user that logs in again within
+ * the TTL is verified in memory, without the DB and without the slow
+ * {@link PasswordHasher} KDF.</br>
+ * The cache doesn't keep the password : it keeps an HMAC-SHA256 of it with a
+ * random key that is created on start and never leaves this JVM, and compares
+ * it in constant time.</br>
+ * When the cache is full the least recently used login is removed.</br>
+ * The logins of a user that was updated or removed (on this node or another,
+ * see {@link InvalidationListener}) are removed from the cache, and a login
+ * that read the user before such a change is not added (see
+ * {@link #generation()}).
+ * 
+ * @param <T>
+ *            the logged in entity (Customer or Company).
+ */
+public class CredentialCache<T> implements InvalidationListener {
+	// Attributes
+	private static final String MAC_ALGORITHM = "HmacSHA256";
+	private EntityType entityType;
+	private ToLongFunction<T> idOf;
+	private int maxSize;
+	private long ttlNanos;
+	private Map<String, Entry<T>> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private volatile long generation = 0;
+	private Lock lock = new ReentrantLock();
+	private SecretKeySpec key;
+	private ThreadLocal<Mac> macs = ThreadLocal.withInitial(this::newMac);
+
+	// CTOR
+	/**
+	 * @param entityType
+	 *            the {@link EntityType} of the changes that invalidate this
+	 *            cache.
+	 * @param idOf
+	 *            gets the id of a cached entity.
+	 * @param maxSize
+	 *            the maximum number of logins in the cache.
+	 * @param ttlSeconds
+	 *            the seconds a login stays in the cache.
+	 */
+	public CredentialCache(EntityType entityType, ToLongFunction<T> idOf, int maxSize, long ttlSeconds) {
+		this.entityType = entityType;
+		this.idOf = idOf;
+		this.maxSize = maxSize;
+		this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+		byte[] secret = new byte[32];
+		new SecureRandom().nextBytes(secret);
+		key = new SecretKeySpec(secret, MAC_ALGORITHM);
+	}
+
+	// Methods
+	/**
+	 * Creates a cache with the security.credentialCache.* settings and adds it
+	 * to the {@link InvalidationBus}.
+	 */
+	public static <T> CredentialCache<T> create(EntityType entityType, ToLongFunction<T> idOf) {
+		CredentialCache<T> cache = new CredentialCache<>(entityType, idOf,
+				CouponSystemConfig.getInt("security.credentialCache.maxSize", 10000),
+				CouponSystemConfig.getLong("security.credentialCache.ttlSeconds", 300));
+		InvalidationBus.getInstance().addListener(cache);
+		return cache;
+	}
+
+	/**
+	 * @param name
+	 *            the user name.
+	 * @param password
+	 *            the password that the user gave.
+	 * @return the cached entity if the user logged in with the same password
+	 *         within the TTL, null if he is not in the cache (check in the
+	 *         DB).
+	 */
+	public T verify(String name, String password) {
+		if (maxSize <= 0 || name == null || password == null) {
+			return null;
+		}
+		byte[] digest = digest(password);
+		lock.lock();
+		try {
+			Entry<T> entry = entries.get(name);
+			if (entry == null) {
+				return null;
+			}
+			if (System.nanoTime() - entry.created > ttlNanos) {
+				entries.remove(name);
+				return null;
+			}
+			return MessageDigest.isEqual(entry.digest, digest) ? entry.entity : null;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * A login takes the generation before it reads the user, the generation
+	 * changes on every invalidation.
+	 * 
+	 * @return the current generation of the cache.
+	 */
+	public long generation() {
+		return generation;
+	}
+
+	/**
+	 * Adds a successful login to the cache, unless a user was updated or
+	 * removed since the login read it.
+	 * 
+	 * @param generation
+	 *            the {@link #generation()} before the user was read.
+	 */
+	public void put(String name, String password, T entity, long generation) {
+		if (maxSize <= 0) {
+			return;
+		}
+		Entry<T> entry = new Entry<>(entity, digest(password));
+		lock.lock();
+		try {
+			if (generation != this.generation) {
+				return;
+			}
+			entries.put(name, entry);
+			Iterator<Entry<T>> it = entries.values().iterator();
+			while (entries.size() > maxSize && it.hasNext()) {
+				it.next();
+				it.remove();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes the logins of a specific entity id.
+	 */
+	public void invalidate(long id) {
+		lock.lock();
+		try {
+			generation++;
+			entries.values().removeIf(entry -> idOf.applyAsLong(entry.entity) == id);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void onChange(EntityChangeEvent event) {
+		if (event.getEntityType() == entityType && event.getChangeType() != ChangeType.CREATED) {
+			invalidate(event.getId());
+		}
+	}
+
+	private byte[] digest(String password) {
+		return macs.get().doFinal(password.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private Mac newMac() {
+		try {
+			Mac mac = Mac.getInstance(MAC_ALGORITHM);
+			mac.init(key);
+			return mac;
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(MAC_ALGORITHM + " is not supported by this JVM", e);
+		}
+	}
+
+	// a cached login.
+	private static class Entry<T> {
+		private T entity;
+		private byte[] digest;
+		private long created = System.nanoTime();
+
+		Entry(T entity, byte[] digest) {
+			this.entity = entity;
+			this.digest = digest;
+		}
+	}
+
+}
@@ -0,0 +1,140 @@
+package core.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+import core.config.CouponSystemConfig;
+
+/**
+ * This class hashes the customers & companies passwords with a salted
+ * PBKDF2 (HMAC-SHA256) before they are saved in the DB.</br>
+ * A hashed password is saved as : pbkdf2$iterations$salt$hash (salt and hash
+ * in Base64).</br>
+ * Passwords that were saved before hashing was added (plain text) are still
+ * verified, and should be hashed again on a successful login.</br>
+ * A password that looks hashed is hashed again like any other, only a bulk
+ * import keeps the hashes it got (see {@link #hashImported}), so a user can't
+ * save a hash of his choice.</br>
+ * All the comparisons take the same time no matter where the passwords
+ * differ.
+ */
+public final class PasswordHasher {
+	// Attributes
+	private static final String PREFIX = "pbkdf2$";
+	private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+	private static final int SALT_BYTES = 16;
+	private static final int HASH_BITS = 256;
+	private static final int ITERATIONS = CouponSystemConfig.getInt("security.pbkdf2Iterations", 100000);
+	private static final SecureRandom RANDOM = new SecureRandom();
+	private static final ThreadLocal<Boolean> IMPORTING = ThreadLocal.withInitial(() -> Boolean.FALSE);
+	// checked when there is no such user, so it takes as long as a wrong password
+	private static final String DUMMY = hash("dummy");
+
+	// Private CTOR
+	private PasswordHasher() {
+	}
+
+	// Methods
+	/**
+	 * @param stored
+	 *            a password as it is saved in the DB.
+	 * @return true if the password is already hashed.
+	 */
+	public static boolean isHashed(String stored) {
+		return stored != null && stored.startsWith(PREFIX);
+	}
+
+	/**
+	 * Hashes a password with a new random salt.
+	 * 
+	 * @param password
+	 *            the plain text password.
+	 * @return the hashed password to save in the DB (in a bulk import a
+	 *         password that is already hashed is returned as it is, see
+	 *         {@link #setImporting}).
+	 */
+	public static String hash(String password) {
+		if (password == null || (IMPORTING.get() && isHashed(password))) {
+			return password;
+		}
+		byte[] salt = new byte[SALT_BYTES];
+		RANDOM.nextBytes(salt);
+		Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+		return PREFIX + ITERATIONS + "$" + encoder.encodeToString(salt) + "$"
+				+ encoder.encodeToString(pbkdf2(password, salt, ITERATIONS));
+	}
+
+	/**
+	 * Hashes a password of a bulk import : a password that is already hashed
+	 * (a row that was exported from another system) is returned as it is, a
+	 * plain text one is hashed.</br>
+	 * <b>Be aware :</b> this is only for the import, the passwords that users
+	 * give go through {@link #hash}.
+	 */
+	public static String hashImported(String password) {
+		return isHashed(password) ? password : hash(password);
+	}
+
+	/**
+	 * Starts or ends a bulk import on the calling thread, while it runs
+	 * {@link #hash} works like {@link #hashImported} (for the DAOs that hash
+	 * the passwords on their own).</br>
+	 * Call it with true before the import and with false in a finally block.
+	 */
+	public static void setImporting(boolean importing) {
+		IMPORTING.set(importing);
+	}
+
+	/**
+	 * Checks a password against the one that is saved in the DB.
+	 * 
+	 * @param password
+	 *            the plain text password that the user gave.
+	 * @param stored
+	 *            the password as it is saved in the DB (hashed or plain text),
+	 *            null if there is no such user.
+	 * @return true if the password is correct.
+	 */
+	public static boolean verify(String password, String stored) {
+		if (password == null) {
+			return false;
+		}
+		if (stored == null) {
+			verify(password, DUMMY);
+			return false;
+		}
+		if (!isHashed(stored)) {
+			return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8),
+					stored.getBytes(StandardCharsets.UTF_8));
+		}
+		String[] parts = stored.split("\\$");
+		if (parts.length != 4) {
+			return false;
+		}
+		try {
+			Base64.Decoder decoder = Base64.getDecoder();
+			byte[] salt = decoder.decode(parts[2]);
+			byte[] expected = decoder.decode(parts[3]);
+			return MessageDigest.isEqual(expected, pbkdf2(password, salt, Integer.parseInt(parts[1])));
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+		PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+		try {
+			return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(ALGORITHM + " is not supported by this JVM", e);
+		} finally {
+			spec.clearPassword();
+		}
+	}
+}
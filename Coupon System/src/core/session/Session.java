@@ -0,0 +1,59 @@
+package core.session;
+
+import core.facade.CouponClientFacade;
+import core.facade.clientType;
+
+/**
+ * This class represents a logged in user : the facade he got on login, his
+ * {@link clientType} and id, and when he last used the session.
+ */
+public class Session {
+	// Attributes
+	private String token;
+	private CouponClientFacade facade;
+	private clientType type;
+	private long userId;
+	private volatile long lastAccess;
+
+	// CTOR
+	Session(String token, CouponClientFacade facade, clientType type, long userId) {
+		this.token = token;
+		this.facade = facade;
+		this.type = type;
+		this.userId = userId;
+		touch();
+	}
+
+	// Getters
+	public String getToken() {
+		return token;
+	}
+
+	public CouponClientFacade getFacade() {
+		return facade;
+	}
+
+	public clientType getType() {
+		return type;
+	}
+
+	public long getUserId() {
+		return userId;
+	}
+
+	public long getLastAccess() {
+		return lastAccess;
+	}
+
+	// Methods
+	// marks the session as used now.
+	void touch() {
+		lastAccess = System.nanoTime();
+	}
+
+	@Override
+	public String toString() {
+		return "Session [type=" + type + ", userId=" + userId + "]";
+	}
+
+}
@@ -0,0 +1,175 @@
+package core.session;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import core.bus.ChangeType;
+import core.bus.EntityChangeEvent;
+import core.bus.EntityType;
+import core.bus.InvalidationListener;
+import core.facade.CouponClientFacade;
+import core.facade.clientType;
+
+/**
+ * This class holds the sessions of the logged in users.</br>
+ * On login the user gets an opaque token, and with it he gets his facade back
+ * on every request without logging in again (one map lookup, no DB).</br>
+ * A session that was not used for the idle timeout is removed, and when there
+ * are already max sessions the least recently used one is removed to make
+ * room for a new one.</br>
+ * The sessions of a customer or a company that was updated or removed (on
+ * this node or another, see {@link InvalidationListener}) are removed, so he
+ * must login again.
+ */
+public class SessionManager implements InvalidationListener {
+	// Attributes
+	private Map<String, Session> sessions = new ConcurrentHashMap<>();
+	private SecureRandom random = new SecureRandom();
+	private long idleTimeoutNanos;
+	private int maxSessions;
+	private ScheduledExecutorService sweeper;
+
+	// CTOR
+	/**
+	 * @param idleTimeoutMinutes
+	 *            the minutes a session can be unused before it is removed.
+	 * @param maxSessions
+	 *            the maximum number of sessions.
+	 */
+	public SessionManager(long idleTimeoutMinutes, int maxSessions) {
+		this.idleTimeoutNanos = TimeUnit.MINUTES.toNanos(idleTimeoutMinutes);
+		this.maxSessions = Math.max(1, maxSessions);
+		sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "SessionSweeper");
+			thread.setDaemon(true);
+			return thread;
+		});
+		sweeper.scheduleWithFixedDelay(this::removeExpired, 1, 1, TimeUnit.MINUTES);
+	}
+
+	// Methods
+	/**
+	 * Creates a session for a logged in user.
+	 * 
+	 * @param facade
+	 *            the facade the user got on login.
+	 * @param type
+	 *            the user's {@link clientType}.
+	 * @param userId
+	 *            the id of the customer / company (0 for the admin).
+	 * @return the session token.
+	 */
+	public String createSession(CouponClientFacade facade, clientType type, long userId) {
+		if (sessions.size() >= maxSessions) {
+			removeExpired();
+			while (sessions.size() >= maxSessions) {
+				removeLeastRecentlyUsed();
+			}
+		}
+		byte[] bytes = new byte[24];
+		random.nextBytes(bytes);
+		String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+		sessions.put(token, new Session(token, facade, type, userId));
+		return token;
+	}
+
+	/**
+	 * @param token
+	 *            the session token.
+	 * @return the session of that token or null if there is no such session
+	 *         or it expired.
+	 */
+	public Session getSession(String token) {
+		if (token == null) {
+			return null;
+		}
+		Session session = sessions.get(token);
+		if (session == null) {
+			return null;
+		}
+		if (isExpired(session, System.nanoTime())) {
+			sessions.remove(token, session);
+			return null;
+		}
+		session.touch();
+		return session;
+	}
+
+	/**
+	 * Removes a session (logout).
+	 */
+	public void removeSession(String token) {
+		if (token != null) {
+			sessions.remove(token);
+		}
+	}
+
+	/**
+	 * Removes all the sessions of a specific user.
+	 */
+	public void removeSessions(clientType type, long userId) {
+		sessions.values().removeIf(session -> session.getType() == type && session.getUserId() == userId);
+	}
+
+	/**
+	 * @return the number of sessions.
+	 */
+	public int size() {
+		return sessions.size();
+	}
+
+	/**
+	 * Removes the sessions of a customer or company that was updated or
+	 * removed.
+	 */
+	@Override
+	public void onChange(EntityChangeEvent event) {
+		if (event.getChangeType() == ChangeType.CREATED) {
+			return;
+		}
+		if (event.getEntityType() == EntityType.CUSTOMER) {
+			removeSessions(clientType.CUSTOMER, event.getId());
+		} else if (event.getEntityType() == EntityType.COMPANY) {
+			removeSessions(clientType.COMPANY, event.getId());
+		}
+	}
+
+	/**
+	 * Stops the sweeper thread and removes all the sessions.
+	 */
+	public void shutDown() {
+		sweeper.shutdownNow();
+		sessions.clear();
+	}
+
+	private boolean isExpired(Session session, long now) {
+		return now - session.getLastAccess() > idleTimeoutNanos;
+	}
+
+	// removes all the sessions that were not used for the idle timeout.
+	private void removeExpired() {
+		long now = System.nanoTime();
+		sessions.values().removeIf(session -> isExpired(session, now));
+	}
+
+	private void removeLeastRecentlyUsed() {
+		Session oldest = null;
+		Iterator<Session> it = sessions.values().iterator();
+		while (it.hasNext()) {
+			Session session = it.next();
+			if (oldest == null || session.getLastAccess() - oldest.getLastAccess() < 0) {
+				oldest = session;
+			}
+		}
+		if (oldest != null) {
+			sessions.remove(oldest.getToken(), oldest);
+		}
+	}
+
+}
@@ -0,0 +1,124 @@
+package core.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+
+import core.beans.Company;
+import core.beans.Coupon;
+import core.beans.CouponType;
+import core.beans.Customer;
+import core.codec.BeanCodec;
+import core.util.EpochDay;
+
+/**
+ * Checks that the beans come back the same from the {@link BeanCodec} (on a
+ * heap and a direct buffer, with null fields, non ASCII text and versions, and
+ * every {@link CouponType}) and compares its size and speed to java
+ * serialization.
+ */
+public class BeanCodecTest {
+
+	public static void main(String[] args) throws Exception {
+		int today = EpochDay.today();
+		Coupon coupon = new Coupon(301, "Dinner", EpochDay.toDate(today), EpochDay.toDate(today + 30), 2,
+				CouponType.FOOD, "Dinner for two", 89.9, "images/dinner.png");
+		coupon.setVersion(7);
+		Coupon unicode = new Coupon(1L << 40, "\u05D0\u05E8\u05D5\u05D7\u05EA \u05E2\u05E8\u05D1 \uD83C\uDF7D",
+				EpochDay.toDate(-400), null, -1, null, null, Math.PI, null);
+		Customer customer = new Customer(5, "tomer", "pbkdf2$100000$c2FsdA==$aGFzaA==");
+		customer.setVersion(3);
+		Company company = new Company(null, "Coca Cola", null, "info@coca-cola.com");
+		company.setVersion(1L << 35);
+
+		System.out.println("========Round trip========");
+		for (ByteBuffer buffer : new ByteBuffer[] { ByteBuffer.allocate(1024), ByteBuffer.allocateDirect(1024) }) {
+			check(coupon.toString(), roundTrip(buffer, coupon).toString());
+			check(unicode.toString(), roundTrip(buffer, unicode).toString());
+			buffer.clear();
+			BeanCodec.writeCustomer(buffer, customer);
+			check(BeanCodec.sizeOf(customer), buffer.position());
+			buffer.flip();
+			check(customer.toString(), BeanCodec.readCustomer(buffer).toString());
+			buffer.clear();
+			BeanCodec.writeCompany(buffer, company);
+			check(BeanCodec.sizeOf(company), buffer.position());
+			buffer.flip();
+			check(company.toString(), BeanCodec.readCompany(buffer).toString());
+			buffer.clear();
+			for (CouponType type : CouponType.values()) {
+				BeanCodec.writeType(buffer, type);
+			}
+			check(CouponType.values().length, buffer.position());
+			buffer.flip();
+			for (CouponType type : CouponType.values()) {
+				check(type, BeanCodec.readType(buffer));
+			}
+		}
+
+		System.out.println("========Size========");
+		System.out.println("coupon : codec " + BeanCodec.sizeOf(coupon) + " bytes, serialization "
+				+ serialize(coupon).length + " bytes");
+		System.out.println("customer : codec " + BeanCodec.sizeOf(customer) + " bytes, serialization "
+				+ serialize(customer).length + " bytes");
+
+		System.out.println("========Speed (write + read)========");
+		int count = 200000;
+		ByteBuffer buffer = ByteBuffer.allocate(1024);
+		for (int round = 0; round < 3; round++) {
+			long start = System.nanoTime();
+			long bytes = 0;
+			for (int i = 0; i < count; i++) {
+				buffer.clear();
+				BeanCodec.writeCoupon(buffer, coupon);
+				bytes += buffer.position();
+				buffer.flip();
+				BeanCodec.readCoupon(buffer);
+			}
+			long codec = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (int i = 0; i < count; i++) {
+				deserialize(serialize(coupon));
+			}
+			long serialization = System.nanoTime() - start;
+			System.out.println("round " + round + " : codec " + codec / count + " ns (" + bytes / count
+					+ " bytes), serialization " + serialization / count + " ns, " + (serialization / Math.max(1, codec))
+					+ "x faster");
+		}
+	}
+
+	private static Coupon roundTrip(ByteBuffer buffer, Coupon coupon) {
+		buffer.clear();
+		BeanCodec.writeCoupon(buffer, coupon);
+		check(BeanCodec.sizeOf(coupon), buffer.position());
+		buffer.flip();
+		Coupon read = BeanCodec.readCoupon(buffer);
+		check(0, buffer.remaining());
+		return read;
+	}
+
+	private static void check(Object expected, Object actual) {
+		if (!expected.equals(actual)) {
+			throw new AssertionError("expected " + expected + " but got " + actual);
+		}
+		System.out.println("OK " + actual);
+	}
+
+	private static byte[] serialize(Object bean) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(bean);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+			return in.readObject();
+		}
+	}
+
+}
@@ -0,0 +1,107 @@
+package core.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import core.CouponSystem;
+import core.bulk.BulkImportResult;
+import core.bus.EntityType;
+import core.beans.Customer;
+import core.exception.CouponSystemException;
+import core.facade.AdminFacade;
+import core.facade.clientType;
+import core.security.PasswordHasher;
+
+/**
+ * Imports CSV files of companies, customers and coupons into an in-memory
+ * Derby DB (the tables are created when the pool starts, add derby.jar to the
+ * class path) and checks the result :</br>
+ * the rows with their own ids and without ids are imported and the rejected
+ * rows are reported, a new customer gets an id after the imported ones (the
+ * id sequence moved past them), and the customers log in with plain text and
+ * pre-hashed passwords.</br>
+ * Run it with -Ddb.url=... to use another DB (it should be empty).
+ */
+public class BulkImportTest {
+
+	public static void main(String[] args) throws Exception {
+		if (System.getProperty("db.url") == null) {
+			System.setProperty("db.url", "jdbc:derby:memory:bulkImportTest");
+		}
+		if (System.getProperty("security.pbkdf2Iterations") == null) {
+			System.setProperty("security.pbkdf2Iterations", "1000");
+		}
+		File dir = new File(System.getProperty("java.io.tmpdir"), "bulkImportTest-" + System.nanoTime());
+		dir.mkdirs();
+		try {
+			AdminFacade admin = (AdminFacade) CouponSystem.getInstance().login("admin", "1234", clientType.ADMIN);
+
+			System.out.println("========Companies========");
+			File companies = write(dir, "companies.csv", "id,comp_name,password,email", "5001,IBM,1111,ibm@gmail.com",
+					"5002,Apple,2222,apple@gmail.com", ",Intel,3333,");
+			check(admin.importCsv(EntityType.COMPANY, companies), 3, 0);
+
+			System.out.println("========Customers========");
+			String[] rows = new String[1003];
+			rows[0] = "id,cust_name,password";
+			for (int i = 1; i <= 1000; i++) {
+				// every second customer has its own id.
+				rows[i] = (i % 2 == 0 ? String.valueOf(7000 + i) : "") + ",customer" + i + ",pass" + i;
+			}
+			rows[1001] = ",hashed," + PasswordHasher.hash("secret");
+			rows[1002] = "9999,customer1,dup";
+			check(admin.importCsv(EntityType.CUSTOMER, write(dir, "customers.csv", rows)), 1001, 1);
+
+			System.out.println("========Coupons========");
+			File coupons = write(dir, "coupons.csv", "title,start_date,end_date,amount,type,price,comp_id",
+					"Dinner,2020-01-01,2030-01-01,10,FOOD,89.9,5001", "Movie,2020-01-01,2030-01-01,5,FOOD,35,",
+					"Bad date,2020-13-01,2030-01-01,5,FOOD,35,", "Ghost,2020-01-01,2030-01-01,5,FOOD,35,404");
+			check(admin.importCsv(EntityType.COUPON, coupons), 2, 2);
+
+			System.out.println("========Id sequence========");
+			Customer created = new Customer(0, "after import", "1234");
+			admin.createCustomer(created);
+			check(true, created.getId() > 8000);
+
+			System.out.println("========Login========");
+			CouponSystem.getInstance().login("customer2", "pass2", clientType.CUSTOMER);
+			CouponSystem.getInstance().login("customer999", "pass999", clientType.CUSTOMER);
+			CouponSystem.getInstance().login("hashed", "secret", clientType.CUSTOMER);
+			System.out.println("OK logins");
+		} catch (CouponSystemException e) {
+			System.out.println(e.getMessage());
+			throw e;
+		} finally {
+			CouponSystem.getInstance().shutDown();
+			for (File file : dir.listFiles()) {
+				file.delete();
+			}
+			dir.delete();
+		}
+	}
+
+	private static File write(File dir, String name, String... lines) throws IOException {
+		File file = new File(dir, name);
+		try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+			for (String line : lines) {
+				out.println(line);
+			}
+		}
+		return file;
+	}
+
+	private static void check(BulkImportResult result, long imported, long rejected) {
+		System.out.println(result);
+		check(imported, result.getImported());
+		check(rejected, result.getRejected());
+	}
+
+	private static void check(Object expected, Object actual) {
+		if (!expected.equals(actual)) {
+			throw new AssertionError("expected " + expected + " but got " + actual);
+		}
+		System.out.println("OK " + actual);
+	}
+
+}
@@ -0,0 +1,87 @@
+package core.test;
+
+import java.util.Date;
+
+import core.CouponSystem;
+import core.beans.Company;
+import core.beans.Coupon;
+import core.beans.CouponType;
+import core.beans.Customer;
+import core.dao.DAOFactory;
+import core.exception.CouponSystemException;
+import core.facade.AdminFacade;
+import core.facade.CompanyFacade;
+import core.facade.CustomerFacade;
+import core.facade.clientType;
+import core.flashsale.FlashSaleManager;
+
+/**
+ * Removes a coupon while its flash sale is running and checks that the sale
+ * stops on this node :</br>
+ * a customer buys the coupon in the sale, the company removes it, the coupon
+ * is not on sale anymore and the next purchase fails (it is not bought from
+ * the stock that was held in memory).</br>
+ * By default it runs on an in-memory Derby DB (add derby.jar to the class
+ * path), run it with -Ddao.engine=memory to use the memory engine or with
+ * -Ddb.url=... to use another DB.
+ */
+public class FlashSaleTest {
+
+	public static void main(String[] args) throws Exception {
+		if (System.getProperty("db.url") == null) {
+			System.setProperty("db.url", "jdbc:derby:memory:flashSaleTest");
+		}
+		if (System.getProperty("dao.engine") == null) {
+			System.setProperty("dao.engine", DAOFactory.DB_ENGINE);
+		}
+		if (System.getProperty("security.pbkdf2Iterations") == null) {
+			System.setProperty("security.pbkdf2Iterations", "1000");
+		}
+		Date endDate = new Date(System.currentTimeMillis() + 24L * 60 * 60 * 1000);
+		Coupon coupon = new Coupon(0, "Flash dinner", new Date(), endDate, 10, CouponType.FOOD, "message", 5.9,
+				"image");
+		try {
+			AdminFacade admin = (AdminFacade) CouponSystem.getInstance().login("admin", "1234", clientType.ADMIN);
+			admin.createCompany(new Company(0L, "FlashCo", "1111", "flash@gmail.com"));
+			admin.createCustomer(new Customer(0, "first", "1111"));
+			admin.createCustomer(new Customer(0, "second", "2222"));
+			CompanyFacade company = (CompanyFacade) CouponSystem.getInstance().login("FlashCo", "1111",
+					clientType.COMPANY);
+			company.createCoupon(coupon);
+
+			System.out.println("========Sale========");
+			admin.startFlashSale(coupon);
+			check(true, FlashSaleManager.getStarted().isOnSale(coupon.getId()));
+			CustomerFacade first = (CustomerFacade) CouponSystem.getInstance().login("first", "1111",
+					clientType.CUSTOMER);
+			first.purchaseCoupon(coupon);
+			FlashSaleManager.getStarted().flush();
+			System.out.println(admin.getFlashSaleStatistics());
+
+			System.out.println("========Remove========");
+			company.removeCoupon(coupon);
+			check(false, FlashSaleManager.getStarted().isOnSale(coupon.getId()));
+			CustomerFacade second = (CustomerFacade) CouponSystem.getInstance().login("second", "2222",
+					clientType.CUSTOMER);
+			try {
+				second.purchaseCoupon(coupon);
+				throw new AssertionError("a removed coupon was bought");
+			} catch (CouponSystemException e) {
+				System.out.println("OK " + e.getMessage());
+			}
+		} catch (CouponSystemException e) {
+			System.out.println(e.getMessage());
+			throw e;
+		} finally {
+			CouponSystem.getInstance().shutDown();
+		}
+	}
+
+	private static void check(Object expected, Object actual) {
+		if (!expected.equals(actual)) {
+			throw new AssertionError("expected " + expected + " but got " + actual);
+		}
+		System.out.println("OK " + actual);
+	}
+
+}
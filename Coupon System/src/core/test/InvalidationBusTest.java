@@ -0,0 +1,67 @@
+package core.test;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import core.bus.ChangeType;
+import core.bus.EntityType;
+import core.bus.InvalidationBus;
+import core.bus.UdpTransport;
+
+/**
+ * Runs two nodes of the {@link InvalidationBus} as two local processes that
+ * send invalidations to each other over UDP.</br>
+ * Each node publishes a burst of updates of the same 10 coupons (they are
+ * coalesced into few messages) and prints what it received from the other
+ * node.</br>
+ * Each node also gets corrupt datagrams (too short, unknown types) before the
+ * burst, they are dropped and the node keeps receiving.
+ */
+public class InvalidationBusTest {
+
+	public static void main(String[] args) throws Exception {
+		if (args.length == 3) {
+			runNode(args[0], Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+			return;
+		}
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		String classpath = System.getProperty("java.class.path");
+		Process nodeA = new ProcessBuilder(java, "-cp", classpath, InvalidationBusTest.class.getName(), "A", "4461",
+				"4462").inheritIO().start();
+		Process nodeB = new ProcessBuilder(java, "-cp", classpath, InvalidationBusTest.class.getName(), "B", "4462",
+				"4461").inheritIO().start();
+		System.out.println("Node A exit code : " + nodeA.waitFor());
+		System.out.println("Node B exit code : " + nodeB.waitFor());
+	}
+
+	private static void runNode(String name, int port, int peerPort) throws Exception {
+		AtomicInteger received = new AtomicInteger();
+		InvalidationBus bus = new InvalidationBus(new UdpTransport(port, Arrays.asList("localhost:" + peerPort)), 64,
+				5);
+		bus.addListener(event -> received.incrementAndGet());
+		// gives the other node time to start listening.
+		Thread.sleep(1000);
+		try (DatagramChannel garbage = DatagramChannel.open()) {
+			InetSocketAddress peer = new InetSocketAddress("localhost", peerPort);
+			garbage.send(ByteBuffer.wrap(new byte[] { 1, 2, 3 }), peer);
+			ByteBuffer badTypes = ByteBuffer.allocate(12 + 18);
+			badTypes.putShort((short) 0x4342).putLong(42).putShort((short) 1);
+			badTypes.put((byte) 99).put((byte) -1).putLong(1).putLong(1).flip();
+			garbage.send(badTypes, peer);
+		}
+		for (int i = 0; i < 10000; i++) {
+			bus.publish(EntityType.COUPON, ChangeType.UPDATED, i % 10);
+		}
+		bus.publish(EntityType.CUSTOMER, ChangeType.REMOVED, 201);
+		Thread.sleep(1000);
+		System.out.println("========Node " + name + "========");
+		System.out.println("received " + received.get() + " events");
+		System.out.println(bus);
+		bus.close();
+	}
+
+}
@@ -0,0 +1,101 @@
+package core.test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import core.beans.Customer;
+import core.dao.CustomerDAO;
+import core.dao.journal.Journal;
+import core.dao.journal.JournalStore;
+
+/**
+ * Checks that the journal engine gets its data back after a crash :</br>
+ * a child process writes customers to the journal and halts without a shut
+ * down (so there is no snapshot), then the last record of the segment is cut
+ * in the middle (like a crash while writing) and the store is opened
+ * again.</br>
+ * The records before the cut are replayed (the creates and the remove), the
+ * broken record is cut from the file and new records are appended after it.
+ * At the end the store is shut down (a snapshot) and opened again from the
+ * snapshot alone.
+ */
+public class JournalTest {
+	private static final int CUSTOMERS = 100;
+
+	public static void main(String[] args) throws Exception {
+		if (args.length == 1) {
+			writeAndHalt();
+			return;
+		}
+		File dir = new File(System.getProperty("java.io.tmpdir"), "journalTest-" + System.nanoTime());
+		System.setProperty("journal.dir", dir.getPath());
+		System.setProperty("journal.snapshotIntervalSeconds", "0");
+		if (System.getProperty("security.pbkdf2Iterations") == null) {
+			System.setProperty("security.pbkdf2Iterations", "1000");
+		}
+		try {
+			System.out.println("========Crash========");
+			String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+			Process writer = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+					"-Djournal.dir=" + dir.getPath(), "-Djournal.snapshotIntervalSeconds=0",
+					"-Dsecurity.pbkdf2Iterations=" + System.getProperty("security.pbkdf2Iterations"),
+					JournalTest.class.getName(), "writer").inheritIO().start();
+			check(0, writer.waitFor());
+			long[] segments = Journal.listSegments(dir);
+			File segment = Journal.segmentFile(dir, segments[segments.length - 1]);
+			long length = segment.length() - 5;
+			try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+				file.setLength(length);
+			}
+			System.out.println("cut " + segment.getName() + " to " + length + " bytes");
+
+			System.out.println("========Replay========");
+			CustomerDAO customers = JournalStore.getInstance().getCustomerDAO();
+			check(CUSTOMERS - 1, customers.getAllCustomers().size());
+			check(true, customers.login("customer1", "pass1") == null);
+			check(true, customers.login("customer2", "pass2") != null);
+			check(true, customers.login("last", "1234") == null);
+			check(true, segment.length() < length);
+
+			System.out.println("========Append after the replay========");
+			Customer last = new Customer(0, "last", "1234");
+			customers.createCustomer(last);
+			check(true, last.getId() > CUSTOMERS);
+			check(true, customers.login("last", "1234") != null);
+
+			System.out.println("========Snapshot========");
+			JournalStore.shutDown();
+			customers = JournalStore.getInstance().getCustomerDAO();
+			check(CUSTOMERS, customers.getAllCustomers().size());
+			check(true, customers.login("last", "1234") != null);
+			check(false, segment.exists());
+			JournalStore.shutDown();
+		} finally {
+			for (File file : dir.listFiles()) {
+				file.delete();
+			}
+			dir.delete();
+		}
+	}
+
+	// creates the customers, removes the first one and halts before the shut
+	// down, the last customer is the record that is cut.
+	private static void writeAndHalt() throws Exception {
+		CustomerDAO customers = JournalStore.getInstance().getCustomerDAO();
+		for (int i = 1; i <= CUSTOMERS; i++) {
+			customers.createCustomer(new Customer(0, "customer" + i, "pass" + i));
+		}
+		customers.removeCustomer(customers.getCustomer(1));
+		customers.createCustomer(new Customer(0, "last", "1234"));
+		System.out.println("wrote " + (CUSTOMERS + 2) + " records, halting");
+		Runtime.getRuntime().halt(0);
+	}
+
+	private static void check(Object expected, Object actual) {
+		if (!expected.equals(actual)) {
+			throw new AssertionError("expected " + expected + " but got " + actual);
+		}
+		System.out.println("OK " + actual);
+	}
+
+}
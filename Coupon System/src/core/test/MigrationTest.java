@@ -0,0 +1,108 @@
+package core.test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import db.build.MigrationRunner;
+import db.connection_pool.DatabaseConfig;
+
+/**
+ * Builds the first schema of the 'Coupon System' DB (before the migrations)
+ * on an in-memory Derby DB (add derby.jar to the class path), with rows in
+ * it, and upgrades it with the {@link MigrationRunner} :</br>
+ * two customers with the same name make the unique name migration fail, the
+ * migrations before it stay applied and the failed one is rolled back. After
+ * the duplicate is removed the next run applies the rest, the old rows get a
+ * version, the passwords are widened, the id sequences start after the
+ * existing ids and the unique indexes work. A run on an up to date DB applies
+ * nothing.</br>
+ * Run it with -Ddb.url=... to use another DB (it should be empty).
+ */
+public class MigrationTest {
+
+	public static void main(String[] args) throws Exception {
+		if (System.getProperty("db.url") == null) {
+			System.setProperty("db.url", "jdbc:derby:memory:migrationTest");
+		}
+		DatabaseConfig.loadDriver();
+		try (Connection con = DriverManager.getConnection(DatabaseConfig.getCreateUrl())) {
+			System.out.println("========First schema========");
+			execute(con, "CREATE TABLE Company(id BIGINT PRIMARY KEY, comp_name VARCHAR(50), password VARCHAR(50),"
+					+ " email VARCHAR(50))");
+			execute(con, "CREATE TABLE Customer(id BIGINT PRIMARY KEY, cust_name VARCHAR(50), password VARCHAR(50))");
+			execute(con, "CREATE TABLE Coupon(id BIGINT PRIMARY KEY, title VARCHAR(50), start_date DATE,"
+					+ " end_date DATE, amount INTEGER, type VARCHAR(50), message VARCHAR(50), price DOUBLE,"
+					+ " image VARCHAR(50))");
+			execute(con, "CREATE TABLE Company_Coupon(comp_id BIGINT, coupon_id BIGINT,"
+					+ " PRIMARY KEY(comp_id, coupon_id))");
+			execute(con, "CREATE TABLE Customer_Coupon(cust_id BIGINT, coupon_id BIGINT,"
+					+ " PRIMARY KEY(cust_id, coupon_id))");
+			execute(con, "INSERT INTO Company VALUES(5, 'IBM', '1111', 'ibm@gmail.com')");
+			execute(con, "INSERT INTO Customer VALUES(7, 'dup', '1234')");
+			execute(con, "INSERT INTO Customer VALUES(12, 'dup', '1234')");
+			execute(con, "INSERT INTO Coupon VALUES(3, 'Dinner', '2020-01-01', '2030-01-01', 10, 'FOOD',"
+					+ " 'Dinner for two', 89.9, 'dinner.png')");
+			check(0, MigrationRunner.getVersion(con));
+
+			System.out.println("========Failed migration========");
+			try {
+				MigrationRunner.migrate(con);
+				throw new AssertionError("the unique customer name migration didn't fail");
+			} catch (SQLException e) {
+				System.out.println("OK " + e.getMessage());
+			}
+			check(6, MigrationRunner.getVersion(con));
+			check(128, getColumnSize(con, "Customer", "password"));
+
+			System.out.println("========Next run========");
+			execute(con, "DELETE FROM Customer WHERE id = 12");
+			check(MigrationRunner.getLatestVersion() - 6, MigrationRunner.migrate(con));
+			check(MigrationRunner.getLatestVersion(), MigrationRunner.getVersion(con));
+			check(128, getColumnSize(con, "Company", "password"));
+			check(0L, queryLong(con, "SELECT version FROM Coupon WHERE id = 3"));
+			check(8L, queryLong(con, "SELECT next_id FROM Id_Sequence WHERE entity = 'CUSTOMER'"));
+			check(6L, queryLong(con, "SELECT next_id FROM Id_Sequence WHERE entity = 'COMPANY'"));
+			check(4L, queryLong(con, "SELECT next_id FROM Id_Sequence WHERE entity = 'COUPON'"));
+			try {
+				execute(con, "INSERT INTO Coupon(id, title) VALUES(4, 'Dinner')");
+				throw new AssertionError("the coupon title is not unique");
+			} catch (SQLException e) {
+				System.out.println("OK " + e.getMessage());
+			}
+
+			System.out.println("========Up to date========");
+			check(0, MigrationRunner.migrate(con));
+		}
+		DatabaseConfig.shutDownEmbedded();
+	}
+
+	private static void execute(Connection con, String sql) throws SQLException {
+		try (Statement stmt = con.createStatement()) {
+			stmt.executeUpdate(sql);
+		}
+	}
+
+	private static long queryLong(Connection con, String sql) throws SQLException {
+		try (Statement stmt = con.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+			rs.next();
+			return rs.getLong(1);
+		}
+	}
+
+	private static int getColumnSize(Connection con, String table, String column) throws SQLException {
+		try (ResultSet rs = con.getMetaData().getColumns(null, null, table.toUpperCase(), column.toUpperCase())) {
+			return rs.next() ? rs.getInt("COLUMN_SIZE") : -1;
+		}
+	}
+
+	private static void check(Object expected, Object actual) {
+		if (!expected.equals(actual)) {
+			throw new AssertionError("expected " + expected + " but got " + actual);
+		}
+		System.out.println("OK " + actual);
+	}
+
+}
@@ -0,0 +1,112 @@
+package core.test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import core.CouponSystem;
+import core.beans.Customer;
+import core.dao.CustomerDAO;
+import core.dao.DAOFactory;
+import core.dao.db.TransactionManager;
+import core.exception.CouponSystemException;
+
+/**
+ * Runs the {@link TransactionManager} on an in-memory Derby DB (the tables
+ * are created when the pool starts, add derby.jar to the class path) and
+ * checks its hooks :</br>
+ * without a transaction the hooks run at once, in a transaction that commits
+ * the afterCommit and afterCompletion hooks run once after the commit (not
+ * before), and in a transaction that rolls back only the afterCompletion
+ * hooks run and the rows it created are not in the DB, also when they were
+ * created by an inner transaction that joined it.</br>
+ * Run it with -Ddb.url=... to use another DB.
+ */
+public class TransactionTest {
+
+	public static void main(String[] args) throws Exception {
+		if (System.getProperty("db.url") == null) {
+			System.setProperty("db.url", "jdbc:derby:memory:transactionTest");
+		}
+		if (System.getProperty("security.pbkdf2Iterations") == null) {
+			System.setProperty("security.pbkdf2Iterations", "1000");
+		}
+		// the rollback needs the DB engine.
+		System.setProperty("dao.engine", DAOFactory.DB_ENGINE);
+		AtomicInteger commits = new AtomicInteger();
+		AtomicInteger completions = new AtomicInteger();
+		try {
+			CouponSystem.getInstance();
+			CustomerDAO customers = DAOFactory.getCustomerDAO();
+
+			System.out.println("========No transaction========");
+			check(false, TransactionManager.isInTransaction());
+			TransactionManager.afterCommit(() -> commits.incrementAndGet());
+			TransactionManager.afterCompletion(() -> completions.incrementAndGet());
+			check(1, commits.getAndSet(0));
+			check(1, completions.getAndSet(0));
+
+			System.out.println("========Commit========");
+			Customer committed = TransactionManager.inTransaction(() -> {
+				check(true, TransactionManager.isInTransaction());
+				Customer customer = new Customer(0, "committed", "1234");
+				customers.createCustomer(customer);
+				TransactionManager.afterCommit(() -> commits.incrementAndGet());
+				TransactionManager.afterCompletion(() -> completions.incrementAndGet());
+				// the hooks wait for the end of the transaction.
+				check(0, commits.get());
+				check(0, completions.get());
+				return customer;
+			});
+			check(false, TransactionManager.isInTransaction());
+			check(1, commits.getAndSet(0));
+			check(1, completions.getAndSet(0));
+			check("committed", customers.getCustomer(committed.getId()).getCustName());
+
+			System.out.println("========Rollback========");
+			Customer outer = new Customer(0, "rolled back", "1234");
+			Customer inner = new Customer(0, "rolled back inner", "1234");
+			try {
+				TransactionManager.inTransaction(() -> {
+					customers.createCustomer(outer);
+					// joins the outer transaction, its work is rolled back too.
+					TransactionManager.inTransaction(() -> {
+						customers.createCustomer(inner);
+						TransactionManager.afterCommit(() -> commits.incrementAndGet());
+						return null;
+					});
+					TransactionManager.afterCompletion(() -> completions.incrementAndGet());
+					throw new CouponSystemException("failing on purpose");
+				});
+				throw new AssertionError("the transaction didn't fail");
+			} catch (CouponSystemException e) {
+				System.out.println("OK " + e.getMessage());
+			}
+			check(false, TransactionManager.isInTransaction());
+			check(0, commits.get());
+			check(1, completions.get());
+			checkMissing(customers, outer.getId());
+			checkMissing(customers, inner.getId());
+		} catch (CouponSystemException e) {
+			System.out.println(e.getMessage());
+			throw e;
+		} finally {
+			CouponSystem.getInstance().shutDown();
+		}
+	}
+
+	private static void checkMissing(CustomerDAO customers, long id) {
+		try {
+			customers.getCustomer(id);
+			throw new AssertionError("customer " + id + " was not rolled back");
+		} catch (CouponSystemException e) {
+			System.out.println("OK " + e.getMessage());
+		}
+	}
+
+	private static void check(Object expected, Object actual) {
+		if (!expected.equals(actual)) {
+			throw new AssertionError("expected " + expected + " but got " + actual);
+		}
+		System.out.println("OK " + actual);
+	}
+
+}
@@ -5,8 +5,10 @@ import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
 import core.beans.Coupon;
-import core.dao.db.CouponDBDAO;
-import core.dao.db.JoinTablesDBDAO;
+import core.dao.CouponDAO;
+import core.dao.DAOFactory;
+import core.dao.JoinTablesDAO;
+import core.dao.db.TransactionManager;
 import core.exception.CouponSystemException;
 
 /**
@@ -17,8 +19,6 @@ import core.exception.CouponSystemException;
  */
 public class DailyCouponSystemExpirationTask implements Runnable {
 	// Attributes
-	private static CouponDBDAO coupdao = new CouponDBDAO();
-	private static JoinTablesDBDAO tablesdao = new JoinTablesDBDAO();
 	private Date todaysDate = null;
 	private boolean run = true;
 
@@ -37,12 +37,16 @@ public class DailyCouponSystemExpirationTask implements Runnable {
 			todaysDate = Calendar.getInstance().getTime();
 			Collection<Coupon> coupons = new ArrayList<>();
 			try {
-				coupons = coupdao.getAllCoupons();
+				coupons = coupdao().getAllCoupons();
 				for (Coupon coupon : coupons) {
 					if (todaysDate.after(coupon.getEndDate())) {
-						coupdao.removeCoupon(coupon);
-						tablesdao.deleteCompanyCoupon(coupon);
-						tablesdao.deleteCustomerCoupon(coupon);
+						// the coupon and its join rows are removed together.
+						TransactionManager.inTransaction(() -> {
+							coupdao().removeCoupon(coupon);
+							tablesdao().deleteCompanyCoupon(coupon);
+							tablesdao().deleteCustomerCoupon(coupon);
+							return null;
+						});
 					}
 				}
 				Thread.sleep(1000 * 60 * 60 * 24);
@@ -54,4 +58,13 @@ public class DailyCouponSystemExpirationTask implements Runnable {
 		}
 	}
 
+	// the DAOs are taken from DAOFactory on use, they are created on the first use.
+	private static CouponDAO coupdao() {
+		return DAOFactory.getCouponDAO();
+	}
+
+	private static JoinTablesDAO tablesdao() {
+		return DAOFactory.getJoinTablesDAO();
+	}
+
 }
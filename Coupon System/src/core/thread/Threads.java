@@ -0,0 +1,94 @@
+package core.thread;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import core.config.CouponSystemConfig;
+
+/**
+ * Creates the threads of the Coupon System by the 'executor.mode'
+ * setting.</br>
+ * <b>platform</b> (the default) : regular threads.</br>
+ * <b>virtual</b> : virtual threads, so every facade call can get its own
+ * thread without a platform thread stack. The system is compiled for Java 8,
+ * so virtual threads are created by reflection, if the JVM doesn't support
+ * them (before Java 21) the platform mode is used.</br>
+ * Virtual threads park on locks and semaphores (the ConnectionPool and
+ * the DAO layer don't block inside synchronized), the number of concurrent DB
+ * calls is still bounded by the connection pool.
+ * 
+ * @see db.connection_pool.ConnectionPool
+ */
+public final class Threads {
+	// Attributes
+	private static final Method OF_VIRTUAL = findMethod(Thread.class, "ofVirtual");
+	private static final boolean VIRTUAL = "virtual"
+			.equalsIgnoreCase(CouponSystemConfig.getString("executor.mode", "platform")) && isVirtualSupported();
+
+	// Private CTOR
+	private Threads() {
+	}
+
+	// Methods
+	/**
+	 * @return true if this JVM supports virtual threads.
+	 */
+	public static boolean isVirtualSupported() {
+		return OF_VIRTUAL != null;
+	}
+
+	/**
+	 * @return true if the system runs in virtual threads mode.
+	 */
+	public static boolean isVirtual() {
+		return VIRTUAL;
+	}
+
+	/**
+	 * Creates a thread (not started yet) by the executor mode (a virtual
+	 * thread is always a daemon thread).
+	 * 
+	 * @param name
+	 *            the thread name.
+	 * @param task
+	 *            the task the thread runs.
+	 */
+	public static Thread newThread(String name, Runnable task) {
+		if (VIRTUAL) {
+			try {
+				Object builder = OF_VIRTUAL.invoke(null);
+				Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+				builder = builderClass.getMethod("name", String.class).invoke(builder, name);
+				return (Thread) builderClass.getMethod("unstarted", Runnable.class).invoke(builder, task);
+			} catch (ReflectiveOperationException e) {
+				System.out.println("Failed to create a virtual thread : " + e);
+			}
+		}
+		return new Thread(task, name);
+	}
+
+	/**
+	 * @return an executor that starts a new virtual thread for every task, or
+	 *         null if the system doesn't run in virtual threads mode.
+	 */
+	public static ExecutorService newVirtualThreadPerTaskExecutor() {
+		if (VIRTUAL) {
+			try {
+				return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch (ReflectiveOperationException e) {
+				System.out.println("Failed to create a virtual threads executor : " + e);
+			}
+		}
+		return null;
+	}
+
+	private static Method findMethod(Class<?> type, String name) {
+		try {
+			return type.getMethod(name);
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+}
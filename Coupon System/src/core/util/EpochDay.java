@@ -0,0 +1,51 @@
+package core.util;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+
+/**
+ * A helper class that converts the coupon's {@link Date} values to a compact
+ * epoch day (days since 1970-01-01) and back.</br>
+ * The conversion uses the default time zone, the same way the DB's DATE
+ * columns are read and written.
+ */
+public final class EpochDay {
+
+	// Private CTOR
+	private EpochDay() {
+	}
+
+	// Methods
+	/**
+	 * Converts a date to the number of days since 1970-01-01.
+	 * 
+	 * @param date
+	 *            the date you want to convert.
+	 * @return the epoch day of that date.
+	 */
+	public static int toEpochDay(Date date) {
+		LocalDate localDate = Instant.ofEpochMilli(date.getTime()).atZone(ZoneId.systemDefault()).toLocalDate();
+		return (int) localDate.toEpochDay();
+	}
+
+	/**
+	 * Converts an epoch day back to a date at the start of that day.
+	 * 
+	 * @param epochDay
+	 *            the number of days since 1970-01-01.
+	 * @return a Date object of that day.
+	 */
+	public static Date toDate(long epochDay) {
+		LocalDate localDate = LocalDate.ofEpochDay(epochDay);
+		return Date.from(localDate.atStartOfDay(ZoneId.systemDefault()).toInstant());
+	}
+
+	/**
+	 * @return the epoch day of today.
+	 */
+	public static int today() {
+		return (int) LocalDate.now().toEpochDay();
+	}
+}
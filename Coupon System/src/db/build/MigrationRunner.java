@@ -0,0 +1,312 @@
+package db.build;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import db.connection_pool.DatabaseConfig;
+
+/**
+ * Upgrades the 'Coupon System' DB schema in place with ordered
+ * migrations.</br>
+ * Every migration has a version number, the applied versions are kept in the
+ * Schema_Version Table and only the missing ones are applied (in order), each
+ * migration and its Schema_Version row are committed in one transaction so a
+ * failed migration is applied again on the next run.</br>
+ * The migrations themselves check the schema before they change it (a table,
+ * column or index that already exists is skipped), so they can run on a new
+ * DB, on a DB that was built by an older {@link TableBuilder} or on a DB that
+ * was changed by hand.</br>
+ * The first migration creates the tables of the first schema, a new DB gets
+ * the next changes from the same migrations as an old one.</br>
+ * Run the main method to upgrade an existing DB, {@link TableBuilder} runs the
+ * same migrations to build a new one (the connection pool runs them on
+ * start too).
+ */
+public class MigrationRunner {
+	// Attributes
+	private static final List<Migration> MIGRATIONS = Collections.unmodifiableList(Arrays.asList(
+			new Migration(1, "create the tables", con -> createTables(con)),
+			new Migration(2, "widen the password columns", con -> {
+				widenColumn(con, "Company", "password", 128);
+				widenColumn(con, "Customer", "password", 128);
+			}),
+			new Migration(3, "add the row version columns", con -> {
+				addColumn(con, "Company", "version", "BIGINT DEFAULT 0");
+				addColumn(con, "Customer", "version", "BIGINT DEFAULT 0");
+				addColumn(con, "Coupon", "version", "BIGINT DEFAULT 0");
+			}),
+			new Migration(4, "index the coupon type",
+					con -> createIndex(con, "Coupon_type_idx", "Coupon", "type", false)),
+			new Migration(5, "index the coupon end date",
+					con -> createIndex(con, "Coupon_end_date_idx", "Coupon", "end_date", false)),
+			new Migration(6, "unique coupon title",
+					con -> createIndex(con, "Coupon_title_idx", "Coupon", "title", true)),
+			new Migration(7, "unique customer name",
+					con -> createIndex(con, "Customer_name_idx", "Customer", "cust_name", true)),
+			new Migration(8, "unique company name",
+					con -> createIndex(con, "Company_name_idx", "Company", "comp_name", true)),
+			new Migration(9, "index the coupon of the company coupons",
+					con -> createIndex(con, "Company_Coupon_coupon_idx", "Company_Coupon", "coupon_id", false)),
+			new Migration(10, "index the coupon of the customer coupons",
+					con -> createIndex(con, "Customer_Coupon_coupon_idx", "Customer_Coupon", "coupon_id", false)),
+			new Migration(11, "create the id sequences", con -> {
+				if (!tableExists(con, "Id_Sequence")) {
+					execute(con, "CREATE TABLE Id_Sequence(" + "entity VARCHAR(20) PRIMARY KEY," + "next_id BIGINT)");
+				}
+				// the ids start after the ones that the clients already gave.
+				addSequence(con, "COUPON", "Coupon");
+				addSequence(con, "CUSTOMER", "Customer");
+				addSequence(con, "COMPANY", "Company");
+			})));
+
+	public static void main(String[] args) {
+
+		// driver loading to memory.
+		try {
+			DatabaseConfig.loadDriver();
+			System.out.println("Driver class loaded");
+		} catch (ClassNotFoundException e) {
+			System.out.println(e.getMessage());
+		}
+
+		// connecting to the existing DB (it is not created) and upgrading it.
+		try (Connection con = DriverManager.getConnection(DatabaseConfig.getUrl())) {
+			int applied = migrate(con);
+			System.out.println("Schema is up to date (version " + getVersion(con) + ", " + applied
+					+ " migrations applied)");
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		DatabaseConfig.shutDownEmbedded();
+	}
+
+	// Methods
+	/**
+	 * Applies all the migrations that were not applied to that DB yet, in
+	 * order.</br>
+	 * If a migration fails it is rolled back, the next ones are not applied
+	 * and it will throw an {@link SQLException}.
+	 *
+	 * @param con
+	 *            a connection to the DB, its auto commit is restored at the
+	 *            end.
+	 * @return the number of migrations that were applied.
+	 */
+	public static int migrate(Connection con) throws SQLException {
+		boolean autoCommit = con.getAutoCommit();
+		int applied = 0;
+		try {
+			con.setAutoCommit(true);
+			if (!tableExists(con, "Schema_Version")) {
+				execute(con, "CREATE TABLE Schema_Version(" + "version INTEGER PRIMARY KEY,"
+						+ "description VARCHAR(100)," + "applied_on TIMESTAMP)");
+			}
+			Set<Integer> versions = getAppliedVersions(con);
+			con.setAutoCommit(false);
+			for (Migration migration : MIGRATIONS) {
+				if (versions.contains(migration.version)) {
+					continue;
+				}
+				System.out.println("Applying migration " + migration.version + " : " + migration.description);
+				try {
+					migration.step.apply(con);
+					PreparedStatement stmt = con.prepareStatement("INSERT INTO Schema_Version VALUES(?, ?, ?)");
+					stmt.setInt(1, migration.version);
+					stmt.setString(2, migration.description);
+					stmt.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+					stmt.executeUpdate();
+					stmt.close();
+					con.commit();
+					applied++;
+				} catch (SQLException e) {
+					con.rollback();
+					throw new SQLException(
+							"Migration " + migration.version + " (" + migration.description + ") failed", e);
+				}
+			}
+		} finally {
+			con.setAutoCommit(autoCommit);
+		}
+		return applied;
+	}
+
+	/**
+	 * @param con
+	 *            a connection to the DB.
+	 * @return the last migration that was applied to that DB (0 if none).
+	 */
+	public static int getVersion(Connection con) throws SQLException {
+		if (!tableExists(con, "Schema_Version")) {
+			return 0;
+		}
+		try (Statement stmt = con.createStatement();
+				ResultSet rs = stmt.executeQuery("SELECT MAX(version) FROM Schema_Version")) {
+			return rs.next() ? rs.getInt(1) : 0;
+		}
+	}
+
+	/**
+	 * @return the last migration version of this application.
+	 */
+	public static int getLatestVersion() {
+		return MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+	}
+
+	private static Set<Integer> getAppliedVersions(Connection con) throws SQLException {
+		Set<Integer> versions = new HashSet<>();
+		try (Statement stmt = con.createStatement();
+				ResultSet rs = stmt.executeQuery("SELECT version FROM Schema_Version")) {
+			while (rs.next()) {
+				versions.add(rs.getInt(1));
+			}
+		}
+		return versions;
+	}
+
+	/*
+	 * creates the tables that don't exist yet, as they were in the first
+	 * schema (the next migrations change them).
+	 */
+	private static void createTables(Connection con) throws SQLException {
+		if (!tableExists(con, "Company")) {
+			execute(con, "CREATE TABLE Company(" + "id BIGINT PRIMARY KEY," + "comp_name VARCHAR(50),"
+					+ "password VARCHAR(50)," + "email VARCHAR(50))");
+		}
+		if (!tableExists(con, "Customer")) {
+			execute(con, "CREATE TABLE Customer(" + "id BIGINT PRIMARY KEY," + "cust_name VARCHAR(50),"
+					+ "password VARCHAR(50))");
+		}
+		if (!tableExists(con, "Coupon")) {
+			execute(con, "CREATE TABLE Coupon(" + "id BIGINT PRIMARY KEY," + "title VARCHAR(50)," + "start_date DATE,"
+					+ "end_date DATE," + "amount INTEGER," + "type VARCHAR(50)," + "message VARCHAR(50),"
+					+ "price DOUBLE," + "image VARCHAR(50))");
+		}
+		if (!tableExists(con, "Company_Coupon")) {
+			execute(con, "CREATE TABLE Company_Coupon(" + "comp_id BIGINT," + "coupon_id BIGINT,"
+					+ "PRIMARY KEY(comp_id, coupon_id))");
+		}
+		if (!tableExists(con, "Customer_Coupon")) {
+			execute(con, "CREATE TABLE Customer_Coupon(" + "cust_id BIGINT," + "coupon_id BIGINT,"
+					+ "PRIMARY KEY(cust_id, coupon_id))");
+		}
+	}
+
+	// widens a VARCHAR column if it is shorter than that size.
+	private static void widenColumn(Connection con, String table, String column, int size) throws SQLException {
+		int current = getColumnSize(con, table, column);
+		if (current >= 0 && current < size) {
+			execute(con, "ALTER TABLE " + table + " ALTER COLUMN " + column + " SET DATA TYPE VARCHAR(" + size + ")");
+		}
+	}
+
+	// adds a column if the table doesn't have it.
+	private static void addColumn(Connection con, String table, String column, String definition)
+			throws SQLException {
+		if (getColumnSize(con, table, column) < 0) {
+			execute(con, "ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+		}
+	}
+
+	/*
+	 * creates an index on a column if the table doesn't have one already (with
+	 * any name) : a unique index of only that column, or any index that starts
+	 * with that column.
+	 */
+	private static void createIndex(Connection con, String name, String table, String column, boolean unique)
+			throws SQLException {
+		for (List<String> columns : getIndexes(con, table, unique).values()) {
+			if (columns.get(0).equalsIgnoreCase(column) && (!unique || columns.size() == 1)) {
+				return;
+			}
+		}
+		execute(con, "CREATE " + (unique ? "UNIQUE " : "") + "INDEX " + name + " ON " + table + "(" + column + ")");
+	}
+
+	// the columns (in order) of every index of a table.
+	private static Map<String, List<String>> getIndexes(Connection con, String table, boolean unique)
+			throws SQLException {
+		Map<String, List<String>> indexes = new LinkedHashMap<>();
+		DatabaseMetaData meta = con.getMetaData();
+		try (ResultSet rs = meta.getIndexInfo(null, null, table.toUpperCase(), unique, false)) {
+			while (rs.next()) {
+				String index = rs.getString("INDEX_NAME");
+				String column = rs.getString("COLUMN_NAME");
+				if (index == null || column == null) {
+					continue;
+				}
+				List<String> columns = indexes.computeIfAbsent(index, key -> new ArrayList<>());
+				int position = rs.getShort("ORDINAL_POSITION");
+				while (columns.size() < position) {
+					columns.add("");
+				}
+				columns.set(position - 1, column);
+			}
+		}
+		return indexes;
+	}
+
+	// adds the sequence row of an entity if it doesn't exist.
+	private static void addSequence(Connection con, String entity, String table) throws SQLException {
+		try (PreparedStatement stmt = con.prepareStatement("SELECT next_id FROM Id_Sequence WHERE entity = ?")) {
+			stmt.setString(1, entity);
+			try (ResultSet rs = stmt.executeQuery()) {
+				if (rs.next()) {
+					return;
+				}
+			}
+		}
+		execute(con, "INSERT INTO Id_Sequence SELECT '" + entity + "', COALESCE(MAX(id), 0) + 1 FROM " + table);
+	}
+
+	private static boolean tableExists(Connection con, String table) throws SQLException {
+		try (ResultSet rs = con.getMetaData().getTables(null, null, table.toUpperCase(), new String[] { "TABLE" })) {
+			return rs.next();
+		}
+	}
+
+	// the column size or -1 if the table doesn't have that column.
+	private static int getColumnSize(Connection con, String table, String column) throws SQLException {
+		try (ResultSet rs = con.getMetaData().getColumns(null, null, table.toUpperCase(), column.toUpperCase())) {
+			return rs.next() ? rs.getInt("COLUMN_SIZE") : -1;
+		}
+	}
+
+	private static void execute(Connection con, String sql) throws SQLException {
+		try (Statement stmt = con.createStatement()) {
+			System.out.println(sql);
+			stmt.executeUpdate(sql);
+		}
+	}
+
+	// a schema change that is applied once.
+	private static class Migration {
+		private final int version;
+		private final String description;
+		private final Step step;
+
+		private Migration(int version, String description, Step step) {
+			this.version = version;
+			this.description = description;
+			this.step = step;
+		}
+	}
+
+	// the schema change of a migration, in the migration's transaction.
+	private interface Step {
+		void apply(Connection con) throws SQLException;
+	}
+}
@@ -3,46 +3,163 @@ package db.connection_pool;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Set;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import core.config.CouponSystemConfig;
+import core.dao.DAOFactory;
+import core.thread.Threads;
+import db.build.MigrationRunner;
 
 /**
  * A singleton class that handle's all Connections of this application with the
  * database.</br>
- * This class holds a SET of 10 connections that each user can take from for his
- * use and brings it back after he finishes.
- * 
+ * This class holds 10 connections that each user can take from for his use
+ * and brings it back after he finishes.</br>
+ * The connections are opened in parallel, getInstance returns once
+ * 'connectionPool.minReady' of them are open and the rest join the pool in
+ * the background as they open.</br>
+ * The connections are counted by a fair {@link Semaphore}, so no more than 10
+ * DB calls run at the same time no matter how many threads there are, and
+ * the waiting threads get a connection in the order they came.</br>
+ * The pool doesn't use synchronized / wait, so a waiting virtual thread parks
+ * without holding its carrier thread.</br>
+ * A thread can bind a transaction ({@link #beginTransaction()}) : from then
+ * on all its getConnection calls get the same connection (taken on the first
+ * call, with auto commit off) and returnConnection doesn't return it, until
+ * {@link #endTransaction()}.</br>
+ * A connection that comes back closed (a thread that was interrupted inside
+ * an embedded Derby call loses its connection) is dropped and a new one is
+ * opened in the background, so the next callers don't get a dead
+ * connection.</br>
+ * The DB url & driver come from {@link DatabaseConfig} (network, embedded or
+ * in-memory Derby), an in-memory DB is created with all its tables when the
+ * pool starts and any other DB is upgraded by the {@link MigrationRunner}
+ * (with 'db.migrateOnStartup' false a DB with an older schema fails the
+ * start instead).</br>
+ * With the memory & journal storage engines (dao.engine) the pool opens no
+ * connections at all, a transaction then has no connection to commit.
  */
 public class ConnectionPool {
 	// Attributes
-	private Set<Connection> connectionsToGive = new HashSet<>();
-	private Set<Connection> connectionsToClose = new HashSet<>();
+	public static final int POOL_SIZE = 10;
+	private Deque<Connection> connectionsToGive = new ArrayDeque<>();
+	private List<Connection> connectionsToClose = new ArrayList<>();
+	private Semaphore available = new Semaphore(0, true);
+	private Lock lock = new ReentrantLock();
+	private Condition opened = lock.newCondition();
+	private int openAttempts = 0;
+	private boolean closed = false;
+	private long startTime = System.currentTimeMillis();
+	private ThreadLocal<Transaction> transactions = new ThreadLocal<>();
 	private static ConnectionPool instance = null;
-	private String url = "jdbc:derby://localhost:1527/coupon_system";
-	private String DriverName = "org.apache.derby.jdbc.ClientDriver";
+	private static Lock instanceLock = new ReentrantLock();
+	private String url = DatabaseConfig.getUrl();
 
-	// creating 10 connections and putting them in a SET.
+	// opening 10 connections in parallel, waits for the first minReady.
 	private ConnectionPool() {
+		if (!DAOFactory.usesDB()) {
+			return;
+		}
 		try {
-			Class.forName(DriverName);
-			for (int i = 0; i < 10; i++) {
-				Connection con = DriverManager.getConnection(url);
-				connectionsToGive.add(con);
-				connectionsToClose.add(con);
+			DatabaseConfig.loadDriver();
+			// a new in-memory DB has no tables yet.
+			try (Connection con = DriverManager
+					.getConnection(DatabaseConfig.isInMemory() ? DatabaseConfig.getCreateUrl() : url)) {
+				checkSchema(con);
 			}
-		} catch ( SQLException | ClassNotFoundException e) {
+		} catch (SQLException | ClassNotFoundException e) {
 			System.out.println(e.getMessage());
+			return;
+		}
+		int minReady = Math.max(0, Math.min(POOL_SIZE, CouponSystemConfig.getInt("connectionPool.minReady", 2)));
+		for (int i = 0; i < POOL_SIZE; i++) {
+			Thread opener = Threads.newThread("ConnectionPool-opener-" + i, this::addNewConnection);
+			opener.setDaemon(true);
+			opener.start();
+		}
+		lock.lock();
+		try {
+			while (connectionsToClose.size() < minReady && openAttempts < POOL_SIZE) {
+				opened.awaitUninterruptibly();
+			}
+			System.out.println("Connection pool : " + connectionsToClose.size() + "/" + POOL_SIZE
+					+ " connections ready in " + (System.currentTimeMillis() - startTime) + " ms");
+		} finally {
+			lock.unlock();
 		}
+	}
 
+	/*
+	 * upgrades the schema with the MigrationRunner, or (with
+	 * db.migrateOnStartup=false) fails if the DB is older than this
+	 * application.
+	 */
+	private static void checkSchema(Connection con) throws SQLException {
+		if (CouponSystemConfig.getBoolean("db.migrateOnStartup", true)) {
+			try {
+				MigrationRunner.migrate(con);
+			} catch (SQLException e) {
+				throw new IllegalStateException("The DB schema could not be upgraded : " + e.getMessage(), e);
+			}
+			return;
+		}
+		int version = MigrationRunner.getVersion(con);
+		if (version < MigrationRunner.getLatestVersion()) {
+			throw new IllegalStateException("The DB schema is version " + version + ", this application needs version "
+					+ MigrationRunner.getLatestVersion() + " (run MigrationRunner)");
+		}
+	}
+
+	// opens one connection and adds it to the pool.
+	private void addNewConnection() {
+		Connection con = null;
+		try {
+			con = DriverManager.getConnection(url);
+		} catch (SQLException e) {
+			System.out.println(e.getMessage());
+		}
+		lock.lock();
+		try {
+			openAttempts++;
+			if (con != null && closed) {
+				try {
+					con.close();
+				} catch (SQLException e) {
+					System.out.println(e.getMessage());
+				}
+			} else if (con != null) {
+				connectionsToGive.push(con);
+				connectionsToClose.add(con);
+				available.release();
+			}
+			if (openAttempts == POOL_SIZE) {
+				System.out.println("Connection pool warmed : " + connectionsToClose.size() + "/" + POOL_SIZE
+						+ " connections in " + (System.currentTimeMillis() - startTime) + " ms");
+			}
+			opened.signalAll();
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	// creating a singleton class.
 	public static ConnectionPool getInstance() {
-		if (instance == null) {
-			instance = new ConnectionPool();
+		instanceLock.lock();
+		try {
+			if (instance == null) {
+				instance = new ConnectionPool();
+			}
+			return instance;
+		} finally {
+			instanceLock.unlock();
 		}
-		return instance;
 	}
 
 	// Methods
@@ -51,43 +168,172 @@ public class ConnectionPool {
 	 * get connection method, if there is no connections left he will put you in
 	 * wait until someone will return a connection.
 	 */
-	public synchronized Connection getConnection() {
-		while (connectionsToGive.isEmpty()) {
-			try {
-				wait();
-			} catch (InterruptedException e) {
-				System.out.println(e.getMessage());
+	public Connection getConnection() {
+		Transaction transaction = transactions.get();
+		if (transaction != null) {
+			if (transaction.con == null) {
+				transaction.con = takeConnection();
+				try {
+					transaction.con.setAutoCommit(false);
+				} catch (SQLException e) {
+					System.out.println(e.getMessage());
+				}
 			}
+			return transaction.con;
+		}
+		return takeConnection();
+	}
+
+	private Connection takeConnection() {
+		available.acquireUninterruptibly();
+		lock.lock();
+		try {
+			return connectionsToGive.poll();
+		} finally {
+			lock.unlock();
 		}
-		Iterator<Connection> it = connectionsToGive.iterator();
-		Connection con = it.next();
-		it.remove();
-		return con;
 	}
 
 	/**
 	 * the return connection method that return the connection to the pool and
-	 * notify if there is someone that is waiting for connection.
+	 * let the next one that is waiting for connection take it.
 	 * 
 	 * @param con
 	 *            the connection you'r returning.
 	 */
-	public synchronized void returnConnection(Connection con) {
-		connectionsToGive.add(con);
-		notify();
+	public void returnConnection(Connection con) {
+		Transaction transaction = transactions.get();
+		if (transaction != null && transaction.con == con) {
+			// returned by endTransaction.
+			return;
+		}
+		if (!isAlive(con)) {
+			replace(con);
+			return;
+		}
+		lock.lock();
+		try {
+			connectionsToGive.push(con);
+		} finally {
+			lock.unlock();
+		}
+		available.release();
+	}
+
+	// a closed connection, or one that fails its check after an interrupt.
+	private static boolean isAlive(Connection con) {
+		try {
+			return !con.isClosed() && (!Thread.currentThread().isInterrupted() || con.isValid(2));
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	// drops a dead connection and opens a new one in its place.
+	private void replace(Connection con) {
+		System.out.println("Connection pool : replacing a closed connection");
+		try {
+			con.close();
+		} catch (SQLException e) {
+			// it is closed already.
+		}
+		lock.lock();
+		try {
+			connectionsToClose.remove(con);
+		} finally {
+			lock.unlock();
+		}
+		// opened on a thread of its own, the caller may be interrupted.
+		Thread opener = Threads.newThread("ConnectionPool-opener", this::addNewConnection);
+		opener.setDaemon(true);
+		opener.start();
+	}
+
+	/**
+	 * Binds a transaction to the calling thread, the connection is taken on
+	 * the first {@link #getConnection()}.
+	 */
+	public void beginTransaction() {
+		transactions.set(new Transaction());
+	}
+
+	/**
+	 * @return true if the calling thread has a transaction.
+	 */
+	public boolean isInTransaction() {
+		return transactions.get() != null;
+	}
+
+	/**
+	 * @return the connection of the calling thread's transaction, or null if it
+	 *         didn't take one yet.
+	 */
+	public Connection getTransactionConnection() {
+		Transaction transaction = transactions.get();
+		return transaction == null ? null : transaction.con;
 	}
 
 	/**
-	 * closing/shutting down all the connections in the pool.
+	 * Unbinds the transaction of the calling thread and returns its
+	 * connection to the pool with auto commit on (commit or rollback before
+	 * that).
 	 */
-	public synchronized void closeAllConnections() {
-		for (int i = 0; i < connectionsToClose.size(); i++) {
+	public void endTransaction() {
+		Transaction transaction = transactions.get();
+		transactions.remove();
+		if (transaction != null && transaction.con != null) {
 			try {
-				connectionsToClose.iterator().next().close();
+				transaction.con.setAutoCommit(true);
 			} catch (SQLException e) {
 				System.out.println(e.getMessage());
 			}
+			returnConnection(transaction.con);
 		}
 	}
 
+	/**
+	 * Opens a new connection to the same DB that is not a part of the pool
+	 * (and not of the calling thread's transaction), for work that commits on
+	 * its own like the {@link core.dao.db.IdAllocator} blocks.</br>
+	 * The caller closes it.
+	 */
+	public Connection openConnection() throws SQLException {
+		return DriverManager.getConnection(url);
+	}
+
+	/**
+	 * @return the number of connections that are not in use right now.
+	 */
+	public int getAvailableConnections() {
+		return available.availablePermits();
+	}
+
+	/**
+	 * closing/shutting down all the connections in the pool (and an embedded
+	 * DB).
+	 */
+	public void closeAllConnections() {
+		lock.lock();
+		try {
+			closed = true;
+			for (Connection con : connectionsToClose) {
+				try {
+					con.close();
+				} catch (SQLException e) {
+					System.out.println(e.getMessage());
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (!connectionsToClose.isEmpty()) {
+			DatabaseConfig.shutDownEmbedded();
+		}
+	}
+
+	// the connection of a thread's transaction.
+	private static class Transaction {
+		private Connection con = null;
+	}
+
 }
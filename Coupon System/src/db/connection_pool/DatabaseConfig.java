@@ -0,0 +1,141 @@
+package db.connection_pool;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Scanner;
+
+import core.config.CouponSystemConfig;
+
+/**
+ * The DB settings of this application, shared by the {@link ConnectionPool},
+ * {@link db.build.TableBuilder} and {@link db.build.MigrationRunner}.</br>
+ * The DB url is read from the 'files/dbUrl' file and the driver from the
+ * 'files/driverName' file, the 'db.url' and 'db.driver' settings (see
+ * {@link CouponSystemConfig}, e.g. -Ddb.url=...) override them.</br>
+ * The Derby mode is taken from the url :
+ * <ul>
+ * <li><b>network</b> (jdbc:derby://host:port/name) : the ClientDriver and a
+ * separate Derby server.</li>
+ * <li><b>embedded</b> (jdbc:derby:name) : the EmbeddedDriver, the DB runs
+ * inside this JVM without the network (only one JVM can open it).</li>
+ * <li><b>in-memory</b> (jdbc:derby:memory:name) : an embedded DB that is not
+ * saved to the disk, it is created with all the tables when the pool starts,
+ * for tests and benchmarks.</li>
+ * </ul>
+ * If the driver is not given it is chosen by the url.
+ */
+public class DatabaseConfig {
+	// Attributes
+	public static final String URL_FILE = "files/dbUrl";
+	public static final String DRIVER_FILE = "files/driverName";
+	public static final String DEFAULT_URL = "jdbc:derby://localhost:1527/coupon_system";
+	private static final String CLIENT_DRIVER = "org.apache.derby.jdbc.ClientDriver";
+	private static final String EMBEDDED_DRIVER = "org.apache.derby.jdbc.EmbeddedDriver";
+	private static String url = null;
+	private static String driverName = null;
+
+	// Private CTOR
+	private DatabaseConfig() {
+	}
+
+	// Methods
+	/**
+	 * @return the DB url, without the ';create=true' attribute.
+	 */
+	public static synchronized String getUrl() {
+		if (url == null) {
+			url = CouponSystemConfig.getString("db.url", null);
+			if (url == null) {
+				url = readLine(URL_FILE, DEFAULT_URL);
+			}
+		}
+		return url;
+	}
+
+	/**
+	 * @return the JDBC driver class name.
+	 */
+	public static synchronized String getDriverName() {
+		if (driverName == null) {
+			driverName = CouponSystemConfig.getString("db.driver", null);
+			if (driverName == null && CouponSystemConfig.getString("db.url", null) == null) {
+				// the driver file goes with the url file.
+				driverName = readLine(DRIVER_FILE, null);
+			}
+			if (driverName == null) {
+				driverName = isEmbedded() ? EMBEDDED_DRIVER : CLIENT_DRIVER;
+			}
+		}
+		return driverName;
+	}
+
+	/**
+	 * @return true if the DB runs inside this JVM (embedded or in-memory
+	 *         Derby).
+	 */
+	public static boolean isEmbedded() {
+		String dbUrl = getUrl();
+		return dbUrl.startsWith("jdbc:derby:") && !dbUrl.startsWith("jdbc:derby://");
+	}
+
+	/**
+	 * @return true if the DB is an in-memory Derby DB.
+	 */
+	public static boolean isInMemory() {
+		return getUrl().startsWith("jdbc:derby:memory:");
+	}
+
+	/**
+	 * @return the url that creates the DB if it doesn't exist.
+	 */
+	public static String getCreateUrl() {
+		return getUrl() + ";create=true";
+	}
+
+	/**
+	 * Loads the driver class to memory.
+	 */
+	public static void loadDriver() throws ClassNotFoundException {
+		Class.forName(getDriverName());
+	}
+
+	/**
+	 * Shuts down an embedded DB so it is closed cleanly (the connections
+	 * should be closed before), does nothing for a network DB.
+	 */
+	public static void shutDownEmbedded() {
+		if (!isEmbedded()) {
+			return;
+		}
+		String dbUrl = getUrl();
+		int attributes = dbUrl.indexOf(';');
+		if (attributes >= 0) {
+			dbUrl = dbUrl.substring(0, attributes);
+		}
+		try {
+			DriverManager.getConnection(dbUrl + ";shutdown=true");
+		} catch (SQLException e) {
+			// Derby always reports a shutdown with an exception (08006).
+			if (!"08006".equals(e.getSQLState())) {
+				System.out.println(e.getMessage());
+			}
+		}
+	}
+
+	// the first line of a file or the default value if there is no file.
+	private static String readLine(String path, String defaultValue) {
+		try (Scanner sc = new Scanner(new File(path))) {
+			if (sc.hasNextLine()) {
+				String line = sc.nextLine().trim();
+				if (!line.isEmpty()) {
+					return line;
+				}
+			}
+		} catch (FileNotFoundException e) {
+			System.out.println(path + " not found, using " + defaultValue);
+		}
+		return defaultValue;
+	}
+}